@@ -0,0 +1,93 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * This class provides the target maps the benchmarks run on. It consists
+ * exclusively of static methods and is made final to prevent it from being
+ * extended. Two families of maps are available: the bundled sample maps, named
+ * "sample-1" to "sample-3", which are geojson files in the format served by the
+ * powergrab map server with 50 features each, and synthetic maps, named
+ * "synthetic-N", holding N features spread uniformly over the play area, half
+ * of them lighthouses and half of them dangers. Synthetic maps are generated
+ * from a fixed seed, so the same name always produces the same map.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public final class BenchmarkMaps {
+	/**
+	 * The bounds of the play area the features of a synthetic map are placed in.
+	 */
+	private static final double MIN_LATITUDE = 55.942617;
+	private static final double MAX_LATITUDE = 55.946233;
+	private static final double MIN_LONGITUDE = -3.192473;
+	private static final double MAX_LONGITUDE = -3.184319;
+
+	/**
+	 * The starting position used by every benchmark, at the centre of the play
+	 * area.
+	 */
+	public static final Position START = new Position(55.944425, -3.188396);
+
+	/**
+	 * Make Constructor private to prevent the creation of any instances of this
+	 * class.
+	 */
+	private BenchmarkMaps() {
+	};
+
+	/**
+	 * This method returns the geojson source of a map from its name.
+	 *
+	 * @param name This is the name of the map, either "sample-K" or
+	 *             "synthetic-N".
+	 * @return The geojson source of the map.
+	 */
+	public static String source(String name) {
+		if (name.startsWith("sample-")) {
+			try (InputStream in = BenchmarkMaps.class.getResourceAsStream("/maps/" + name + ".geojson")) {
+				if (in == null)
+					throw new IllegalArgumentException("Unknown sample map " + name);
+				return new String(AppUtil.readAllBytes(in), StandardCharsets.UTF_8);
+			} catch (IOException e) {
+				throw new IllegalArgumentException("Unreadable sample map " + name);
+			}
+		} else if (name.startsWith("synthetic-")) {
+			return synthetic(Integer.parseInt(name.substring("synthetic-".length())));
+		} else {
+			throw new IllegalArgumentException("Unknown map " + name);
+		}
+	}
+
+	/**
+	 * This method generates the geojson source of a synthetic map. Coins and power
+	 * are written as strings, as they are by the map server.
+	 *
+	 * @param size This is the amount of features on the map.
+	 * @return The geojson source of the map.
+	 */
+	public static String synthetic(int size) {
+		Random random = new Random(size);
+		StringBuilder json = new StringBuilder("{\"type\":\"FeatureCollection\",\"features\":[");
+		for (int i = 0; i < size; i++) {
+			boolean lighthouse = (i & 1) == 0;
+			double sign = lighthouse ? 1 : -1;
+			double latitude = MIN_LATITUDE + random.nextDouble() * (MAX_LATITUDE - MIN_LATITUDE);
+			double longitude = MIN_LONGITUDE + random.nextDouble() * (MAX_LONGITUDE - MIN_LONGITUDE);
+			if (i > 0)
+				json.append(',');
+			json.append(String.format(Locale.ROOT,
+					"{\"type\":\"Feature\",\"properties\":{\"id\":\"%08x\",\"coins\":\"%s\",\"power\":\"%s\","
+							+ "\"marker-symbol\":\"%s\",\"marker-color\":\"%s\"},"
+							+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[%s,%s]}}",
+					random.nextInt(), sign * random.nextDouble() * 125, sign * random.nextDouble() * 125,
+					lighthouse ? "lighthouse" : "danger", lighthouse ? "#00ff00" : "#ff0000", longitude, latitude));
+		}
+		return json.append("]}").toString();
+	}
+}
@@ -0,0 +1,87 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks a single call of makeMove() of both drone types. Every
+ * benchmark flies a drone over its own copy of the target map, and once the
+ * drone has made 250 moves or run out of power it is replaced by a new drone on
+ * a fresh copy of the map, exactly as a new simulation would start. The cost
+ * of starting a new simulation is therefore included, spread over the moves of
+ * the simulation.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DroneBenchmark {
+	/**
+	 * The map the drones fly over, see BenchmarkMaps.
+	 */
+	@Param({ "sample-1", "synthetic-50", "synthetic-500", "synthetic-5000" })
+	public String map;
+
+	/**
+	 * This class has 4 private attributes: the parsed target map, the
+	 * pseudo-random number generator shared by successive drones, and the
+	 * Stateless and Stateful drones currently flying.
+	 */
+	private TargetMap targetMap;
+	private Random random;
+	private Drone stateless;
+	private Drone stateful;
+
+	/**
+	 * This method parses the target map and creates the first drones.
+	 */
+	@Setup
+	public void setup() {
+		targetMap = App.parseFeatures(BenchmarkMaps.source(map));
+		random = new Random(5678);
+		stateless = new Stateless(new World(targetMap), BenchmarkMaps.START, random);
+		stateful = new Stateful(new World(targetMap), BenchmarkMaps.START, random);
+		return;
+	}
+
+	/**
+	 * This method benchmarks Stateless.makeMove().
+	 *
+	 * @return The direction taken by the drone.
+	 */
+	@Benchmark
+	public Direction statelessMakeMove() {
+		if (!stateless.hasPower() || stateless.move >= 250)
+			stateless = new Stateless(new World(targetMap), BenchmarkMaps.START, random);
+		return stateless.makeMove();
+	}
+
+	/**
+	 * This method benchmarks Stateful.makeMove().
+	 *
+	 * @return The direction taken by the drone.
+	 */
+	@Benchmark
+	public Direction statefulMakeMove() {
+		if (!stateful.hasPower() || stateful.move >= 250)
+			stateful = new Stateful(new World(targetMap), BenchmarkMaps.START, random);
+		return stateful.makeMove();
+	}
+}
@@ -0,0 +1,120 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.mapbox.geojson.Point;
+
+/**
+ * This class benchmarks the production of the output files of a simulation:
+ * App.buildJsonFile(), which builds the whole pretty-printed geojson file of a
+ * full-length simulation, the same file written compactly by a GeoJsonWriter,
+ * and AppUtil.formatTextOutput() and AppUtil.appendTextOutput(), which format a
+ * single line of the text file.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+	/**
+	 * The map the output is built for, see BenchmarkMaps.
+	 */
+	@Param({ "sample-1", "synthetic-50", "synthetic-500", "synthetic-5000" })
+	public String map;
+
+	/**
+	 * This class has 5 private attributes: the parsed target map, the points
+	 * visited by a Stateless drone flying over it, the positions before and after
+	 * a move, and the StringBuilder a line of the text file is formatted into.
+	 */
+	private TargetMap targetMap;
+	private List<Point> points;
+	private Position firstPos;
+	private Position secondPos;
+	private final StringBuilder line = new StringBuilder(128);
+
+	/**
+	 * This method runs a simulation on the map to obtain a realistic path.
+	 */
+	@Setup
+	public void setup() {
+		targetMap = App.parseFeatures(BenchmarkMaps.source(map));
+		points = new ArrayList<>();
+		points.add(Point.fromLngLat(BenchmarkMaps.START.longitude, BenchmarkMaps.START.latitude));
+		App.simulate(targetMap, BenchmarkMaps.START, 5678, "stateless",
+				(move, from, direction, to, coins, power, charged) -> points.add(Point.fromLngLat(to.longitude, to.latitude)));
+		firstPos = BenchmarkMaps.START;
+		secondPos = firstPos.nextPosition(Direction.NNE);
+		return;
+	}
+
+	/**
+	 * This method benchmarks App.buildJsonFile().
+	 *
+	 * @return The geojson file.
+	 */
+	@Benchmark
+	public String buildJsonFile() {
+		return App.buildJsonFile(targetMap, points);
+	}
+
+	/**
+	 * This method benchmarks writing the geojson file with a compact
+	 * GeoJsonWriter.
+	 *
+	 * @return The geojson file.
+	 * @throws IOException Never, as the file is written to memory.
+	 */
+	@Benchmark
+	public String writeCompactJsonFile() throws IOException {
+		StringWriter out = new StringWriter();
+		try (GeoJsonWriter writer = new GeoJsonWriter(out, true)) {
+			writer.write(targetMap, points);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * This method benchmarks AppUtil.formatTextOutput().
+	 *
+	 * @return The line of the text file.
+	 */
+	@Benchmark
+	public String formatTextOutput() {
+		return AppUtil.formatTextOutput(firstPos, secondPos, Direction.NNE, 104.25, 187.5);
+	}
+
+	/**
+	 * This method benchmarks AppUtil.appendTextOutput() into a reused
+	 * StringBuilder, as done by the MoveLogWriter class.
+	 *
+	 * @return The length of the line of the text file.
+	 */
+	@Benchmark
+	public int appendTextOutput() {
+		line.setLength(0);
+		AppUtil.appendTextOutput(line, firstPos, secondPos, Direction.NNE, 104.25, 187.5);
+		return line.length();
+	}
+}
@@ -0,0 +1,64 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks loading a target map: parsing its geojson source, as
+ * read from the map cache, into a TargetMap, including building its spatial
+ * index.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+	/**
+	 * The map to parse, see BenchmarkMaps.
+	 */
+	@Param({ "sample-1", "synthetic-50", "synthetic-500", "synthetic-5000" })
+	public String map;
+
+	/**
+	 * This class has 1 private attribute: the geojson source of the map as UTF-8
+	 * bytes.
+	 */
+	private byte[] source;
+
+	/**
+	 * This method generates or reads the geojson source of the map.
+	 */
+	@Setup
+	public void setup() {
+		source = BenchmarkMaps.source(map).getBytes(StandardCharsets.UTF_8);
+		return;
+	}
+
+	/**
+	 * This method benchmarks MapParser.parse().
+	 *
+	 * @return The parsed target map.
+	 */
+	@Benchmark
+	public TargetMap parse() {
+		return MapParser.parse(new ByteArrayInputStream(source));
+	}
+}
@@ -0,0 +1,123 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * This class benchmarks the map queries a drone makes on every move:
+ * getInRange(), which collects the features in charging range, and
+ * updateStatus(), which charges from the closest of them. The drone is moved
+ * through a fixed cycle of positions before every call. The positions used for
+ * getInRange() are spread over the play area, while the ones used for
+ * updateStatus() are those of the features of the map, so every call charges
+ * from a feature. The coins and power of that feature and of the drone are
+ * restored before every call, so every call does the same amount of work.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+	/**
+	 * The amount of positions in each cycle.
+	 */
+	private static final int POSITIONS = 1024;
+
+	/**
+	 * The map the queries run on, see BenchmarkMaps.
+	 */
+	@Param({ "sample-1", "synthetic-50", "synthetic-500", "synthetic-5000" })
+	public String map;
+
+	/**
+	 * This class has 8 private attributes: the drone making the queries and the
+	 * features of its world, the positions of the getInRange() cycle, the
+	 * positions of the updateStatus() cycle along with the feature each of them
+	 * charges from and that feature's original coins and power, and the index of
+	 * the next position of the cycles.
+	 */
+	private Drone drone;
+	private FeatureOverlay features;
+	private Position[] rangePositions;
+	private Position[] chargePositions;
+	private int[] charged;
+	private double[] chargedCoins;
+	private double[] chargedPower;
+	private int next;
+
+	/**
+	 * This method parses the target map, creates the drone and precomputes both
+	 * cycles of positions.
+	 */
+	@Setup
+	public void setup() {
+		World world = new World(App.parseFeatures(BenchmarkMaps.source(map)));
+		features = world.features;
+		drone = new Stateless(world, BenchmarkMaps.START, new Random(5678));
+
+		Random random = new Random(42);
+		rangePositions = new Position[POSITIONS];
+		for (int i = 0; i < POSITIONS; i++)
+			rangePositions[i] = new Position(55.942617 + random.nextDouble() * (55.946233 - 55.942617),
+					-3.192473 + random.nextDouble() * (-3.184319 + 3.192473));
+
+		chargePositions = new Position[POSITIONS];
+		charged = new int[POSITIONS];
+		chargedCoins = new double[POSITIONS];
+		chargedPower = new double[POSITIONS];
+		for (int i = 0; i < POSITIONS; i++) {
+			int feature = i % features.size();
+			chargePositions[i] = new Position(features.latitude(feature), features.longitude(feature));
+			charged[i] = world.index.nearest(features.latitude(feature), features.longitude(feature), 0.00025);
+			chargedCoins[i] = features.coins(charged[i]);
+			chargedPower[i] = features.power(charged[i]);
+		}
+		return;
+	}
+
+	/**
+	 * This method benchmarks Drone.getInRange().
+	 *
+	 * @return The amount of features in range.
+	 */
+	@Benchmark
+	public int getInRange() {
+		drone.currentPosition = rangePositions[next++ & (POSITIONS - 1)];
+		drone.getInRange();
+		return drone.inRange.size();
+	}
+
+	/**
+	 * This method benchmarks Drone.updateStatus().
+	 *
+	 * @return The coins held by the drone after charging.
+	 */
+	@Benchmark
+	public double updateStatus() {
+		int i = next++ & (POSITIONS - 1);
+		features.setCoins(charged[i], chargedCoins[i]);
+		features.setPower(charged[i], chargedPower[i]);
+		drone.coins = 0;
+		drone.power = 250;
+		drone.currentPosition = chargePositions[i];
+		drone.updateStatus();
+		return drone.coins;
+	}
+}
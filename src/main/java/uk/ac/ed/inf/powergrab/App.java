@@ -1,17 +1,15 @@
 package uk.ac.ed.inf.powergrab;
 
-import com.google.gson.*;
-import com.mapbox.geojson.FeatureCollection;
-import com.mapbox.geojson.LineString;
 import com.mapbox.geojson.Point;
-import com.mapbox.geojson.Feature;
 
+import java.io.File;
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.MalformedURLException;
-import java.net.URL;
-import java.util.ArrayList;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
 import java.util.logging.Handler;
@@ -23,7 +21,9 @@ import java.util.logging.Logger;
  * exclusively of static methods that operate primarily on or return objects
  * representing arguments and outputs of the drone functionality. It’s
  * responsible for handling the I/O of the application and for controlling the
- * drone functionality. Where applicable the methods of this class can throw an
+ * drone functionality. The class keeps no state of its own besides its logger,
+ * so any amount of simulations can be run concurrently through the simulate()
+ * method. Where applicable the methods of this class can throw an
  * IllegalArgumentException, MalformedURLException and IOException, indicating
  * invalid arguments or outputs.
  * 
@@ -32,129 +32,115 @@ import java.util.logging.Logger;
  */
 public class App {
 	/**
-	 * This class has 4 attributes: a public ArrayList, POIs, of type POI which
-	 * store references to all individual features of the target map, a private
-	 * Logger object, logger, to log statements in this class, and 2 private double
-	 * variables, totalCoins and coinsCollected, representing the total possible
-	 * amount of coins to be acquired and the total amount acquired by the drone
-	 * during its move sequence respectively.
+	 * This class has one private attribute, a Logger object, logger, to log
+	 * statements in this class.
 	 */
-	public static ArrayList<POI> POIs = new ArrayList<>();
-	private static Logger logger;
-	private static double totalCoins = 0;
-	private static double coinsCollected = 0;
+	private static final Logger logger = Logger.getLogger("App");
+
+	/**
+	 * The flags selecting a mode of the application other than a single run,
+	 * which end the options.
+	 */
+	private static final List<String> MODES = Arrays.asList("--batch", "--convert", "--prefetch");
+
+	/**
+	 * This compile-time constant switches the trace statements of the simulation
+	 * hot paths, in the Drone, Stateless and Stateful classes and in
+	 * AppUtil.formatTextOutput(), on and off. Every trace statement is guarded by
+	 * this constant and by the level of its logger, so its message is only
+	 * formatted if it is going to be logged. While it is false the compiler drops
+	 * the statements altogether, so they cost nothing. To trace a simulation, set
+	 * it to true and lower the levels set in setupLogger().
+	 */
+	public static final boolean TRACE = false;
 
 	/**
 	 * This method parses the features, representing geographical locations, of the
 	 * target map from its map source. It takes a String representing the map source
-	 * of the target map as an input. It adds instances of the POI object, which
-	 * defines a single feature, to the global ArrayList POIs.
-	 * 
-	 * The FeatureCollection class is used to split the map source of the target map
-	 * into a List of Features. Each feature is then used to initialise a separate
-	 * instance of the POI class containing the ID, latitude and longitude, coins,
-	 * power, symbol and colour described by that feature.
+	 * of the target map as an input. It outputs a TargetMap object holding the
+	 * features of the target map, which can be shared by any amount of
+	 * simulations. The map source is parsed by the MapParser class in a single
+	 * streaming pass, appending the features directly to a feature store, over
+	 * which the TargetMap object builds the spatial index used by the drones for
+	 * range queries.
 	 * 
 	 * @param mapSource This is the String holding the information from the target
 	 *                  map in a geojson format.
+	 * @return A TargetMap object holding the features of the target map.
 	 */
-	private static void parseFeatures(String mapSource) {
-		List<Feature> featureList = FeatureCollection.fromJson(mapSource).features();
-
-		for (Feature feature : featureList) {
-			Point point = (Point) feature.geometry();
-			String id = feature.getProperty("id").getAsString();
-			double latitude = point.latitude();
-			double longitude = point.longitude();
-			double coins = feature.getProperty("coins").getAsDouble();
-			double power = feature.getProperty("power").getAsDouble();
-			String symbol = feature.getProperty("marker-symbol").getAsString();
-			String color = feature.getProperty("marker-color").getAsString();
-			POIs.add(new POI(id, latitude, longitude, coins, power, symbol, color));
-			if (coins > 0)
-				totalCoins += coins;
-		}
-		return;
+	public static TargetMap parseFeatures(String mapSource) {
+		return MapParser.parse(new StringReader(mapSource));
 	}
 
 	/**
 	 * This method builds a file, containing the geographical locations of the
 	 * target map plus the path that the drone took during its move sequence, with a
-	 * geojson type format. Its inputs are a String representing the map source for
-	 * the target map and an ArrayList of points, which is passed by reference and
-	 * represents the points the drone has visited in its move sequence. It outputs
-	 * a String, which represents the geographical locations of the target map plus
-	 * the path the drone took during its move sequence, in a geojson type format
-	 * which will be written directly to the output geojson file of the powergrab
-	 * application. This method will be called in the main method.
+	 * geojson type format. Its inputs are the target map and a List of points,
+	 * which is passed by reference and represents the points the drone has visited
+	 * in its move sequence. It outputs a String, which represents the geographical
+	 * locations of the target map plus the path the drone took during its move
+	 * sequence, in a pretty-printed geojson type format. The document is produced
+	 * by the GeoJsonWriter class, which writes output files directly without
+	 * building this String, so this method is only used where the document is
+	 * needed in memory.
 	 * 
-	 * The geojson file content is built from scratch with JsonObjects and
-	 * JsonArrays. First a JsonObject representing the final geojson content is
-	 * created and the FeatureCollection property is added to it. Next the features
-	 * from the target map, representing geographical locations, are parsed into a
-	 * JsonArray using JsonParser. The LineString class is then used to create a
-	 * line string from the ArrayList of points and put at the end of the previously
-	 * created JsonArray. The JsonArray is then finally added to the main JsonObject
-	 * which is then converted to a String with the geojson format.
-	 * 
-	 * @param mapSource This is String representing the map source for the target
-	 *                  map.
-	 * @param points    This is the ArrayList of Points representing the points the
-	 *                  drone has visited during its move sequence.
+	 * @param map    This is the target map.
+	 * @param points This is the List of Points representing the points the drone
+	 *               has visited during its move sequence.
 	 * @return A String, representing the features of the target map plus the path
-	 *         the drone took in its move sequence, in the geojson format. This
-	 *         String will be written directly to the geojson file which is output
-	 *         by the powergrab application.
+	 *         the drone took in its move sequence, in the geojson format.
 	 */
-	private static String buildJsonFile(String mapSource, ArrayList<Point> points) {
-		JsonObject main = new JsonObject();
-		main.addProperty("type", "FeatureCollection");
-
-		JsonParser parser = new JsonParser();
-		JsonObject jsonFile = (JsonObject) parser.parse(mapSource);
-		JsonArray featureArray = jsonFile.get("features").getAsJsonArray();
-
-		LineString lineStringObject = LineString.fromLngLats(points);
-		String lineStringJson = lineStringObject.toJson();
-
-		JsonObject geometry = (JsonObject) parser.parse(lineStringJson);
-
-		JsonObject lineString = new JsonObject();
-		lineString.addProperty("type", "Feature");
-		lineString.add("properties", new JsonObject());
-		lineString.add("geometry", geometry);
-		featureArray.add(lineString);
-
-		main.add("features", featureArray);
-
-		Gson gson = new GsonBuilder().setPrettyPrinting().create();
-		String prettyJson = gson.toJson(main);
-		return prettyJson;
+	static String buildJsonFile(TargetMap map, List<Point> points) {
+		StringWriter out = new StringWriter();
+		try (GeoJsonWriter writer = new GeoJsonWriter(out, false)) {
+			writer.write(map, points);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+		return out.toString();
 	}
 
 	/**
-	 * This method initialises the drone object. Its inputs are a position object
-	 * representing the drone's initial position, a pseudo-random number generator
-	 * object, and a String representing the drone type. It outputs a drone object
-	 * representing one of two possible types of drones: The Stateless drone or the
-	 * Stateful drone. This method handles any invalid argument errors arising from
-	 * a non-existing drone type. This method will be called in the main method.
+	 * This method initialises the drone object. Its inputs are a World object
+	 * representing the state of the target map for the simulation, a position
+	 * object representing the drone's initial position, a pseudo-random number
+	 * generator object, and a String representing the drone type. It outputs a
+	 * drone object representing one of five possible types of drones: The
+	 * Stateless drone, the Stateful drone, the Stateful drone in planning mode,
+	 * which plans the order of the lighthouses with the default budget of the
+	 * TourPlanner class, the BeamSearch drone, with the default width and depth of
+	 * its beam, or the MonteCarlo drone, with the default budget and a worker per
+	 * available processor. This method handles any invalid argument errors arising
+	 * from a non-existing drone type. This method will be called in the main
+	 * method.
 	 * 
+	 * @param world           This is the World object the drone flies in.
 	 * @param initialPosition This is the Position object containing the starting
 	 *                        latitude and longitude of the drone.
 	 * @param randNumGen      This is the pseudo-random number generator object used
 	 *                        in calculating random movements taken by the drone.
 	 * @param droneType       This is a String representing the drone type. Only
-	 *                        accepted drone types are "Stateless" or "Stateful".
+	 *                        accepted drone types are "stateless", "stateful",
+	 *                        "planned", "beam" or "mcts".
 	 * @return A drone object representing the selected drone type.
 	 */
-	private static Drone initDrone(Position initialPosition, Random randNumGen, String droneType) {
+	private static Drone initDrone(World world, Position initialPosition, Random randNumGen, String droneType) {
 		if (droneType.equals("stateless")) {
 			logger.fine("Stateless Drone initialised successfully");
-			return new Stateless(initialPosition, randNumGen);
+			return new Stateless(world, initialPosition, randNumGen);
 		} else if (droneType.equals("stateful")) {
 			logger.fine("Stateful Drone initialised successfully");
-			return new Stateful(initialPosition, randNumGen);
+			return new Stateful(world, initialPosition, randNumGen);
+		} else if (droneType.equals("beam")) {
+			logger.fine("Beam Search Drone initialised successfully");
+			return new BeamSearch(world, initialPosition, randNumGen);
+		} else if (droneType.equals("mcts")) {
+			logger.fine("Monte Carlo Drone initialised successfully");
+			return new MonteCarlo(world, initialPosition, randNumGen);
+		} else if (droneType.equals("planned")) {
+			logger.fine("Planned Stateful Drone initialised successfully");
+			return new Stateful(world, initialPosition, randNumGen,
+					new TourPlanner(TourPlanner.DEFAULT_BUDGET, world.map.moveDistances()));
 		} else {
 			logger.severe("Invalid drone type!");
 			throw new IllegalArgumentException("Invalid Arguments!");
@@ -162,96 +148,373 @@ public class App {
 	}
 
 	/**
-	 * This method will compute the move sequence of the drone on the target map.
-	 * Its inputs are the drone object and an ArrayList of points the drone visits
-	 * during its move sequence, which is passed by reference to this method. The
-	 * makeMove() method of the drone object will be called until the drone has made
-	 * 250 moves. It will stop the move sequence early if the drone runs out of
-	 * power before having made 250 moves. For each move the method will record the
-	 * starting position of the drone, the direction it took, its final position,
-	 * and its power and coins at the end of the move. It will output all of the
-	 * recorded information as a string, as well as updating the input point
-	 * ArrayList after every move. This method will be called in the main function.
+	 * This method runs a single simulation of a drone on a target map and returns
+	 * its result, including the text describing the move sequence. It is
+	 * equivalent to the simulate method with a MoveLogWriter writing the moves to
+	 * a String instead of a file, so it is meant for callers needing the moves in
+	 * memory.
 	 * 
-	 * @param drone  This is the drone object which will be used for computing the
-	 *               move sequence.
-	 * @param points This is the ArrayList of points that the drone will visit
-	 *               during its move sequence.
-	 * @return A string holding the current position of the drone, the direction it
-	 *         took, its final position, and its power and coins at the end of the
-	 *         move, for every move in the move sequence.
+	 * @param map             This is the target map the simulation runs on.
+	 * @param initialPosition This is the Position object containing the starting
+	 *                        latitude and longitude of the drone.
+	 * @param seed            This is the seed of the pseudo-random number
+	 *                        generator used by the drone.
+	 * @param droneType       This is a String representing the drone type.
+	 * @return A SimulationResult object holding the coins collected by the drone,
+	 *         the total coins on the target map and the text describing the move
+	 *         sequence.
 	 */
-	private static String computeMoveSequence(Drone drone, ArrayList<Point> points) {
-		ArrayList<String> moveList = new ArrayList<>();
-
-		while (drone.hasPower() && drone.move < 250) {
-			Position firstPos = drone.currentPosition;
-			Direction move = drone.makeMove();
-			Position secondPos = drone.currentPosition;
-			String text = AppUtil.formatTextOutput(firstPos, secondPos, move, drone.coins, drone.power);
-			points.add(Point.fromLngLat(drone.currentPosition.longitude, drone.currentPosition.latitude));
-			moveList.add(text);
+	public static SimulationResult simulate(TargetMap map, Position initialPosition, int seed, String droneType) {
+		StringWriter moves = new StringWriter();
+		SimulationResult result;
+		try (MoveLogWriter log = new MoveLogWriter(moves)) {
+			result = simulate(map, initialPosition, seed, droneType, log);
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
 		}
+		return new SimulationResult(droneType, result.coinsCollected, result.totalCoins, moves.toString(),
+				result.metrics);
+	}
+
+	/**
+	 * This method runs a single simulation of a drone on a target map and returns
+	 * its result. Its inputs are the target map, the initial position of the
+	 * drone, the random seed, the drone type and any amount of MoveListeners, such
+	 * as the writers of the output files, which are notified of every move while
+	 * the drone flies. It creates a World object holding this simulation's copy of
+	 * the features of the target map, initialises the drone and flies it for up to
+	 * 250 moves, stopping early if the drone runs out of power, without modifying
+	 * the target map or any static state, so it can be called concurrently from
+	 * any amount of threads. An UncheckedIOException thrown by a listener ends the
+	 * simulation. The metrics of the flight are added to the GLOBAL metrics.
+	 * 
+	 * @param map             This is the target map the simulation runs on.
+	 * @param initialPosition This is the Position object containing the starting
+	 *                        latitude and longitude of the drone.
+	 * @param seed            This is the seed of the pseudo-random number
+	 *                        generator used by the drone.
+	 * @param droneType       This is a String representing the drone type.
+	 * @param listeners       These are the MoveListeners notified of the moves.
+	 * @return A SimulationResult object holding the coins collected by the drone,
+	 *         the total coins on the target map and the metrics of the flight,
+	 *         without the text describing the move sequence.
+	 */
+	public static SimulationResult simulate(TargetMap map, Position initialPosition, int seed, String droneType,
+			MoveListener... listeners) {
+		return simulate(map, initialPosition, seed, droneType, Metrics.GLOBAL, listeners);
+	}
+
+	/**
+	 * This method runs a single simulation like the method above, but adds the
+	 * metrics of the flight to the input Metrics object instead of the GLOBAL
+	 * metrics, so a batch can summarise the metrics of its own runs only.
+	 * 
+	 * @param map             This is the target map the simulation runs on.
+	 * @param initialPosition This is the Position object containing the starting
+	 *                        latitude and longitude of the drone.
+	 * @param seed            This is the seed of the pseudo-random number
+	 *                        generator used by the drone.
+	 * @param droneType       This is a String representing the drone type.
+	 * @param metrics         This is the Metrics object the metrics of the flight
+	 *                        are added to.
+	 * @param listeners       These are the MoveListeners notified of the moves.
+	 * @return A SimulationResult object holding the coins collected by the drone,
+	 *         the total coins on the target map and the metrics of the flight,
+	 *         without the text describing the move sequence.
+	 */
+	static SimulationResult simulate(TargetMap map, Position initialPosition, int seed, String droneType,
+			Metrics metrics, MoveListener... listeners) {
+		World world = new World(map);
+		Drone drone = initDrone(world, initialPosition, new Random(seed), droneType);
+		for (MoveListener listener : listeners)
+			drone.addListener(listener);
+		drone.fly(250);
 		logger.fine("Drone path computed successfully");
-		coinsCollected = drone.coins;
-		return AppUtil.arrayToString(moveList);
+		drone.metrics.runs++;
+		metrics.merge(drone.metrics);
+		return new SimulationResult(droneType, drone.coins, world.totalCoins, null, drone.metrics);
 	}
 
 	/**
-	 * This method parses the target map information from a URL. It takes a String,
-	 * representing a URL, as its input which contains the geojson file of the
-	 * target map. It handles errors from the URL connection attempt and it will
-	 * check for malformed URLs. It will also raise an illegal argument exception if
-	 * the output geojson file is null. This method will be called in the main
-	 * function.
+	 * This method runs the simulation described by a run specification and writes
+	 * its output files while the drone flies. The files are named after the input
+	 * base name: either a text file and a geojson file, with the .txt and .geojson
+	 * extensions, or a single trajectory file, with the .trj extension, if the
+	 * binary format is requested.
 	 * 
-	 * @param url This is the URL containing the geojson file of the target map.
-	 * @return The geojson file for the target map as a string.
+	 * @param map     This is the target map the simulation runs on.
+	 * @param spec    This is the specification of the run.
+	 * @param base    This is the path of the output files without extension.
+	 * @param compact This is whether the geojson file is written without
+	 *                whitespace instead of pretty-printed.
+	 * @param binary  This is whether a trajectory file is written instead of the
+	 *                text and geojson files.
+	 * @return A SimulationResult object holding the coins collected by the drone
+	 *         and the total coins on the target map.
+	 * @throws IOException If an output file can't be opened or closed.
 	 */
-	private static String getMapSource(String url) {
-		String mapSource = null;
-		try {
-			URL mapUrl = new URL(url);
-			HttpURLConnection conn = (HttpURLConnection) mapUrl.openConnection();
-			conn.setReadTimeout(10000);
-			conn.setConnectTimeout(15000);
-			conn.setRequestMethod("GET");
-			conn.setDoInput(true);
-			conn.connect();
-			InputStream inputStream = conn.getInputStream();
-			mapSource = AppUtil.inputStreamToString(inputStream);
-		} catch (MalformedURLException e) {
-			logger.severe("Input URL is malformed!");
-			e.printStackTrace();
-		} catch (IOException e) {
-			logger.severe("Failed to get map!");
-			e.printStackTrace();
+	static SimulationResult simulate(TargetMap map, RunSpec spec, File base, boolean compact, boolean binary)
+			throws IOException {
+		if (binary) {
+			try (TrajectoryWriter trajectory = TrajectoryWriter
+					.open(new File(base.getPath() + TrajectoryWriter.EXTENSION), spec)) {
+				return simulate(map, spec.initialPosition(), spec.seed, spec.droneType, trajectory);
+			}
+		}
+		try (MoveLogWriter log = MoveLogWriter.open(new File(base.getPath() + ".txt"));
+				GeoJsonWriter json = GeoJsonWriter.open(new File(base.getPath() + ".geojson"), compact)) {
+			return simulate(map, spec.initialPosition(), spec.seed, spec.droneType, log, json);
+		}
+	}
+
+	/**
+	 * This class holds the command line options of the application: the map cache
+	 * target maps are loaded from, whether geojson files are written compactly,
+	 * whether trajectory files are written instead, the file flight events are
+	 * recorded to, or null, and the position of the first argument following the
+	 * options.
+	 */
+	private static final class Options {
+		final MapCache maps;
+		final boolean compact;
+		final boolean binary;
+		final File jfr;
+		final int offset;
+
+		Options(MapCache maps, boolean compact, boolean binary, File jfr, int offset) {
+			this.maps = maps;
+			this.compact = compact;
+			this.binary = binary;
+			this.jfr = jfr;
+			this.offset = offset;
 		}
-		if (mapSource != null)
-			return mapSource;
-		else {
-			logger.warning("Invalid Map Source!");
-			throw new IllegalArgumentException("Invalid map from URL!");
+	}
+
+	/**
+	 * This method parses the command line options preceding the run arguments,
+	 * creating the map cache used by the application. The options are:
+	 * --offline, to never contact the map source; --cache followed by the
+	 * directory holding the cache, which defaults to .powergrab/cache in the
+	 * user's home directory; --maps followed by the location of the map source,
+	 * either the base URL of a server laid out like the powergrab map server or a
+	 * local directory laid out in the same way, which defaults to the powergrab
+	 * map server; --compact, to write geojson files without any whitespace
+	 * instead of pretty-printed; --binary, to write a trajectory file instead of
+	 * the text and geojson files; and --jfr followed by a file name, to record the
+	 * flight events of the simulation phases along with the usual profiling
+	 * events of the JVM into that file; and --timeout followed by a time in
+	 * milliseconds, to use as the connect and read timeouts of an HTTP map source
+	 * instead of the defaults of HttpMapSource. It throws an
+	 * IllegalArgumentException if an option is unknown or is missing its value.
+	 * 
+	 * @param args This is the array of command line arguments.
+	 * @return The Options object holding the parsed options and the position of
+	 *         the first argument following the options.
+	 */
+	private static Options parseOptions(String[] args) {
+		boolean offline = false;
+		boolean compact = false;
+		boolean binary = false;
+		File jfr = null;
+		int timeout = -1;
+		File cacheDir = new File(System.getProperty("user.home"), ".powergrab/cache");
+		String location = HttpMapSource.DEFAULT_URL;
+		int offset = 0;
+		while (offset < args.length && args[offset].startsWith("--") && !MODES.contains(args[offset])) {
+			String option = args[offset++];
+			if (option.equals("--offline")) {
+				offline = true;
+			} else if (option.equals("--compact")) {
+				compact = true;
+			} else if (option.equals("--binary")) {
+				binary = true;
+			} else if ((option.equals("--cache") || option.equals("--maps") || option.equals("--jfr")
+					|| option.equals("--timeout")) && offset < args.length) {
+				if (option.equals("--cache"))
+					cacheDir = new File(args[offset++]);
+				else if (option.equals("--jfr"))
+					jfr = new File(args[offset++]);
+				else if (option.equals("--timeout"))
+					timeout = parseTimeout(args[offset++]);
+				else
+					location = args[offset++];
+			} else {
+				logger.severe("Invalid option " + option);
+				throw new IllegalArgumentException("Invalid arguments!");
+			}
+		}
+		MapSource source = location.startsWith("http://") || location.startsWith("https://")
+				? (timeout < 0 ? new HttpMapSource(location) : new HttpMapSource(location, timeout, timeout))
+				: new DirectoryMapSource(new File(location));
+		return new Options(new MapCache(cacheDir, source, offline, MapCache.DEFAULT_MAX_AGE), compact, binary,
+				jfr, offset);
+	}
+
+	/**
+	 * This is a support method for the parseOptions method. It parses the value of
+	 * the --timeout option, throwing an IllegalArgumentException if it is not a
+	 * non-negative amount of milliseconds.
+	 * 
+	 * @param value This is the value of the option.
+	 * @return The timeout in milliseconds.
+	 */
+	private static int parseTimeout(String value) {
+		try {
+			int timeout = Integer.parseInt(value);
+			if (timeout >= 0)
+				return timeout;
+		} catch (NumberFormatException e) {
 		}
+		logger.severe("Invalid timeout " + value);
+		throw new IllegalArgumentException("Invalid arguments!");
 	}
 
 	/**
-	 * This private method is responsible for creating a new Logger from the Logger
-	 * class using its getLogger() method. A hierarchy of loggers will be created
-	 * throughout the application with the App class logger as the top level. The
-	 * level reported by the logger can be modified here to specify the granularity
-	 * of information reported to aid debugging. This method will be called at the
-	 * start of the main method.
+	 * This private method is responsible for configuring the App class logger. A
+	 * hierarchy of loggers is created throughout the application with the App
+	 * class logger as the top level. The level reported by the logger can be
+	 * modified here to specify the granularity of information reported to aid
+	 * debugging. This method will be called at the start of the main method.
 	 */
 	private static void setupLogger() {
-		logger = Logger.getLogger("App");
 		logger.setLevel(Level.INFO);
 		Logger rootLogger = Logger.getLogger("");
 		Handler handler = rootLogger.getHandlers()[0];
 		handler.setLevel(Level.INFO);
+		return;
+	}
+
+	/**
+	 * This private method runs the application in batch mode. Its input is the
+	 * array of command line arguments following the --batch flag: the path of the
+	 * manifest file, and optionally the output directory and the amount of worker
+	 * threads, which default to the current directory and the amount of available
+	 * processors respectively. This method will be called in the main method.
+	 * 
+	 * @param args    This is the array of command line arguments.
+	 * @param options This is the Options object holding the parsed options.
+	 */
+	private static void runBatch(String[] args, Options options) {
+		int offset = options.offset;
+		if (args.length < offset + 2) {
+			logger.severe("Missing manifest file!");
+			throw new IllegalArgumentException("Invalid arguments!");
+		}
+		File outputDir = new File(args.length > offset + 2 ? args[offset + 2] : ".");
+		int parallelism = Runtime.getRuntime().availableProcessors();
+		List<RunSpec> specs;
+		try {
+			if (args.length > offset + 3)
+				parallelism = Integer.parseInt(args[offset + 3]);
+			specs = BatchRunner.readManifest(new File(args[offset + 1]));
+		} catch (NumberFormatException e) {
+			logger.severe("Invalid input arguments!");
+			throw new IllegalArgumentException("Invalid arguments!");
+		} catch (IOException e) {
+			logger.severe("Failed to read manifest file!");
+			throw new IllegalArgumentException("Invalid manifest file!");
+		}
+		new BatchRunner(outputDir, parallelism, options.maps, options.compact, options.binary).run(specs);
+		return;
+	}
+
+	/**
+	 * This private method runs the application in conversion mode. Its input is
+	 * the array of command line arguments following the --convert flag, which are
+	 * the paths of trajectory files. The text and geojson files of every
+	 * trajectory file are regenerated next to it by the TrajectoryConverter
+	 * class. A file that can't be converted is reported and skipped. This method
+	 * will be called in the main method.
+	 * 
+	 * @param args    This is the array of command line arguments.
+	 * @param options This is the Options object holding the parsed options.
+	 */
+	private static void runConvert(String[] args, Options options) {
+		if (args.length < options.offset + 2) {
+			logger.severe("Missing trajectory file!");
+			throw new IllegalArgumentException("Invalid arguments!");
+		}
+		for (int i = options.offset + 1; i < args.length; i++) {
+			try {
+				TrajectoryConverter.convert(new File(args[i]), options.maps, options.compact);
+			} catch (IOException | RuntimeException e) {
+				logger.severe(String.format("Failed to convert %s: %s", args[i], e.getMessage()));
+			}
+		}
+		return;
+	}
+
+	/**
+	 * This private method runs the application in prefetch mode. Its input is the
+	 * array of command line arguments following the --prefetch flag: the first
+	 * and last day of a range of dates, in the yyyy-mm-dd format, and optionally
+	 * the amount of maps fetched at once, which defaults to
+	 * MapPrefetcher.DEFAULT_PARALLELISM. The maps of every day of the range are
+	 * fetched into the map cache by the MapPrefetcher class, so later runs on
+	 * those dates load them from disk. This method will be called in the main
+	 * method.
+	 * 
+	 * @param args    This is the array of command line arguments.
+	 * @param options This is the Options object holding the parsed options.
+	 */
+	private static void runPrefetch(String[] args, Options options) {
+		int offset = options.offset;
+		if (args.length < offset + 3) {
+			logger.severe("Missing date range!");
+			throw new IllegalArgumentException("Invalid arguments!");
+		}
+		List<String> dates;
+		int parallelism = MapPrefetcher.DEFAULT_PARALLELISM;
+		try {
+			dates = MapPrefetcher.dateRange(LocalDate.parse(args[offset + 1]), LocalDate.parse(args[offset + 2]));
+			if (args.length > offset + 3)
+				parallelism = Integer.parseInt(args[offset + 3]);
+		} catch (DateTimeParseException | NumberFormatException e) {
+			logger.severe("Invalid input arguments!");
+			throw new IllegalArgumentException("Invalid arguments!");
+		}
+		List<String> failed = new MapPrefetcher(options.maps, parallelism, MapPrefetcher.DEFAULT_ATTEMPTS,
+				MapPrefetcher.DEFAULT_BACKOFF).prefetch(dates);
+		if (!failed.isEmpty())
+			logger.severe("Failed to prefetch maps " + String.join(", ", failed));
+		return;
+	}
+
+	/**
+	 * This private method runs a single simulation. Its input is the array of
+	 * command line arguments, holding the 7 arguments of the run after the
+	 * options. It loads the target map, runs the simulation writing its output
+	 * files, and reports the coins collected by the drone and the metrics of the
+	 * run. This method will be called in the main method.
+	 * 
+	 * @param args    This is the array of command line arguments.
+	 * @param options This is the Options object holding the parsed options.
+	 */
+	private static void runSingle(String[] args, Options options) {
+		RunSpec spec;
+		try {
+			spec = RunSpec.fromArgs(args, options.offset);
+		} catch (IllegalArgumentException e) {
+			logger.severe("Invalid input arguments!");
+			throw e;
+		}
+
+		TargetMap map = options.maps.load(spec.mapDate());
+		logger.fine("Target map parsed successfully");
+
+		SimulationResult result;
+		try {
+			result = simulate(map, spec, new File(spec.outputName()), options.compact, options.binary);
+		} catch (IOException | UncheckedIOException e) {
+			logger.severe("Writing to file failed!");
+			e.printStackTrace();
+			return;
+		}
+		logger.fine("Write to output files successful");
 
-		AppUtil.setupLogger();
-		FileOutput.setupLogger();
+		logger.info(String.format("For target map (%s/%s/%s):\n%s drone collected a total of %.2f out of %.2f coins",
+				spec.day, spec.month, spec.year, spec.droneType, result.coinsCollected, result.totalCoins));
+		System.out.println(Metrics.GLOBAL.getSummary());
 		return;
 	}
 
@@ -260,7 +523,18 @@ public class App {
 	 * arguments which will act as inputs to the application. The input arguments
 	 * are ordered as follows: day, month and year of the target map, the latitude
 	 * and longitude for the starting position of the drone, the random seed and the
-	 * drone type.
+	 * drone type. Alternatively, it can be called with the --batch flag followed by
+	 * the path of a manifest file holding one set of these 7 arguments per line, an
+	 * optional output directory and an optional amount of worker threads, in which
+	 * case all runs of the manifest are executed in parallel by the BatchRunner
+	 * class. Either form can be preceded by the options described in
+	 * parseOptions(), which control where target maps are loaded from, how the
+	 * output is written and whether flight events are recorded. Target maps are
+	 * kept in a local cache, so repeated runs on the same date don't fetch the
+	 * map again. Finally, it can be called with the --convert flag followed by the
+	 * paths of trajectory files written with the --binary option, whose text and
+	 * geojson files are then regenerated, or with the --prefetch flag followed by
+	 * a range of dates, whose maps are then fetched into the cache concurrently.
 	 * 
 	 * The method will start by parsing all input arguments, catching any invalid
 	 * argument exceptions, after which it will get the target map information. The
@@ -268,61 +542,36 @@ public class App {
 	 * sequence on the target map is then computed. The output is written to two
 	 * files: a text file describing the move sequence of the drone and a geojson
 	 * file storing the geographical locations of the target map and the path the
-	 * drone took during its move sequence.
+	 * drone took during its move sequence. With the --binary option, a single
+	 * trajectory file holding the same information is written instead.
 	 * 
 	 * A log of the main routine will be also be written to the console, including a
-	 * report on the total coins collected.
+	 * report on the total coins collected, and a single line of JSON summarising
+	 * the metrics of the run is printed to the standard output. The metrics are
+	 * also available through JMX while the application runs. With the --jfr
+	 * option, the flight recording is written once the application is done.
 	 * 
 	 * @param args This is the 7 input arguments to the powergrab application.
 	 */
 	public static void main(String[] args) {
 		setupLogger();
+		Metrics.registerMBean();
 
-		String day = args[0];
-		String month = args[1];
-		String year = args[2];
-		double latitude;
-		double longitude;
-		int seed;
-
+		Options options = parseOptions(args);
+		if (options.jfr != null)
+			FlightEvents.start(options.jfr);
 		try {
-			latitude = Double.parseDouble(args[3]);
-			longitude = Double.parseDouble(args[4]);
-			seed = Integer.parseInt(args[5]);
-		} catch (NumberFormatException e) {
-			logger.severe("Invalid input arguments!");
-			throw new IllegalArgumentException("Invalid arguments!");
+			int offset = options.offset;
+			if (args.length > offset && args[offset].equals("--batch"))
+				runBatch(args, options);
+			else if (args.length > offset && args[offset].equals("--convert"))
+				runConvert(args, options);
+			else if (args.length > offset && args[offset].equals("--prefetch"))
+				runPrefetch(args, options);
+			else
+				runSingle(args, options);
+		} finally {
+			FlightEvents.stop();
 		}
-
-		String mapString = String.format("http://homepages.inf.ed.ac.uk/stg/powergrab/%s/%s/%s/powergrabmap.geojson",
-				year, month, day);
-
-		String mapSource = getMapSource(mapString);
-		parseFeatures(mapSource);
-		logger.fine("Target map parsed successfully");
-
-		String droneType = args[6];
-
-		Random generator = new Random(seed);
-		Position initialPosition = new Position(latitude, longitude);
-
-		ArrayList<Point> points = new ArrayList<>();
-		points.add(Point.fromLngLat(longitude, latitude));
-
-		Drone drone = initDrone(initialPosition, generator, droneType);
-		String moves = computeMoveSequence(drone, points);
-		String textFileName = String.format("%s-%s-%s-%s.txt", droneType, day, month, year);
-
-		FileOutput.writeToFile(textFileName, moves);
-		logger.fine("Write to text file successful");
-
-		String jsonFileName = String.format("%s-%s-%s-%s.geojson", droneType, day, month, year);
-		String jsonFile = buildJsonFile(mapSource, points);
-
-		FileOutput.writeToFile(jsonFileName, jsonFile);
-		logger.fine("Write to geojson file successful");
-
-		logger.info(String.format("For target map (%s/%s/%s):\n%s drone collected a total of %.2f out of %.2f coins",
-				day, month, year, droneType, coinsCollected, totalCoins));
 	}
 }
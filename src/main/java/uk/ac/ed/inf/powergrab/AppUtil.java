@@ -1,12 +1,10 @@
 package uk.ac.ed.inf.powergrab;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
+import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 /**
  * This class defines support methods for the App class. It consists exclusively
@@ -22,7 +20,7 @@ public final class AppUtil {
 	 * A private attribute, logger, of type Logger is kept by this class in order to
 	 * make logging statements throughout its methods where applicable.
 	 */
-	private static Logger logger;
+	private static final Logger logger = Logger.getLogger("App.AppUtils");
 
 	/**
 	 * Make Constructor private to prevent the creation of any instances of this
@@ -32,50 +30,29 @@ public final class AppUtil {
 	};
 
 	/**
-	 * This method is responsible for initialising a subclass logger of the logger
-	 * initialised in the App class. This logger object will be used for debugging
-	 * and information message logging in the AppUtils class.
-	 */
-	public static void setupLogger() {
-		logger = Logger.getLogger("App.AppUtils");
-		return;
-	}
-
-	/**
-	 * This is a support method for the getMapSource method in the App class. It
-	 * takes an InputStream object resulting from a connection attempt to a URL,
-	 * which contains the map source of the target map. It outputs the map source as
-	 * a String.
+	 * This is a support method for the HttpMapSource class. It takes an
+	 * InputStream object resulting from a connection attempt to a URL, which
+	 * contains the map source of the target map. It outputs the contents of the
+	 * stream as they are, without decoding them into a String, so they can be
+	 * cached and parsed directly.
 	 * 
 	 * @param inputStream This is the InputStream object resulting from a connection
 	 *                    attempt to the URL containing the map source of the target
 	 *                    map.
-	 * @return A String representing the map source of the target map.
-	 */
-	public static String inputStreamToString(InputStream inputStream) {
-		Stream<String> result = new BufferedReader(new InputStreamReader(inputStream)).lines();
-		return result.parallel().collect(Collectors.joining("\n"));
-	}
-
-	/**
-	 * This is a support method for the computeMoveSequence method in the App class.
-	 * It takes an ArrayList of type String as its input, and it outputs a String
-	 * where every entity of the input ArrayList is separated by a new line.
-	 * 
-	 * @param moveList This is the ArrayList of type String containing the output
-	 *                 String created after every move in the move sequence.
-	 * @return A String where each String in the ArrayList is separated by a new
-	 *         line.
+	 * @return The bytes read from the stream.
+	 * @throws IOException If the stream can't be read.
 	 */
-	public static String arrayToString(ArrayList<String> moveList) {
-		String moves = moveList.get(0);
-		for (int i = 1; i < moveList.size(); i++)
-			moves = moves.concat("\n" + moveList.get(i));
-		return moves;
+	public static byte[] readAllBytes(InputStream inputStream) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int read;
+		while ((read = inputStream.read(buffer)) != -1)
+			out.write(buffer, 0, read);
+		return out.toByteArray();
 	}
 
 	/**
-	 * This is a support method for the computeMoveSequence method in the App class.
+	 * This is a support method for the MoveLogWriter class.
 	 * Its inputs are a Position object representing the initial position of the
 	 * drone before a move, a Position object representing the final position of the
 	 * drone after a move, the direction the drone went to during the move, and 2
@@ -101,10 +78,134 @@ public final class AppUtil {
 	 */
 	public static String formatTextOutput(Position firstPos, Position secondPos, Direction direction, double coins,
 			double power) {
-		logger.finer(String.format(
-				"Parsing text file output for drone at position %.3f %.3f taking direction %s to position %.3f %.3f",
-				firstPos.latitude, firstPos.longitude, direction, secondPos.latitude, secondPos.longitude));
-		return String.format("%s,%s,%s,%s,%s,%f,%f", firstPos.latitude, firstPos.longitude, direction,
-				secondPos.latitude, secondPos.longitude, coins, power);
+		if (App.TRACE && logger.isLoggable(Level.FINER))
+			logger.finer(String.format("Parsing text file output for drone at position %.3f %.3f taking direction %s"
+					+ " to position %.3f %.3f", firstPos.latitude, firstPos.longitude, direction, secondPos.latitude,
+					secondPos.longitude));
+		StringBuilder text = new StringBuilder(96);
+		appendTextOutput(text, firstPos, secondPos, direction, coins, power);
+		return text.toString();
+	}
+
+	/**
+	 * This method appends the line of the output text file describing a move to a
+	 * StringBuilder. The line is identical to the one produced by
+	 * String.format("%s,%s,%s,%s,%s,%f,%f") with the same inputs in the English
+	 * locale, but it is produced without parsing a format string or allocating
+	 * any intermediate Strings, and it doesn't depend on the default locale.
+	 * 
+	 * @param text      This is the StringBuilder the line is appended to.
+	 * @param firstPos  This is the Position object containing the latitude and
+	 *                  longitude of the drone before making a move.
+	 * @param secondPos This is the Position object containing the latitude and
+	 *                  longitude of the drone after making a move.
+	 * @param direction This is one of the 16 cardinal directions the drone took
+	 *                  during a move.
+	 * @param coins     This is the total value of coins the drone holds after a
+	 *                  move.
+	 * @param power     This is the total value of power the drone holds after a
+	 *                  move.
+	 */
+	public static void appendTextOutput(StringBuilder text, Position firstPos, Position secondPos,
+			Direction direction, double coins, double power) {
+		text.append(firstPos.latitude).append(',').append(firstPos.longitude).append(',').append(direction.name())
+				.append(',').append(secondPos.latitude).append(',').append(secondPos.longitude).append(',');
+		appendFixed(text, coins);
+		text.append(',');
+		appendFixed(text, power);
+		return;
+	}
+
+	/**
+	 * This method appends a double value to a StringBuilder with 6 decimal places,
+	 * exactly as the %f conversion of String.format does in the English locale.
+	 * Like the formatter, it rounds the shortest decimal representation of the
+	 * value, as given by Double.toString(), half up, rather than the exact binary
+	 * value. The representation is appended to the StringBuilder itself and
+	 * replaced by the rounded value, so no intermediate objects are created.
+	 * 
+	 * @param text  This is the StringBuilder the value is appended to.
+	 * @param value This is the value to append.
+	 */
+	public static void appendFixed(StringBuilder text, double value) {
+		if (Double.isNaN(value) || Double.isInfinite(value)) {
+			text.append(value);
+			return;
+		}
+		if (Double.compare(value, 0.0) < 0) {
+			text.append('-');
+			value = -value;
+		}
+		int start = text.length();
+		text.append(value);
+		int end = text.length();
+
+		// Split the representation into its digits, the position of its decimal
+		// point and its exponent.
+		int mantissaEnd = end;
+		int exponent = 0;
+		for (int i = start; i < end; i++) {
+			if (text.charAt(i) == 'E') {
+				mantissaEnd = i;
+				boolean negative = text.charAt(i + 1) == '-';
+				for (int j = negative ? i + 2 : i + 1; j < end; j++)
+					exponent = exponent * 10 + text.charAt(j) - '0';
+				if (negative)
+					exponent = -exponent;
+				break;
+			}
+		}
+		int point = text.indexOf(".", start) - start;
+		int digitCount = mantissaEnd - start - 1;
+		int intDigits = point + exponent;
+
+		// Digits are numbered from the first one of the representation, with the
+		// integer part made up of the digits before intDigits. The first digit
+		// written is a single 0 for values below 1, and the last one is the 6th
+		// decimal place.
+		int first = intDigits > 0 ? 0 : intDigits - 1;
+		int last = intDigits + 6;
+		boolean roundUp = digit(text, start, point, digitCount, last) >= '5';
+		int carry = Integer.MIN_VALUE;
+		if (roundUp) {
+			for (int k = last - 1; k >= first; k--) {
+				if (digit(text, start, point, digitCount, k) != '9') {
+					carry = k;
+					break;
+				}
+			}
+			if (carry == Integer.MIN_VALUE)
+				text.append('1');
+		}
+		for (int k = first; k < last; k++) {
+			if (k == intDigits)
+				text.append('.');
+			char c = digit(text, start, point, digitCount, k);
+			if (roundUp && k == carry)
+				c++;
+			else if (roundUp && k > carry)
+				c = '0';
+			text.append(c);
+		}
+		text.delete(start, end);
+		return;
+	}
+
+	/**
+	 * This is a support method for the appendFixed method. It returns a digit of
+	 * the representation of a double value held in a StringBuilder.
+	 * 
+	 * @param text       This is the StringBuilder holding the representation.
+	 * @param start      This is the position of the representation.
+	 * @param point      This is the position of the decimal point within the
+	 *                   representation.
+	 * @param digitCount This is the amount of digits of the representation.
+	 * @param k          This is the number of the digit.
+	 * @return The digit, or '0' if the representation has no such digit.
+	 */
+	private static char digit(StringBuilder text, int start, int point, int digitCount, int k) {
+		if (k < 0 || k >= digitCount)
+			return '0';
+		return text.charAt(start + k + (k >= point ? 1 : 0));
 	}
 }
@@ -0,0 +1,363 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Logger;
+
+/**
+ * This class runs batches of simulations in a single JVM. A batch is described
+ * by a manifest file holding one run specification per line, in the same
+ * format as the command line arguments of the application. The runs are
+ * executed by a pipeline of 4 stages connected by bounded queues: a fetch stage
+ * getting the source of the target map of every date, on several threads since
+ * it mostly waits on the cache or the map source, a parse stage parsing every
+ * map once and handing all runs on its date to the next stage, a simulate
+ * stage flying the drones across all cores, collecting their output in memory,
+ * and a write stage writing the output files of every run, so fetching maps
+ * and writing files overlap with the simulations. Each run writes its own text
+ * and geojson output files, or its trajectory file, and a summary CSV comparing
+ * the coins collected by every run to the total coins on its target map, along
+ * with the amount of moves and the mean time per move of the run, is written at
+ * the end of the batch, next to a JSON summary of the metrics of the batch. The
+ * metrics of a batch are collected apart from those of any other batch run by
+ * the JVM, and only added to the GLOBAL metrics once the batch is over. The
+ * throughput of every stage is logged at the end of the batch.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class BatchRunner {
+	/**
+	 * The name of the summary file written to the output directory.
+	 */
+	public static final String SUMMARY_FILE = "summary.csv";
+
+	/**
+	 * The name of the metrics file written to the output directory.
+	 */
+	public static final String METRICS_FILE = "metrics.json";
+
+	/**
+	 * The amount of threads of the fetch stage.
+	 */
+	public static final int FETCH_THREADS = 4;
+
+	/**
+	 * The amount of threads of the write stage.
+	 */
+	public static final int WRITE_THREADS = 2;
+
+	/**
+	 * This class has 6 private attributes: a final File object, outputDir, for the
+	 * directory the output files are written to, a final int, parallelism, for the
+	 * amount of threads of the simulate stage, a final MapCache, maps, from which
+	 * the target maps are loaded, a final boolean, compact, for whether geojson
+	 * files are written without whitespace, a final boolean, binary, for whether
+	 * trajectory files are written instead of text and geojson files, and a Logger
+	 * object, logger, to log statements in this class.
+	 */
+	private final File outputDir;
+	private final int parallelism;
+	private final MapCache maps;
+	private final boolean compact;
+	private final boolean binary;
+	private static final Logger logger = Logger.getLogger("App.BatchRunner");
+
+	/**
+	 * This class holds the outcome of a single run of the batch, identified by its
+	 * position in the manifest.
+	 */
+	private static final class Outcome {
+		final int index;
+		final RunSpec spec;
+		final SimulationResult result;
+		final String error;
+
+		Outcome(int index, RunSpec spec, SimulationResult result, String error) {
+			this.index = index;
+			this.spec = spec;
+			this.result = result;
+			this.error = error;
+		}
+	}
+
+	/**
+	 * This class holds the source of the target map of a date, fetched by the
+	 * fetch stage, along with the positions in the manifest of the runs on that
+	 * date.
+	 */
+	private static final class Fetched {
+		final List<Integer> runs;
+		final byte[] source;
+
+		Fetched(List<Integer> runs, byte[] source) {
+			this.runs = runs;
+			this.source = source;
+		}
+	}
+
+	/**
+	 * This class holds a single run of the batch as it goes through the simulate
+	 * and write stages: its position in the manifest, its specification and
+	 * target map, and once it has been simulated, its result and the contents of
+	 * its output files by extension. The target map is dropped once the run has
+	 * been simulated.
+	 */
+	private static final class Run {
+		final int index;
+		final RunSpec spec;
+		TargetMap map;
+		SimulationResult result;
+		final Map<String, byte[]> files = new LinkedHashMap<>();
+
+		Run(int index, RunSpec spec, TargetMap map) {
+			this.index = index;
+			this.spec = spec;
+			this.map = map;
+		}
+	}
+
+	/**
+	 * Constructor for the BatchRunner class.
+	 *
+	 * @param outputDir   This is the directory the output files are written to.
+	 * @param parallelism This is the amount of threads simulating runs.
+	 * @param maps        This is the map cache the target maps are loaded from.
+	 * @param compact     This is whether geojson files are written without
+	 *                    whitespace instead of pretty-printed.
+	 * @param binary      This is whether trajectory files are written instead of
+	 *                    text and geojson files.
+	 */
+	public BatchRunner(File outputDir, int parallelism, MapCache maps, boolean compact, boolean binary) {
+		if (parallelism < 1)
+			throw new IllegalArgumentException("Invalid parallelism!");
+		this.outputDir = outputDir;
+		this.parallelism = parallelism;
+		this.maps = maps;
+		this.compact = compact;
+		this.binary = binary;
+	}
+
+	/**
+	 * This method reads the run specifications from a manifest file. Blank lines
+	 * and lines starting with '#' are skipped.
+	 *
+	 * @param manifest This is the manifest file.
+	 * @return The List of run specifications, in the order of the manifest.
+	 * @throws IOException If the manifest can't be read.
+	 */
+	public static List<RunSpec> readManifest(File manifest) throws IOException {
+		List<RunSpec> specs = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new FileReader(manifest))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.trim().isEmpty() || line.trim().startsWith("#"))
+					continue;
+				specs.add(RunSpec.parse(line));
+			}
+		}
+		return specs;
+	}
+
+	/**
+	 * This method runs a batch of simulations and returns the amount of runs that
+	 * failed. The runs are grouped by the date of their target map, and the dates
+	 * are fed to the pipeline in the order they first appear in the manifest.
+	 * The queues of the stages hold a few items per thread, so however large the
+	 * batch, only a few maps and the output of a few runs are held in memory at
+	 * once, and feeding the pipeline blocks while it is full. A map is no longer
+	 * referenced once all of its runs have been simulated. A date whose map can't
+	 * be loaded fails all of its runs without affecting the rest of the batch. If a
+	 * stage is stopped by an Error, the runs it hadn't handed on are recorded as
+	 * not run, and the batch still ends.
+	 *
+	 * @param specs This is the List of run specifications of the batch.
+	 * @return The amount of runs that failed.
+	 */
+	public int run(List<RunSpec> specs) {
+		outputDir.mkdirs();
+		Map<String, List<Integer>> byDate = new LinkedHashMap<>();
+		for (int i = 0; i < specs.size(); i++) {
+			String date = specs.get(i).mapDate();
+			if (!byDate.containsKey(date))
+				byDate.put(date, new ArrayList<Integer>());
+			byDate.get(date).add(i);
+		}
+
+		final Outcome[] outcomes = new Outcome[specs.size()];
+		final Metrics metrics = new Metrics();
+		Stage<Run> write = new Stage<>("write", WRITE_THREADS, 2 * parallelism, run -> {
+			outcomes[run.index] = write(run);
+		}, null);
+		Stage<Run> simulate = new Stage<>("simulate", parallelism, 2 * parallelism, run -> {
+			if (simulate(run, metrics))
+				write.put(run);
+			else
+				outcomes[run.index] = new Outcome(run.index, run.spec, null, "failed");
+		}, write);
+		Stage<Fetched> parse = new Stage<>("parse", 1, 2, fetched -> {
+			String date = specs.get(fetched.runs.get(0)).mapDate();
+			TargetMap map;
+			try {
+				map = MapCache.parse(fetched.source, metrics);
+			} catch (RuntimeException e) {
+				logger.severe(String.format("Failed to parse target map %s: %s", date, e.getMessage()));
+				fail(outcomes, specs, fetched.runs);
+				return;
+			}
+			for (int index : fetched.runs)
+				simulate.put(new Run(index, specs.get(index), map));
+		}, simulate);
+		Stage<List<Integer>> fetch = new Stage<>("fetch", FETCH_THREADS, FETCH_THREADS, runs -> {
+			String date = specs.get(runs.get(0)).mapDate();
+			byte[] source;
+			try {
+				source = maps.fetch(date, metrics);
+			} catch (RuntimeException e) {
+				logger.severe(String.format("Failed to load target map %s: %s", date, e.getMessage()));
+				fail(outcomes, specs, runs);
+				return;
+			}
+			parse.put(new Fetched(runs, source));
+		}, parse);
+
+		List<Stage<?>> stages = Arrays.asList(fetch, parse, simulate, write);
+		for (Stage<?> stage : stages)
+			stage.start();
+		try {
+			try {
+				for (List<Integer> runs : byDate.values())
+					fetch.put(runs);
+			} catch (IllegalStateException e) {
+				logger.severe(String.format("Batch stopped early: %s", e.getMessage()));
+			}
+			fetch.close();
+			for (Stage<?> stage : stages)
+				stage.await();
+		} catch (InterruptedException e) {
+			for (Stage<?> stage : stages)
+				stage.cancel();
+			Thread.currentThread().interrupt();
+			logger.severe("Batch interrupted!");
+			throw new IllegalStateException("Batch interrupted!");
+		}
+		for (Stage<?> stage : stages)
+			logger.info(stage.report());
+
+		int failed = 0;
+		StringBuilder summary = new StringBuilder(
+				"index,day,month,year,latitude,longitude,seed,droneType,coinsCollected,totalCoins,status,"
+						+ "moves,meanMoveNanos");
+		for (int i = 0; i < outcomes.length; i++) {
+			// A run has no outcome if a stage handling it was stopped by an Error.
+			Outcome outcome = outcomes[i] != null ? outcomes[i] : new Outcome(i, specs.get(i), null, "not run");
+			RunSpec spec = outcome.spec;
+			summary.append(String.format(Locale.ROOT, "\n%d,%s,%s,%s,%s,%s,%d,%s,", outcome.index, spec.day,
+					spec.month, spec.year, spec.latitude, spec.longitude, spec.seed, spec.droneType));
+			if (outcome.result != null) {
+				Metrics runMetrics = outcome.result.metrics;
+				summary.append(String.format(Locale.ROOT, "%f,%f,ok,%d,%.0f", outcome.result.coinsCollected,
+						outcome.result.totalCoins, runMetrics.moves(), runMetrics.meanMoveNanos()));
+			} else {
+				summary.append(",,").append(outcome.error).append(",,");
+				failed++;
+			}
+		}
+		FileOutput.writeToFile(new File(outputDir, SUMMARY_FILE).getPath(), summary.toString());
+		FileOutput.writeToFile(new File(outputDir, METRICS_FILE).getPath(), metrics.getSummary());
+		Metrics.GLOBAL.merge(metrics);
+		logger.info(String.format("Batch of %d runs over %d target maps finished with %d failures", specs.size(),
+				byDate.size(), failed));
+		return failed;
+	}
+
+	/**
+	 * This is a support method for the run() method. It records the failure of
+	 * every run on a date whose target map can't be loaded.
+	 *
+	 * @param outcomes This is the array of outcomes of the batch.
+	 * @param specs    This is the List of run specifications of the batch.
+	 * @param runs     This is the List of positions of the runs on the date.
+	 */
+	private static void fail(Outcome[] outcomes, List<RunSpec> specs, List<Integer> runs) {
+		for (int index : runs)
+			outcomes[index] = new Outcome(index, specs.get(index), null, "map unavailable");
+		return;
+	}
+
+	/**
+	 * This method runs a single simulation of the batch on its shared target map,
+	 * collecting the contents of its output files in memory, where the text file
+	 * has the .txt extension, the geojson file the .geojson extension and the
+	 * trajectory file the .trj extension, like the files written by App.simulate.
+	 * Any error is caught and logged.
+	 *
+	 * @param run     This is the run.
+	 * @param metrics This is the Metrics object of the batch, which the metrics
+	 *                of the run are added to.
+	 * @return true if the run succeeded.
+	 */
+	private boolean simulate(Run run, Metrics metrics) {
+		RunSpec spec = run.spec;
+		try {
+			if (binary) {
+				ByteArrayOutputStream trajectory = new ByteArrayOutputStream();
+				try (TrajectoryWriter writer = new TrajectoryWriter(Channels.newChannel(trajectory), spec)) {
+					run.result = App.simulate(run.map, spec.initialPosition(), spec.seed, spec.droneType, metrics,
+							writer);
+				}
+				run.files.put(TrajectoryWriter.EXTENSION, trajectory.toByteArray());
+			} else {
+				ByteArrayOutputStream text = new ByteArrayOutputStream();
+				ByteArrayOutputStream geojson = new ByteArrayOutputStream();
+				try (MoveLogWriter log = new MoveLogWriter(new OutputStreamWriter(text, StandardCharsets.UTF_8));
+						GeoJsonWriter json = new GeoJsonWriter(
+								new OutputStreamWriter(geojson, StandardCharsets.UTF_8), compact)) {
+					run.result = App.simulate(run.map, spec.initialPosition(), spec.seed, spec.droneType, metrics, log,
+							json);
+				}
+				run.files.put(".txt", text.toByteArray());
+				run.files.put(".geojson", geojson.toByteArray());
+			}
+			return true;
+		} catch (IOException | RuntimeException e) {
+			logger.warning(String.format("Run %d failed: %s", run.index, e.getMessage()));
+			return false;
+		} finally {
+			run.map = null;
+		}
+	}
+
+	/**
+	 * This method writes the output files of a simulated run, named after the
+	 * run's drone type, date and position in the manifest. Any error is caught and
+	 * recorded in the outcome of the run.
+	 *
+	 * @param run This is the run.
+	 * @return The outcome of the run.
+	 */
+	private Outcome write(Run run) {
+		String name = String.format("%s-%d", run.spec.outputName(), run.index);
+		try {
+			for (Map.Entry<String, byte[]> file : run.files.entrySet())
+				Files.write(new File(outputDir, name + file.getKey()).toPath(), file.getValue());
+			return new Outcome(run.index, run.spec, run.result, null);
+		} catch (IOException | RuntimeException e) {
+			logger.warning(String.format("Run %d failed: %s", run.index, e.getMessage()));
+			return new Outcome(run.index, run.spec, null, "failed");
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+
+/**
+ * This class extends the abstract Drone class. It represents the beam-search
+ * drone, which looks several moves ahead instead of one, and defines the
+ * abstract method nextMove() in the superclass.
+ *
+ * Before every move the drone expands a beam of hypothetical move sequences one
+ * move at a time: every sequence in the beam is extended in each of the 16
+ * directions, and only the best sequences, up to the width of the beam, are kept
+ * for the next move, skipping any sequence ending where a better one already
+ * ends. Sequences are scored on the coins and power gained along them, which
+ * counts the coins and power lost to dangers against them, less the amount of
+ * moves from their end to the nearest lighthouse neither the drone nor the
+ * sequence has charged from yet, so the drone heads for lighthouses beyond its
+ * horizon. Once the beam is as deep as the search, the drone takes the first
+ * move of the best sequence, picking one at random among equally good first
+ * moves.
+ *
+ * Hypothetical moves don't touch the world: every sequence records the
+ * features it charged from in a short list shared with the sequences it was
+ * extended from, and reads every other feature from the world. The sequences of
+ * the beam are therefore independent, and are extended in parallel on a
+ * fork-join pool, while the rest of the search is sequential, so the moves of
+ * the drone don't depend on the amount of threads.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class BeamSearch extends Drone {
+	/**
+	 * The default amount of sequences kept in the beam after every move.
+	 */
+	public static final int DEFAULT_WIDTH = 8;
+
+	/**
+	 * The default amount of moves every sequence looks ahead.
+	 */
+	public static final int DEFAULT_DEPTH = 4;
+
+	/**
+	 * The weight of a unit of power gained in the score of a sequence, relative
+	 * to a coin.
+	 */
+	private static final double POWER_WEIGHT = 0.5;
+
+	/**
+	 * The weight of a move to the nearest lighthouse not charged from in the
+	 * score of a sequence, relative to a coin.
+	 */
+	private static final double DISTANCE_WEIGHT = 1;
+
+	/**
+	 * The amount of sequences of the beam up to which they are extended on the
+	 * current thread rather than split between tasks, as handing them to the pool
+	 * would cost more than extending them.
+	 */
+	private static final int SPLIT_THRESHOLD = 4;
+
+	/**
+	 * This class has 4 private attributes: the width and depth of the search, the
+	 * ForkJoinPool extending the beam, and a KdTree, unvisitedPOIs, representing
+	 * the lighthouses the drone hasn't charged from yet.
+	 */
+	private final int width;
+	private final int depth;
+	private final ForkJoinPool pool;
+	private KdTree unvisitedPOIs;
+
+	/**
+	 * This class holds a feature charged from during a sequence of hypothetical
+	 * moves, with the coins and power it holds afterwards, and the one charged from
+	 * before it in the sequence, or null. As a predicate, it matches every feature
+	 * charged from up to it in the sequence.
+	 */
+	private static final class Charge implements IntPredicate {
+		final int feature;
+		final double coins;
+		final double power;
+		final Charge next;
+
+		Charge(int feature, double coins, double power, Charge next) {
+			this.feature = feature;
+			this.coins = coins;
+			this.power = power;
+			this.next = next;
+		}
+
+		@Override
+		public boolean test(int feature) {
+			for (Charge charge = this; charge != null; charge = charge.next) {
+				if (charge.feature == feature)
+					return true;
+			}
+			return false;
+		}
+	}
+
+	/**
+	 * This class holds a sequence of hypothetical moves: the position, coins and
+	 * power of the drone at its end, the features charged from along it, the first
+	 * direction of the sequence and its score.
+	 */
+	private static final class Node {
+		final double latitude;
+		final double longitude;
+		final double coins;
+		final double power;
+		final Charge charges;
+		final int first;
+		final double score;
+
+		Node(double latitude, double longitude, double coins, double power, Charge charges, int first,
+				double score) {
+			this.latitude = latitude;
+			this.longitude = longitude;
+			this.coins = coins;
+			this.power = power;
+			this.charges = charges;
+			this.first = first;
+			this.score = score;
+		}
+	}
+
+	/**
+	 * The order of sequences from best to worst score.
+	 */
+	private static final Comparator<Node> BEST_FIRST = (a, b) -> Double.compare(b.score, a.score);
+
+	/**
+	 * Constructor of the BeamSearch drone class with the default width and depth,
+	 * extending the beam on the common fork-join pool.
+	 *
+	 * @param world           This is the World object the drone flies in.
+	 * @param initialPosition This is the Position object representing the initial
+	 *                        latitude and longitude of the drone.
+	 * @param randNumGen      This is the pseudo-random number generator object.
+	 */
+	public BeamSearch(World world, Position initialPosition, Random randNumGen) {
+		this(world, initialPosition, randNumGen, DEFAULT_WIDTH, DEFAULT_DEPTH, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor of the BeamSearch drone class. It loads the lighthouses the drone
+	 * can charge from and throws an IllegalArgumentException if the width or depth
+	 * is less than 1.
+	 *
+	 * @param world           This is the World object the drone flies in.
+	 * @param initialPosition This is the Position object representing the initial
+	 *                        latitude and longitude of the drone.
+	 * @param randNumGen      This is the pseudo-random number generator object.
+	 * @param width           This is the amount of sequences kept in the beam.
+	 * @param depth           This is the amount of moves every sequence looks
+	 *                        ahead.
+	 * @param pool            This is the ForkJoinPool extending the beam.
+	 */
+	public BeamSearch(World world, Position initialPosition, Random randNumGen, int width, int depth,
+			ForkJoinPool pool) {
+		super(world, initialPosition, randNumGen);
+		if (width < 1 || depth < 1)
+			throw new IllegalArgumentException(String.format("Invalid beam of width %d and depth %d", width, depth));
+		this.width = width;
+		this.depth = depth;
+		this.pool = pool;
+		FeatureOverlay features = world.features;
+		IntList targets = new IntList();
+		for (int feature = 0; feature < features.size(); feature++) {
+			if (features.isChargedLighthouse(feature))
+				targets.add(feature);
+		}
+		unvisitedPOIs = new KdTree(features.snapshot, targets);
+	}
+
+	/**
+	 * This class extends the snapshot of the superclass with a mark in the undo
+	 * log of the unvisitedPOIs KdTree.
+	 */
+	private static final class BeamSnapshot extends Snapshot {
+		final int unvisitedMark;
+
+		BeamSnapshot(BeamSearch drone) {
+			super(drone);
+			this.unvisitedMark = drone.unvisitedPOIs.mark();
+		}
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also saving the
+	 * lighthouses the drone hasn't charged from yet.
+	 */
+	@Override
+	public Snapshot snapshot() {
+		return new BeamSnapshot(this);
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also restoring the
+	 * lighthouses the drone hasn't charged from yet.
+	 */
+	@Override
+	public void restore(Snapshot snapshot) {
+		super.restore(snapshot);
+		unvisitedPOIs.rollback(((BeamSnapshot) snapshot).unvisitedMark);
+		return;
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also releasing the
+	 * mark held on the lighthouses the drone hasn't charged from yet.
+	 */
+	@Override
+	public void release(Snapshot snapshot) {
+		super.release(snapshot);
+		unvisitedPOIs.release();
+		return;
+	}
+
+	/**
+	 * This protected method implements the abstract method declared in the
+	 * superclass for the beam-search drone behaviour. It searches for the best
+	 * first move, moves the drone in that direction and charges from the closest
+	 * feature in range, if any, in the same way as the other drones.
+	 *
+	 * @return A Direction object representing the direction the drone took.
+	 */
+	@Override
+	protected Direction nextMove() {
+		move++;
+		Direction nextDir = pickDirection(search());
+		if (App.TRACE && logger.isLoggable(Level.FINER))
+			logger.finer(String.format("Drone went in direction %s during move %d", nextDir, move));
+		currentPosition = currentPosition.nextPosition(nextDir);
+		power -= 1.25;
+		getInRange();
+		updateStatus();
+		if (charged != -1)
+			unvisitedPOIs.remove(charged);
+		return nextDir;
+	}
+
+	/**
+	 * This method runs the beam search from the current state of the drone.
+	 *
+	 * @return The bitmask of the first directions of the best sequences found.
+	 */
+	private int search() {
+		Node[] beam = { new Node(currentPosition.latitude, currentPosition.longitude, coins, power, null, -1, 0) };
+		for (int level = 0; level < depth; level++) {
+			Node[] children = new Node[beam.length * Direction.VALUES.length];
+			Expand expand = new Expand(beam, children, 0, beam.length);
+			if (beam.length > SPLIT_THRESHOLD)
+				pool.invoke(expand);
+			else
+				expand.compute();
+			Node[] next = select(children);
+			if (next.length == 0)
+				break;
+			beam = next;
+		}
+		if (beam[0].first == -1) {
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("No valid directions detected during move %d", move));
+			return validMoves();
+		}
+		int best = 0;
+		for (Node node : beam) {
+			if (node.score == beam[0].score)
+				best |= Direction.VALUES[node.first].bit;
+		}
+		return best;
+	}
+
+	/**
+	 * This is a support method for the search method, returning the directions
+	 * the drone can take without leaving the play area.
+	 *
+	 * @return The bitmask of valid directions.
+	 */
+	private int validMoves() {
+		int moves = 0;
+		computeCandidates();
+		for (Direction d : Direction.VALUES) {
+			if (Position.inPlayArea(nextLat[d.ordinal()], nextLong[d.ordinal()]))
+				moves |= d.bit;
+		}
+		return moves;
+	}
+
+	/**
+	 * This is a support method for the search method. It keeps the best
+	 * sequences extended from the beam, up to the width of the beam, skipping the
+	 * ones ending where a better one ends. Sequences of equal score keep their
+	 * order, so the selection doesn't depend on how the extension was split.
+	 *
+	 * @param children These are the sequences extended from the beam, where null
+	 *                 entries are moves that couldn't be made.
+	 * @return The new beam, from best to worst.
+	 */
+	private Node[] select(Node[] children) {
+		int count = 0;
+		for (Node child : children) {
+			if (child != null)
+				children[count++] = child;
+		}
+		Arrays.sort(children, 0, count, BEST_FIRST);
+		Set<Long> ends = new HashSet<>();
+		Node[] beam = new Node[Math.min(width, count)];
+		int kept = 0;
+		for (int k = 0; k < count && kept < beam.length; k++) {
+			long end = Math.round(children[k].latitude * 1e7) << 32 ^ Math.round(children[k].longitude * 1e7);
+			if (ends.add(end))
+				beam[kept++] = children[k];
+		}
+		return Arrays.copyOf(beam, kept);
+	}
+
+	/**
+	 * This class is the task extending a range of the sequences of the beam in
+	 * every direction, splitting the range in halves between subtasks until it is
+	 * small enough. The sequence extended from the i-th one of the beam in the
+	 * d-th direction is stored at position 16i + d of the children array.
+	 */
+	private final class Expand extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final Node[] beam;
+		final Node[] children;
+		final int from;
+		final int to;
+
+		Expand(Node[] beam, Node[] children, int from, int to) {
+			this.beam = beam;
+			this.children = children;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SPLIT_THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Expand(beam, children, from, mid), new Expand(beam, children, mid, to));
+				return;
+			}
+			for (int i = from; i < to; i++) {
+				for (Direction d : Direction.VALUES)
+					children[i * Direction.VALUES.length + d.ordinal()] = extend(beam[i], d);
+			}
+			return;
+		}
+	}
+
+	/**
+	 * This method extends a sequence by a move in the input direction, charging
+	 * from the closest feature in range at its end with the same rules as the
+	 * updateStatus() method, without modifying the world. It is called
+	 * concurrently by the tasks extending the beam.
+	 *
+	 * @param node      This is the sequence to extend.
+	 * @param direction This is the direction of the move.
+	 * @return The extended sequence, or null if the drone can't make the move.
+	 */
+	private Node extend(Node node, Direction direction) {
+		double latitude = node.latitude + direction.latOffset;
+		double longitude = node.longitude + direction.longOffset;
+		if (node.power < 1.25 || !Position.inPlayArea(latitude, longitude))
+			return null;
+		double droneCoins = node.coins;
+		double dronePower = node.power - 1.25;
+		Charge charges = node.charges;
+		FeatureOverlay features = world.features;
+		int closest = world.index.nearest(latitude, longitude, 0.00025);
+		if (closest != -1) {
+			double featureCoins = features.coins(closest);
+			double featurePower = features.power(closest);
+			for (Charge charge = charges; charge != null; charge = charge.next) {
+				if (charge.feature == closest) {
+					featureCoins = charge.coins;
+					featurePower = charge.power;
+					break;
+				}
+			}
+			if (features.kind(closest) == FeatureStore.LIGHTHOUSE) {
+				droneCoins += featureCoins;
+				dronePower += featurePower;
+				featureCoins = 0;
+				featurePower = 0;
+			} else if (features.kind(closest) == FeatureStore.DANGER) {
+				double coinDif = droneCoins + featureCoins;
+				double powerDif = dronePower + featurePower;
+				droneCoins = Math.max(0, coinDif);
+				featureCoins = coinDif < 0 ? featureCoins - coinDif : 0;
+				dronePower = Math.max(0, powerDif);
+				featurePower = powerDif < 0 ? featurePower - powerDif : 0;
+			}
+			charges = new Charge(closest, featureCoins, featurePower, charges);
+		}
+		double score = droneCoins - coins + POWER_WEIGHT * (dronePower - power);
+		// Lighthouses drained earlier in the sequence no longer attract it.
+		int target = unvisitedPOIs.nearest(latitude, longitude, charges);
+		if (target != -1)
+			score -= DISTANCE_WEIGHT * TourPlanner.moves(latitude, longitude, features.latitude(target),
+					features.longitude(target));
+		int first = node.first == -1 ? direction.ordinal() : node.first;
+		return new Node(latitude, longitude, droneCoins, dronePower, charges, first, score);
+	}
+}
@@ -3,7 +3,11 @@ package uk.ac.ed.inf.powergrab;
 /**
  * This class is used to define a collection of constants representing the 16
  * cardinal directions along with the angle their angle in degrees.
- * 
+ *
+ * Each direction also holds the latitude and longitude offsets of a move of
+ * 0.0003 degrees in that direction, computed once, and a bit used to represent
+ * sets of directions as an int bitmask without allocating any collections.
+ *
  * @author David Jorge (s1712653)
  *
  */
@@ -11,16 +15,46 @@ public enum Direction {
 	N(90), NNE(67.5), NE(45), ENE(22.5), E(0), ESE(337.5), SE(315), SSE(292.5), S(270), SSW(247.5), SW(225), WSW(202.5),
 	W(180), WNW(157.5), NW(135), NNW(112.5);
 
+	/**
+	 * All 16 directions in declaration order. Unlike values(), this array is not
+	 * copied on every access, so it must not be modified.
+	 */
+	static final Direction[] VALUES = values();
+
 	public double angle;
+	public final double latOffset;
+	public final double longOffset;
+	public final int bit;
 
 	/**
 	 * Constructor for the direction class. Allows for each defined constant to have
-	 * an angle associated with it.
-	 * 
+	 * an angle associated with it, from which the offsets of a move in that
+	 * direction are precomputed.
+	 *
 	 * @param angle This is the angle for each one of the 16 cardinal directions.
 	 */
 	private Direction(double angle) {
 		this.angle = angle;
+		this.latOffset = Position.MOVE_LENGTH * Math.sin(Math.toRadians(angle));
+		this.longOffset = Position.MOVE_LENGTH * Math.cos(Math.toRadians(angle));
+		this.bit = 1 << ordinal();
+	}
+
+	/**
+	 * This method returns the direction at the input rank among the directions of
+	 * a bitmask, in declaration order. This is the direction that would be at that
+	 * position in a list built by adding the directions of the set in declaration
+	 * order.
+	 *
+	 * @param mask This is the bitmask representing a set of directions.
+	 * @param rank This is the rank of the direction, between 0 and the amount of
+	 *             directions in the set minus 1.
+	 * @return The direction at the input rank.
+	 */
+	public static Direction fromMask(int mask, int rank) {
+		for (int i = 0; i < rank; i++)
+			mask &= mask - 1;
+		return VALUES[Integer.numberOfTrailingZeros(mask)];
 	}
 
 }
@@ -0,0 +1,43 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+/**
+ * This class reads target maps from a local directory laid out like the
+ * powergrab map server, where the map of a date is found at
+ * year/month/day/powergrabmap.geojson under the directory. The modification
+ * time of a map file is used as its Last-Modified validator, so a map that
+ * hasn't changed since it was cached is not read again. A date without a map
+ * file is reported as a MapUnavailableException.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class DirectoryMapSource implements MapSource {
+	/**
+	 * This class has 1 private attribute: the directory holding the maps.
+	 */
+	private final File root;
+
+	/**
+	 * Constructor for the DirectoryMapSource class.
+	 *
+	 * @param root This is the directory holding the maps.
+	 */
+	public DirectoryMapSource(File root) {
+		this.root = root;
+	}
+
+	@Override
+	public Result fetch(String date, String etag, String lastModified) throws IOException {
+		File file = new File(root, date + "/powergrabmap.geojson");
+		if (!file.isFile())
+			throw new MapUnavailableException("No map file " + file);
+		String modified = Long.toString(file.lastModified());
+		if (modified.equals(lastModified))
+			return new Result(null, etag, lastModified);
+		return new Result(Files.readAllBytes(file.toPath()), null, modified);
+	}
+}
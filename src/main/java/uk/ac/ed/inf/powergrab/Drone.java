@@ -1,103 +1,317 @@
 package uk.ac.ed.inf.powergrab;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
  * This abstract class implements the abstract representation of a drone. It’s
- * the superclass for the Stateless and Stateful classes, consisting of
- * non-static methods which are shared by the two subclasses and the public
- * abstract method makeMove() that is called by the App class to compute the
- * next drone move.
+ * the superclass for the Stateless, Stateful, BeamSearch and MonteCarlo
+ * classes, consisting of non-static methods which are shared by the subclasses,
+ * the public method makeMove() that is called to compute the next drone move,
+ * which is implemented by the subclasses through the abstract method
+ * nextMove(), and the fly() method flying the drone for a whole simulation.
+ * Every move is reported to the MoveListeners registered on the drone.
+ * 
+ * The state of a drone, along with the features it has drained, can be saved
+ * with the snapshot() method and restored any amount of times with the
+ * restore() method, so a drone searching ahead can try hypothetical moves with
+ * nextMove() and undo them. Taking and restoring a snapshot costs time
+ * proportional to the changes made since, not to the size of the target map.
  * 
  * @author David Jorge (s1712653)
  *
  */
 public abstract class Drone {
 	/**
-	 * This class has 7 protected attributes: a Position object, currentPosition,
-	 * representing the drone’s current position, 2 double variables, coins and
-	 * power, representing the drone’s current coin and power values respectively, a
-	 * final Random object, randNumGen, representing the pseudo-random number
-	 * generator used by the drone, an ArrayList of type POI, inRange, representing
-	 * the features in charging range of the drone’s current position, and a Logger
-	 * object, logger, used by the Drone class and its subclasses.
+	 * This class has 12 protected attributes: a World object, world, holding the
+	 * features of the target map seen by the drone, a Position object,
+	 * currentPosition, representing the drone’s current position, 2 double
+	 * variables, coins and power, representing the drone’s current coin and power
+	 * values respectively, a final Random object, randNumGen, representing the
+	 * pseudo-random number generator used by the drone, an int, move, counting the
+	 * moves made so far, an int, charged, holding the index of the feature the
+	 * drone charged from during the current move, or -1, an int, scanned, holding
+	 * the amount of index entries checked by the last call to getInRange(), an
+	 * IntList, inRange, holding the indices of the features in charging range of
+	 * the drone’s current position, 2 double arrays, nextLat and nextLong, used as
+	 * scratch buffers holding the position reached by a move in each of the 16
+	 * directions, indexed by the ordinal of the direction, and a Logger object,
+	 * logger, used by the Drone class and its subclasses. The MoveListeners
+	 * registered on the drone are kept in a private array, along with a private
+	 * IntList of the features rolled back by the last restore, and the metrics of
+	 * the flight in a final Metrics object, metrics, which is only written by the
+	 * thread flying the drone.
 	 */
+	protected final World world;
 	protected Position currentPosition;
 	protected double coins;
 	protected double power;
 	protected final Random randNumGen;
 	protected int move;
-	protected ArrayList<POI> inRange = new ArrayList<>();
-	protected static Logger logger;
+	protected int charged = -1;
+	protected int scanned;
+	protected IntList inRange = new IntList();
+	protected final double[] nextLat = new double[Direction.VALUES.length];
+	protected final double[] nextLong = new double[Direction.VALUES.length];
+	protected static final Logger logger = Logger.getLogger("App.Drone");
+	private MoveListener[] listeners = new MoveListener[0];
+	private final IntList undone = new IntList();
+	final Metrics metrics = new Metrics();
 
 	/**
 	 * Constructor for the abstract Drone class. It is called by the subclass
-	 * Constructor, initialising all variables shared by both subclasses and setting
-	 * up a subclass logger of the logger initialised in the App class. Its inputs
-	 * are a Position object, representing the initial latitude and longitude of the
-	 * drone, and a pseudo-random number generator object.
+	 * Constructor, initialising all variables shared by both subclasses. Its inputs
+	 * are a World object, representing the state of the target map for this
+	 * simulation, a Position object, representing the initial latitude and
+	 * longitude of the drone, and a pseudo-random number generator object.
 	 * 
+	 * @param world           This is the World object the drone flies in.
 	 * @param initialPosition This is the Position object representing the initial
 	 *                        latitude and longitude of the drone.
 	 * @param randNumGen      This is the pseudo-random number generator object.
 	 */
-	protected Drone(Position initialPosition, Random randNumGen) {
+	protected Drone(World world, Position initialPosition, Random randNumGen) {
+		this.world = world;
 		this.currentPosition = initialPosition;
 		this.coins = 0;
 		this.power = 250;
 		this.randNumGen = randNumGen;
 		this.move = 0;
-		setupLogger();
 	}
 
 	/**
-	 * This method is responsible for initialising a subclass logger of the logger
-	 * initialised in the App class. This logger will be used for debugging and
-	 * information message logging in the Drone class and its subclasses.
+	 * This method gets all features that are within 0.00025 degrees of the drone.
+	 * It queries the spatial index of the world for all features that are
+	 * 0.00025 degrees away from the current position of the drone, adding them to
+	 * the inRange ArrayList. The inRange ArrayList is cleared every time this
+	 * method is called.
 	 */
-	private static void setupLogger() {
-		logger = Logger.getLogger("App.Drone");
+	protected void getInRange() {
+		this.inRange.clear();
+		scanned = world.index.inRadius(currentPosition.latitude, currentPosition.longitude, 0.00025, inRange);
+		metrics.inRangeVisited.record(scanned);
+		if (App.TRACE && logger.isLoggable(Level.FINEST)) {
+			for (int k = 0; k < inRange.size(); k++)
+				logger.finest(String.format("Station id %s in range during move %d", world.features.id(inRange.get(k)),
+						move));
+		}
 		return;
 	}
 
 	/**
-	 * This method gets all features that are within 0.00025 degrees of the drone.
-	 * It cycles through all features in the POIs ArrayList and adds all features
-	 * that are 0.00025 degrees away from the current position of the drone to the
-	 * inRange ArrayList. The inRange ArrayList is cleared every time this method is
-	 * called.
+	 * This method fills the nextLat and nextLong scratch buffers with the position
+	 * reached by a move from the drone’s current position in each of the 16
+	 * directions, using the offsets precomputed for each direction. It allows the
+	 * candidate moves to be evaluated without creating any Position objects.
 	 */
-	protected void getInRange() {
-		this.inRange.clear();
-		for (POI feature : App.POIs) {
-			double distance = euclideanDist(feature.latitude, feature.longitude, currentPosition.latitude,
-					currentPosition.longitude);
-			if (distance <= 0.00025) {
-				inRange.add(feature);
-				logger.finest(String.format("Station id %s in range during move %d", feature.id, move));
-			}
+	protected void computeCandidates() {
+		for (Direction d : Direction.VALUES) {
+			nextLat[d.ordinal()] = currentPosition.latitude + d.latOffset;
+			nextLong[d.ordinal()] = currentPosition.longitude + d.longOffset;
+		}
+		return;
+	}
+
+	/**
+	 * This method picks a direction at random from a set of directions using the
+	 * pseudo-random number generator attribute. The set is represented as a bitmask
+	 * of directions, and the direction is picked in the same way it would be from a
+	 * list holding the directions of the set in declaration order.
+	 *
+	 * @param moves This is the bitmask representing the set of directions.
+	 * @return The direction picked from the set.
+	 */
+	protected Direction pickDirection(int moves) {
+		return Direction.fromMask(moves, randNumGen.nextInt(Integer.bitCount(moves)));
+	}
+
+	/**
+	 * This method registers a MoveListener to be notified of the drone's moves.
+	 * 
+	 * @param listener This is the MoveListener to register.
+	 */
+	public void addListener(MoveListener listener) {
+		listeners = Arrays.copyOf(listeners, listeners.length + 1);
+		listeners[listeners.length - 1] = listener;
+		return;
+	}
+
+	/**
+	 * This class holds a snapshot of the state of a drone: its position, coins,
+	 * power, move counter and the features in its charging range, along with a mark
+	 * in the undo log of the features of its world. Subclasses holding more state
+	 * extend it. The pseudo-random number generator, the metrics and the listeners
+	 * of the drone are not part of the snapshot.
+	 */
+	public static class Snapshot {
+		final Drone drone;
+		final Position currentPosition;
+		final double coins;
+		final double power;
+		final int move;
+		final int charged;
+		final int scanned;
+		final int[] inRange;
+		final int featuresMark;
+
+		/**
+		 * Constructor for the Snapshot class, saving the state of a drone.
+		 * 
+		 * @param drone This is the drone whose state is saved.
+		 */
+		protected Snapshot(Drone drone) {
+			this.drone = drone;
+			this.currentPosition = drone.currentPosition;
+			this.coins = drone.coins;
+			this.power = drone.power;
+			this.move = drone.move;
+			this.charged = drone.charged;
+			this.scanned = drone.scanned;
+			this.inRange = drone.inRange.toArray();
+			this.featuresMark = drone.world.features.mark();
 		}
+	}
+
+	/**
+	 * This method saves the state of the drone and starts recording the changes
+	 * made to the features of its world, so the drone can later be brought back to
+	 * this state by the restore() method. Every snapshot must be released by the
+	 * release() method once it is no longer needed, as changes are recorded until
+	 * no snapshot is held.
+	 * 
+	 * @return The snapshot of the drone's state.
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * This method brings the drone and the features of its world back to the state
+	 * saved by a snapshot, undoing every move made since. The snapshot is still
+	 * held afterwards, so it can be restored again. It throws an
+	 * IllegalArgumentException if the snapshot was taken from another drone.
+	 * 
+	 * @param snapshot This is the snapshot returned by snapshot().
+	 */
+	public void restore(Snapshot snapshot) {
+		if (snapshot.drone != this)
+			throw new IllegalArgumentException("Snapshot of another drone!");
+		undone.clear();
+		world.features.rollback(snapshot.featuresMark, undone);
+		for (int k = 0; k < undone.size(); k++)
+			world.raster.refresh(undone.get(k));
+		currentPosition = snapshot.currentPosition;
+		coins = snapshot.coins;
+		power = snapshot.power;
+		move = snapshot.move;
+		charged = snapshot.charged;
+		scanned = snapshot.scanned;
+		inRange.clear();
+		inRange.addAll(snapshot.inRange);
+		return;
+	}
+
+	/**
+	 * This method releases a snapshot, which can no longer be restored.
+	 * 
+	 * @param snapshot This is the snapshot returned by snapshot().
+	 */
+	public void release(Snapshot snapshot) {
+		if (snapshot.drone != this)
+			throw new IllegalArgumentException("Snapshot of another drone!");
+		world.features.release();
+		return;
+	}
+
+	/**
+	 * This method flies the drone for a whole simulation. It notifies the listeners
+	 * that the flight has started, makes moves until the drone has made the input
+	 * amount of moves or has run out of power, and notifies the listeners that the
+	 * flight is over.
+	 * 
+	 * @param maxMoves This is the maximum amount of moves the drone can make.
+	 */
+	public void fly(int maxMoves) {
+		for (MoveListener listener : listeners)
+			listener.flightStarted(world, currentPosition);
+		while (hasPower() && move < maxMoves)
+			makeMove();
+		for (MoveListener listener : listeners)
+			listener.flightFinished(move, coins, power);
 		return;
 	}
 
 	/**
-	 * The abstract declaration of the makeMove() method is done in this class. This
-	 * method will be called by the App class every time the drone is required to
-	 * compute its next move. The concrete definition of the method is implemented
-	 * by the subclasses. It returns a Direction object representing one of the 16
-	 * cardinal directions the drone chose to take for the move.
+	 * This method will be called every time the drone is required to compute its
+	 * next move. It computes the move with the nextMove() method and reports it to
+	 * every registered listener, along with the drone's coins and power at the end
+	 * of the move and the feature it charged from, if any. The time taken by each
+	 * of the two steps is recorded in the metrics of the drone, and as flight
+	 * events if they are enabled. It returns a Direction object representing one of
+	 * the 16 cardinal directions the drone chose to take for the move.
 	 * 
 	 * @return One of the 16 cardinal directions the drone took during the move
 	 *         computation.
 	 */
-	public abstract Direction makeMove();
+	public final Direction makeMove() {
+		Position from = currentPosition;
+		charged = -1;
+		Object moveEvent = FlightEvents.enabled ? FlightEvents.beginMove() : null;
+		long start = System.nanoTime();
+		Direction direction = nextMove();
+		long moved = System.nanoTime();
+		metrics.moveNanos.record(moved - start);
+		if (moveEvent != null)
+			FlightEvents.endMove(moveEvent, move, direction, scanned);
+		if (listeners.length > 0) {
+			Object writeEvent = FlightEvents.enabled ? FlightEvents.beginOutputWrite() : null;
+			for (MoveListener listener : listeners)
+				listener.moveMade(move, from, direction, currentPosition, coins, power, charged);
+			metrics.outputNanos.record(System.nanoTime() - moved);
+			if (writeEvent != null)
+				FlightEvents.endOutputWrite(writeEvent, move);
+		}
+		return direction;
+	}
+
+	/**
+	 * The abstract declaration of the nextMove() method is done in this class. The
+	 * concrete definition of the method is implemented by the subclasses, which
+	 * compute the drone's next move and update its state accordingly. It returns a
+	 * Direction object representing one of the 16 cardinal directions the drone
+	 * chose to take for the move.
+	 * 
+	 * @return One of the 16 cardinal directions the drone took during the move
+	 *         computation.
+	 */
+	protected abstract Direction nextMove();
+
+	/**
+	 * This method moves the drone in the input direction, without choosing it: it
+	 * counts the move, updates the current position of the drone, deducts the power
+	 * of the move, and calls the getInRange() and updateStatus() methods in the
+	 * same way as the nextMove() methods of the subclasses. It is used by drones
+	 * that choose their moves by simulating other drones, to replay moves on them.
+	 * 
+	 * @param direction This is the direction of the move.
+	 */
+	protected void moveIn(Direction direction) {
+		move++;
+		currentPosition = currentPosition.nextPosition(direction);
+		power -= 1.25;
+		getInRange();
+		updateStatus();
+		return;
+	}
 
 	/**
 	 * This method updates the drone’s current coin and power values if there is a
 	 * station in charging range. It only carries out the transaction with the
-	 * closest station in charging range to the drone’s current position.
+	 * closest station in charging range to the drone’s current position, which is
+	 * found with a nearest-neighbour query on the spatial index of the world, and
+	 * records the index of that station in the charged attribute.
 	 * 
 	 * If no feature is found to be in charging range of the drone’s current
 	 * position this method does nothing, otherwise if the closest feature is a
@@ -106,50 +320,55 @@ public abstract class Drone {
 	 * danger it subtracts the feature’s coin and power values from the drone’s own.
 	 * The drone’s value of coins and power can’t be negative, so any excess is kept
 	 * by the feature, otherwise the feature’s coin and power values are set to 0.
+	 * Either way the kind of the feature in the SafetyRaster of the world is
+	 * refreshed. The transaction is recorded as a flight event if they are enabled.
 	 * 
 	 */
 	protected void updateStatus() {
-		POI closestPOI = null;
-		double minDist = Integer.MAX_VALUE;
-		for (POI feature : inRange) {
-			double dist = euclideanDist(feature.latitude, feature.longitude, currentPosition.latitude,
-					currentPosition.longitude);
-			if (dist <= minDist) {
-				minDist = dist;
-				closestPOI = feature;
-			}
-		}
-		if (closestPOI != null) {
-			logger.finer(String.format("Charging from id %s during move %d", closestPOI.id, move));
-			if (closestPOI.symbol.equals("lighthouse")) {
-				this.coins += closestPOI.coins;
-				this.power += closestPOI.power;
-				logger.fine(String.format("Gained %.2f coins from id %s during move %d", closestPOI.coins,
-						closestPOI.id, move));
-				closestPOI.coins = 0;
-				closestPOI.power = 0;
-			} else if (closestPOI.symbol.equals("danger")) {
-				double coinDif = this.coins + closestPOI.coins;
-				double powerDif = this.power + closestPOI.power;
+		FeatureOverlay features = world.features;
+		int closest = world.index.nearest(currentPosition.latitude, currentPosition.longitude, 0.00025);
+		if (closest != -1) {
+			charged = closest;
+			double coinsBefore = this.coins;
+			double powerBefore = this.power;
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("Charging from id %s during move %d", features.id(closest), move));
+			if (features.kind(closest) == FeatureStore.LIGHTHOUSE) {
+				this.coins += features.coins(closest);
+				this.power += features.power(closest);
+				if (App.TRACE && logger.isLoggable(Level.FINE))
+					logger.fine(String.format("Gained %.2f coins from id %s during move %d", features.coins(closest),
+							features.id(closest), move));
+				features.setCoins(closest, 0);
+				features.setPower(closest, 0);
+			} else if (features.kind(closest) == FeatureStore.DANGER) {
+				double coinDif = this.coins + features.coins(closest);
+				double powerDif = this.power + features.power(closest);
 				if (coinDif < 0) {
 					this.coins = 0;
-					closestPOI.coins -= coinDif;
-					logger.fine(
-							String.format("Lost %.2f coins from id %s during move %d", -coinDif, closestPOI.id, move));
+					features.setCoins(closest, features.coins(closest) - coinDif);
+					if (App.TRACE && logger.isLoggable(Level.FINE))
+						logger.fine(String.format("Lost %.2f coins from id %s during move %d", -coinDif,
+								features.id(closest), move));
 				} else {
-					this.coins = this.coins + closestPOI.coins;
-					closestPOI.coins = 0;
-					logger.fine(String.format("Lost %.2f coins from id %s during move %d", -closestPOI.coins,
-							closestPOI.id, move));
+					this.coins = this.coins + features.coins(closest);
+					features.setCoins(closest, 0);
+					if (App.TRACE && logger.isLoggable(Level.FINE))
+						logger.fine(String.format("Lost %.2f coins from id %s during move %d", -features.coins(closest),
+								features.id(closest), move));
 				}
 				if (powerDif < 0) {
 					this.power = 0;
-					closestPOI.power -= powerDif;
+					features.setPower(closest, features.power(closest) - powerDif);
 				} else {
-					this.power = this.power + closestPOI.power;
-					closestPOI.power = 0;
+					this.power = this.power + features.power(closest);
+					features.setPower(closest, 0);
 				}
 			}
+			world.raster.refresh(closest);
+			if (FlightEvents.enabled)
+				FlightEvents.charge(move, features.id(closest), features.symbol(closest), this.coins - coinsBefore,
+						this.power - powerBefore);
 		}
 		return;
 	}
@@ -167,7 +386,8 @@ public abstract class Drone {
 	}
 
 	/**
-	 * Calculates the euclidean distance (L2 norm) between two 2D points.
+	 * Calculates the euclidean distance (L2 norm) between two 2D points, counting
+	 * the call in the metrics of the drone.
 	 * 
 	 * @param xLat  This the latitude of the first point.
 	 * @param xLong This is the longitude of the first point.
@@ -177,6 +397,7 @@ public abstract class Drone {
 	 *         the 2 input 2D points.
 	 */
 	protected double euclideanDist(double xLat, double xLong, double yLat, double yLong) {
+		metrics.distanceCalls++;
 		return Math.sqrt((xLat - yLat) * (xLat - yLat) + (xLong - yLong) * (xLong - yLong));
 	}
 
@@ -0,0 +1,374 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * This class is the view of the features of a target map seen by a single
+ * simulation. The features of the target map form an immutable snapshot shared
+ * by every simulation on that map, while this class records only the coins and
+ * power of the features this simulation has charged from, in a small
+ * open-addressing hash table keyed by feature index. Reads of coins and power
+ * look the feature up in the overlay first and fall back to the snapshot, and
+ * every other attribute is read from the snapshot directly. A drone charges from
+ * at most one feature per move, so the overlay stays a few hundred bytes
+ * however large the map is, and any amount of concurrent simulations can share
+ * a single copy of the map in memory.
+ *
+ * A 64-bit mask of the feature indices in the overlay, taken modulo 64, lets
+ * most reads of features the simulation hasn't charged from skip the hash table
+ * altogether. This class is not thread-safe: it belongs to the thread running
+ * the simulation.
+ *
+ * While a mark is held, every write is recorded in an undo log holding the
+ * previous coins and power of the feature, so the overlay can be rolled back to
+ * any mark at a cost proportional to the writes made since, which is how drone
+ * snapshots restore the features charged from during hypothetical moves.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class FeatureOverlay {
+	/**
+	 * The key of an empty slot of the hash table.
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * The initial amount of slots of the hash table, a power of two.
+	 */
+	private static final int INITIAL_CAPACITY = 16;
+
+	/**
+	 * This class has 1 public final attribute, the FeatureStore holding the
+	 * snapshot, and 10 private attributes: the keys of the hash table, the coins
+	 * and power of the feature in each slot, the amount of features in the
+	 * overlay, the mask of their indices modulo 64, the features, coins and power
+	 * of the entries of the undo log, the amount of entries in the log, and the
+	 * amount of marks held.
+	 */
+	public final FeatureStore snapshot;
+	private int[] keys;
+	private double[] coins;
+	private double[] power;
+	private int count;
+	private long mask;
+	private int[] undoFeatures = new int[0];
+	private double[] undoCoins = new double[0];
+	private double[] undoPower = new double[0];
+	private int undoSize;
+	private int marks;
+
+	/**
+	 * Constructor for the FeatureOverlay class. It creates an empty overlay, so
+	 * every feature reads as it is in the snapshot.
+	 *
+	 * @param snapshot This is the FeatureStore holding the features of the
+	 *                 target map, which is never modified.
+	 */
+	public FeatureOverlay(FeatureStore snapshot) {
+		this.snapshot = snapshot;
+		this.keys = new int[INITIAL_CAPACITY];
+		Arrays.fill(keys, EMPTY);
+		this.coins = new double[INITIAL_CAPACITY];
+		this.power = new double[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * This is a support method returning the slot of a feature in the hash
+	 * table.
+	 *
+	 * @param i This is the index of the feature.
+	 * @return The slot of the feature, or -1 if it is not in the overlay.
+	 */
+	private int find(int i) {
+		if ((mask & (1L << i)) == 0)
+			return -1;
+		int last = keys.length - 1;
+		for (int slot = hash(i) & last;; slot = (slot + 1) & last) {
+			if (keys[slot] == i)
+				return slot;
+			if (keys[slot] == EMPTY)
+				return -1;
+		}
+	}
+
+	/**
+	 * This is a support method returning the slot of a feature in the hash table,
+	 * adding the feature with its values from the snapshot if it is not in the
+	 * overlay yet.
+	 *
+	 * @param i This is the index of the feature.
+	 * @return The slot of the feature.
+	 */
+	private int slot(int i) {
+		int slot = find(i);
+		if (slot >= 0)
+			return slot;
+		if (2 * (count + 1) > keys.length)
+			grow();
+		slot = insert(i);
+		coins[slot] = snapshot.coins(i);
+		power[slot] = snapshot.power(i);
+		count++;
+		mask |= 1L << i;
+		return slot;
+	}
+
+	/**
+	 * This is a support method claiming the first empty slot for a feature that
+	 * is not in the hash table.
+	 *
+	 * @param i This is the index of the feature.
+	 * @return The slot claimed.
+	 */
+	private int insert(int i) {
+		int last = keys.length - 1;
+		int slot = hash(i) & last;
+		while (keys[slot] != EMPTY)
+			slot = (slot + 1) & last;
+		keys[slot] = i;
+		return slot;
+	}
+
+	/**
+	 * This method doubles the amount of slots of the hash table, moving every
+	 * feature to its slot in the new table.
+	 */
+	private void grow() {
+		int[] oldKeys = keys;
+		double[] oldCoins = coins;
+		double[] oldPower = power;
+		keys = new int[oldKeys.length * 2];
+		Arrays.fill(keys, EMPTY);
+		coins = new double[keys.length];
+		power = new double[keys.length];
+		for (int old = 0; old < oldKeys.length; old++) {
+			if (oldKeys[old] == EMPTY)
+				continue;
+			int slot = insert(oldKeys[old]);
+			coins[slot] = oldCoins[old];
+			power[slot] = oldPower[old];
+		}
+		return;
+	}
+
+	/**
+	 * This is a support method spreading the bits of a feature index, so
+	 * consecutive indices don't cluster in the hash table.
+	 *
+	 * @param i This is the index of a feature.
+	 * @return The hash of the index.
+	 */
+	private static int hash(int i) {
+		int h = i * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * @return The amount of features in the overlay, i.e. the features whose
+	 *         coins or power have been set by this simulation.
+	 */
+	public int changed() {
+		return count;
+	}
+
+	/**
+	 * @return The amount of features of the target map.
+	 */
+	public int size() {
+		return snapshot.size();
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The latitude of the feature.
+	 */
+	public double latitude(int i) {
+		return snapshot.latitude(i);
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The longitude of the feature.
+	 */
+	public double longitude(int i) {
+		return snapshot.longitude(i);
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The coins held by the feature in this simulation.
+	 */
+	public double coins(int i) {
+		int slot = find(i);
+		return slot < 0 ? snapshot.coins(i) : coins[slot];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The power held by the feature in this simulation.
+	 */
+	public double power(int i) {
+		int slot = find(i);
+		return slot < 0 ? snapshot.power(i) : power[slot];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The kind code of the feature.
+	 */
+	public byte kind(int i) {
+		return snapshot.kind(i);
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The ID of the feature.
+	 */
+	public String id(int i) {
+		return snapshot.id(i);
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The symbol of the feature.
+	 */
+	public String symbol(int i) {
+		return snapshot.symbol(i);
+	}
+
+	/**
+	 * This method sets the coins held by a feature in this simulation.
+	 *
+	 * @param i     This is the index of the feature.
+	 * @param value This is the new value of coins.
+	 */
+	public void setCoins(int i, double value) {
+		int slot = slot(i);
+		if (marks > 0)
+			log(i, slot);
+		coins[slot] = value;
+		return;
+	}
+
+	/**
+	 * This method sets the power held by a feature in this simulation.
+	 *
+	 * @param i     This is the index of the feature.
+	 * @param value This is the new value of power.
+	 */
+	public void setPower(int i, double value) {
+		int slot = slot(i);
+		if (marks > 0)
+			log(i, slot);
+		power[slot] = value;
+		return;
+	}
+
+	/**
+	 * This is a support method appending the current coins and power of a feature
+	 * to the undo log.
+	 *
+	 * @param i    This is the index of the feature.
+	 * @param slot This is the slot of the feature.
+	 */
+	private void log(int i, int slot) {
+		if (undoSize == undoFeatures.length) {
+			int capacity = Math.max(INITIAL_CAPACITY, undoSize * 2);
+			undoFeatures = Arrays.copyOf(undoFeatures, capacity);
+			undoCoins = Arrays.copyOf(undoCoins, capacity);
+			undoPower = Arrays.copyOf(undoPower, capacity);
+		}
+		undoFeatures[undoSize] = i;
+		undoCoins[undoSize] = coins[slot];
+		undoPower[undoSize] = power[slot];
+		undoSize++;
+		return;
+	}
+
+	/**
+	 * This method takes a mark, starting to record writes in the undo log if no
+	 * other mark is held, and returns the position of the log to roll back to.
+	 *
+	 * @return The mark.
+	 */
+	public int mark() {
+		marks++;
+		return undoSize;
+	}
+
+	/**
+	 * This method undoes every write made since a mark was taken, in reverse
+	 * order. The mark is still held afterwards, so the overlay can be rolled back
+	 * to it again.
+	 *
+	 * @param mark This is the mark returned by mark().
+	 */
+	public void rollback(int mark) {
+		rollback(mark, null);
+		return;
+	}
+
+	/**
+	 * This method undoes every write made since a mark was taken like the method
+	 * above, also adding the features written to an IntList, once per write.
+	 *
+	 * @param mark   This is the mark returned by mark().
+	 * @param undone This is the IntList the features are added to, or null.
+	 */
+	public void rollback(int mark, IntList undone) {
+		if (marks == 0 || mark > undoSize)
+			throw new IllegalStateException("Invalid overlay mark " + mark);
+		while (undoSize > mark) {
+			undoSize--;
+			if (undone != null)
+				undone.add(undoFeatures[undoSize]);
+			int slot = find(undoFeatures[undoSize]);
+			coins[slot] = undoCoins[undoSize];
+			power[slot] = undoPower[undoSize];
+		}
+		return;
+	}
+
+	/**
+	 * This method releases a mark. Once no mark is held, the undo log is cleared
+	 * and writes are no longer recorded.
+	 */
+	public void release() {
+		if (marks == 0)
+			throw new IllegalStateException("No overlay mark held");
+		if (--marks == 0)
+			undoSize = 0;
+		return;
+	}
+
+	/**
+	 * This method returns whether a feature is a lighthouse with a positive value
+	 * of either coins or power in this simulation, i.e. a lighthouse the drone
+	 * gains from charging.
+	 *
+	 * @param i This is the index of the feature.
+	 * @return true if the feature is a charged lighthouse otherwise false.
+	 */
+	public boolean isChargedLighthouse(int i) {
+		int slot = find(i);
+		if (slot < 0)
+			return snapshot.isChargedLighthouse(i);
+		return snapshot.kind(i) == FeatureStore.LIGHTHOUSE && (coins[slot] > 0 || power[slot] > 0);
+	}
+
+	/**
+	 * This method returns whether a feature is a danger with a negative value of
+	 * either coins or power in this simulation, i.e. a danger the drone loses
+	 * from charging.
+	 *
+	 * @param i This is the index of the feature.
+	 * @return true if the feature is a charged danger otherwise false.
+	 */
+	public boolean isChargedDanger(int i) {
+		int slot = find(i);
+		if (slot < 0)
+			return snapshot.isChargedDanger(i);
+		return snapshot.kind(i) == FeatureStore.DANGER && (coins[slot] < 0 || power[slot] < 0);
+	}
+}
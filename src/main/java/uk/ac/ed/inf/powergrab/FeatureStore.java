@@ -0,0 +1,253 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * This class stores the features of the target map in a columnar layout. Every
+ * feature is identified by its index in the store, and each of its attributes
+ * is kept in a separate primitive array, so scanning the features touches only
+ * the columns that are needed and involves no string comparisons. The kind of
+ * a feature is encoded as a byte, while its ID, symbol and colour, which are
+ * only needed for logging and output, are kept in separate arrays off the hot
+ * path. Features parsed from a map source also keep their properties and
+ * coordinates as compact JSON text holding the values of the source, so they
+ * can be written back unchanged to the output geojson file without keeping a
+ * tree of JSON objects per feature. Once a target map has been parsed its store
+ * is never modified, and the coins and power drained by a simulation are
+ * recorded in the FeatureOverlay of its World instead.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class FeatureStore {
+	/**
+	 * The kind codes of a feature: lighthouses and dangers are the only features a
+	 * drone charges from, any other symbol is stored as OTHER.
+	 */
+	public static final byte OTHER = 0;
+	public static final byte LIGHTHOUSE = 1;
+	public static final byte DANGER = 2;
+
+	/**
+	 * This class has 11 private attributes: the amount of features in the store,
+	 * the latitude, longitude, coins, power and kind columns, the ID, symbol and
+	 * colour columns, and the source properties and coordinates columns, which
+	 * are null for features that weren't parsed from a map source.
+	 */
+	private int size;
+	private double[] latitude;
+	private double[] longitude;
+	private double[] coins;
+	private double[] power;
+	private byte[] kind;
+	private String[] ids;
+	private String[] symbols;
+	private String[] colors;
+	private String[] properties;
+	private String[] coordinates;
+
+	/**
+	 * Constructor for the FeatureStore class. It allocates columns for the input
+	 * amount of features, which are grown as needed if more features are added.
+	 *
+	 * @param capacity This is the amount of features expected to be added.
+	 */
+	public FeatureStore(int capacity) {
+		capacity = Math.max(capacity, 1);
+		latitude = new double[capacity];
+		longitude = new double[capacity];
+		coins = new double[capacity];
+		power = new double[capacity];
+		kind = new byte[capacity];
+		ids = new String[capacity];
+		symbols = new String[capacity];
+		colors = new String[capacity];
+		properties = new String[capacity];
+		coordinates = new String[capacity];
+	}
+
+	/**
+	 * This method appends a feature to the store and returns its index.
+	 *
+	 * @param id        This is the ID of the feature.
+	 * @param latitude  This is the latitude of the feature.
+	 * @param longitude This is the longitude of the feature.
+	 * @param coins     This is the coins held by the feature.
+	 * @param power     This is the power held by the feature.
+	 * @param symbol    This is the symbol of the feature.
+	 * @param color     This is the colour of the feature.
+	 * @return The index of the feature in the store.
+	 */
+	public int add(String id, double latitude, double longitude, double coins, double power, String symbol,
+			String color) {
+		if (size == this.latitude.length)
+			grow();
+		this.latitude[size] = latitude;
+		this.longitude[size] = longitude;
+		this.coins[size] = coins;
+		this.power[size] = power;
+		this.kind[size] = kindOf(symbol);
+		this.ids[size] = id;
+		this.symbols[size] = symbol;
+		this.colors[size] = color;
+		return size++;
+	}
+
+	/**
+	 * This method doubles the capacity of every column.
+	 */
+	private void grow() {
+		int capacity = latitude.length * 2;
+		latitude = Arrays.copyOf(latitude, capacity);
+		longitude = Arrays.copyOf(longitude, capacity);
+		coins = Arrays.copyOf(coins, capacity);
+		power = Arrays.copyOf(power, capacity);
+		kind = Arrays.copyOf(kind, capacity);
+		ids = Arrays.copyOf(ids, capacity);
+		symbols = Arrays.copyOf(symbols, capacity);
+		colors = Arrays.copyOf(colors, capacity);
+		properties = Arrays.copyOf(properties, capacity);
+		coordinates = Arrays.copyOf(coordinates, capacity);
+		return;
+	}
+
+	/**
+	 * This method returns the kind code for a feature symbol.
+	 *
+	 * @param symbol This is the symbol of a feature.
+	 * @return LIGHTHOUSE, DANGER or OTHER.
+	 */
+	public static byte kindOf(String symbol) {
+		if ("lighthouse".equals(symbol))
+			return LIGHTHOUSE;
+		else if ("danger".equals(symbol))
+			return DANGER;
+		else
+			return OTHER;
+	}
+
+	/**
+	 * @return The amount of features in the store.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The latitude of the feature.
+	 */
+	public double latitude(int i) {
+		return latitude[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The longitude of the feature.
+	 */
+	public double longitude(int i) {
+		return longitude[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The coins held by the feature.
+	 */
+	public double coins(int i) {
+		return coins[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The power held by the feature.
+	 */
+	public double power(int i) {
+		return power[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The kind code of the feature.
+	 */
+	public byte kind(int i) {
+		return kind[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The ID of the feature.
+	 */
+	public String id(int i) {
+		return ids[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The symbol of the feature.
+	 */
+	public String symbol(int i) {
+		return symbols[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The colour of the feature.
+	 */
+	public String color(int i) {
+		return colors[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The properties object of the feature in the map source as compact
+	 *         JSON text, or null if the feature wasn't parsed from a map source.
+	 */
+	public String sourceProperties(int i) {
+		return properties[i];
+	}
+
+	/**
+	 * @param i This is the index of a feature.
+	 * @return The coordinates array of the feature in the map source as compact
+	 *         JSON text, or null if the feature wasn't parsed from a map source.
+	 */
+	public String sourceCoordinates(int i) {
+		return coordinates[i];
+	}
+
+	/**
+	 * This method sets the properties and coordinates of a feature in its map
+	 * source, as compact JSON text.
+	 *
+	 * @param i           This is the index of the feature.
+	 * @param properties  This is the properties object of the feature.
+	 * @param coordinates This is the coordinates array of the feature.
+	 */
+	public void setSource(int i, String properties, String coordinates) {
+		this.properties[i] = properties;
+		this.coordinates[i] = coordinates;
+		return;
+	}
+
+	/**
+	 * This method returns whether a feature is a lighthouse with a positive value
+	 * of either coins or power, i.e. a lighthouse the drone gains from charging.
+	 *
+	 * @param i This is the index of the feature.
+	 * @return true if the feature is a charged lighthouse otherwise false.
+	 */
+	public boolean isChargedLighthouse(int i) {
+		return kind[i] == LIGHTHOUSE && (coins[i] > 0 || power[i] > 0);
+	}
+
+	/**
+	 * This method returns whether a feature is a danger with a negative value of
+	 * either coins or power, i.e. a danger the drone loses from charging.
+	 *
+	 * @param i This is the index of the feature.
+	 * @return true if the feature is a charged danger otherwise false.
+	 */
+	public boolean isChargedDanger(int i) {
+		return kind[i] == DANGER && (coins[i] < 0 || power[i] < 0);
+	}
+}
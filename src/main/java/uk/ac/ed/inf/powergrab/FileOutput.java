@@ -7,10 +7,9 @@ import java.util.logging.Logger;
 
 /**
  * This class is responsible for handling output file writing requests. It
- * consists exclusively of static methods which either setup a logger for the
- * class or write contents to an output file. The class is made final to prevent
- * it from being extended. Where appropriate, the methods of this class can
- * throw an IOException.
+ * consists exclusively of static methods which write contents to an output
+ * file. The class is made final to prevent it from being extended. Where
+ * appropriate, the methods of this class can throw an IOException.
  * 
  * @author David Jorge (s1712653)
  *
@@ -20,7 +19,7 @@ public final class FileOutput {
 	 * A private attribute, logger, of type Logger is kept by this class in order to
 	 * make logging statements throughout its methods where applicable.
 	 */
-	private static Logger logger;
+	private static final Logger logger = Logger.getLogger("App.AppFileOutput");
 
 	/**
 	 * Make Constructor private to prevent the creation of any instances of this
@@ -29,16 +28,6 @@ public final class FileOutput {
 	private FileOutput() {
 	};
 
-	/**
-	 * This method is responsible for initialising a subclass logger of the logger
-	 * initialised in the App class. This logger object will be used for debugging
-	 * and information message logging in the AppFileOutput class.
-	 */
-	public static void setupLogger() {
-		logger = Logger.getLogger("App.AppFileOutput");
-		return;
-	}
-
 	/**
 	 * This method writes an input String to a file and outputs that file. Its
 	 * inputs are a file name, which will be the output file name, and the text to
@@ -0,0 +1,341 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.io.IOException;
+import java.text.ParseException;
+import java.util.logging.Logger;
+
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+
+/**
+ * This class defines the Java Flight Recorder events of the simulation phases:
+ * loading and parsing a target map, every move of a drone along with the amount
+ * of index entries it scanned, every charge transaction, every target switch of
+ * a Stateful drone and every write of the output of a move. It consists
+ * exclusively of static methods and nested event classes, and it is the only
+ * class of the application referring to the jdk.jfr package, which is why the
+ * application is built for Java 11 or later.
+ *
+ * Events are only created once they have been enabled with the start() method,
+ * which is done by the --jfr option. Until then every call site is skipped by a
+ * check of the enabled flag, so the events cost nothing. Once enabled, the
+ * events are recorded by any Flight Recorder recording, such as the one
+ * started by the start() method or one started with -XX:StartFlightRecording.
+ * The class is made final to prevent it from being extended.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public final class FlightEvents {
+	/**
+	 * This class has 3 private attributes: a boolean, enabled, for whether events
+	 * are created, which is package-private so call sites can check it before
+	 * calling the methods of this class, the Recording started by the start()
+	 * method, and a Logger object, logger, to log statements in this class.
+	 */
+	static boolean enabled;
+	private static Recording recording;
+	private static final Logger logger = Logger.getLogger("App.FlightEvents");
+
+	/**
+	 * Make Constructor private to prevent the creation of any instances of this
+	 * class.
+	 */
+	private FlightEvents() {
+	};
+
+	/**
+	 * The event of loading the source of a target map, from the cache or from the
+	 * map source.
+	 */
+	@Name("uk.ac.ed.inf.powergrab.MapLoad")
+	@Label("Map Load")
+	@Category("PowerGrab")
+	@StackTrace(false)
+	static final class MapLoad extends Event {
+		@Label("Date")
+		String date;
+		@Label("Bytes")
+		int bytes;
+	}
+
+	/**
+	 * The event of parsing the features of a target map.
+	 */
+	@Name("uk.ac.ed.inf.powergrab.MapParse")
+	@Label("Map Parse")
+	@Category("PowerGrab")
+	@StackTrace(false)
+	static final class MapParse extends Event {
+		@Label("Features")
+		int features;
+	}
+
+	/**
+	 * The event of a drone computing a move.
+	 */
+	@Name("uk.ac.ed.inf.powergrab.Move")
+	@Label("Drone Move")
+	@Category("PowerGrab")
+	@StackTrace(false)
+	static final class Move extends Event {
+		@Label("Move")
+		int move;
+		@Label("Direction")
+		String direction;
+		@Label("POIs Scanned")
+		@Description("Index entries checked by the range scan of the move")
+		int scanned;
+	}
+
+	/**
+	 * The event of a drone charging from a feature.
+	 */
+	@Name("uk.ac.ed.inf.powergrab.Charge")
+	@Label("Charge")
+	@Category("PowerGrab")
+	@StackTrace(false)
+	static final class Charge extends Event {
+		@Label("Move")
+		int move;
+		@Label("Feature")
+		String feature;
+		@Label("Symbol")
+		String symbol;
+		@Label("Coins")
+		double coins;
+		@Label("Power")
+		double power;
+	}
+
+	/**
+	 * The event of a Stateful drone switching targets.
+	 */
+	@Name("uk.ac.ed.inf.powergrab.TargetSwitch")
+	@Label("Target Switch")
+	@Category("PowerGrab")
+	@StackTrace(false)
+	static final class TargetSwitch extends Event {
+		@Label("Move")
+		int move;
+		@Label("From")
+		String from;
+		@Label("To")
+		String to;
+		@Label("Reason")
+		String reason;
+	}
+
+	/**
+	 * The event of reporting a move to the output writers.
+	 */
+	@Name("uk.ac.ed.inf.powergrab.OutputWrite")
+	@Label("Output Write")
+	@Category("PowerGrab")
+	@StackTrace(false)
+	static final class OutputWrite extends Event {
+		@Label("Move")
+		int move;
+	}
+
+	/**
+	 * This method enables the events and starts a recording with the profile
+	 * settings of the JVM, which is written to the input file by the stop()
+	 * method. It throws an IllegalArgumentException if Flight Recorder isn't
+	 * available.
+	 *
+	 * @param file This is the file the recording is written to.
+	 */
+	public static void start(File file) {
+		try {
+			recording = new Recording(Configuration.getConfiguration("profile"));
+			recording.setDestination(file.toPath());
+			recording.setToDisk(true);
+			recording.start();
+		} catch (IOException | ParseException | LinkageError | IllegalStateException | SecurityException e) {
+			logger.severe("Flight Recorder unavailable: " + e);
+			throw new IllegalArgumentException("Flight Recorder unavailable!");
+		}
+		enabled = true;
+		logger.info("Recording flight events to " + file);
+		return;
+	}
+
+	/**
+	 * This method stops the recording started by the start() method, if any,
+	 * writing it to its file, and disables the events.
+	 */
+	public static void stop() {
+		enabled = false;
+		if (recording == null)
+			return;
+		recording.stop();
+		recording.close();
+		recording = null;
+		return;
+	}
+
+	/**
+	 * This method begins a MapLoad event.
+	 *
+	 * @return The event.
+	 */
+	static Object beginMapLoad() {
+		MapLoad event = new MapLoad();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * This method ends and commits a MapLoad event.
+	 *
+	 * @param event This is the event returned by beginMapLoad().
+	 * @param date  This is the date of the map.
+	 * @param bytes This is the size of the map source.
+	 */
+	static void endMapLoad(Object event, String date, int bytes) {
+		MapLoad load = (MapLoad) event;
+		load.end();
+		if (load.shouldCommit()) {
+			load.date = date;
+			load.bytes = bytes;
+			load.commit();
+		}
+		return;
+	}
+
+	/**
+	 * This method begins a MapParse event.
+	 *
+	 * @return The event.
+	 */
+	static Object beginMapParse() {
+		MapParse event = new MapParse();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * This method ends and commits a MapParse event.
+	 *
+	 * @param event    This is the event returned by beginMapParse().
+	 * @param features This is the amount of features parsed.
+	 */
+	static void endMapParse(Object event, int features) {
+		MapParse parse = (MapParse) event;
+		parse.end();
+		if (parse.shouldCommit()) {
+			parse.features = features;
+			parse.commit();
+		}
+		return;
+	}
+
+	/**
+	 * This method begins a Move event.
+	 *
+	 * @return The event.
+	 */
+	static Object beginMove() {
+		Move event = new Move();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * This method ends and commits a Move event.
+	 *
+	 * @param event     This is the event returned by beginMove().
+	 * @param move      This is the number of the move.
+	 * @param direction This is the direction the drone took.
+	 * @param scanned   This is the amount of index entries scanned during the
+	 *                  move.
+	 */
+	static void endMove(Object event, int move, Direction direction, int scanned) {
+		Move moveEvent = (Move) event;
+		moveEvent.end();
+		if (moveEvent.shouldCommit()) {
+			moveEvent.move = move;
+			moveEvent.direction = direction.name();
+			moveEvent.scanned = scanned;
+			moveEvent.commit();
+		}
+		return;
+	}
+
+	/**
+	 * This method commits a Charge event.
+	 *
+	 * @param move    This is the number of the move.
+	 * @param feature This is the id of the feature charged from.
+	 * @param symbol  This is the marker symbol of the feature.
+	 * @param coins   This is the change of the drone's coins.
+	 * @param power   This is the change of the drone's power.
+	 */
+	static void charge(int move, String feature, String symbol, double coins, double power) {
+		Charge event = new Charge();
+		if (event.shouldCommit()) {
+			event.move = move;
+			event.feature = feature;
+			event.symbol = symbol;
+			event.coins = coins;
+			event.power = power;
+			event.commit();
+		}
+		return;
+	}
+
+	/**
+	 * This method commits a TargetSwitch event.
+	 *
+	 * @param move   This is the number of the move.
+	 * @param from   This is the id of the previous target, or null.
+	 * @param to     This is the id of the new target, or null.
+	 * @param reason This is why the target was switched.
+	 */
+	static void targetSwitch(int move, String from, String to, String reason) {
+		TargetSwitch event = new TargetSwitch();
+		if (event.shouldCommit()) {
+			event.move = move;
+			event.from = from;
+			event.to = to;
+			event.reason = reason;
+			event.commit();
+		}
+		return;
+	}
+
+	/**
+	 * This method begins an OutputWrite event.
+	 *
+	 * @return The event.
+	 */
+	static Object beginOutputWrite() {
+		OutputWrite event = new OutputWrite();
+		event.begin();
+		return event;
+	}
+
+	/**
+	 * This method ends and commits an OutputWrite event.
+	 *
+	 * @param event This is the event returned by beginOutputWrite().
+	 * @param move  This is the number of the move.
+	 */
+	static void endOutputWrite(Object event, int move) {
+		OutputWrite write = (OutputWrite) event;
+		write.end();
+		if (write.shouldCommit()) {
+			write.move = move;
+			write.commit();
+		}
+		return;
+	}
+}
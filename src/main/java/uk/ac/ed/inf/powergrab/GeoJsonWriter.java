@@ -0,0 +1,279 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonWriter;
+import com.mapbox.geojson.Point;
+
+/**
+ * This class streams the output geojson file of a simulation, holding the
+ * features of the target map followed by the path the drone took, straight to
+ * its destination with a JsonWriter, so the document is never held in memory.
+ * The features are written first, with the properties and coordinates they had
+ * in the map source, after which the points of the path can be written one by
+ * one as the drone visits them, and closing the writer completes the document.
+ * Registered on a drone as a MoveListener, it writes the features of the
+ * drone's world when the flight starts and every point as soon as the drone
+ * reaches it.
+ *
+ * The output is either pretty-printed, in which case it is identical to the
+ * output of Gson's pretty printing, or compact, without any whitespace. The
+ * coordinates of the path are rounded to 7 decimal places, as they are by the
+ * LineString class of the geojson library.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class GeoJsonWriter implements MoveListener, Closeable {
+	/**
+	 * The size in bytes of the buffer between the writer and the file channel.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The precision the coordinates of the path are rounded to, and the largest
+	 * magnitude of a coordinate that can be rounded.
+	 */
+	private static final double ROUND_PRECISION = 1e7;
+	private static final long MAX_ROUNDED = (long) (Long.MAX_VALUE / ROUND_PRECISION);
+
+	/**
+	 * This class has 2 private attributes: the JsonWriter the document is written
+	 * to, and whether the path has been started, i.e. whether the document has to
+	 * be completed when the writer is closed.
+	 */
+	private final JsonWriter writer;
+	private boolean started;
+
+	/**
+	 * Constructor for the GeoJsonWriter class.
+	 *
+	 * @param out     This is the Writer the document is written to.
+	 * @param compact This is whether the document is written without whitespace
+	 *                instead of pretty-printed.
+	 */
+	public GeoJsonWriter(Writer out, boolean compact) {
+		this.writer = new JsonWriter(out);
+		if (!compact)
+			writer.setIndent("  ");
+		writer.setHtmlSafe(true);
+		writer.setSerializeNulls(false);
+	}
+
+	/**
+	 * This method opens a GeoJsonWriter writing to a file through a buffered file
+	 * channel, replacing the file if it exists.
+	 *
+	 * @param file    This is the output file.
+	 * @param compact This is whether the document is written without whitespace
+	 *                instead of pretty-printed.
+	 * @return The GeoJsonWriter writing to the file.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static GeoJsonWriter open(File file, boolean compact) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		Writer out = new BufferedWriter(Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE),
+				BUFFER_SIZE);
+		return new GeoJsonWriter(out, compact);
+	}
+
+	/**
+	 * This method writes the whole document: the features of a target map and a
+	 * path given as a List of points.
+	 *
+	 * @param map    This is the target map.
+	 * @param points This is the List of points visited by the drone.
+	 * @throws IOException If the document can't be written.
+	 */
+	public void write(TargetMap map, List<Point> points) throws IOException {
+		writeMap(map.features);
+		for (Point point : points)
+			writePoint(point.longitude(), point.latitude());
+		return;
+	}
+
+	/**
+	 * This method writes the start of the document, the features of the target
+	 * map and the start of the path feature. Features that weren't parsed from a
+	 * map source are described from the columns of the feature store instead.
+	 *
+	 * @param features This is the FeatureStore holding the features of the map.
+	 * @throws IOException If the document can't be written.
+	 */
+	public void writeMap(FeatureStore features) throws IOException {
+		writer.beginObject();
+		writer.name("type").value("FeatureCollection");
+		writer.name("features").beginArray();
+		for (int i = 0; i < features.size(); i++) {
+			writer.beginObject();
+			writer.name("type").value("Feature");
+			String properties = features.sourceProperties(i);
+			String coordinates = features.sourceCoordinates(i);
+			writer.name("properties");
+			if (properties != null) {
+				copy(new JsonReader(new StringReader(properties)), writer);
+			} else {
+				writer.beginObject();
+				writer.name("id").value(features.id(i));
+				writer.name("coins").value(features.coins(i));
+				writer.name("power").value(features.power(i));
+				writer.name("marker-symbol").value(features.symbol(i));
+				writer.name("marker-color").value(features.color(i));
+				writer.endObject();
+			}
+			writer.name("geometry").beginObject();
+			writer.name("type").value("Point");
+			writer.name("coordinates");
+			if (coordinates != null)
+				copy(new JsonReader(new StringReader(coordinates)), writer);
+			else
+				writer.beginArray().value(features.longitude(i)).value(features.latitude(i)).endArray();
+			writer.endObject();
+			writer.endObject();
+		}
+		writer.beginObject();
+		writer.name("type").value("Feature");
+		writer.name("properties").beginObject().endObject();
+		writer.name("geometry").beginObject();
+		writer.name("type").value("LineString");
+		writer.name("coordinates").beginArray();
+		started = true;
+		return;
+	}
+
+	/**
+	 * This method appends a point to the path.
+	 *
+	 * @param longitude This is the longitude of the point.
+	 * @param latitude  This is the latitude of the point.
+	 * @throws IOException If the point can't be written.
+	 */
+	public void writePoint(double longitude, double latitude) throws IOException {
+		writer.beginArray().value(round(longitude)).value(round(latitude)).endArray();
+		return;
+	}
+
+	/**
+	 * This method writes the features of the drone's target map, which the drone
+	 * hasn't charged from yet, and the starting point of its path, throwing an
+	 * UncheckedIOException if they can't be written.
+	 */
+	@Override
+	public void flightStarted(World world, Position start) {
+		try {
+			writeMap(world.map.features);
+			writePoint(start.longitude, start.latitude);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return;
+	}
+
+	/**
+	 * This method appends the position reached by a move to the path, throwing an
+	 * UncheckedIOException if it can't be written.
+	 */
+	@Override
+	public void moveMade(int move, Position from, Direction direction, Position to, double coins, double power,
+			int charged) {
+		try {
+			writePoint(to.longitude, to.latitude);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return;
+	}
+
+	/**
+	 * This method completes the document, if it has been started, and closes the
+	 * underlying writer.
+	 *
+	 * @throws IOException If the document can't be written.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (started) {
+			writer.endArray();
+			writer.endObject();
+			writer.endObject();
+			writer.endArray();
+			writer.endObject();
+			started = false;
+		}
+		writer.close();
+		return;
+	}
+
+	/**
+	 * This method copies the next value of a JsonReader to a JsonWriter token by
+	 * token. Numbers are copied as the text they have in the source, so they are
+	 * written exactly as Gson would write them back from a parsed tree.
+	 *
+	 * @param in  This is the JsonReader positioned at the start of the value.
+	 * @param out This is the JsonWriter the value is written to.
+	 * @throws IOException If the value can't be read or written.
+	 */
+	static void copy(JsonReader in, JsonWriter out) throws IOException {
+		switch (in.peek()) {
+		case BEGIN_ARRAY:
+			in.beginArray();
+			out.beginArray();
+			while (in.hasNext())
+				copy(in, out);
+			in.endArray();
+			out.endArray();
+			break;
+		case BEGIN_OBJECT:
+			in.beginObject();
+			out.beginObject();
+			while (in.hasNext()) {
+				out.name(in.nextName());
+				copy(in, out);
+			}
+			in.endObject();
+			out.endObject();
+			break;
+		case STRING:
+			out.value(in.nextString());
+			break;
+		case NUMBER:
+			out.jsonValue(in.nextString());
+			break;
+		case BOOLEAN:
+			out.value(in.nextBoolean());
+			break;
+		case NULL:
+			in.nextNull();
+			out.nullValue();
+			break;
+		default:
+			throw new IllegalStateException("Unexpected " + in.peek() + " at " + in.getPath());
+		}
+		return;
+	}
+
+	/**
+	 * This method rounds a coordinate of the path to 7 decimal places.
+	 *
+	 * @param value This is the coordinate.
+	 * @return The rounded coordinate.
+	 */
+	private static double round(double value) {
+		if (value > MAX_ROUNDED || value < -MAX_ROUNDED)
+			return value;
+		return Math.round(value * ROUND_PRECISION) / ROUND_PRECISION;
+	}
+}
@@ -0,0 +1,142 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * This class records the distribution of a non-negative long value, such as a
+ * latency in nanoseconds or the amount of entries visited by a query. Values
+ * are counted in power-of-two buckets, so recording a value is a handful of
+ * arithmetic operations and a histogram takes the same space however many
+ * values it holds. The exact count, sum, minimum and maximum are kept alongside
+ * the buckets, while percentiles are estimated as the upper bound of the bucket
+ * they fall in, which is within a factor of 2 of the exact value. This class is
+ * not thread-safe: it is meant to be written by a single thread, and its
+ * owner synchronises merges between threads.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class Histogram {
+	/**
+	 * This class has 5 private attributes: an array of longs, buckets, counting
+	 * the values recorded in each bucket, where bucket b holds the values whose
+	 * highest set bit is bit b - 1 and bucket 0 holds the value 0, and 4 longs,
+	 * count, sum, min and max, for the amount of values recorded, their sum, and
+	 * the smallest and largest of them.
+	 */
+	private final long[] buckets = new long[65];
+	private long count;
+	private long sum;
+	private long min = Long.MAX_VALUE;
+	private long max;
+
+	/**
+	 * This method records a value. Negative values are recorded as 0.
+	 *
+	 * @param value This is the value to record.
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		buckets[64 - Long.numberOfLeadingZeros(value)]++;
+		count++;
+		sum += value;
+		if (value < min)
+			min = value;
+		if (value > max)
+			max = value;
+		return;
+	}
+
+	/**
+	 * This method adds all values recorded by another histogram to this one.
+	 *
+	 * @param other This is the histogram to add.
+	 */
+	public void merge(Histogram other) {
+		for (int b = 0; b < buckets.length; b++)
+			buckets[b] += other.buckets[b];
+		count += other.count;
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		return;
+	}
+
+	/**
+	 * This method clears all values recorded.
+	 */
+	public void reset() {
+		Arrays.fill(buckets, 0);
+		count = 0;
+		sum = 0;
+		min = Long.MAX_VALUE;
+		max = 0;
+		return;
+	}
+
+	/**
+	 * This method returns the amount of values recorded.
+	 *
+	 * @return The amount of values.
+	 */
+	public long count() {
+		return count;
+	}
+
+	/**
+	 * This method returns the sum of the values recorded.
+	 *
+	 * @return The sum of the values.
+	 */
+	public long sum() {
+		return sum;
+	}
+
+	/**
+	 * This method returns the smallest value recorded.
+	 *
+	 * @return The smallest value, or 0 if no value was recorded.
+	 */
+	public long min() {
+		return count == 0 ? 0 : min;
+	}
+
+	/**
+	 * This method returns the largest value recorded.
+	 *
+	 * @return The largest value, or 0 if no value was recorded.
+	 */
+	public long max() {
+		return max;
+	}
+
+	/**
+	 * This method returns the mean of the values recorded.
+	 *
+	 * @return The mean value, or 0 if no value was recorded.
+	 */
+	public double mean() {
+		return count == 0 ? 0 : (double) sum / count;
+	}
+
+	/**
+	 * This method estimates a percentile of the values recorded as the upper bound
+	 * of the bucket holding it, capped by the largest value.
+	 *
+	 * @param percentile This is the percentile to estimate, between 0 and 100.
+	 * @return The estimated percentile, or 0 if no value was recorded.
+	 */
+	public long percentile(double percentile) {
+		if (count == 0)
+			return 0;
+		long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+		long seen = 0;
+		for (int b = 0; b < buckets.length; b++) {
+			seen += buckets[b];
+			if (seen >= rank)
+				return b == 0 ? 0 : Math.min(max, b == 64 ? Long.MAX_VALUE : (1L << b) - 1);
+		}
+		return max;
+	}
+}
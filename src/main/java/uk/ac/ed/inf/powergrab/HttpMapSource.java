@@ -0,0 +1,106 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * This class fetches target maps over HTTP from the powergrab map server, or
+ * from any server laid out in the same way, where the map of a date is found at
+ * year/month/day/powergrabmap.geojson under a base URL. Requests are made
+ * conditional on the ETag and Last-Modified validators of the cached copy, if
+ * any, so an unchanged map is answered with a 304 response and no body. A 4xx
+ * response other than a timeout or a request to slow down means the server
+ * won't serve the map, and is reported as a MapUnavailableException.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class HttpMapSource implements MapSource {
+	/**
+	 * The base URL of the powergrab map server.
+	 */
+	public static final String DEFAULT_URL = "http://homepages.inf.ed.ac.uk/stg/powergrab/";
+
+	/**
+	 * The status of a Too Many Requests response, which HttpURLConnection has no
+	 * constant for.
+	 */
+	private static final int TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * This class has 3 private attributes: the base URL of the server, ending with
+	 * a slash, and the timeouts in milliseconds for connecting to the server and
+	 * for reading from it.
+	 */
+	private final String baseUrl;
+	private final int connectTimeout;
+	private final int readTimeout;
+
+	/**
+	 * Constructor for the HttpMapSource class, with a connect timeout of 15
+	 * seconds and a read timeout of 10 seconds.
+	 *
+	 * @param baseUrl This is the base URL of the server.
+	 */
+	public HttpMapSource(String baseUrl) {
+		this(baseUrl, 15000, 10000);
+	}
+
+	/**
+	 * Constructor for the HttpMapSource class.
+	 *
+	 * @param baseUrl        This is the base URL of the server.
+	 * @param connectTimeout This is the timeout for connecting to the server in
+	 *                       milliseconds.
+	 * @param readTimeout    This is the timeout for reading from the server in
+	 *                       milliseconds.
+	 */
+	public HttpMapSource(String baseUrl, int connectTimeout, int readTimeout) {
+		this.baseUrl = baseUrl.endsWith("/") ? baseUrl : baseUrl + "/";
+		this.connectTimeout = connectTimeout;
+		this.readTimeout = readTimeout;
+	}
+
+	/**
+	 * This method returns the URL of the geojson file of the target map of a date.
+	 *
+	 * @param date This is the date of the map as year/month/day.
+	 * @return The URL of the target map.
+	 */
+	public String mapUrl(String date) {
+		return baseUrl + date + "/powergrabmap.geojson";
+	}
+
+	@Override
+	public Result fetch(String date, String etag, String lastModified) throws IOException {
+		HttpURLConnection conn = (HttpURLConnection) new URL(mapUrl(date)).openConnection();
+		try {
+			conn.setReadTimeout(readTimeout);
+			conn.setConnectTimeout(connectTimeout);
+			conn.setRequestMethod("GET");
+			conn.setDoInput(true);
+			if (etag != null)
+				conn.setRequestProperty("If-None-Match", etag);
+			if (lastModified != null)
+				conn.setRequestProperty("If-Modified-Since", lastModified);
+			conn.connect();
+			int status = conn.getResponseCode();
+			if (status == HttpURLConnection.HTTP_NOT_MODIFIED)
+				return new Result(null, etag, lastModified);
+			if (status >= 400 && status < 500 && status != HttpURLConnection.HTTP_CLIENT_TIMEOUT
+					&& status != TOO_MANY_REQUESTS)
+				throw new MapUnavailableException(String.format("HTTP %d for %s", status, mapUrl(date)));
+			if (status != HttpURLConnection.HTTP_OK)
+				throw new IOException(String.format("HTTP %d for %s", status, mapUrl(date)));
+			byte[] source;
+			try (InputStream in = conn.getInputStream()) {
+				source = AppUtil.readAllBytes(in);
+			}
+			return new Result(source, conn.getHeaderField("ETag"), conn.getHeaderField("Last-Modified"));
+		} finally {
+			conn.disconnect();
+		}
+	}
+}
@@ -0,0 +1,88 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a growable list of primitive ints. It is used to hold
+ * feature indices returned by queries on the feature store without boxing, and
+ * is meant to be cleared and reused between queries.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class IntList {
+	/**
+	 * This class has 2 private attributes: the array holding the values and the
+	 * amount of values in the list.
+	 */
+	private int[] values;
+	private int size;
+
+	/**
+	 * Constructor for the IntList class. It creates an empty list with a small
+	 * initial capacity.
+	 */
+	public IntList() {
+		this.values = new int[16];
+		this.size = 0;
+	}
+
+	/**
+	 * This method appends a value to the list.
+	 *
+	 * @param value This is the value to append.
+	 */
+	public void add(int value) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, size * 2);
+		values[size++] = value;
+	}
+
+	/**
+	 * @param i This is the position of a value in the list.
+	 * @return The value at that position.
+	 */
+	public int get(int i) {
+		return values[i];
+	}
+
+	/**
+	 * @return The amount of values in the list.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @return true if the list holds no values otherwise false.
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * This method appends every value of an array to the list.
+	 *
+	 * @param values This is the array of values to append.
+	 */
+	public void addAll(int[] values) {
+		if (size + values.length > this.values.length)
+			this.values = Arrays.copyOf(this.values, Math.max(size + values.length, size * 2));
+		System.arraycopy(values, 0, this.values, size, values.length);
+		size += values.length;
+	}
+
+	/**
+	 * @return A new array holding the values of the list, in order.
+	 */
+	public int[] toArray() {
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * This method removes all values from the list, keeping its capacity.
+	 */
+	public void clear() {
+		size = 0;
+	}
+}
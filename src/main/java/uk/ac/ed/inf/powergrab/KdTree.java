@@ -0,0 +1,488 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+
+/**
+ * This class implements a two-dimensional KD-tree of feature indices supporting
+ * nearest-neighbour queries, removals and insertions. It is used by the
+ * Stateful drone to keep track of the lighthouses it hasn't charged from yet.
+ *
+ * The tree behaves like the ordered list it replaces: every entry occupies a
+ * slot numbered in insertion order, removing a feature removes its earliest
+ * live entry, and entries can be picked by their rank in that order. Removed
+ * entries are only marked as dead (tombstones), and entries added after the tree
+ * was built are kept in a small unindexed buffer. The tree is rebuilt from the
+ * live entries once too many tombstones or buffered entries have accumulated,
+ * so the cost of every operation stays logarithmic on average.
+ *
+ * While a mark is held, every insertion and removal is recorded in an undo log
+ * by the slot it affected, and slots are never renumbered: full slot arrays are
+ * grown in place instead of compacted, and tombstones are kept. The tree can
+ * then be rolled back to any mark by reviving removed slots and dropping added
+ * ones, at a cost proportional to the operations made since the mark.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class KdTree {
+	/**
+	 * The minimum amount of buffered entries allowed before the tree is rebuilt.
+	 */
+	private static final int MIN_BUFFER = 16;
+
+	/**
+	 * This class has 15 private attributes. The feature store the indices refer
+	 * to is kept, while the features, latitudes, longitudes and alive flags of all
+	 * slots are kept in parallel arrays, along with the slot holding the next
+	 * entry of the same feature. The tree array holds the slots covered by the
+	 * tree arranged as an implicit balanced KD-tree, treeSize is the amount of
+	 * those slots, slotCount is the total amount of slots in use, live is the
+	 * amount of entries that haven't been removed, fenwick is a Fenwick tree over
+	 * the alive flags used to select entries by rank and firstSlot holds the
+	 * earliest live slot of every feature in the store, or -1 if it has none.
+	 * The undo log holds the slot of every removal and the bitwise complement of
+	 * the slot of every insertion made while a mark is held, undoSize is the
+	 * amount of entries in the log and marks is the amount of marks held.
+	 */
+	private final FeatureStore store;
+	private int[] features;
+	private double[] lat;
+	private double[] lon;
+	private boolean[] alive;
+	private int[] nextSame;
+	private int[] tree;
+	private int treeSize;
+	private int slotCount;
+	private int live;
+	private int[] fenwick;
+	private final int[] firstSlot;
+	private int[] undo = new int[0];
+	private int undoSize;
+	private int marks;
+
+	/**
+	 * This class holds the best candidate found during a nearest-neighbour query,
+	 * along with the features the query skips, or null.
+	 */
+	private static final class Best {
+		final IntPredicate excluded;
+		int slot = -1;
+		double dist = Integer.MAX_VALUE;
+
+		Best(IntPredicate excluded) {
+			this.excluded = excluded;
+		}
+	}
+
+	/**
+	 * Constructor for the KdTree class. It inserts the input features in order and
+	 * builds the tree over them.
+	 *
+	 * @param store   This is the feature store holding the features.
+	 * @param initial This is the list of indices of the features initially held
+	 *                by the tree.
+	 */
+	public KdTree(FeatureStore store, IntList initial) {
+		this.store = store;
+		this.firstSlot = new int[store.size()];
+		allocate(Math.max(MIN_BUFFER, initial.size() * 2));
+		for (int i = 0; i < initial.size(); i++)
+			append(initial.get(i));
+		build();
+	}
+
+	/**
+	 * This method returns the amount of entries held by the tree.
+	 *
+	 * @return The amount of entries that haven't been removed.
+	 */
+	public int size() {
+		return live;
+	}
+
+	/**
+	 * This method returns whether the tree holds no entries.
+	 *
+	 * @return true if all entries have been removed otherwise false.
+	 */
+	public boolean isEmpty() {
+		return live == 0;
+	}
+
+	/**
+	 * This method adds a feature to the end of the tree's insertion order. The
+	 * entry is kept in the unindexed buffer until the next rebuild.
+	 *
+	 * @param feature This is the index of the feature to add.
+	 */
+	public void add(int feature) {
+		if (slotCount == features.length) {
+			if (marks > 0)
+				grow();
+			else
+				compact(Math.max(MIN_BUFFER, live * 2 + 1));
+		}
+		append(feature);
+		if (marks > 0)
+			log(~(slotCount - 1));
+		if (slotCount - treeSize > Math.max(MIN_BUFFER, (int) Math.sqrt(live)))
+			build();
+		return;
+	}
+
+	/**
+	 * This method removes the earliest entry of a feature, if any. The entry is
+	 * marked as dead, and the tree is rebuilt once at least half of its slots are
+	 * dead.
+	 *
+	 * @param feature This is the index of the feature to remove.
+	 * @return true if an entry of the feature was removed otherwise false.
+	 */
+	public boolean remove(int feature) {
+		int slot = firstSlot[feature];
+		if (slot == -1)
+			return false;
+		alive[slot] = false;
+		live--;
+		fenwickAdd(slot, -1);
+		firstSlot[feature] = nextSame[slot];
+		if (marks > 0)
+			log(slot);
+		else if (slotCount - live > slotCount / 2)
+			compact(features.length);
+		return true;
+	}
+
+	/**
+	 * This method takes a mark, starting to record insertions and removals in the
+	 * undo log if no other mark is held, and returns the position of the log to
+	 * roll back to.
+	 *
+	 * @return The mark.
+	 */
+	public int mark() {
+		marks++;
+		return undoSize;
+	}
+
+	/**
+	 * This method undoes every insertion and removal made since a mark was taken,
+	 * in reverse order. The mark is still held afterwards, so the tree can be
+	 * rolled back to it again.
+	 *
+	 * @param mark This is the mark returned by mark().
+	 */
+	public void rollback(int mark) {
+		if (marks == 0 || mark > undoSize)
+			throw new IllegalStateException("Invalid tree mark " + mark);
+		while (undoSize > mark) {
+			int slot = undo[--undoSize];
+			if (slot >= 0) {
+				alive[slot] = true;
+				live++;
+				fenwickAdd(slot, 1);
+				firstSlot[features[slot]] = slot;
+			} else {
+				slot = ~slot;
+				int feature = features[slot];
+				if (firstSlot[feature] == slot) {
+					firstSlot[feature] = -1;
+				} else {
+					int previous = firstSlot[feature];
+					while (nextSame[previous] != slot)
+						previous = nextSame[previous];
+					nextSame[previous] = -1;
+				}
+				alive[slot] = false;
+				live--;
+				fenwickAdd(slot, -1);
+				slotCount--;
+				if (treeSize > slotCount)
+					build();
+			}
+		}
+		return;
+	}
+
+	/**
+	 * This method releases a mark. Once no mark is held, the undo log is cleared
+	 * and the tree is compacted again as needed.
+	 */
+	public void release() {
+		if (marks == 0)
+			throw new IllegalStateException("No tree mark held");
+		if (--marks == 0)
+			undoSize = 0;
+		return;
+	}
+
+	/**
+	 * This is a support method appending an entry to the undo log.
+	 *
+	 * @param entry This is the slot removed, or the complement of the slot added.
+	 */
+	private void log(int entry) {
+		if (undoSize == undo.length)
+			undo = Arrays.copyOf(undo, Math.max(MIN_BUFFER, undoSize * 2));
+		undo[undoSize++] = entry;
+		return;
+	}
+
+	/**
+	 * This method returns the entry at the input rank in insertion order, counting
+	 * live entries only.
+	 *
+	 * @param rank This is the rank of the entry, between 0 and size() - 1.
+	 * @return The index of the feature held by the entry at that rank.
+	 */
+	public int get(int rank) {
+		if (rank < 0 || rank >= live)
+			throw new IndexOutOfBoundsException("Rank " + rank + " out of " + live);
+		int pos = 0;
+		int remaining = rank;
+		for (int step = Integer.highestOneBit(fenwick.length - 1); step > 0; step >>= 1) {
+			if (pos + step < fenwick.length && fenwick[pos + step] <= remaining) {
+				pos += step;
+				remaining -= fenwick[pos];
+			}
+		}
+		return features[pos];
+	}
+
+	/**
+	 * This method returns the feature of the live entry closest to a point, or -1
+	 * if the tree is empty. Entries at exactly the same distance are resolved in
+	 * favour of the latest one in insertion order.
+	 *
+	 * @param latitude  This is the latitude of the query point.
+	 * @param longitude This is the longitude of the query point.
+	 * @return The index of the feature closest to the query point.
+	 */
+	public int nearest(double latitude, double longitude) {
+		return nearest(latitude, longitude, null);
+	}
+
+	/**
+	 * This method returns the feature of the live entry closest to a point,
+	 * skipping the features matched by a predicate, or -1 if there is no such
+	 * entry. Ties are resolved as by the nearest(latitude, longitude) method.
+	 *
+	 * @param latitude  This is the latitude of the query point.
+	 * @param longitude This is the longitude of the query point.
+	 * @param excluded  This is the predicate matching the features to skip, or
+	 *                  null to skip none.
+	 * @return The index of the feature closest to the query point.
+	 */
+	public int nearest(double latitude, double longitude, IntPredicate excluded) {
+		Best best = new Best(excluded);
+		search(0, treeSize, 0, latitude, longitude, best);
+		for (int slot = treeSize; slot < slotCount; slot++)
+			offer(slot, latitude, longitude, best);
+		return best.slot == -1 ? -1 : features[best.slot];
+	}
+
+	/**
+	 * This method searches the subtree stored in tree[from, to) for the live entry
+	 * closest to a point. The root of the subtree is stored in the middle of the
+	 * range and splits it on latitude at even depths and on longitude at odd ones.
+	 *
+	 * @param from      This is the start of the range holding the subtree.
+	 * @param to        This is the end of the range holding the subtree.
+	 * @param depth     This is the depth of the subtree's root.
+	 * @param latitude  This is the latitude of the query point.
+	 * @param longitude This is the longitude of the query point.
+	 * @param best      This is the best candidate found so far.
+	 */
+	private void search(int from, int to, int depth, double latitude, double longitude, Best best) {
+		if (from >= to)
+			return;
+		int mid = (from + to) >>> 1;
+		int slot = tree[mid];
+		offer(slot, latitude, longitude, best);
+		double diff = (depth & 1) == 0 ? latitude - lat[slot] : longitude - lon[slot];
+		if (diff < 0) {
+			search(from, mid, depth + 1, latitude, longitude, best);
+			if (-diff <= best.dist)
+				search(mid + 1, to, depth + 1, latitude, longitude, best);
+		} else {
+			search(mid + 1, to, depth + 1, latitude, longitude, best);
+			if (diff <= best.dist)
+				search(from, mid, depth + 1, latitude, longitude, best);
+		}
+		return;
+	}
+
+	/**
+	 * This method replaces the best candidate with the input slot if it is live,
+	 * not excluded, and closer to the query point, or at the same distance and
+	 * later in insertion order.
+	 *
+	 * @param slot      This is the slot to consider.
+	 * @param latitude  This is the latitude of the query point.
+	 * @param longitude This is the longitude of the query point.
+	 * @param best      This is the best candidate found so far.
+	 */
+	private void offer(int slot, double latitude, double longitude, Best best) {
+		if (!alive[slot] || (best.excluded != null && best.excluded.test(features[slot])))
+			return;
+		double dist = Math.sqrt((latitude - lat[slot]) * (latitude - lat[slot])
+				+ (longitude - lon[slot]) * (longitude - lon[slot]));
+		if (dist < best.dist || (dist == best.dist && slot > best.slot)) {
+			best.dist = dist;
+			best.slot = slot;
+		}
+		return;
+	}
+
+	/**
+	 * This method allocates empty slot arrays of the input capacity.
+	 *
+	 * @param capacity This is the amount of slots to allocate.
+	 */
+	private void allocate(int capacity) {
+		features = new int[capacity];
+		lat = new double[capacity];
+		lon = new double[capacity];
+		alive = new boolean[capacity];
+		nextSame = new int[capacity];
+		fenwick = new int[capacity + 1];
+		slotCount = 0;
+		treeSize = 0;
+		live = 0;
+		Arrays.fill(firstSlot, -1);
+		return;
+	}
+
+	/**
+	 * This method appends a live entry for a feature at the next free slot, linking
+	 * it after the existing entries of the same feature.
+	 *
+	 * @param feature This is the index of the feature to append.
+	 */
+	private void append(int feature) {
+		int slot = slotCount++;
+		features[slot] = feature;
+		lat[slot] = store.latitude(feature);
+		lon[slot] = store.longitude(feature);
+		alive[slot] = true;
+		nextSame[slot] = -1;
+		live++;
+		fenwickAdd(slot, 1);
+		if (firstSlot[feature] == -1) {
+			firstSlot[feature] = slot;
+		} else {
+			int last = firstSlot[feature];
+			while (nextSame[last] != -1)
+				last = nextSame[last];
+			nextSame[last] = slot;
+		}
+		return;
+	}
+
+	/**
+	 * This method doubles the capacity of the slot arrays while keeping every
+	 * slot, dead or alive, at its number, so the undo log stays valid.
+	 */
+	private void grow() {
+		int capacity = features.length * 2;
+		features = Arrays.copyOf(features, capacity);
+		lat = Arrays.copyOf(lat, capacity);
+		lon = Arrays.copyOf(lon, capacity);
+		alive = Arrays.copyOf(alive, capacity);
+		nextSame = Arrays.copyOf(nextSame, capacity);
+		fenwick = new int[capacity + 1];
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (alive[slot])
+				fenwickAdd(slot, 1);
+		}
+		return;
+	}
+
+	/**
+	 * This method moves the live entries, in order, into freshly allocated slot
+	 * arrays of the input capacity and rebuilds the tree over them.
+	 *
+	 * @param capacity This is the amount of slots to allocate.
+	 */
+	private void compact(int capacity) {
+		int[] oldFeatures = features;
+		boolean[] oldAlive = alive;
+		int oldCount = slotCount;
+		allocate(capacity);
+		for (int slot = 0; slot < oldCount; slot++) {
+			if (oldAlive[slot])
+				append(oldFeatures[slot]);
+		}
+		build();
+		return;
+	}
+
+	/**
+	 * This method rebuilds the implicit KD-tree over all slots in use, including
+	 * dead ones, which are simply skipped by queries.
+	 */
+	private void build() {
+		tree = new int[slotCount];
+		for (int slot = 0; slot < slotCount; slot++)
+			tree[slot] = slot;
+		treeSize = slotCount;
+		build(0, treeSize, 0);
+		return;
+	}
+
+	/**
+	 * This method arranges tree[from, to) so that its middle element is the median
+	 * on the splitting axis of the input depth, with smaller elements before it and
+	 * larger ones after it, and recurses on both halves.
+	 *
+	 * @param from  This is the start of the range.
+	 * @param to    This is the end of the range.
+	 * @param depth This is the depth of the subtree held by the range.
+	 */
+	private void build(int from, int to, int depth) {
+		if (to - from <= 1)
+			return;
+		int mid = (from + to) >>> 1;
+		double[] axis = (depth & 1) == 0 ? lat : lon;
+		int lo = from;
+		int hi = to - 1;
+		while (lo < hi) {
+			double pivot = axis[tree[(lo + hi) >>> 1]];
+			int i = lo;
+			int j = hi;
+			while (i <= j) {
+				while (axis[tree[i]] < pivot)
+					i++;
+				while (axis[tree[j]] > pivot)
+					j--;
+				if (i <= j) {
+					int tmp = tree[i];
+					tree[i++] = tree[j];
+					tree[j--] = tmp;
+				}
+			}
+			if (mid <= j)
+				hi = j;
+			else if (mid >= i)
+				lo = i;
+			else
+				break;
+		}
+		build(from, mid, depth + 1);
+		build(mid + 1, to, depth + 1);
+		return;
+	}
+
+	/**
+	 * This method adds a value to a slot's count in the Fenwick tree.
+	 *
+	 * @param slot  This is the slot to update.
+	 * @param delta This is the value to add.
+	 */
+	private void fenwickAdd(int slot, int delta) {
+		for (int i = slot + 1; i < fenwick.length; i += i & -i)
+			fenwick[i] += delta;
+		return;
+	}
+}
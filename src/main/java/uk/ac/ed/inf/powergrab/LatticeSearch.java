@@ -0,0 +1,288 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * This class searches for the shortest sequences of moves taking a drone from a
+ * position to charging range of a lighthouse. A drone only reaches the
+ * positions spanned by the 16 direction offsets from where it starts, so the
+ * search runs over that lattice: every position is expanded in the 16
+ * directions, skipping positions outside the play area and positions where the
+ * drone would charge from a danger, i.e. where the closest feature in charging
+ * range is a danger still holding negative coins or power. A lighthouse is
+ * reached at a position where it is the closest feature in charging range, so
+ * the drone charges from it there.
+ *
+ * The lattice is dense, so positions are merged by the cell of side QUANTUM
+ * they fall in, keeping the first one found, and the search ends once every
+ * cell reachable has been expanded. The cells cover the play area in a grid of
+ * a few thousand, so the least amount of moves to every cell is kept in a plain
+ * array. Every sequence found can be flown by a drone, and is the shortest one
+ * among positions kept, though it can be a move longer than the shortest one of
+ * the exact lattice. A single lighthouse is searched for with A*, guided by the
+ * amount of moves of the TourPlanner class, which never overestimates the moves
+ * left, while several lighthouses are searched for at once by a breadth-first
+ * search.
+ *
+ * An instance keeps scratch arrays reused by every search, so it is not
+ * thread-safe: concurrent searches need an instance each.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class LatticeSearch {
+	/**
+	 * The side of the cells positions are merged by, in degrees, a third of a move.
+	 */
+	static final double QUANTUM = 0.0001;
+
+	/**
+	 * The row and column of the south-west cell of the play area, and the amount of
+	 * rows and columns of cells covering it.
+	 */
+	private static final long FIRST_ROW = Math.round(Position.MIN_LATITUDE / QUANTUM);
+	private static final long FIRST_COL = Math.round(Position.MIN_LONGITUDE / QUANTUM);
+	private static final int ROWS = (int) (Math.round(Position.MAX_LATITUDE / QUANTUM) - FIRST_ROW + 1);
+	private static final int COLS = (int) (Math.round(Position.MAX_LONGITUDE / QUANTUM) - FIRST_COL + 1);
+
+	/**
+	 * This class has 10 private attributes: the FeatureOverlay and SpatialIndex the
+	 * search reads features from, the latitudes, longitudes, parents, directions
+	 * and amounts of moves of the positions found, the amount of those positions,
+	 * the least amount of moves found to every cell, and the queue of positions to
+	 * expand, bucketed by their estimated amount of moves.
+	 */
+	private final FeatureOverlay features;
+	private final SpatialIndex index;
+	private double[] lat = new double[256];
+	private double[] lon = new double[256];
+	private int[] parent = new int[256];
+	private byte[] direction = new byte[256];
+	private int[] moves = new int[256];
+	private int size;
+	private final int[] cells = new int[ROWS * COLS];
+	private IntList[] buckets = new IntList[0];
+
+	/**
+	 * Constructor for the LatticeSearch class.
+	 *
+	 * @param features This is the FeatureOverlay holding the features, whose
+	 *                 dangers are avoided while they hold negative coins or
+	 *                 power.
+	 * @param index    This is the SpatialIndex over the features.
+	 */
+	public LatticeSearch(FeatureOverlay features, SpatialIndex index) {
+		this.features = features;
+		this.index = index;
+	}
+
+	/**
+	 * This method searches for the shortest sequence of moves taking a drone from a
+	 * position to charging range of a lighthouse with A*.
+	 *
+	 * @param latitude  This is the starting latitude of the drone.
+	 * @param longitude This is the starting longitude of the drone.
+	 * @param target    This is the index of the lighthouse.
+	 * @return The directions of the moves, or null if no sequence of moves
+	 *         reaches the lighthouse.
+	 */
+	public Direction[] path(double latitude, double longitude, int target) {
+		double targetLat = features.latitude(target);
+		double targetLon = features.longitude(target);
+		reset(latitude, longitude);
+		push(0, estimate(latitude, longitude, targetLat, targetLon));
+		for (int f = 0; f < buckets.length; f++) {
+			IntList bucket = buckets[f];
+			for (int k = 0; bucket != null && k < bucket.size(); k++) {
+				int node = bucket.get(k);
+				if (node != 0 && reached(node) == target)
+					return directions(node);
+				if (stale(node))
+					continue;
+				for (Direction d : Direction.VALUES) {
+					int child = expand(node, d);
+					if (child != -1)
+						push(child, moves[child] + estimate(lat[child], lon[child], targetLat, targetLon));
+				}
+				bucket = buckets[f];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * This method searches for the least amount of moves taking a drone from a
+	 * position to charging range of each of several lighthouses, with a single
+	 * breadth-first search.
+	 *
+	 * @param latitude  This is the starting latitude of the drone.
+	 * @param longitude This is the starting longitude of the drone.
+	 * @param targets   These are the indices of the lighthouses.
+	 * @param out       This is the array the amounts of moves are stored in, in
+	 *                  the order of the lighthouses, where -1 stands for a
+	 *                  lighthouse no sequence of moves reaches.
+	 */
+	public void moves(double latitude, double longitude, int[] targets, int[] out) {
+		int[] slotOf = new int[features.size()];
+		Arrays.fill(slotOf, -1);
+		for (int k = 0; k < targets.length; k++)
+			slotOf[targets[k]] = k;
+		Arrays.fill(out, 0, targets.length, -1);
+		int left = targets.length;
+		reset(latitude, longitude);
+		push(0, 0);
+		for (int f = 0; f < buckets.length && left > 0; f++) {
+			IntList bucket = buckets[f];
+			for (int k = 0; bucket != null && k < bucket.size() && left > 0; k++) {
+				int node = bucket.get(k);
+				int reached = node == 0 ? -1 : reached(node);
+				if (reached != -1 && slotOf[reached] != -1 && out[slotOf[reached]] == -1) {
+					out[slotOf[reached]] = moves[node];
+					left--;
+				}
+				if (stale(node))
+					continue;
+				for (Direction d : Direction.VALUES) {
+					int child = expand(node, d);
+					if (child != -1)
+						push(child, moves[child]);
+				}
+				bucket = buckets[f];
+			}
+		}
+		return;
+	}
+
+	/**
+	 * This method returns whether a drone at a position would charge from a danger,
+	 * i.e. whether the closest feature in charging range is a danger holding
+	 * negative coins or power.
+	 *
+	 * @param latitude  This is the latitude of the position.
+	 * @param longitude This is the longitude of the position.
+	 * @return true if the drone would charge from a danger otherwise false.
+	 */
+	public boolean inDanger(double latitude, double longitude) {
+		int closest = index.nearest(latitude, longitude, 0.00025);
+		return closest != -1 && features.isChargedDanger(closest);
+	}
+
+	/**
+	 * This is a support method returning the feature a drone charges from at a
+	 * position found by the search, or -1 if there is none.
+	 */
+	private int reached(int node) {
+		return index.nearest(lat[node], lon[node], 0.00025);
+	}
+
+	/**
+	 * This is a support method returning the amount of moves of the TourPlanner
+	 * class from a position to charging range of a lighthouse, rounded up, less a
+	 * small margin covering the difference between the two distances to the edge of
+	 * charging range, so it never overestimates the moves left.
+	 */
+	private static int estimate(double latitude, double longitude, double targetLat, double targetLon) {
+		return (int) Math.ceil(TourPlanner.moves(latitude, longitude, targetLat, targetLon) - 0.02);
+	}
+
+	/**
+	 * This is a support method clearing the positions found and the queue, and
+	 * adding the starting position.
+	 */
+	private void reset(double latitude, double longitude) {
+		size = 0;
+		Arrays.fill(cells, Integer.MAX_VALUE);
+		for (IntList bucket : buckets) {
+			if (bucket != null)
+				bucket.clear();
+		}
+		add(latitude, longitude, -1, -1, 0);
+		cells[cell(latitude, longitude)] = 0;
+		return;
+	}
+
+	/**
+	 * This is a support method returning whether a position was reached by fewer
+	 * moves after it was queued, through another position in the same cell.
+	 */
+	private boolean stale(int node) {
+		return cells[cell(lat[node], lon[node])] < moves[node];
+	}
+
+	/**
+	 * This is a support method adding the position reached by a move from a
+	 * position found by the search, unless it is outside the play area, the drone
+	 * would charge from a danger there or its cell has already been reached by as
+	 * few moves.
+	 *
+	 * @return The new position, or -1 if it isn't added.
+	 */
+	private int expand(int node, Direction d) {
+		double latitude = lat[node] + d.latOffset;
+		double longitude = lon[node] + d.longOffset;
+		if (!Position.inPlayArea(latitude, longitude))
+			return -1;
+		int cost = moves[node] + 1;
+		int cell = cell(latitude, longitude);
+		if (cells[cell] <= cost || inDanger(latitude, longitude))
+			return -1;
+		cells[cell] = cost;
+		return add(latitude, longitude, node, d.ordinal(), cost);
+	}
+
+	/**
+	 * This is a support method returning the index of the cell holding a position,
+	 * where a starting position outside the play area is taken to be in the closest
+	 * cell.
+	 */
+	private static int cell(double latitude, double longitude) {
+		long row = Math.min(ROWS - 1, Math.max(0, Math.round(latitude / QUANTUM) - FIRST_ROW));
+		long col = Math.min(COLS - 1, Math.max(0, Math.round(longitude / QUANTUM) - FIRST_COL));
+		return (int) row * COLS + (int) col;
+	}
+
+	/**
+	 * This is a support method storing a position found by the search.
+	 *
+	 * @return The index of the position.
+	 */
+	private int add(double latitude, double longitude, int from, int d, int cost) {
+		if (size == lat.length) {
+			lat = Arrays.copyOf(lat, size * 2);
+			lon = Arrays.copyOf(lon, size * 2);
+			parent = Arrays.copyOf(parent, size * 2);
+			direction = Arrays.copyOf(direction, size * 2);
+			moves = Arrays.copyOf(moves, size * 2);
+		}
+		lat[size] = latitude;
+		lon[size] = longitude;
+		parent[size] = from;
+		direction[size] = (byte) d;
+		moves[size] = cost;
+		return size++;
+	}
+
+	/**
+	 * This is a support method queueing a position with its estimated amount of
+	 * moves.
+	 */
+	private void push(int node, int priority) {
+		if (priority >= buckets.length)
+			buckets = Arrays.copyOf(buckets, Math.max(priority + 1, buckets.length * 2));
+		if (buckets[priority] == null)
+			buckets[priority] = new IntList();
+		buckets[priority].add(node);
+		return;
+	}
+
+	/**
+	 * This is a support method returning the directions of the moves leading to a
+	 * position found by the search.
+	 */
+	private Direction[] directions(int node) {
+		Direction[] path = new Direction[moves[node]];
+		for (int k = path.length - 1; k >= 0; k--, node = parent[node])
+			path[k] = Direction.VALUES[direction[node]];
+		return path;
+	}
+}
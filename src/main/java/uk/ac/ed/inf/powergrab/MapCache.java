@@ -0,0 +1,400 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+/**
+ * This class keeps a local on-disk cache of target maps in front of a
+ * MapSource. The cache is content-addressed: the geojson source of every map is
+ * stored once under the SHA-256 hash of its contents in the objects directory,
+ * and the index directory holds one entry per date recording the hash of its
+ * map, the ETag and Last-Modified validators it was served with and the time it
+ * was last checked with the source.
+ *
+ * A map checked less than maxAge milliseconds ago is read from disk without
+ * contacting the source. An older entry is revalidated with a conditional fetch
+ * which, if the map hasn't changed, only refreshes the time of the check, and
+ * the cached copy is served if the source can't be reached. In offline mode the
+ * source is never contacted and only cached maps are available. Files are
+ * written to a temporary file and moved into place, so concurrent runs sharing
+ * the cache never read a partially written file.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class MapCache {
+	/**
+	 * The default time after which a cached map is revalidated, one day.
+	 */
+	public static final long DEFAULT_MAX_AGE = 24L * 60 * 60 * 1000;
+
+	/**
+	 * This class has 5 private attributes: the directories holding the cached maps
+	 * and the entries of every date, the source maps are fetched from, whether the
+	 * cache is in offline mode, and the time after which a cached map is
+	 * revalidated, along with a Logger object, logger, to log statements in this
+	 * class.
+	 */
+	private final File objects;
+	private final File index;
+	private final MapSource source;
+	private final boolean offline;
+	private final long maxAge;
+	private static final Logger logger = Logger.getLogger("App.MapCache");
+
+	/**
+	 * Constructor for the MapCache class.
+	 *
+	 * @param dir     This is the directory holding the cache.
+	 * @param source  This is the source maps are fetched from.
+	 * @param offline This is whether the source must never be contacted.
+	 * @param maxAge  This is the time in milliseconds after which a cached map is
+	 *                revalidated with the source.
+	 */
+	public MapCache(File dir, MapSource source, boolean offline, long maxAge) {
+		this.objects = new File(dir, "objects");
+		this.index = new File(dir, "index");
+		this.source = source;
+		this.offline = offline;
+		this.maxAge = maxAge;
+	}
+
+	/**
+	 * This method loads and parses the target map of a date, from the cache if
+	 * possible and from the source otherwise, in a single pass over its bytes. It
+	 * throws an IllegalArgumentException if the map is neither cached nor
+	 * available from the source, or if it is not a valid map. The time taken to
+	 * get and to parse the map is recorded in the GLOBAL metrics, and as flight
+	 * events if they are enabled.
+	 *
+	 * @param date This is the date of the map as year/month/day.
+	 * @return A TargetMap object holding the features of the target map.
+	 */
+	public TargetMap load(String date) {
+		return parse(fetch(date));
+	}
+
+	/**
+	 * This method returns the geojson source of the target map of a date like the
+	 * get() method, recording the time taken in the GLOBAL metrics, and as a
+	 * flight event if they are enabled. It is the first half of the load()
+	 * method, for callers getting and parsing maps on different threads.
+	 *
+	 * @param date This is the date of the map as year/month/day.
+	 * @return The geojson source of the target map as UTF-8 bytes.
+	 */
+	public byte[] fetch(String date) {
+		return fetch(date, Metrics.GLOBAL);
+	}
+
+	/**
+	 * This method returns the geojson source of the target map of a date like the
+	 * method above, recording the time taken in the input Metrics object instead
+	 * of the GLOBAL metrics.
+	 *
+	 * @param date    This is the date of the map as year/month/day.
+	 * @param metrics This is the Metrics object the time taken is recorded in.
+	 * @return The geojson source of the target map as UTF-8 bytes.
+	 */
+	public byte[] fetch(String date, Metrics metrics) {
+		Object event = FlightEvents.enabled ? FlightEvents.beginMapLoad() : null;
+		long start = System.nanoTime();
+		byte[] source = get(date);
+		metrics.recordMapFetch(System.nanoTime() - start);
+		if (event != null)
+			FlightEvents.endMapLoad(event, date, source.length);
+		return source;
+	}
+
+	/**
+	 * This method parses the geojson source of a target map, recording the time
+	 * taken in the GLOBAL metrics, and as a flight event if they are enabled. It
+	 * is the second half of the load() method, and throws an
+	 * IllegalArgumentException if the source is not a valid map.
+	 *
+	 * @param source This is the geojson source of the target map.
+	 * @return A TargetMap object holding the features of the target map.
+	 */
+	public static TargetMap parse(byte[] source) {
+		return parse(source, Metrics.GLOBAL);
+	}
+
+	/**
+	 * This method parses the geojson source of a target map like the method
+	 * above, recording the time taken in the input Metrics object instead of the
+	 * GLOBAL metrics.
+	 *
+	 * @param source  This is the geojson source of the target map.
+	 * @param metrics This is the Metrics object the time taken is recorded in.
+	 * @return A TargetMap object holding the features of the target map.
+	 */
+	public static TargetMap parse(byte[] source, Metrics metrics) {
+		Object event = FlightEvents.enabled ? FlightEvents.beginMapParse() : null;
+		long start = System.nanoTime();
+		TargetMap map = MapParser.parse(new ByteArrayInputStream(source));
+		metrics.recordMapParse(System.nanoTime() - start);
+		if (event != null)
+			FlightEvents.endMapParse(event, map.features.size());
+		return map;
+	}
+
+	/**
+	 * This method returns the geojson source of the target map of a date, from
+	 * the cache if possible and from the source otherwise. It throws an
+	 * IllegalArgumentException if the map is neither cached nor available from the
+	 * source.
+	 *
+	 * @param date This is the date of the map as year/month/day.
+	 * @return The geojson source of the target map as UTF-8 bytes.
+	 */
+	public byte[] get(String date) {
+		Properties entry = readEntry(date);
+		byte[] cached = entry == null ? null : readObject(entry.getProperty("sha256"));
+		if (cached == null)
+			entry = null;
+		long now = System.currentTimeMillis();
+
+		if (offline || (cached != null && now - Long.parseLong(entry.getProperty("checked", "0")) < maxAge)) {
+			if (cached == null) {
+				logger.severe(String.format("Map %s is not cached!", date));
+				throw new IllegalArgumentException("Map not available offline!");
+			}
+			logger.fine(String.format("Map %s read from cache", date));
+			return cached;
+		}
+
+		try {
+			return refresh(date, entry, cached, now, false);
+		} catch (IOException e) {
+			if (cached != null) {
+				logger.warning(String.format("Failed to revalidate map %s, using cached copy: %s", date, e.getMessage()));
+				return cached;
+			}
+			logger.severe(String.format("Failed to get map %s: %s", date, e.getMessage()));
+			throw new IllegalArgumentException("Invalid map from URL!");
+		}
+	}
+
+	/**
+	 * @return true if the cache is in offline mode.
+	 */
+	public boolean isOffline() {
+		return offline;
+	}
+
+	/**
+	 * This method makes sure the cache holds a fresh copy of the target map of a
+	 * date, so it can later be loaded without contacting the source. A map
+	 * checked less than maxAge milliseconds ago is left as it is, an older one is
+	 * revalidated and a missing one is fetched. Unlike get(), a map that can't be
+	 * fetched is reported by throwing an IOException even if a stale copy is
+	 * cached, so the caller can retry, and a newly fetched map is parsed before it
+	 * is stored, throwing an IllegalArgumentException if it is not a valid map,
+	 * so every map stored by this method can be loaded. It throws an
+	 * IllegalArgumentException in offline mode.
+	 *
+	 * @param date This is the date of the map as year/month/day.
+	 * @return true if the source was contacted, or false if the cached copy was
+	 *         fresh.
+	 * @throws IOException If the map can't be fetched.
+	 */
+	public boolean prefetch(String date) throws IOException {
+		if (offline)
+			throw new IllegalArgumentException("Can't prefetch maps offline!");
+		Properties entry = readEntry(date);
+		byte[] cached = entry == null ? null : readObject(entry.getProperty("sha256"));
+		if (cached == null)
+			entry = null;
+		long now = System.currentTimeMillis();
+		if (cached != null && now - Long.parseLong(entry.getProperty("checked", "0")) < maxAge)
+			return false;
+		refresh(date, entry, cached, now, true);
+		return true;
+	}
+
+	/**
+	 * This method fetches the target map of a date from the source, conditionally
+	 * on the validators of the cached copy if there is one, and updates the cache
+	 * with the result.
+	 *
+	 * @param date     This is the date of the map as year/month/day.
+	 * @param entry    This is the index entry of the cached copy, or null.
+	 * @param cached   This is the cached copy, or null.
+	 * @param now      This is the time of the check.
+	 * @param validate This is whether a newly fetched map is parsed before it is
+	 *                 stored.
+	 * @return The geojson source of the target map as UTF-8 bytes.
+	 * @throws IOException If the map can't be fetched or stored.
+	 */
+	private byte[] refresh(String date, Properties entry, byte[] cached, long now, boolean validate)
+			throws IOException {
+		MapSource.Result result = source.fetch(date, entry == null ? null : entry.getProperty("etag"),
+				entry == null ? null : entry.getProperty("lastModified"));
+		if (result.source == null) {
+			if (cached == null)
+				throw new IOException("Not modified response without a cached copy");
+			entry.setProperty("checked", Long.toString(now));
+			writeEntry(date, entry);
+			logger.fine(String.format("Map %s revalidated", date));
+			return cached;
+		}
+		if (validate)
+			MapParser.parse(new ByteArrayInputStream(result.source));
+		Properties fresh = new Properties();
+		fresh.setProperty("sha256", writeObject(result.source));
+		if (result.etag != null)
+			fresh.setProperty("etag", result.etag);
+		if (result.lastModified != null)
+			fresh.setProperty("lastModified", result.lastModified);
+		fresh.setProperty("checked", Long.toString(now));
+		writeEntry(date, fresh);
+		logger.fine(String.format("Map %s fetched from source", date));
+		return result.source;
+	}
+
+	/**
+	 * This method reads the index entry of a date.
+	 *
+	 * @param date This is the date of the map.
+	 * @return The entry, or null if the date has no readable entry.
+	 */
+	private Properties readEntry(String date) {
+		File file = entryFile(date);
+		if (!file.isFile())
+			return null;
+		Properties entry = new Properties();
+		try (InputStream in = new FileInputStream(file)) {
+			entry.load(in);
+		} catch (IOException e) {
+			logger.warning("Ignoring unreadable cache entry " + file);
+			return null;
+		}
+		return entry.getProperty("sha256") == null ? null : entry;
+	}
+
+	/**
+	 * This method writes the index entry of a date.
+	 *
+	 * @param date  This is the date of the map.
+	 * @param entry This is the entry to write.
+	 * @throws IOException If the entry can't be written.
+	 */
+	private void writeEntry(String date, Properties entry) throws IOException {
+		File file = entryFile(date);
+		File tmp = tempFile(index);
+		try (OutputStream out = new FileOutputStream(tmp)) {
+			entry.store(out, date);
+		}
+		moveIntoPlace(tmp, file);
+		return;
+	}
+
+	/**
+	 * This method reads a cached map and checks it against its hash.
+	 *
+	 * @param hash This is the SHA-256 hash of the map.
+	 * @return The geojson source of the map, or null if it is missing or corrupt.
+	 */
+	private byte[] readObject(String hash) {
+		if (hash == null)
+			return null;
+		File file = new File(objects, hash + ".geojson");
+		if (!file.isFile())
+			return null;
+		try {
+			byte[] bytes = Files.readAllBytes(file.toPath());
+			if (!hash.equals(sha256(bytes))) {
+				logger.warning("Ignoring corrupt cached map " + file);
+				return null;
+			}
+			return bytes;
+		} catch (IOException e) {
+			logger.warning("Ignoring unreadable cached map " + file);
+			return null;
+		}
+	}
+
+	/**
+	 * This method stores a map in the objects directory, unless a map with the
+	 * same contents is already stored.
+	 *
+	 * @param bytes This is the geojson source of the map.
+	 * @return The SHA-256 hash of the map.
+	 * @throws IOException If the map can't be written.
+	 */
+	private String writeObject(byte[] bytes) throws IOException {
+		String hash = sha256(bytes);
+		File file = new File(objects, hash + ".geojson");
+		if (!file.isFile()) {
+			File tmp = tempFile(objects);
+			Files.write(tmp.toPath(), bytes);
+			moveIntoPlace(tmp, file);
+		}
+		return hash;
+	}
+
+	/**
+	 * @param date This is the date of a map as year/month/day.
+	 * @return The file holding the index entry of the date.
+	 */
+	private File entryFile(String date) {
+		return new File(index, date.replace('/', '-') + ".properties");
+	}
+
+	/**
+	 * This method creates a temporary file in a directory of the cache, creating
+	 * the directory if needed.
+	 *
+	 * @param dir This is the directory.
+	 * @return The temporary file.
+	 * @throws IOException If the file can't be created.
+	 */
+	private static File tempFile(File dir) throws IOException {
+		dir.mkdirs();
+		return File.createTempFile("tmp", ".part", dir);
+	}
+
+	/**
+	 * This method moves a temporary file to its final name, atomically where the
+	 * file system supports it.
+	 *
+	 * @param tmp  This is the temporary file.
+	 * @param file This is the final file.
+	 * @throws IOException If the file can't be moved.
+	 */
+	private static void moveIntoPlace(File tmp, File file) throws IOException {
+		try {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+		}
+		return;
+	}
+
+	/**
+	 * @param bytes This is the contents to hash.
+	 * @return The SHA-256 hash of the contents as lowercase hexadecimal.
+	 */
+	private static String sha256(byte[] bytes) {
+		try {
+			StringBuilder hex = new StringBuilder(64);
+			for (byte b : MessageDigest.getInstance("SHA-256").digest(bytes))
+				hex.append(String.format("%02x", b));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
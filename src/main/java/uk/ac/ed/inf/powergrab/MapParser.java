@@ -0,0 +1,225 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.logging.Logger;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+/**
+ * This class parses target maps from their geojson source in a single
+ * streaming pass. It consists exclusively of static methods and is made final
+ * to prevent it from being extended.
+ *
+ * The map is read token by token with a JsonReader, and every feature is
+ * appended to the feature store as soon as it has been read, so neither the
+ * source of the map nor a tree of any part of the document is ever held in
+ * memory. The only parts of a feature kept besides its columns are its
+ * properties object and its coordinates array, which are copied token by token
+ * to compact JSON text while their values are read, and are what the output
+ * geojson file reproduces. Any other member of the feature collection, of a
+ * feature or of its geometry is skipped.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public final class MapParser {
+	/**
+	 * A private attribute, logger, of type Logger is kept by this class in order to
+	 * make logging statements throughout its methods where applicable.
+	 */
+	private static final Logger logger = Logger.getLogger("App.MapParser");
+
+	/**
+	 * The amount of features the feature store is initially allocated for, which
+	 * is the amount of features on the maps served by the powergrab map server.
+	 */
+	private static final int EXPECTED_FEATURES = 50;
+
+	/**
+	 * The properties of a feature that are stored in its columns, in the order they
+	 * are passed to the feature store.
+	 */
+	private static final String[] COLUMNS = { "id", "coins", "power", "marker-symbol", "marker-color" };
+
+	/**
+	 * Make Constructor private to prevent the creation of any instances of this
+	 * class.
+	 */
+	private MapParser() {
+	};
+
+	/**
+	 * This method parses a target map from an InputStream holding its geojson
+	 * source encoded as UTF-8. The stream is not closed.
+	 *
+	 * @param in This is the InputStream holding the geojson source of the map.
+	 * @return A TargetMap object holding the features of the target map.
+	 */
+	public static TargetMap parse(InputStream in) {
+		return parse(new InputStreamReader(in, StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * This method parses a target map from a Reader holding its geojson source. It
+	 * throws an IllegalArgumentException if the source isn't a valid feature
+	 * collection of points holding the properties of powergrab features. The
+	 * reader is not closed.
+	 *
+	 * @param source This is the Reader holding the geojson source of the map.
+	 * @return A TargetMap object holding the features of the target map.
+	 */
+	public static TargetMap parse(Reader source) {
+		FeatureStore features = new FeatureStore(EXPECTED_FEATURES);
+		JsonReader reader = new JsonReader(source);
+		try {
+			reader.beginObject();
+			while (reader.hasNext()) {
+				if (reader.nextName().equals("features")) {
+					reader.beginArray();
+					while (reader.hasNext())
+						readFeature(reader, features);
+					reader.endArray();
+				} else {
+					reader.skipValue();
+				}
+			}
+			reader.endObject();
+		} catch (IOException | RuntimeException e) {
+			logger.severe(String.format("Failed to parse map after %d features: %s", features.size(), e.getMessage()));
+			throw new IllegalArgumentException("Invalid map!");
+		}
+		return new TargetMap(features);
+	}
+
+	/**
+	 * This method reads a single feature and appends it to the feature store.
+	 *
+	 * @param reader   This is the JsonReader positioned at the start of the
+	 *                 feature.
+	 * @param features This is the feature store the feature is appended to.
+	 * @throws IOException If the source can't be read or isn't valid JSON.
+	 */
+	private static void readFeature(JsonReader reader, FeatureStore features) throws IOException {
+		String[] values = new String[COLUMNS.length];
+		String[] point = new String[2];
+		String properties = null;
+		String coordinates = null;
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			if (name.equals("properties")) {
+				properties = readProperties(reader, values);
+			} else if (name.equals("geometry")) {
+				reader.beginObject();
+				while (reader.hasNext()) {
+					name = reader.nextName();
+					if (name.equals("type") && !reader.nextString().equals("Point"))
+						throw new IllegalArgumentException("Feature is not a point");
+					else if (name.equals("coordinates") && reader.peek() == JsonToken.BEGIN_ARRAY)
+						coordinates = readCoordinates(reader, point);
+					else if (!name.equals("type"))
+						reader.skipValue();
+				}
+				reader.endObject();
+			} else {
+				reader.skipValue();
+			}
+		}
+		reader.endObject();
+		if (properties == null || coordinates == null || point[1] == null)
+			throw new IllegalArgumentException("Feature without properties or coordinates");
+		for (int k = 0; k < COLUMNS.length; k++)
+			if (values[k] == null)
+				throw new IllegalArgumentException("Feature without " + COLUMNS[k]);
+
+		int i = features.add(values[0], Double.parseDouble(point[1]), Double.parseDouble(point[0]),
+				Double.parseDouble(values[1]), Double.parseDouble(values[2]), values[3], values[4]);
+		features.setSource(i, properties, coordinates);
+		return;
+	}
+
+	/**
+	 * This method copies the properties object of a feature to compact JSON text,
+	 * reading the values of the properties stored in the columns on the way.
+	 *
+	 * @param reader This is the JsonReader positioned at the start of the
+	 *               properties object.
+	 * @param values This is the array the values of the column properties are
+	 *               read into, in the order of COLUMNS, left null if missing.
+	 * @return The properties object as compact JSON text.
+	 * @throws IOException If the source can't be read or isn't valid JSON.
+	 */
+	private static String readProperties(JsonReader reader, String[] values) throws IOException {
+		StringWriter text = new StringWriter();
+		JsonWriter writer = new JsonWriter(text);
+		reader.beginObject();
+		writer.beginObject();
+		while (reader.hasNext()) {
+			String name = reader.nextName();
+			writer.name(name);
+			String value = copyScalar(reader, writer);
+			for (int k = 0; k < COLUMNS.length; k++)
+				if (COLUMNS[k].equals(name))
+					values[k] = value;
+		}
+		reader.endObject();
+		writer.endObject();
+		return text.toString();
+	}
+
+	/**
+	 * This method copies the coordinates array of a feature to compact JSON text,
+	 * reading its first two values, the longitude and latitude, on the way.
+	 *
+	 * @param reader This is the JsonReader positioned at the start of the
+	 *               coordinates array.
+	 * @param point  This is the array the longitude and latitude are read into,
+	 *               left null if missing.
+	 * @return The coordinates array as compact JSON text.
+	 * @throws IOException If the source can't be read or isn't valid JSON.
+	 */
+	private static String readCoordinates(JsonReader reader, String[] point) throws IOException {
+		StringWriter text = new StringWriter();
+		JsonWriter writer = new JsonWriter(text);
+		reader.beginArray();
+		writer.beginArray();
+		for (int k = 0; reader.hasNext(); k++) {
+			String value = copyScalar(reader, writer);
+			if (k < point.length)
+				point[k] = value;
+		}
+		reader.endArray();
+		writer.endArray();
+		return text.toString();
+	}
+
+	/**
+	 * This method copies the next value of a JsonReader to a JsonWriter.
+	 *
+	 * @param reader This is the JsonReader positioned at the start of the value.
+	 * @param writer This is the JsonWriter the value is copied to.
+	 * @return The text of the value if it is a string or a number, or null
+	 *         otherwise.
+	 * @throws IOException If the source can't be read or isn't valid JSON.
+	 */
+	private static String copyScalar(JsonReader reader, JsonWriter writer) throws IOException {
+		JsonToken token = reader.peek();
+		if (token != JsonToken.STRING && token != JsonToken.NUMBER) {
+			GeoJsonWriter.copy(reader, writer);
+			return null;
+		}
+		String value = reader.nextString();
+		if (token == JsonToken.NUMBER)
+			writer.jsonValue(value);
+		else
+			writer.value(value);
+		return value;
+	}
+}
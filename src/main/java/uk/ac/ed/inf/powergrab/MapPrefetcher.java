@@ -0,0 +1,175 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+/**
+ * This class fills a map cache with the target maps of many dates ahead of the
+ * simulations using them, such as the 365 maps of a yearly sweep. The maps are
+ * fetched concurrently by a fixed amount of worker threads, so the source is
+ * never sent more requests at once than that, and a fetch that fails is
+ * retried a few times, waiting twice as long before every new attempt, unless
+ * the source answered that it doesn't have the map. The
+ * timeouts of every attempt are those of the map source. Every map is parsed
+ * before it is stored, so once a date has been prefetched its map can be
+ * loaded from the cache, even offline, without contacting the source again.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class MapPrefetcher {
+	/**
+	 * The default amount of maps fetched at once.
+	 */
+	public static final int DEFAULT_PARALLELISM = 8;
+
+	/**
+	 * The default amount of attempts made to fetch a map.
+	 */
+	public static final int DEFAULT_ATTEMPTS = 3;
+
+	/**
+	 * The default time waited before the second attempt to fetch a map, in
+	 * milliseconds.
+	 */
+	public static final long DEFAULT_BACKOFF = 500;
+
+	/**
+	 * The format of the dates of the map source, year/month/day.
+	 */
+	private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy/MM/dd");
+
+	/**
+	 * This class has 5 private attributes: the MapCache the maps are stored in,
+	 * the amount of maps fetched at once, the amount of attempts made to fetch a
+	 * map, the time waited before the second attempt, and a Logger object,
+	 * logger, to log statements in this class.
+	 */
+	private final MapCache maps;
+	private final int parallelism;
+	private final int attempts;
+	private final long backoff;
+	private static final Logger logger = Logger.getLogger("App.MapPrefetcher");
+
+	/**
+	 * Constructor for the MapPrefetcher class. It throws an
+	 * IllegalArgumentException if the map cache is in offline mode or a setting is
+	 * out of range.
+	 *
+	 * @param maps        This is the map cache the maps are stored in.
+	 * @param parallelism This is the amount of maps fetched at once.
+	 * @param attempts    This is the amount of attempts made to fetch a map.
+	 * @param backoff     This is the time waited before the second attempt to
+	 *                    fetch a map, in milliseconds.
+	 */
+	public MapPrefetcher(MapCache maps, int parallelism, int attempts, long backoff) {
+		if (maps.isOffline()) {
+			logger.severe("Can't prefetch maps offline!");
+			throw new IllegalArgumentException("Offline map cache!");
+		}
+		if (parallelism < 1 || attempts < 1 || backoff < 0) {
+			logger.severe(String.format("Invalid prefetch settings: %d threads, %d attempts, %d ms backoff",
+					parallelism, attempts, backoff));
+			throw new IllegalArgumentException("Invalid prefetch settings!");
+		}
+		this.maps = maps;
+		this.parallelism = parallelism;
+		this.attempts = attempts;
+		this.backoff = backoff;
+	}
+
+	/**
+	 * This method returns the dates of every day in a range, in the
+	 * year/month/day format of RunSpec.mapDate().
+	 *
+	 * @param first This is the first day of the range.
+	 * @param last  This is the last day of the range, included.
+	 * @return The List of dates, in order.
+	 */
+	public static List<String> dateRange(LocalDate first, LocalDate last) {
+		List<String> dates = new ArrayList<>();
+		for (LocalDate day = first; !day.isAfter(last); day = day.plusDays(1))
+			dates.add(day.format(DATE_FORMAT));
+		return dates;
+	}
+
+	/**
+	 * This method prefetches the maps of a List of dates into the cache and
+	 * returns the dates whose map couldn't be prefetched, either because every
+	 * attempt to fetch it failed or because it is not a valid map. It returns once
+	 * every date has been handled.
+	 *
+	 * @param dates This is the List of dates as year/month/day.
+	 * @return The List of dates that failed, in the order of the input.
+	 */
+	public List<String> prefetch(List<String> dates) {
+		ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+		List<Future<Boolean>> futures = new ArrayList<>();
+		for (final String date : dates)
+			futures.add(pool.submit(() -> prefetch(date)));
+		pool.shutdown();
+
+		List<String> failed = new ArrayList<>();
+		int contacted = 0;
+		for (int i = 0; i < dates.size(); i++) {
+			try {
+				if (futures.get(i).get())
+					contacted++;
+			} catch (ExecutionException e) {
+				failed.add(dates.get(i));
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				pool.shutdownNow();
+				failed.addAll(dates.subList(i, dates.size()));
+				break;
+			}
+		}
+		logger.info(String.format("Prefetched %d maps: %d fetched or revalidated, %d already fresh, %d failed",
+				dates.size(), contacted, dates.size() - contacted - failed.size(), failed.size()));
+		return failed;
+	}
+
+	/**
+	 * This is a support method prefetching the map of a single date, retrying
+	 * after a failed fetch until the amount of attempts is exhausted. A map that
+	 * the source doesn't have or that is not valid is not retried.
+	 *
+	 * @param date This is the date of the map as year/month/day.
+	 * @return true if the source was contacted, or false if the cached copy was
+	 *         fresh.
+	 * @throws IOException          If the last attempt to fetch the map failed.
+	 * @throws InterruptedException If the thread was interrupted while waiting to
+	 *                              retry.
+	 */
+	private boolean prefetch(String date) throws IOException, InterruptedException {
+		long wait = backoff;
+		for (int attempt = 1;; attempt++) {
+			try {
+				return maps.prefetch(date);
+			} catch (MapSource.MapUnavailableException e) {
+				logger.warning(String.format("Map %s unavailable: %s", date, e.getMessage()));
+				throw e;
+			} catch (IOException e) {
+				if (attempt >= attempts) {
+					logger.warning(String.format("Failed to prefetch map %s after %d attempts: %s", date, attempt,
+							e.getMessage()));
+					throw e;
+				}
+				logger.fine(String.format("Attempt %d to prefetch map %s failed: %s", attempt, date, e.getMessage()));
+			} catch (IllegalArgumentException e) {
+				logger.warning(String.format("Invalid map %s: %s", date, e.getMessage()));
+				throw e;
+			}
+			Thread.sleep(wait);
+			wait *= 2;
+		}
+	}
+}
@@ -0,0 +1,61 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+
+/**
+ * This interface is implemented by the places target maps can be fetched from,
+ * such as the powergrab map server, a local stand-in HTTP server or a local
+ * directory. Maps are identified by their date, in the year/month/day format of
+ * RunSpec.mapDate(). A fetch can be made conditional on the validators of a
+ * previously fetched copy, in which case the source may answer that the map has
+ * not been modified instead of sending it again. A source that answers it
+ * doesn't have a map throws a MapUnavailableException, so callers can tell that
+ * failure apart from those that may not happen again, such as a timeout.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public interface MapSource {
+	/**
+	 * This class holds the result of a fetch: the geojson source of the map as
+	 * UTF-8 bytes, or null if the map has not been modified since the copy the
+	 * validators belong to, and the validators of the map, either of which may be
+	 * null.
+	 */
+	public static final class Result {
+		public final byte[] source;
+		public final String etag;
+		public final String lastModified;
+
+		public Result(byte[] source, String etag, String lastModified) {
+			this.source = source;
+			this.etag = etag;
+			this.lastModified = lastModified;
+		}
+	}
+
+	/**
+	 * This class is the IOException thrown when the source answers that it doesn't
+	 * have the map of a date or won't serve it, so fetching it again won't help.
+	 */
+	public static final class MapUnavailableException extends IOException {
+		private static final long serialVersionUID = 1L;
+
+		public MapUnavailableException(String message) {
+			super(message);
+		}
+	}
+
+	/**
+	 * This method fetches the target map of a date.
+	 *
+	 * @param date         This is the date of the map as year/month/day.
+	 * @param etag         This is the ETag of the cached copy of the map, or null.
+	 * @param lastModified This is the Last-Modified validator of the cached copy of
+	 *                     the map, or null.
+	 * @return The Result of the fetch.
+	 * @throws MapUnavailableException If the source doesn't have the map.
+	 * @throws IOException             If the map can't be fetched.
+	 */
+	Result fetch(String date, String etag, String lastModified) throws IOException;
+}
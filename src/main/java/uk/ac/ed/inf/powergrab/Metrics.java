@@ -0,0 +1,231 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.lang.management.ManagementFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import com.google.gson.JsonObject;
+
+/**
+ * This class collects the metrics describing where simulations spend their
+ * time: histograms of the time taken to fetch and to parse a target map, to
+ * compute each move and to report it to the output writers, and of the amount
+ * of index entries visited by each scan for features in charging range, along
+ * with counters of runs, distance computations, and the retargets and
+ * stuck-escapes of Stateful drones.
+ *
+ * Every drone records its own metrics into a Metrics object written only by the
+ * thread flying it, without any synchronisation, which is merged into the
+ * GLOBAL metrics of the JVM once the flight is over, or into the metrics of
+ * its batch, which are summarised in JSON at the end of the batch and then
+ * merged into the GLOBAL metrics. The GLOBAL metrics are exposed through JMX
+ * and summarised in JSON at the end of a single run. Reading and merging
+ * Metrics objects is synchronised.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class Metrics implements MetricsMXBean {
+	/**
+	 * The metrics of every simulation run by this JVM.
+	 */
+	public static final Metrics GLOBAL = new Metrics();
+
+	/**
+	 * The name the GLOBAL metrics are registered under with the platform MBean
+	 * server.
+	 */
+	public static final String OBJECT_NAME = "uk.ac.ed.inf.powergrab:type=Metrics";
+
+	/**
+	 * This class has 5 final histograms, mapFetchNanos, mapParseNanos, moveNanos,
+	 * outputNanos and inRangeVisited, 4 long counters, runs, distanceCalls,
+	 * retargets and stuckEscapes, and a Logger object, logger, to log statements
+	 * in this class. The histograms and counters are package-private so the
+	 * drones can update them directly.
+	 */
+	final Histogram mapFetchNanos = new Histogram();
+	final Histogram mapParseNanos = new Histogram();
+	final Histogram moveNanos = new Histogram();
+	final Histogram outputNanos = new Histogram();
+	final Histogram inRangeVisited = new Histogram();
+	long runs;
+	long distanceCalls;
+	long retargets;
+	long stuckEscapes;
+	private static final Logger logger = Logger.getLogger("App.Metrics");
+
+	/**
+	 * This method registers the GLOBAL metrics with the platform MBean server. It
+	 * does nothing if they are already registered, and only logs a warning if
+	 * they can't be registered.
+	 */
+	public static void registerMBean() {
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+		} catch (InstanceAlreadyExistsException e) {
+			logger.fine("Metrics MBean already registered");
+		} catch (JMException e) {
+			logger.warning("Failed to register metrics MBean: " + e.getMessage());
+		}
+		return;
+	}
+
+	/**
+	 * This method records the time taken to get the source of a target map, from
+	 * the cache or from the map source.
+	 *
+	 * @param nanos This is the time taken, in nanoseconds.
+	 */
+	public synchronized void recordMapFetch(long nanos) {
+		mapFetchNanos.record(nanos);
+		return;
+	}
+
+	/**
+	 * This method records the time taken to parse the source of a target map.
+	 *
+	 * @param nanos This is the time taken, in nanoseconds.
+	 */
+	public synchronized void recordMapParse(long nanos) {
+		mapParseNanos.record(nanos);
+		return;
+	}
+
+	/**
+	 * This method adds all metrics recorded by another Metrics object to this one.
+	 * The other object must no longer be written to, as is the case for the
+	 * metrics of a drone once its flight is over.
+	 *
+	 * @param other This is the Metrics object to add.
+	 */
+	public synchronized void merge(Metrics other) {
+		mapFetchNanos.merge(other.mapFetchNanos);
+		mapParseNanos.merge(other.mapParseNanos);
+		moveNanos.merge(other.moveNanos);
+		outputNanos.merge(other.outputNanos);
+		inRangeVisited.merge(other.inRangeVisited);
+		runs += other.runs;
+		distanceCalls += other.distanceCalls;
+		retargets += other.retargets;
+		stuckEscapes += other.stuckEscapes;
+		return;
+	}
+
+	/**
+	 * This method returns the amount of moves recorded.
+	 *
+	 * @return The amount of moves.
+	 */
+	public synchronized long moves() {
+		return moveNanos.count();
+	}
+
+	/**
+	 * This method returns the mean time taken to compute a move.
+	 *
+	 * @return The mean time per move in nanoseconds, or 0 if no move was recorded.
+	 */
+	public synchronized double meanMoveNanos() {
+		return moveNanos.mean();
+	}
+
+	/**
+	 * This method returns the histograms of this object keyed by name.
+	 *
+	 * @return The Map of histogram names to histograms.
+	 */
+	private Map<String, Histogram> histograms() {
+		Map<String, Histogram> histograms = new LinkedHashMap<>();
+		histograms.put("mapFetchNanos", mapFetchNanos);
+		histograms.put("mapParseNanos", mapParseNanos);
+		histograms.put("moveNanos", moveNanos);
+		histograms.put("outputNanos", outputNanos);
+		histograms.put("inRangeVisited", inRangeVisited);
+		return histograms;
+	}
+
+	/**
+	 * This method returns the counters of this object keyed by name.
+	 *
+	 * @return The Map of counter names to values.
+	 */
+	private Map<String, Long> counters() {
+		Map<String, Long> counters = new LinkedHashMap<>();
+		counters.put("runs", runs);
+		counters.put("distanceCalls", distanceCalls);
+		counters.put("retargets", retargets);
+		counters.put("stuckEscapes", stuckEscapes);
+		return counters;
+	}
+
+	/**
+	 * This is a support method returning the statistics of a histogram keyed by
+	 * name.
+	 *
+	 * @param histogram This is the histogram.
+	 * @return The Map of statistic names to values.
+	 */
+	private static Map<String, Long> statistics(Histogram histogram) {
+		Map<String, Long> statistics = new LinkedHashMap<>();
+		statistics.put("count", histogram.count());
+		statistics.put("sum", histogram.sum());
+		statistics.put("mean", Math.round(histogram.mean()));
+		statistics.put("min", histogram.min());
+		statistics.put("p50", histogram.percentile(50));
+		statistics.put("p90", histogram.percentile(90));
+		statistics.put("p99", histogram.percentile(99));
+		statistics.put("max", histogram.max());
+		return statistics;
+	}
+
+	@Override
+	public synchronized Map<String, Long> getValues() {
+		Map<String, Long> values = new LinkedHashMap<>(counters());
+		for (Map.Entry<String, Histogram> histogram : histograms().entrySet()) {
+			for (Map.Entry<String, Long> statistic : statistics(histogram.getValue()).entrySet())
+				values.put(histogram.getKey() + "." + statistic.getKey(), statistic.getValue());
+		}
+		return values;
+	}
+
+	/**
+	 * This method returns the metrics as a JSON object holding the counters and
+	 * one nested object per histogram holding its statistics.
+	 *
+	 * @return The JsonObject summarising the metrics.
+	 */
+	public synchronized JsonObject toJson() {
+		JsonObject json = new JsonObject();
+		for (Map.Entry<String, Long> counter : counters().entrySet())
+			json.addProperty(counter.getKey(), counter.getValue());
+		for (Map.Entry<String, Histogram> histogram : histograms().entrySet()) {
+			JsonObject statistics = new JsonObject();
+			for (Map.Entry<String, Long> statistic : statistics(histogram.getValue()).entrySet())
+				statistics.addProperty(statistic.getKey(), statistic.getValue());
+			json.add(histogram.getKey(), statistics);
+		}
+		return json;
+	}
+
+	@Override
+	public String getSummary() {
+		return toJson().toString();
+	}
+
+	@Override
+	public synchronized void reset() {
+		for (Histogram histogram : histograms().values())
+			histogram.reset();
+		runs = 0;
+		distanceCalls = 0;
+		retargets = 0;
+		stuckEscapes = 0;
+		return;
+	}
+}
@@ -0,0 +1,36 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Map;
+
+/**
+ * This interface is the management interface of the Metrics class, through
+ * which the metrics of all simulations run by the JVM can be read with any JMX
+ * client, such as jconsole, under the name
+ * uk.ac.ed.inf.powergrab:type=Metrics.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public interface MetricsMXBean {
+	/**
+	 * This method returns every counter and every statistic of every histogram,
+	 * keyed by name. The statistics of a histogram are named after it followed by
+	 * a dot and count, sum, mean, min, p50, p90, p99 or max.
+	 *
+	 * @return The Map of metric names to values.
+	 */
+	Map<String, Long> getValues();
+
+	/**
+	 * This method returns the metrics as a single line of JSON, as written at the
+	 * end of a run.
+	 *
+	 * @return The JSON summary of the metrics.
+	 */
+	String getSummary();
+
+	/**
+	 * This method clears all metrics.
+	 */
+	void reset();
+}
@@ -0,0 +1,402 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.logging.Level;
+
+/**
+ * This class extends the abstract Drone class. It represents the Monte Carlo
+ * tree search drone, which chooses every move by simulating many flights of a
+ * stateless drone from its current state, and defines the abstract method
+ * nextMove() in the superclass.
+ *
+ * Every iteration of the search walks down a tree of moves, choosing at every
+ * node the move with the best upper confidence bound (UCT), adds a node for a
+ * move not tried yet, and then lets the stateless drone fly from there for a
+ * bounded amount of moves. The coins gained by the end of that rollout, plus
+ * half the power gained, so charging from dangers counts against a move even
+ * before the drone has any coins to lose, are added to every node on the way,
+ * counted from the state the move into the node was taken in. Once the budget
+ * of the move is spent, the drone takes the move tried most often, or the best
+ * one on average among those tried as often, and the subtree below it becomes
+ * the tree of the next move, so the iterations spent on it aren't lost. Since
+ * the rewards of a node don't include what was gained before its move, they are
+ * still right once the moves above it have been taken.
+ *
+ * The search runs on several workers at once (root parallelism). Every worker
+ * has its own World over the target map, its own stateless drone, kept in the
+ * same state as this drone by replaying its moves, its own tree and its own
+ * pseudo-random number generator, seeded from this drone's, so workers share
+ * nothing while they search and the tries of the first move are only added up
+ * at the end. Iterations and rollouts are undone through a single snapshot of
+ * the stateless drone per move, so a rollout allocates no more than the moves
+ * of the stateless drone do. With a budget of iterations the moves of the drone
+ * only depend on the seed; a time budget trades that for a bounded latency.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class MonteCarlo extends Drone {
+	/**
+	 * The default amount of iterations of every worker per move.
+	 */
+	public static final int DEFAULT_ITERATIONS = 64;
+
+	/**
+	 * The default amount of moves of a rollout.
+	 */
+	public static final int DEFAULT_HORIZON = 20;
+
+	/**
+	 * The maximum amount of moves of a flight, past which no move is simulated.
+	 */
+	private static final int MAX_MOVES = 250;
+
+	/**
+	 * The weight of a unit of power gained in the reward of a rollout, relative
+	 * to a coin.
+	 */
+	private static final double POWER_WEIGHT = 0.5;
+
+	/**
+	 * The exploration constant of the UCT formula, relative to the largest reward
+	 * seen so far.
+	 */
+	private static final double EXPLORATION = 0.7;
+
+	/**
+	 * This class has 5 private attributes: the amount of iterations of every
+	 * worker per move, the time budget of a move in nanoseconds, or 0 if there is
+	 * none, the amount of moves of a rollout, the ForkJoinPool running the workers
+	 * and the workers themselves.
+	 */
+	private final int iterations;
+	private final long budgetNanos;
+	private final int horizon;
+	private final ForkJoinPool pool;
+	private final Worker[] workers;
+
+	/**
+	 * This class holds a node of the tree of moves: the amount of iterations that
+	 * went through it, the rewards they gained from the state the move into it
+	 * was taken in, its children by direction, created on demand, and the bitmask
+	 * of the directions not tried yet.
+	 */
+	private static final class Node {
+		int visits;
+		double reward;
+		final Node[] children = new Node[Direction.VALUES.length];
+		int untried;
+
+		Node(int untried) {
+			this.untried = untried;
+		}
+	}
+
+	/**
+	 * Constructor of the MonteCarlo drone class with the default budget and
+	 * horizon, running a worker per available processor on the common fork-join
+	 * pool.
+	 *
+	 * @param world           This is the World object the drone flies in.
+	 * @param initialPosition This is the Position object representing the initial
+	 *                        latitude and longitude of the drone.
+	 * @param randNumGen      This is the pseudo-random number generator object.
+	 */
+	public MonteCarlo(World world, Position initialPosition, Random randNumGen) {
+		this(world, initialPosition, randNumGen, Runtime.getRuntime().availableProcessors(), DEFAULT_ITERATIONS, 0,
+				DEFAULT_HORIZON, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Constructor of the MonteCarlo drone class. It creates the workers, each with
+	 * a stateless drone at the initial position in a new World over the target
+	 * map, so the world of this drone must not have been changed yet. It throws an
+	 * IllegalArgumentException if the amount of workers, iterations or moves of a
+	 * rollout is less than 1 or the time budget is negative.
+	 *
+	 * @param world           This is the World object the drone flies in.
+	 * @param initialPosition This is the Position object representing the initial
+	 *                        latitude and longitude of the drone.
+	 * @param randNumGen      This is the pseudo-random number generator object.
+	 * @param threads         This is the amount of workers searching at once.
+	 * @param iterations      This is the amount of iterations of every worker per
+	 *                        move.
+	 * @param budget          This is the time budget of a move in milliseconds,
+	 *                        after which the workers stop even if they haven't
+	 *                        run all their iterations, or 0 for no time budget.
+	 * @param horizon         This is the amount of moves of a rollout.
+	 * @param pool            This is the ForkJoinPool running the workers.
+	 */
+	public MonteCarlo(World world, Position initialPosition, Random randNumGen, int threads, int iterations,
+			long budget, int horizon, ForkJoinPool pool) {
+		super(world, initialPosition, randNumGen);
+		if (threads < 1 || iterations < 1 || budget < 0 || horizon < 1)
+			throw new IllegalArgumentException(String.format("Invalid search of %d threads, %d iterations, %d ms"
+					+ " and %d moves", threads, iterations, budget, horizon));
+		this.iterations = iterations;
+		this.budgetNanos = budget * 1000000;
+		this.horizon = horizon;
+		this.pool = pool;
+		this.workers = new Worker[threads];
+		for (int i = 0; i < threads; i++)
+			workers[i] = new Worker(new Random(randNumGen.nextLong()));
+	}
+
+	/**
+	 * This class holds the state of a worker: its stateless drone and the World
+	 * it flies in, its pseudo-random number generator, the root of its tree, the
+	 * nodes of the current iteration with the coins and power of the drone at
+	 * each of them, and the largest reward it has seen.
+	 */
+	private final class Worker {
+		final Stateless drone;
+		final Random random;
+		Node root;
+		final Node[] path = new Node[MAX_MOVES + 1];
+		final double[] coins = new double[MAX_MOVES + 1];
+		final double[] power = new double[MAX_MOVES + 1];
+		double maxReward;
+
+		Worker(Random random) {
+			this.random = random;
+			this.drone = new Stateless(new World(world.map), currentPosition, random);
+			this.root = new Node(validMoves(drone));
+		}
+
+		/**
+		 * This method runs the iterations of the worker for a move, stopping early
+		 * once the deadline has passed.
+		 */
+		void search(long deadline) {
+			Snapshot start = drone.snapshot();
+			for (int i = 0; i < iterations && (budgetNanos == 0 || System.nanoTime() < deadline); i++) {
+				iterate();
+				drone.restore(start);
+			}
+			drone.release(start);
+			return;
+		}
+
+		/**
+		 * This method runs a single iteration: it walks down the tree, expands a
+		 * node, runs a rollout and adds its reward to the nodes on the way, counted
+		 * from the state of the parent of each node, or of the root for the root.
+		 */
+		void iterate() {
+			Node node = root;
+			int depth = visit(node, 0);
+			while (node.untried == 0 && drone.hasPower() && drone.move < MAX_MOVES) {
+				int best = select(node);
+				if (best == -1)
+					break;
+				drone.moveIn(Direction.VALUES[best]);
+				node = node.children[best];
+				depth = visit(node, depth);
+			}
+			if (node.untried != 0 && drone.hasPower() && drone.move < MAX_MOVES) {
+				Direction d = Direction.fromMask(node.untried, random.nextInt(Integer.bitCount(node.untried)));
+				node.untried &= ~d.bit;
+				drone.moveIn(d);
+				node.children[d.ordinal()] = new Node(validMoves(drone));
+				node = node.children[d.ordinal()];
+				depth = visit(node, depth);
+			}
+			for (int k = 0; k < horizon && drone.hasPower() && drone.move < MAX_MOVES; k++)
+				drone.nextMove();
+			maxReward = Math.max(maxReward, reward(0));
+			for (int k = 0; k < depth; k++) {
+				path[k].visits++;
+				path[k].reward += reward(Math.max(0, k - 1));
+			}
+			return;
+		}
+
+		/**
+		 * This method adds a node to the nodes of the current iteration, along with
+		 * the coins and power of the drone once it has reached it.
+		 */
+		int visit(Node node, int depth) {
+			path[depth] = node;
+			coins[depth] = drone.coins;
+			power[depth] = drone.power;
+			return depth + 1;
+		}
+
+		/**
+		 * This method returns the reward of the current rollout counted from the
+		 * state of the drone at a node of the current iteration.
+		 */
+		double reward(int depth) {
+			return drone.coins - coins[depth] + POWER_WEIGHT * (drone.power - power[depth]);
+		}
+
+		/**
+		 * This method returns the direction of the child of a node with the best
+		 * upper confidence bound, or -1 if the node has no children.
+		 */
+		int select(Node node) {
+			double logVisits = Math.log(node.visits);
+			double scale = EXPLORATION * Math.max(1, maxReward);
+			int best = -1;
+			double bestBound = Double.NEGATIVE_INFINITY;
+			for (int d = 0; d < node.children.length; d++) {
+				Node child = node.children[d];
+				if (child == null)
+					continue;
+				double bound = child.reward / child.visits + scale * Math.sqrt(logVisits / child.visits);
+				if (bound > bestBound) {
+					bestBound = bound;
+					best = d;
+				}
+			}
+			return best;
+		}
+
+		/**
+		 * This method replays a move of the drone on the worker's stateless drone,
+		 * keeping the subtree below it as the new tree.
+		 */
+		void follow(Direction direction) {
+			drone.moveIn(direction);
+			Node child = root.children[direction.ordinal()];
+			root = child != null ? child : new Node(validMoves(drone));
+			return;
+		}
+	}
+
+	/**
+	 * This is a support method returning the directions a drone can take without
+	 * leaving the play area, or none if it has run out of power.
+	 *
+	 * @param drone This is the drone.
+	 * @return The bitmask of valid directions.
+	 */
+	private static int validMoves(Drone drone) {
+		if (!drone.hasPower())
+			return 0;
+		int moves = 0;
+		for (Direction d : Direction.VALUES) {
+			if (Position.inPlayArea(drone.currentPosition.latitude + d.latOffset,
+					drone.currentPosition.longitude + d.longOffset))
+				moves |= d.bit;
+		}
+		return moves;
+	}
+
+	/**
+	 * This class extends the snapshot of the superclass with the snapshots of the
+	 * stateless drones of the workers.
+	 */
+	private static final class MonteCarloSnapshot extends Snapshot {
+		final Snapshot[] workers;
+
+		MonteCarloSnapshot(MonteCarlo drone) {
+			super(drone);
+			this.workers = new Snapshot[drone.workers.length];
+			for (int i = 0; i < workers.length; i++)
+				workers[i] = drone.workers[i].drone.snapshot();
+		}
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also saving the
+	 * state of the stateless drones of the workers.
+	 */
+	@Override
+	public Snapshot snapshot() {
+		return new MonteCarloSnapshot(this);
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also restoring the
+	 * state of the stateless drones of the workers and starting new trees.
+	 */
+	@Override
+	public void restore(Snapshot snapshot) {
+		super.restore(snapshot);
+		MonteCarloSnapshot state = (MonteCarloSnapshot) snapshot;
+		for (int i = 0; i < workers.length; i++) {
+			workers[i].drone.restore(state.workers[i]);
+			workers[i].root = new Node(validMoves(workers[i].drone));
+		}
+		return;
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also releasing the
+	 * snapshots of the stateless drones of the workers.
+	 */
+	@Override
+	public void release(Snapshot snapshot) {
+		super.release(snapshot);
+		MonteCarloSnapshot state = (MonteCarloSnapshot) snapshot;
+		for (int i = 0; i < workers.length; i++)
+			workers[i].drone.release(state.workers[i]);
+		return;
+	}
+
+	/**
+	 * This protected method implements the abstract method declared in the
+	 * superclass for the Monte Carlo tree search drone behaviour. It runs the
+	 * search on every worker, the first one on the current thread and the others
+	 * on the pool, takes the move tried most often by all workers together,
+	 * breaking ties by the mean reward of the move and then at random, and
+	 * replays it on every worker.
+	 *
+	 * @return A Direction object representing the direction the drone took.
+	 */
+	@Override
+	protected Direction nextMove() {
+		long deadline = System.nanoTime() + budgetNanos;
+		List<ForkJoinTask<?>> tasks = new ArrayList<>(workers.length - 1);
+		for (int i = 1; i < workers.length; i++) {
+			Worker worker = workers[i];
+			tasks.add(pool.submit(() -> worker.search(deadline)));
+		}
+		workers[0].search(deadline);
+		for (ForkJoinTask<?> task : tasks)
+			task.join();
+		int[] visits = new int[Direction.VALUES.length];
+		double[] rewards = new double[Direction.VALUES.length];
+		for (Worker worker : workers) {
+			for (int d = 0; d < visits.length; d++) {
+				if (worker.root.children[d] != null) {
+					visits[d] += worker.root.children[d].visits;
+					rewards[d] += worker.root.children[d].reward;
+				}
+			}
+		}
+		int most = 0;
+		double bestMean = Double.NEGATIVE_INFINITY;
+		int moves = 0;
+		for (int d = 0; d < visits.length; d++) {
+			if (visits[d] == 0 || visits[d] < most)
+				continue;
+			double mean = rewards[d] / visits[d];
+			if (visits[d] > most || mean > bestMean) {
+				most = visits[d];
+				bestMean = mean;
+				moves = 0;
+			}
+			if (mean == bestMean)
+				moves |= Direction.VALUES[d].bit;
+		}
+		if (moves == 0) {
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("No moves tried during move %d", move + 1));
+			moves = validMoves(this);
+		}
+		Direction nextDir = pickDirection(moves);
+		if (App.TRACE && logger.isLoggable(Level.FINER))
+			logger.finer(String.format("Drone went in direction %s after %d tries during move %d", nextDir, most,
+					move + 1));
+		moveIn(nextDir);
+		for (Worker worker : workers)
+			worker.follow(nextDir);
+		return nextDir;
+	}
+}
@@ -0,0 +1,113 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class holds the amount of moves a drone needs to get from every
+ * lighthouse of a target map to charging range of every other one, found by the
+ * LatticeSearch class on the map as parsed, so the moves avoid every danger of
+ * the map. The moves are counted from the position of the lighthouse the drone
+ * starts at, which stands for the position it charged from the lighthouse at.
+ *
+ * Every row of the matrix is found by a single breadth-first search, and the
+ * rows are independent, so they are split between the tasks of a fork-join
+ * pool, each with a LatticeSearch of its own over an overlay of the map. Once
+ * built the matrix is never modified, so lookups are thread-safe, and the
+ * TargetMap class builds it once per map on first use.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class MoveDistances {
+	/**
+	 * The amount of rows up to which they are found on the current thread rather
+	 * than split between tasks.
+	 */
+	private static final int SPLIT_THRESHOLD = 2;
+
+	/**
+	 * This class has 3 private attributes: the indices of the lighthouses of the
+	 * map, the row of the matrix of every feature, -1 for features other than
+	 * lighthouses, and the matrix itself, row by row, where -1 stands for a
+	 * lighthouse no sequence of moves reaches.
+	 */
+	private final int[] lighthouses;
+	private final int[] rowOf;
+	private final int[] matrix;
+
+	/**
+	 * Constructor for the MoveDistances class. It finds the rows of the matrix on
+	 * the input fork-join pool.
+	 *
+	 * @param map  This is the target map.
+	 * @param pool This is the ForkJoinPool the rows are found on.
+	 */
+	public MoveDistances(TargetMap map, ForkJoinPool pool) {
+		IntList found = new IntList();
+		this.rowOf = new int[map.features.size()];
+		Arrays.fill(rowOf, -1);
+		for (int i = 0; i < map.features.size(); i++) {
+			if (map.features.kind(i) == FeatureStore.LIGHTHOUSE) {
+				rowOf[i] = found.size();
+				found.add(i);
+			}
+		}
+		this.lighthouses = found.toArray();
+		this.matrix = new int[lighthouses.length * lighthouses.length];
+		pool.invoke(new Rows(map, 0, lighthouses.length));
+	}
+
+	/**
+	 * This method returns the amount of moves a drone needs to get from a
+	 * lighthouse to charging range of another.
+	 *
+	 * @param from This is the index of the lighthouse the drone starts at.
+	 * @param to   This is the index of the lighthouse to charge from.
+	 * @return The amount of moves, or -1 if either feature isn't a lighthouse or
+	 *         no sequence of moves reaches the second one.
+	 */
+	public int moves(int from, int to) {
+		if (rowOf[from] == -1 || rowOf[to] == -1)
+			return -1;
+		if (from == to)
+			return 0;
+		return matrix[rowOf[from] * lighthouses.length + rowOf[to]];
+	}
+
+	/**
+	 * This class is the task finding the rows of the matrix from row from to row
+	 * to, excluding the latter, halving the range between subtasks until it is
+	 * short enough to search from the lighthouses in it.
+	 */
+	private final class Rows extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		final TargetMap map;
+		final int from;
+		final int to;
+
+		Rows(TargetMap map, int from, int to) {
+			this.map = map;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if (to - from > SPLIT_THRESHOLD) {
+				int mid = (from + to) >>> 1;
+				invokeAll(new Rows(map, from, mid), new Rows(map, mid, to));
+				return;
+			}
+			LatticeSearch search = new LatticeSearch(new FeatureOverlay(map.features), map.index);
+			int[] row = new int[lighthouses.length];
+			for (int r = from; r < to; r++) {
+				int start = lighthouses[r];
+				search.moves(map.features.latitude(start), map.features.longitude(start), lighthouses, row);
+				System.arraycopy(row, 0, matrix, r * lighthouses.length, row.length);
+			}
+			return;
+		}
+	}
+}
@@ -0,0 +1,49 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * This interface is implemented by the observers of a drone's flight, such as
+ * the writers of the output files. A listener registered on a drone is notified
+ * when the flight starts, after every move the drone makes, while the flight is
+ * still going, and when the flight is over. Listeners are called on the thread
+ * flying the drone, so they should return quickly. Errors writing output are
+ * reported by throwing an UncheckedIOException, which ends the flight.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public interface MoveListener {
+	/**
+	 * This method is called once before the drone's first move.
+	 *
+	 * @param world This is the World object the drone flies in, whose features the
+	 *              indices reported by moveMade() refer to.
+	 * @param start This is the initial position of the drone.
+	 */
+	default void flightStarted(World world, Position start) {
+	}
+
+	/**
+	 * This method is called after every move of the drone.
+	 *
+	 * @param move      This is the number of the move, starting from 1.
+	 * @param from      This is the position of the drone before the move.
+	 * @param direction This is the direction the drone took.
+	 * @param to        This is the position of the drone after the move.
+	 * @param coins     This is the coins held by the drone after the move.
+	 * @param power     This is the power held by the drone after the move.
+	 * @param charged   This is the index of the feature the drone charged from at
+	 *                  the end of the move, or -1 if no feature was in range.
+	 */
+	void moveMade(int move, Position from, Direction direction, Position to, double coins, double power,
+			int charged);
+
+	/**
+	 * This method is called once after the drone's last move.
+	 *
+	 * @param moves This is the amount of moves the drone made.
+	 * @param coins This is the coins held by the drone at the end of the flight.
+	 * @param power This is the power held by the drone at the end of the flight.
+	 */
+	default void flightFinished(int moves, double coins, double power) {
+	}
+}
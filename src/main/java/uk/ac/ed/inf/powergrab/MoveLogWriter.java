@@ -0,0 +1,114 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class streams the output text file of a simulation, describing the move
+ * sequence of the drone one move per line, while the drone flies. It is
+ * registered on the drone as a MoveListener. Every move is
+ * formatted into a single reusable StringBuilder and handed to a buffered
+ * writer, so the cost of the output is linear in the amount of moves and the
+ * memory it uses doesn't depend on it. As in the files produced so far, lines
+ * are separated by a new line and the file doesn't end with one.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class MoveLogWriter implements MoveListener, Closeable {
+	/**
+	 * The size in bytes of the buffer between the writer and the file channel.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * This class has 4 private attributes: the Writer the lines are written to,
+	 * the StringBuilder each line is formatted into, the char array it is copied
+	 * to for writing, and the amount of lines written so far.
+	 */
+	private final Writer out;
+	private final StringBuilder line = new StringBuilder(128);
+	private char[] chars = new char[128];
+	private int lines;
+
+	/**
+	 * Constructor for the MoveLogWriter class.
+	 *
+	 * @param out This is the Writer the lines are written to.
+	 */
+	public MoveLogWriter(Writer out) {
+		this.out = out;
+	}
+
+	/**
+	 * This method opens a MoveLogWriter writing to a file through a buffered file
+	 * channel, replacing the file if it exists.
+	 *
+	 * @param file This is the output file.
+	 * @return The MoveLogWriter writing to the file.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static MoveLogWriter open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		return new MoveLogWriter(new BufferedWriter(
+				Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), BUFFER_SIZE), BUFFER_SIZE));
+	}
+
+	/**
+	 * This method writes the line describing a move.
+	 *
+	 * @param firstPos  This is the position of the drone before the move.
+	 * @param secondPos This is the position of the drone after the move.
+	 * @param direction This is the direction the drone took.
+	 * @param coins     This is the coins held by the drone after the move.
+	 * @param power     This is the power held by the drone after the move.
+	 * @throws IOException If the line can't be written.
+	 */
+	public void write(Position firstPos, Position secondPos, Direction direction, double coins, double power)
+			throws IOException {
+		line.setLength(0);
+		if (lines++ > 0)
+			line.append('\n');
+		AppUtil.appendTextOutput(line, firstPos, secondPos, direction, coins, power);
+		if (line.length() > chars.length)
+			chars = new char[line.length() * 2];
+		line.getChars(0, line.length(), chars, 0);
+		out.write(chars, 0, line.length());
+		return;
+	}
+
+	/**
+	 * This method writes the line describing a move made by the drone, throwing an
+	 * UncheckedIOException if it can't be written.
+	 */
+	@Override
+	public void moveMade(int move, Position from, Direction direction, Position to, double coins, double power,
+			int charged) {
+		try {
+			write(from, to, direction, coins, power);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return;
+	}
+
+	/**
+	 * This method flushes and closes the underlying writer.
+	 *
+	 * @throws IOException If the writer can't be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+		return;
+	}
+}
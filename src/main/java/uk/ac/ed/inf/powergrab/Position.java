@@ -9,14 +9,19 @@ package uk.ac.ed.inf.powergrab;
  */
 public class Position {
 	/**
-	 * This class has 3 attributes for each an instance: a public double
-	 * representing the latitude of the position, a public double representing the
-	 * longitude of the position, and a private final double representing the
-	 * distance a drone travels during a move.
+	 * This class has 2 attributes for each an instance: a public double
+	 * representing the latitude of the position and a public double representing
+	 * the longitude of the position. The distance a drone travels during a move is
+	 * kept as a constant shared by all instances, as are the bounds of the play
+	 * area.
 	 */
+	public static final double MOVE_LENGTH = 0.0003;
+	public static final double MIN_LATITUDE = 55.942617;
+	public static final double MAX_LATITUDE = 55.946233;
+	public static final double MIN_LONGITUDE = -3.192473;
+	public static final double MAX_LONGITUDE = -3.184319;
 	public double latitude;
 	public double longitude;
-	private final double r = 0.0003;
 
 	/**
 	 * Constructor for the Position class. It stores the latitude and longitude of a
@@ -34,7 +39,8 @@ public class Position {
 	 * This public method returns the next position relative to the current position
 	 * after travelling a distance of 0.0003 degrees in one of the 16 cardinal
 	 * directions. It takes a Direction object representing one of the 16 cardinal
-	 * directions and returns the position after the move using trigonometry.
+	 * directions and returns the position after the move by adding the offsets
+	 * precomputed for that direction.
 	 * 
 	 * @param direction This is one of the 16 cardinal direction the move is made
 	 *                  to.
@@ -42,10 +48,7 @@ public class Position {
 	 *         of 0.0003 degrees from the current position to the input direction.
 	 */
 	public Position nextPosition(Direction direction) {
-		Position nextPos = new Position(this.latitude, this.longitude);
-		nextPos.latitude += r * Math.sin(Math.toRadians(direction.angle));
-		nextPos.longitude += r * Math.cos(Math.toRadians(direction.angle));
-		return nextPos;
+		return new Position(this.latitude + direction.latOffset, this.longitude + direction.longOffset);
 	}
 
 	/**
@@ -57,8 +60,22 @@ public class Position {
 	 *         returns false.
 	 */
 	public boolean inPlayArea() {
-		boolean inPlayArea = (this.latitude > 55.942617) && (this.latitude < 55.946233) && (this.longitude > -3.192473)
-				&& (this.longitude < -3.184319);
+		return inPlayArea(this.latitude, this.longitude);
+	}
+
+	/**
+	 * This static method returns a Boolean value representing whether or not a
+	 * latitude and longitude pair is within the well-defined playing area of the
+	 * powergrab application. It allows positions to be checked without creating a
+	 * Position object.
+	 * 
+	 * @param latitude  This is the latitude of the point.
+	 * @param longitude This is the longitude of the point.
+	 * @return true if the point is within the play area otherwise it returns false.
+	 */
+	public static boolean inPlayArea(double latitude, double longitude) {
+		boolean inPlayArea = (latitude > MIN_LATITUDE) && (latitude < MAX_LATITUDE) && (longitude > MIN_LONGITUDE)
+				&& (longitude < MAX_LONGITUDE);
 		return inPlayArea;
 	}
 }
@@ -0,0 +1,107 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * This class represents the arguments of a single run of the powergrab
+ * application: the day, month and year of the target map, the latitude and
+ * longitude of the starting position of the drone, the random seed and the
+ * drone type. Run specifications are read either from the command line
+ * arguments or from the lines of a batch manifest, which hold the same 7
+ * arguments in the same order.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class RunSpec {
+	/**
+	 * This class has 7 public final attributes, one for each argument of a run.
+	 */
+	public final String day;
+	public final String month;
+	public final String year;
+	public final double latitude;
+	public final double longitude;
+	public final int seed;
+	public final String droneType;
+
+	/**
+	 * Constructor for the RunSpec class.
+	 *
+	 * @param day       This is the day of the target map.
+	 * @param month     This is the month of the target map.
+	 * @param year      This is the year of the target map.
+	 * @param latitude  This is the starting latitude of the drone.
+	 * @param longitude This is the starting longitude of the drone.
+	 * @param seed      This is the random seed.
+	 * @param droneType This is the drone type.
+	 */
+	public RunSpec(String day, String month, String year, double latitude, double longitude, int seed,
+			String droneType) {
+		this.day = day;
+		this.month = month;
+		this.year = year;
+		this.latitude = latitude;
+		this.longitude = longitude;
+		this.seed = seed;
+		this.droneType = droneType;
+	}
+
+	/**
+	 * This method parses a run specification from 7 arguments starting at the
+	 * input offset. It throws an IllegalArgumentException if any argument is
+	 * missing or if the latitude, longitude or seed are not valid numbers.
+	 *
+	 * @param args   This is the array holding the arguments.
+	 * @param offset This is the position of the first argument in the array.
+	 * @return The RunSpec object described by the arguments.
+	 */
+	public static RunSpec fromArgs(String[] args, int offset) {
+		if (args.length - offset < 7)
+			throw new IllegalArgumentException("Invalid arguments!");
+		try {
+			return new RunSpec(args[offset], args[offset + 1], args[offset + 2], Double.parseDouble(args[offset + 3]),
+					Double.parseDouble(args[offset + 4]), Integer.parseInt(args[offset + 5]), args[offset + 6]);
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid arguments!");
+		}
+	}
+
+	/**
+	 * This method parses a run specification from a line of a batch manifest,
+	 * where the 7 arguments are separated by whitespace or commas.
+	 *
+	 * @param line This is the line of the manifest.
+	 * @return The RunSpec object described by the line.
+	 */
+	public static RunSpec parse(String line) {
+		return fromArgs(line.trim().split("[\\s,]+"), 0);
+	}
+
+	/**
+	 * This method returns a key identifying the date of the target map, shared by
+	 * all runs on the same map.
+	 *
+	 * @return The date of the target map as year/month/day.
+	 */
+	public String mapDate() {
+		return String.format("%s/%s/%s", year, month, day);
+	}
+
+	/**
+	 * This method returns the name, without extension, of the output files of the
+	 * run, made up of the drone type and the date of the target map.
+	 *
+	 * @return The base name of the output files.
+	 */
+	public String outputName() {
+		return String.format("%s-%s-%s-%s", droneType, day, month, year);
+	}
+
+	/**
+	 * This method returns the starting position of the drone.
+	 *
+	 * @return A new Position object holding the starting latitude and longitude.
+	 */
+	public Position initialPosition() {
+		return new Position(latitude, longitude);
+	}
+}
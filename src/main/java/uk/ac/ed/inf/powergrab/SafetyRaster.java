@@ -0,0 +1,84 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * This class tells, for every cell of the StationRaster of a target map, what
+ * a drone anywhere in the cell would charge from in a single simulation: no
+ * station or a drained one, a lighthouse holding positive coins or power, a
+ * danger holding negative coins or power, or, in boundary cells, something
+ * only an exact check can tell. Deciding whether a move is safe is then a
+ * couple of lookups for most candidate positions, falling back to scanning the
+ * features in range only in boundary cells.
+ *
+ * The StationRaster is shared by every simulation on the map and never
+ * modified, so this class only keeps the kind of every station, a byte per
+ * station, which follows the features of the simulation's FeatureOverlay:
+ * whenever the coins or power of a station are set or rolled back, the
+ * refresh() method must be called for it.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class SafetyRaster {
+	/**
+	 * The kinds of a cell: no charged station in range, a charged lighthouse in
+	 * range, a charged danger in range, or a boundary cell.
+	 */
+	public static final byte CLEAR = 0;
+	public static final byte LIGHTHOUSE = 1;
+	public static final byte DANGER = 2;
+	public static final byte EXACT = 3;
+
+	/**
+	 * This class has 3 private attributes: the StationRaster of the target map,
+	 * the FeatureOverlay of the simulation and the kind of every station in the
+	 * simulation.
+	 */
+	private final StationRaster stations;
+	private final FeatureOverlay features;
+	private final byte[] stationKinds;
+
+	/**
+	 * Constructor for the SafetyRaster class. It copies the kinds of the stations
+	 * on the map as parsed, so the overlay must not have been written to yet.
+	 *
+	 * @param stations This is the StationRaster of the target map.
+	 * @param features This is the FeatureOverlay of the simulation.
+	 */
+	public SafetyRaster(StationRaster stations, FeatureOverlay features) {
+		this.stations = stations;
+		this.features = features;
+		this.stationKinds = stations.stationKinds();
+	}
+
+	/**
+	 * This method returns the kind of the cell holding a position.
+	 *
+	 * @param latitude  This is the latitude of the position.
+	 * @param longitude This is the longitude of the position.
+	 * @return CLEAR, LIGHTHOUSE, DANGER, or EXACT if the position is in a
+	 *         boundary cell or outside the play area.
+	 */
+	public byte kind(double latitude, double longitude) {
+		int cell = stations.cell(latitude, longitude);
+		if (cell == -1)
+			return EXACT;
+		int station = stations.station(cell);
+		if (station >= 0)
+			return stationKinds[station];
+		return station == StationRaster.NONE ? CLEAR : EXACT;
+	}
+
+	/**
+	 * This method updates the kind of a station after its coins or power have
+	 * changed.
+	 *
+	 * @param feature This is the index of the station.
+	 */
+	public void refresh(int feature) {
+		if (features.isChargedLighthouse(feature))
+			stationKinds[feature] = LIGHTHOUSE;
+		else
+			stationKinds[feature] = features.isChargedDanger(feature) ? DANGER : CLEAR;
+		return;
+	}
+}
@@ -0,0 +1,43 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * This class holds the result of a single simulation: the amount of coins
+ * collected by the drone, the total amount of coins on the target map, the text
+ * describing the move sequence of the drone and the metrics of its flight.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class SimulationResult {
+	/**
+	 * This class has 5 public final attributes: the type of the drone, the coins
+	 * collected by the drone and the total coins on the target map, the text
+	 * describing the drone's move sequence, one move per line, which is null if
+	 * the moves were only reported to MoveListeners, and the Metrics recorded
+	 * during the flight.
+	 */
+	public final String droneType;
+	public final double coinsCollected;
+	public final double totalCoins;
+	public final String moves;
+	public final Metrics metrics;
+
+	/**
+	 * Constructor for the SimulationResult class.
+	 *
+	 * @param droneType      This is the type of the drone.
+	 * @param coinsCollected This is the amount of coins collected by the drone.
+	 * @param totalCoins     This is the total amount of coins on the target map.
+	 * @param moves          This is the text describing the move sequence, or
+	 *                       null.
+	 * @param metrics        This is the Metrics recorded during the flight.
+	 */
+	public SimulationResult(String droneType, double coinsCollected, double totalCoins, String moves,
+			Metrics metrics) {
+		this.droneType = droneType;
+		this.coinsCollected = coinsCollected;
+		this.totalCoins = totalCoins;
+		this.moves = moves;
+		this.metrics = metrics;
+	}
+}
@@ -0,0 +1,217 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * This class implements a uniform-grid spatial index over the features of the
+ * target map. It is built once after the features have been parsed and answers
+ * radius and nearest-neighbour queries by visiting only the grid cells
+ * overlapping the query area, so the cost of a query depends on the local
+ * density of features rather than on the total number of features in the map.
+ *
+ * The grid is stored in a compressed layout: the features of every cell are
+ * kept contiguously in a single int array of feature indices, and a second
+ * array holds the offset at which each cell starts. The coordinates of the
+ * features are copied alongside in the same order, so a query reads the cells
+ * it visits sequentially. Within a cell, features are kept in the order they
+ * appear in the target map.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class SpatialIndex {
+	/**
+	 * The side length of a grid cell is set to the charging radius of a feature,
+	 * so a charging range query only ever needs to visit a 3x3 block of cells. The
+	 * amount of cells along each axis is capped to keep the memory of the index
+	 * bounded for maps whose features are spread far apart.
+	 */
+	public static final double CELL_SIZE = 0.00025;
+	private static final int MAX_CELLS_PER_AXIS = 1024;
+
+	/**
+	 * This class has 9 private attributes: the minimum latitude and longitude
+	 * covered by the grid, the side length of a cell, the amount of rows and
+	 * columns of the grid, the offset of every cell in the cellItems array, the
+	 * cellItems array itself holding the indices of the features sorted by cell,
+	 * and the latitudes and longitudes of the features in the same order.
+	 */
+	private final double minLat;
+	private final double minLong;
+	private final double cellSize;
+	private final int rows;
+	private final int cols;
+	private final int[] cellStart;
+	private final int[] cellItems;
+	private final double[] cellLat;
+	private final double[] cellLong;
+
+	/**
+	 * Constructor for the SpatialIndex class. It takes the feature store of the
+	 * target map and buckets each feature into the grid cell containing its
+	 * latitude and longitude using a counting sort, so the index is built in time
+	 * linear in the amount of features.
+	 *
+	 * @param features This is the feature store of the target map.
+	 */
+	public SpatialIndex(FeatureStore features) {
+		int size = features.size();
+		double minLat = Double.POSITIVE_INFINITY;
+		double minLong = Double.POSITIVE_INFINITY;
+		double maxLat = Double.NEGATIVE_INFINITY;
+		double maxLong = Double.NEGATIVE_INFINITY;
+		for (int i = 0; i < size; i++) {
+			minLat = Math.min(minLat, features.latitude(i));
+			minLong = Math.min(minLong, features.longitude(i));
+			maxLat = Math.max(maxLat, features.latitude(i));
+			maxLong = Math.max(maxLong, features.longitude(i));
+		}
+		if (size == 0) {
+			minLat = minLong = maxLat = maxLong = 0;
+		}
+		double span = Math.max(maxLat - minLat, maxLong - minLong);
+		this.cellSize = Math.max(CELL_SIZE, span / MAX_CELLS_PER_AXIS);
+		this.minLat = minLat;
+		this.minLong = minLong;
+		this.rows = (int) ((maxLat - minLat) / cellSize) + 1;
+		this.cols = (int) ((maxLong - minLong) / cellSize) + 1;
+
+		int[] cellOf = new int[size];
+		this.cellStart = new int[rows * cols + 1];
+		for (int i = 0; i < size; i++) {
+			cellOf[i] = row(features.latitude(i)) * cols + col(features.longitude(i));
+			cellStart[cellOf[i] + 1]++;
+		}
+		for (int c = 0; c < rows * cols; c++)
+			cellStart[c + 1] += cellStart[c];
+		this.cellItems = new int[size];
+		this.cellLat = new double[size];
+		this.cellLong = new double[size];
+		int[] fill = new int[rows * cols];
+		for (int i = 0; i < size; i++) {
+			int k = cellStart[cellOf[i]] + fill[cellOf[i]]++;
+			cellItems[k] = i;
+			cellLat[k] = features.latitude(i);
+			cellLong[k] = features.longitude(i);
+		}
+	}
+
+	/**
+	 * This method returns the row of the grid containing the input latitude,
+	 * clamped to the extent of the grid.
+	 *
+	 * @param latitude This is the latitude to locate in the grid.
+	 * @return The row of the grid containing the latitude.
+	 */
+	private int row(double latitude) {
+		return clamp((int) Math.floor((latitude - minLat) / cellSize), rows);
+	}
+
+	/**
+	 * This method returns the column of the grid containing the input longitude,
+	 * clamped to the extent of the grid.
+	 *
+	 * @param longitude This is the longitude to locate in the grid.
+	 * @return The column of the grid containing the longitude.
+	 */
+	private int col(double longitude) {
+		return clamp((int) Math.floor((longitude - minLong) / cellSize), cols);
+	}
+
+	/**
+	 * This method clamps a cell coordinate to the range [0, size).
+	 *
+	 * @param value This is the cell coordinate to clamp.
+	 * @param size  This is the amount of cells along the axis.
+	 * @return The clamped cell coordinate.
+	 */
+	private static int clamp(int value, int size) {
+		return value < 0 ? 0 : (value >= size ? size - 1 : value);
+	}
+
+	/**
+	 * This method adds the index of every feature within the input radius of a
+	 * point to the output list. It only visits the cells overlapping the bounding
+	 * box of the query circle and checks the exact distance of every feature in
+	 * those cells. The output list is not cleared by this method.
+	 *
+	 * @param latitude  This is the latitude of the query point.
+	 * @param longitude This is the longitude of the query point.
+	 * @param radius    This is the radius of the query circle.
+	 * @param out       This is the list the indices of the features in range are
+	 *                  added to.
+	 * @return The amount of entries of the grid whose distance was checked.
+	 */
+	public int inRadius(double latitude, double longitude, double radius, IntList out) {
+		if (cellItems.length == 0)
+			return 0;
+		int firstRow = row(latitude - radius);
+		int lastRow = row(latitude + radius);
+		int firstCol = col(longitude - radius);
+		int lastCol = col(longitude + radius);
+		int visited = 0;
+		for (int r = firstRow; r <= lastRow; r++) {
+			for (int c = firstCol; c <= lastCol; c++) {
+				int cell = r * cols + c;
+				visited += cellStart[cell + 1] - cellStart[cell];
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					if (distance(k, latitude, longitude) <= radius)
+						out.add(cellItems[k]);
+				}
+			}
+		}
+		return visited;
+	}
+
+	/**
+	 * This method returns the index of the feature closest to a point within a
+	 * maximum radius, or -1 if no feature lies within that radius. Features at
+	 * exactly the same distance are resolved in favour of the one appearing last in
+	 * the target map, matching the behaviour of a linear scan using a less than or
+	 * equal comparison.
+	 *
+	 * @param latitude  This is the latitude of the query point.
+	 * @param longitude This is the longitude of the query point.
+	 * @param maxRadius This is the maximum distance from the query point a feature
+	 *                  can have to be returned.
+	 * @return The index of the closest feature to the query point within the
+	 *         maximum radius, or -1 if there is none.
+	 */
+	public int nearest(double latitude, double longitude, double maxRadius) {
+		if (cellItems.length == 0)
+			return -1;
+		int firstRow = row(latitude - maxRadius);
+		int lastRow = row(latitude + maxRadius);
+		int firstCol = col(longitude - maxRadius);
+		int lastCol = col(longitude + maxRadius);
+		int nearest = -1;
+		double minDist = maxRadius;
+		for (int r = firstRow; r <= lastRow; r++) {
+			for (int c = firstCol; c <= lastCol; c++) {
+				int cell = r * cols + c;
+				for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+					int i = cellItems[k];
+					double dist = distance(k, latitude, longitude);
+					if (dist < minDist || (dist == minDist && i > nearest)) {
+						minDist = dist;
+						nearest = i;
+					}
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Calculates the euclidean distance (L2 norm) between an entry of the grid and
+	 * a point.
+	 *
+	 * @param k         This is the position of the entry in the cellItems array.
+	 * @param latitude  This is the latitude of the point.
+	 * @param longitude This is the longitude of the point.
+	 * @return The euclidean distance between the feature and the point.
+	 */
+	private double distance(int k, double latitude, double longitude) {
+		double dLat = cellLat[k] - latitude;
+		double dLong = cellLong[k] - longitude;
+		return Math.sqrt(dLat * dLat + dLong * dLong);
+	}
+}
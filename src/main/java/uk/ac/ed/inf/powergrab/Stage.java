@@ -0,0 +1,259 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * This class is a stage of a pipeline: a fixed amount of worker threads taking
+ * items from a bounded queue and handing each of them to a Handler, which
+ * usually puts its results on the queue of the next stage. Every stage runs at
+ * the same time as the others and is sized for its own kind of work, with
+ * several threads for a stage waiting on I/O and about one thread per core for
+ * a CPU-bound stage. Since the queues are bounded, a stage falling behind
+ * blocks the stages feeding it once its queue is full, so the amount of items
+ * in flight, and the memory they hold, doesn't grow with the amount of items
+ * entering the pipeline.
+ *
+ * A stage ends once it has been closed and its queue has been drained, and its
+ * last worker to exit then closes the next stage. A stage can also end early,
+ * if its workers are stopped by Errors, in which case the items left on its
+ * queue are dropped and putting an item on it fails, so the stages feeding it
+ * are never blocked forever on its full queue. Every stage counts the items it
+ * handled, the time its workers spent handling them and the time producers
+ * spent blocked on its full queue, which are summarised by the report() method.
+ *
+ * @author David Jorge (s1712653)
+ *
+ * @param <I> This is the type of the items handled by the stage.
+ */
+class Stage<I> {
+	/**
+	 * This interface is implemented by the work done by a stage on every item.
+	 *
+	 * @param <I> This is the type of the items handled.
+	 */
+	interface Handler<I> {
+		/**
+		 * This method handles an item taken from the queue of the stage.
+		 *
+		 * @param item This is the item.
+		 * @throws InterruptedException If the thread is interrupted while blocked
+		 *                              on the queue of the next stage.
+		 */
+		void handle(I item) throws InterruptedException;
+	}
+
+	/**
+	 * The marker put on the queue once per worker when the stage is closed.
+	 */
+	private static final Object END = new Object();
+
+	/**
+	 * The time in milliseconds a producer blocked on the full queue waits before
+	 * checking again whether the stage has ended.
+	 */
+	private static final long POLL_MILLIS = 50;
+
+	/**
+	 * This class has 13 private attributes: the name of the stage, its queue of
+	 * items, its Handler, the next stage, or null, its worker threads, the amount
+	 * of workers still running, 3 LongAdders, items, busyNanos and blockedNanos,
+	 * counting the items handled, the time spent handling them and the time
+	 * producers spent blocked on the full queue, the times the stage was started
+	 * and finished at, whether every worker has exited, and a Logger object,
+	 * logger, to log statements in this class.
+	 */
+	private final String name;
+	private final BlockingQueue<Object> queue;
+	private final Handler<I> handler;
+	private final Stage<?> next;
+	private final Thread[] workers;
+	private final AtomicInteger running = new AtomicInteger();
+	private final LongAdder items = new LongAdder();
+	private final LongAdder busyNanos = new LongAdder();
+	private final LongAdder blockedNanos = new LongAdder();
+	private volatile long started;
+	private volatile long finished;
+	private volatile boolean ended;
+	private static final Logger logger = Logger.getLogger("App.Stage");
+
+	/**
+	 * Constructor for the Stage class.
+	 *
+	 * @param name     This is the name of the stage, used to name its threads and
+	 *                 in its report.
+	 * @param threads  This is the amount of worker threads of the stage.
+	 * @param capacity This is the amount of items its queue holds before
+	 *                 blocking producers.
+	 * @param handler  This is the work done on every item.
+	 * @param next     This is the stage closed once this one ends, or null.
+	 */
+	Stage(String name, int threads, int capacity, Handler<I> handler, Stage<?> next) {
+		this.name = name;
+		this.queue = new ArrayBlockingQueue<>(capacity);
+		this.handler = handler;
+		this.next = next;
+		this.workers = new Thread[threads];
+	}
+
+	/**
+	 * This method starts the worker threads of the stage.
+	 */
+	void start() {
+		started = System.nanoTime();
+		running.set(workers.length);
+		for (int i = 0; i < workers.length; i++) {
+			workers[i] = new Thread(this::work, String.format("powergrab-%s-%d", name, i + 1));
+			workers[i].setDaemon(true);
+			workers[i].start();
+		}
+		return;
+	}
+
+	/**
+	 * This method puts an item on the queue of the stage, blocking while the queue
+	 * is full. It throws an IllegalStateException if the stage has ended, so the
+	 * item will never be handled, including while it is blocked.
+	 *
+	 * @param item This is the item.
+	 * @throws InterruptedException If the thread is interrupted while blocked.
+	 */
+	void put(I item) throws InterruptedException {
+		if (!offer(item))
+			throw new IllegalStateException(String.format("Stage %s has ended", name));
+		return;
+	}
+
+	/**
+	 * This method closes the stage: its workers exit once they have handled every
+	 * item already put on its queue. No item may be put on the stage afterwards.
+	 * Closing a stage that has ended does nothing.
+	 *
+	 * @throws InterruptedException If the thread is interrupted while blocked on
+	 *                              the full queue.
+	 */
+	void close() throws InterruptedException {
+		for (int i = 0; i < workers.length; i++)
+			if (!offer(END))
+				break;
+		return;
+	}
+
+	/**
+	 * This is a support method for the put() and close() methods. It puts an item
+	 * on the queue, blocking while the queue is full, unless the stage has ended.
+	 *
+	 * @param item This is the item.
+	 * @return false if the stage has ended, so the item wasn't put on the queue.
+	 * @throws InterruptedException If the thread is interrupted while blocked.
+	 */
+	private boolean offer(Object item) throws InterruptedException {
+		if (ended)
+			return false;
+		if (queue.offer(item))
+			return true;
+		long start = System.nanoTime();
+		try {
+			while (!queue.offer(item, POLL_MILLIS, TimeUnit.MILLISECONDS))
+				if (ended)
+					return false;
+			return true;
+		} finally {
+			blockedNanos.add(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * This method waits for every worker of the stage to exit.
+	 *
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	void await() throws InterruptedException {
+		for (Thread worker : workers)
+			worker.join();
+		return;
+	}
+
+	/**
+	 * This method interrupts every worker of the stage, so the stage ends without
+	 * handling the rest of its queue.
+	 */
+	void cancel() {
+		for (Thread worker : workers)
+			worker.interrupt();
+		return;
+	}
+
+	/**
+	 * This is a support method for the start() method, run by every worker thread.
+	 * It handles items until it takes an END marker, and the last worker to exit
+	 * ends the stage, dropping any items left on its queue, and closes the next
+	 * stage. A RuntimeException thrown by the Handler is logged and doesn't stop
+	 * the worker, while an Error, such as an OutOfMemoryError, stops it but still
+	 * counts it as exited, so neither the stages after it nor the ones feeding it
+	 * wait for it forever.
+	 */
+	@SuppressWarnings("unchecked")
+	private void work() {
+		boolean interrupted = false;
+		try {
+			Object item;
+			while ((item = queue.take()) != END) {
+				long start = System.nanoTime();
+				try {
+					handler.handle((I) item);
+				} catch (RuntimeException e) {
+					logger.severe(String.format("Stage %s failed to handle an item: %s", name, e));
+				}
+				busyNanos.add(System.nanoTime() - start);
+				items.increment();
+			}
+		} catch (InterruptedException e) {
+			logger.warning(String.format("Stage %s interrupted", name));
+			interrupted = true;
+		} finally {
+			if (running.decrementAndGet() == 0) {
+				finished = System.nanoTime();
+				ended = true;
+				queue.clear();
+				if (next != null && !interrupted) {
+					try {
+						next.close();
+					} catch (InterruptedException e) {
+						logger.warning(String.format("Stage %s interrupted", name));
+					}
+				}
+			}
+		}
+		return;
+	}
+
+	/**
+	 * @return The amount of items handled by the stage.
+	 */
+	long items() {
+		return items.sum();
+	}
+
+	/**
+	 * This method summarises the work of a stage that has ended: the amount of
+	 * items it handled and their rate per second of the lifetime of the stage,
+	 * the share of the time of its workers they spent working, and the share they
+	 * spent blocked on the full queue of the next stage, which is the
+	 * backpressure the next stage exerted on this one.
+	 *
+	 * @return The summary of the stage.
+	 */
+	String report() {
+		double seconds = Math.max(1, finished - started) / 1e9;
+		double capacity = seconds * 1e9 * workers.length;
+		long blocked = next == null ? 0 : next.blockedNanos.sum();
+		return String.format("Stage %s: %d items in %.3f s (%.1f/s) on %d threads, %.0f%% busy, %.0f%% blocked",
+				name, items(), seconds, items() / seconds, workers.length,
+				100 * Math.max(0, busyNanos.sum() - blocked) / capacity, 100 * blocked / capacity);
+	}
+}
@@ -1,92 +1,219 @@
 package uk.ac.ed.inf.powergrab;
 
-import java.util.ArrayList;
 import java.util.Random;
+import java.util.logging.Level;
 
 /**
  * This class extends the abstract Drone class. It represents the stateful drone
  * and consists of non-static methods that implement its behaviour. It also
- * defines the abstract method makeMove() in the superclass.
+ * defines the abstract method nextMove() in the superclass.
+ * 
+ * By default the drone aims for the nearest lighthouse it hasn't charged from
+ * yet. In planning mode, it instead plans the order in which it visits every
+ * lighthouse with a TourPlanner before its first move and follows that order,
+ * skipping the lighthouses it has charged from on the way. A target the drone
+ * is stuck on is put back among the lighthouses it hasn't charged from and the
+ * drone moves on to the next one in the order, returning to the nearest ones
+ * left once the order is exhausted. In planning mode the drone also flies the
+ * shortest sequence of moves to its target found by a LatticeSearch, which goes
+ * around the dangers in the way rather than being stuck on them, as long as
+ * there is one.
  * 
  * @author David Jorge (s1712653)
  *
  */
 public class Stateful extends Drone {
 	/**
-	 * This class has 5 private attributes: a POI object, target, representing the
-	 * lighthouse the drone is currently aiming to charge from, a Position object,
-	 * prevPos, representing the drone’s previous position, a Boolean,
-	 * hasJustCharged, representing whether or not the drone has charged from its
-	 * current target in its previous move, an ArrayList, unvisitedPOIs, of type POI
-	 * representing the lighthouses the drone hasn’t charged from yet, and an int,
-	 * stuckCounter, representing the amount of moves the drone has taken to reach
-	 * the current target.
+	 * This class has 12 private attributes: an int, target, holding the index of
+	 * the lighthouse the drone is currently aiming to charge from, or -1 if it has
+	 * no target, a Position object, prevPos, representing the drone’s previous
+	 * position, a Boolean, hasJustCharged, representing whether or not the drone
+	 * has charged from its current target in its previous move, a KdTree,
+	 * unvisitedPOIs, representing the lighthouses the drone hasn’t charged from
+	 * yet, an int, stuckCounter, representing the amount of moves the drone has
+	 * taken to reach the current target, an IntList, nearby, reused as scratch
+	 * space by every spatial index query, an int array, tour, holding the planned
+	 * order of the lighthouses, or null if the drone isn't in planning mode, an
+	 * int, tourNext, holding the position in the planned order of the next target,
+	 * a LatticeSearch, search, finding the moves to the target in planning mode, or
+	 * null, a Direction array, route, holding the moves found to the target, or
+	 * null if none were found, an int, routeNext, holding the position in the route
+	 * of the next move, and an int, routeTarget, holding the target the route was
+	 * searched for, or -1 if it has to be searched for again.
 	 */
-	private POI target;
+	private int target = -1;
 	private Position prevPos = new Position(0, 0);
 	private boolean hasJustCharged = false;
-	private ArrayList<POI> unvisitedPOIs = new ArrayList<>();
+	private KdTree unvisitedPOIs;
 	private int stuckCounter = 0;
+	private IntList nearby = new IntList();
+	private int[] tour;
+	private int tourNext = 0;
+	private LatticeSearch search;
+	private Direction[] route;
+	private int routeNext = 0;
+	private int routeTarget = -1;
 
 	/**
 	 * Constructor of the Stateful drone class. It is executed when a new instance
 	 * of the Stateful class is initialised, calling the superclass constructor and
 	 * the loadTargets and getNextTarget methods, which initialise the starting
-	 * target. Its inputs are a Position object, representing the initial latitude
-	 * and longitude of the drone, and a pseudo-random number generator object.
+	 * target. Its inputs are a World object, a Position object, representing the
+	 * initial latitude and longitude of the drone, and a pseudo-random number
+	 * generator object.
+	 * 
+	 * @param world           This is the World object the drone flies in.
+	 * @param initialPosition This is the Position object representing the initial
+	 *                        latitude and longitude of the drone.
+	 * @param randNumGen      This is the pseudo-random number generator object.
+	 */
+	public Stateful(World world, Position initialPosition, Random randNumGen) {
+		this(world, initialPosition, randNumGen, null);
+	}
+
+	/**
+	 * Constructor of the Stateful drone class in planning mode. It behaves like the
+	 * constructor above, except that the order in which the drone visits the
+	 * lighthouses is planned by the input TourPlanner before the starting target is
+	 * chosen.
 	 * 
+	 * @param world           This is the World object the drone flies in.
 	 * @param initialPosition This is the Position object representing the initial
 	 *                        latitude and longitude of the drone.
 	 * @param randNumGen      This is the pseudo-random number generator object.
+	 * @param planner         This is the TourPlanner planning the order of the
+	 *                        lighthouses, or null to aim for the nearest one.
 	 */
-	public Stateful(Position initialPosition, Random randNumGen) {
-		super(initialPosition, randNumGen);
-		loadTargets();
+	public Stateful(World world, Position initialPosition, Random randNumGen, TourPlanner planner) {
+		super(world, initialPosition, randNumGen);
+		loadTargets(planner);
 		getNextTarget();
 	}
 
+	/**
+	 * This class extends the snapshot of the superclass with the target of the
+	 * drone, its previous position, whether it has just charged from its target,
+	 * its stuck counter, its position in the planned order and a mark in the undo
+	 * log of the unvisitedPOIs KdTree.
+	 */
+	private static final class StatefulSnapshot extends Snapshot {
+		final int target;
+		final Position prevPos;
+		final boolean hasJustCharged;
+		final int stuckCounter;
+		final int tourNext;
+		final int unvisitedMark;
+
+		StatefulSnapshot(Stateful drone) {
+			super(drone);
+			this.target = drone.target;
+			this.prevPos = drone.prevPos;
+			this.hasJustCharged = drone.hasJustCharged;
+			this.stuckCounter = drone.stuckCounter;
+			this.tourNext = drone.tourNext;
+			this.unvisitedMark = drone.unvisitedPOIs.mark();
+		}
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also saving the
+	 * target of the drone and the lighthouses it hasn't charged from yet.
+	 */
+	@Override
+	public Snapshot snapshot() {
+		return new StatefulSnapshot(this);
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also restoring the
+	 * target of the drone and the lighthouses it hasn't charged from yet. The route
+	 * to the target is searched for again from the restored position.
+	 */
+	@Override
+	public void restore(Snapshot snapshot) {
+		super.restore(snapshot);
+		StatefulSnapshot state = (StatefulSnapshot) snapshot;
+		unvisitedPOIs.rollback(state.unvisitedMark);
+		target = state.target;
+		prevPos = state.prevPos;
+		hasJustCharged = state.hasJustCharged;
+		stuckCounter = state.stuckCounter;
+		tourNext = state.tourNext;
+		routeTarget = -1;
+		return;
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also releasing the
+	 * mark held on the lighthouses the drone hasn't charged from yet.
+	 */
+	@Override
+	public void release(Snapshot snapshot) {
+		super.release(snapshot);
+		unvisitedPOIs.release();
+		return;
+	}
+
 	/**
 	 * This method loads the targets (lighthouses with a positive value of either
-	 * coins or power). The POIs ArrayList is iterated to check for all lighthouses
-	 * with positive values of either coins or power, adding any features that pass
-	 * the condition to the unvisitedPOIs ArrayList, representing the targets that
-	 * are still yet to be visited.
+	 * coins or power). The feature store is iterated to check for all lighthouses
+	 * with positive values of either coins or power, building the unvisitedPOIs
+	 * KdTree, representing the targets that are still yet to be visited, from any
+	 * features that pass the condition. In planning mode, the order in which the
+	 * targets are visited is then planned from the starting position of the drone.
+	 * 
+	 * @param planner This is the TourPlanner planning the order of the targets,
+	 *                or null if the drone isn't in planning mode.
 	 */
-	private void loadTargets() {
-		for (POI feature : App.POIs) {
-			if (feature.symbol.equals("lighthouse") && (feature.coins > 0 || feature.power > 0))
-				unvisitedPOIs.add(feature);
+	private void loadTargets(TourPlanner planner) {
+		FeatureOverlay features = world.features;
+		IntList targets = new IntList();
+		for (int feature = 0; feature < features.size(); feature++) {
+			if (features.isChargedLighthouse(feature))
+				targets.add(feature);
+		}
+		unvisitedPOIs = new KdTree(features.snapshot, targets);
+		if (planner != null) {
+			tour = planner.plan(features.snapshot, currentPosition.latitude, currentPosition.longitude, targets);
+			search = new LatticeSearch(features, world.index);
 		}
 		return;
 	}
 
 	/**
 	 * This private method sets the class attribute representing the drone’s current
-	 * target with the feature from the unvisitedPOIs ArrayList, representing the
+	 * target with the feature from the unvisitedPOIs KdTree, representing the
 	 * lighthouses the drone hasn’t charged from yet, that is closest to the drone’s
 	 * current position. If the unvisitedPOIs class attribute is empty, this method
 	 * sets the value of the attribute representing the drone’s current target to
-	 * null. If the class attribute is set to a not null value, its reference is
-	 * also removed from the unvisitedPOIs class attribute.
+	 * -1. If the class attribute is set to a valid index, that index is also
+	 * removed from the unvisitedPOIs class attribute. In planning mode, the next
+	 * lighthouse of the planned order still in the unvisitedPOIs class attribute is
+	 * chosen instead, as long as there is one.
 	 */
 	private void getNextTarget() {
-		POI nearestPOI = null;
-		double minDist = Integer.MAX_VALUE;
-		for (POI feature : unvisitedPOIs) {
-			double distance = euclideanDist(currentPosition.latitude, currentPosition.longitude, feature.latitude,
-					feature.longitude);
-			if (distance <= minDist) {
-				minDist = distance;
-				nearestPOI = feature;
+		if (tour != null) {
+			while (tourNext < tour.length) {
+				int planned = tour[tourNext++];
+				if (unvisitedPOIs.remove(planned)) {
+					if (App.TRACE && logger.isLoggable(Level.FINER))
+						logger.finer(String.format("Next planned target is id %s from move %d",
+								world.features.id(planned), move));
+					target = planned;
+					return;
+				}
 			}
 		}
-		if (nearestPOI != null) {
-			logger.finer(String.format("Next target is id %s from move %d", nearestPOI.id, move));
+		int nearestPOI = unvisitedPOIs.nearest(currentPosition.latitude, currentPosition.longitude);
+		if (nearestPOI != -1) {
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("Next target is id %s from move %d", world.features.id(nearestPOI), move));
 			target = nearestPOI;
 			unvisitedPOIs.remove(target);
-		} else if (nearestPOI == null) {
-			target = null;
-			logger.finer(String.format("Target list empty from move %d", move));
+		} else {
+			target = -1;
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("Target list empty from move %d", move));
 		}
 		return;
 	}
@@ -105,51 +232,65 @@ public class Stateful extends Drone {
 	 * 1. The drone doesn’t charge from a danger feature. 2. The drone moves to a
 	 * valid position.
 	 * 
-	 * It calls the updateState() method with the set of directions computed to
-	 * return a Direction object representing the direction the drone takes.
+	 * It calls the updateState() method with the set of directions computed, kept
+	 * as a bitmask of directions, to return a Direction object representing the
+	 * direction the drone takes. Whether a candidate position is safe is looked up
+	 * in the SafetyRaster of the world, and the features in range are only scanned
+	 * for positions in boundary cells.
 	 * 
 	 * @return A Direction object representing a 'random' move by the drone that
 	 *         aims to not charge from any feature.
 	 */
 	private Direction getRandomMove() {
-		ArrayList<Direction> safeMoves = new ArrayList<>();
-		ArrayList<Direction> validMoves = new ArrayList<>();
+		FeatureOverlay features = world.features;
+		int safeMoves = 0;
+		int validMoves = 0;
 
-		for (Direction d : Direction.values()) {
-			Position nextPos = currentPosition.nextPosition(d);
-			boolean danger = false;
-			boolean lighthouse = false;
+		computeCandidates();
+		for (Direction d : Direction.VALUES) {
+			double nextLatitude = nextLat[d.ordinal()];
+			double nextLongitude = nextLong[d.ordinal()];
 
-			double closestLighthouse = Integer.MAX_VALUE;
-			double closestDanger = Integer.MAX_VALUE;
+			if (Position.inPlayArea(nextLatitude, nextLongitude)) {
+				byte kind = world.raster.kind(nextLatitude, nextLongitude);
+				boolean safe = kind != SafetyRaster.DANGER;
+				if (kind == SafetyRaster.EXACT) {
+					boolean danger = false;
+					boolean lighthouse = false;
 
-			if (nextPos.inPlayArea()) {
-				for (POI feature : App.POIs) {
-					double distanceToFeature = euclideanDist(feature.latitude, feature.longitude, nextPos.latitude,
-							nextPos.longitude);
-					if (distanceToFeature <= 0.00025 && feature.symbol.equals("lighthouse")
-							&& (feature.coins > 0 || feature.power > 0)) {
-						lighthouse = true;
-						if (distanceToFeature <= closestLighthouse) {
-							closestLighthouse = distanceToFeature;
-						}
-					} else if (distanceToFeature <= 0.00025 && feature.symbol.equals("danger")
-							&& (feature.coins < 0 || feature.power < 0)) {
-						danger = true;
-						if (distanceToFeature <= closestDanger) {
-							closestDanger = distanceToFeature;
+					double closestLighthouse = Integer.MAX_VALUE;
+					double closestDanger = Integer.MAX_VALUE;
+
+					nearby.clear();
+					world.index.inRadius(nextLatitude, nextLongitude, 0.00025, nearby);
+					for (int k = 0; k < nearby.size(); k++) {
+						int feature = nearby.get(k);
+						double distanceToFeature = euclideanDist(features.latitude(feature),
+								features.longitude(feature), nextLatitude, nextLongitude);
+						if (distanceToFeature <= 0.00025 && features.isChargedLighthouse(feature)) {
+							lighthouse = true;
+							if (distanceToFeature <= closestLighthouse) {
+								closestLighthouse = distanceToFeature;
+							}
+						} else if (distanceToFeature <= 0.00025 && features.isChargedDanger(feature)) {
+							danger = true;
+							if (distanceToFeature <= closestDanger) {
+								closestDanger = distanceToFeature;
+							}
 						}
 					}
+					safe = !danger || (danger && lighthouse && (closestLighthouse < closestDanger));
 				}
-				if ((!danger || (danger && lighthouse && (closestLighthouse < closestDanger))))
-					safeMoves.add(d);
-				validMoves.add(d);
+				if (safe)
+					safeMoves |= d.bit;
+				validMoves |= d.bit;
 			}
 		}
-		if (!safeMoves.isEmpty()) {
+		if (safeMoves != 0) {
 			return updateState(safeMoves);
 		} else {
-			logger.finer(String.format("No safe directions detected during move %d", move));
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("No safe directions detected during move %d", move));
 			return updateState(validMoves);
 		}
 	}
@@ -157,16 +298,16 @@ public class Stateful extends Drone {
 	/**
 	 * This private method is responsible for updating all necessary attributes of
 	 * the drone after it has computed the set of possible direction(s) to go to. It
-	 * takes an ArrayList of type Direction, representing the possible directions
-	 * the drone can take, as dictated by the makeMove() method, as an input. It
-	 * outputs a Direction object representing the final direction the drone has
-	 * chosen to take.
+	 * takes a bitmask of directions, representing the possible directions the drone
+	 * can take, as dictated by the nextMove() method, as an input. It outputs a
+	 * Direction object representing the final direction the drone has chosen to
+	 * take.
 	 * 
-	 * It chooses a Direction at random, if necessary, from the input ArrayList
-	 * using the pseudo-random number generator attribute. The current position of
-	 * the drone is then updated, the power attribute is deducted for the move, and
-	 * the getInRange() and updateStatus() methods are called to get the features
-	 * now visible by the drone and to charge from the closest feature in range if
+	 * It chooses a Direction at random, if necessary, from the input bitmask using
+	 * the pickDirection() method of the superclass. The current position of the
+	 * drone is then updated, the power attribute is deducted for the move, and the
+	 * getInRange() and updateStatus() methods are called to get the features now
+	 * visible by the drone and to charge from the closest feature in range if
 	 * applicable. It will also check if the drone is stuck on its current target if
 	 * applicable. If the drone currently has a target it will check if the target
 	 * has been charged from, calling the getNextTarget() method to get the next
@@ -174,22 +315,31 @@ public class Stateful extends Drone {
 	 * target, have been charged from, removing them from the unvisitedPOIs class
 	 * attribute.
 	 * 
-	 * @param moveList This is the ArrayList of directions representing the possible
-	 *                 directions the drone can take dictated by the makeMove or the
-	 *                 getRandomMove methods.
+	 * @param moves This is the bitmask of directions representing the possible
+	 *              directions the drone can take dictated by the nextMove or the
+	 *              getRandomMove methods.
 	 * @return The direction the drone has been made to take.
 	 */
-	private Direction updateState(ArrayList<Direction> moveList) {
-		Direction nextDir = moveList.get(randNumGen.nextInt(moveList.size()));
-		logger.finer(String.format("Drone went in direction %s during move %d", nextDir, move));
+	private Direction updateState(int moves) {
+		Direction nextDir = pickDirection(moves);
+		if (App.TRACE && logger.isLoggable(Level.FINER))
+			logger.finer(String.format("Drone went in direction %s during move %d", nextDir, move));
 
 		if (stuckCounter == 20 && !unvisitedPOIs.isEmpty()) {
-			POI temp = target;
-			target = unvisitedPOIs.get(randNumGen.nextInt(unvisitedPOIs.size()));
+			int temp = target;
+			if (tour != null)
+				getNextTarget();
+			else
+				target = unvisitedPOIs.get(randNumGen.nextInt(unvisitedPOIs.size()));
 			unvisitedPOIs.add(temp);
 			stuckCounter = 0;
-			logger.finer(String.format("Drone couldn't charge from target %s in 20 moves, switching to new target %s",
-					temp.id, target.id));
+			metrics.stuckEscapes++;
+			if (FlightEvents.enabled)
+				FlightEvents.targetSwitch(move, world.features.id(temp), world.features.id(target), "stuck");
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(
+						String.format("Drone couldn't charge from target %s in 20 moves, switching to new target %s",
+								world.features.id(temp), world.features.id(target)));
 		}
 		prevPos = currentPosition;
 
@@ -199,27 +349,37 @@ public class Stateful extends Drone {
 		updateStatus();
 
 		if (hasTarget()) {
-			if (!(target.coins > 0 && target.power > 0)) {
+			FeatureOverlay features = world.features;
+			if (!(features.coins(target) > 0 && features.power(target) > 0)) {
+				int previous = target;
 				getNextTarget();
+				metrics.retargets++;
+				if (FlightEvents.enabled)
+					FlightEvents.targetSwitch(move, world.features.id(previous),
+							target == -1 ? null : world.features.id(target), "charged");
 				hasJustCharged = true;
 				stuckCounter = 0;
-				logger.finer(String.format("Drone charged from target during move %d", move));
+				if (App.TRACE && logger.isLoggable(Level.FINER))
+					logger.finer(String.format("Drone charged from target during move %d", move));
 			} else {
 				double closestLighthouse = Integer.MAX_VALUE;
-				POI closestPOI = null;
-				for (POI feature : inRange) {
-					double distanceToFeature = euclideanDist(feature.latitude, feature.longitude,
+				int closestPOI = -1;
+				for (int k = 0; k < inRange.size(); k++) {
+					int feature = inRange.get(k);
+					double distanceToFeature = euclideanDist(features.latitude(feature), features.longitude(feature),
 							currentPosition.latitude, currentPosition.longitude);
-					if (distanceToFeature <= 0.00025 && !feature.id.equals(target.id)) {
+					if (distanceToFeature <= 0.00025 && feature != target) {
 						if (distanceToFeature < closestLighthouse) {
 							closestLighthouse = distanceToFeature;
 							closestPOI = feature;
 						}
 					}
 				}
-				if (closestPOI != null) {
+				if (closestPOI != -1) {
 					unvisitedPOIs.remove(closestPOI);
-					logger.finer(String.format("Drone charged from non-target id %s during move %d", closestPOI, move));
+					if (App.TRACE && logger.isLoggable(Level.FINER))
+						logger.finer(String.format("Drone charged from non-target id %s during move %d",
+								features.id(closestPOI), move));
 				}
 				hasJustCharged = false;
 				stuckCounter += 1;
@@ -232,19 +392,19 @@ public class Stateful extends Drone {
 	 * This method returns a boolean value representing whether the drone currently
 	 * has a target or not.
 	 * 
-	 * @return true if the drone target is not null or false if the drone target is
-	 *         null.
+	 * @return true if the drone target is a valid index or false if the drone
+	 *         target is -1.
 	 */
 	private boolean hasTarget() {
-		return target != null;
+		return target != -1;
 	}
 
 	/**
-	 * This public method implements the abstract method declared in the superclass
-	 * for the statateful drone behaviour. It computes sets of direction(s) that are
-	 * possible for the drone to take at its current position, updates the
-	 * attributes describing its state at the end of the move and returns a
-	 * Direction object representing the direction the drone took.
+	 * This protected method implements the abstract method declared in the
+	 * superclass for the statateful drone behaviour. It computes sets of
+	 * direction(s) that are possible for the drone to take at its current position,
+	 * updates the attributes describing its state at the end of the move and
+	 * returns a Direction object representing the direction the drone took.
 	 * 
 	 * From the 16 possible direction it makes sets of them for each of the
 	 * following conditions which have priorities as follows, ordered from most
@@ -258,79 +418,133 @@ public class Stateful extends Drone {
 	 * The method then calls the updateState() method to update the attributes
 	 * describing its current state with the most favourable non-empty set of
 	 * direction(s) it computed, returning the Direction object representing the
-	 * direction the drone takes in this move.
+	 * direction the drone takes in this move. As in the stateless drone, the sets
+	 * are kept as bitmasks of directions and the candidate positions are read from
+	 * the scratch buffers of the superclass. In planning mode, the next move of the
+	 * shortest sequence of moves to the target found by the LatticeSearch is taken
+	 * instead, without computing the sets, whenever there is one, as it never makes
+	 * the drone charge from a danger, even through positions where a danger is in
+	 * range. As in the getRandomMove() method, the features in range of a candidate
+	 * position are only scanned if it is in a boundary cell of the SafetyRaster of
+	 * the world.
 	 * 
 	 */
 	@Override
-	public Direction makeMove() {
+	protected Direction nextMove() {
 		move++;
 
 		if (!hasTarget()) {
 			return getRandomMove();
 		}
+		Direction routeMove = search == null ? null : nextRouteMove();
+		if (routeMove != null) {
+			if (App.TRACE && logger.isLoggable(Level.FINEST))
+				logger.finest(String.format("Following route of %d moves during move %d", route.length, move));
+			return updateState(routeMove.bit);
+		}
 
+		FeatureOverlay features = world.features;
 		double minSafeDistToTarget = Integer.MAX_VALUE;
-		ArrayList<Direction> movesToTarget = new ArrayList<>();
-		ArrayList<Direction> randomValidMoves = new ArrayList<>();
-		ArrayList<Direction> safeMoves = new ArrayList<>();
+		int movesToTarget = 0;
+		int randomValidMoves = 0;
+		int safeMoves = 0;
 
-		for (Direction d : Direction.values()) {
-			Position nextPos = currentPosition.nextPosition(d);
-			double nextDistToTarget = euclideanDist(target.latitude, target.longitude, nextPos.latitude,
-					nextPos.longitude);
-			boolean danger = false;
-			boolean lighthouse = false;
+		computeCandidates();
+		for (Direction d : Direction.VALUES) {
+			double nextLatitude = nextLat[d.ordinal()];
+			double nextLongitude = nextLong[d.ordinal()];
+			double nextDistToTarget = euclideanDist(features.latitude(target), features.longitude(target),
+					nextLatitude, nextLongitude);
 
-			double closestLighthouse = nextDistToTarget;
-			String closestLighthouseId = target.id;
-			double closestDanger = Integer.MAX_VALUE;
+			if (Position.inPlayArea(nextLatitude, nextLongitude)) {
+				byte kind = world.raster.kind(nextLatitude, nextLongitude);
+				boolean safe = kind != SafetyRaster.DANGER;
+				boolean onTarget = true;
+				if (kind == SafetyRaster.EXACT) {
+					boolean danger = false;
+					boolean lighthouse = false;
 
-			if (nextPos.inPlayArea()) {
-				for (POI feature : App.POIs) {
-					double distanceToFeature = euclideanDist(feature.latitude, feature.longitude, nextPos.latitude,
-							nextPos.longitude);
-					if (distanceToFeature <= 0.00025 && feature.symbol.equals("lighthouse")
-							&& (feature.coins > 0 || feature.power > 0)) {
-						lighthouse = true;
-						if (distanceToFeature <= closestLighthouse) {
-							closestLighthouse = distanceToFeature;
-							closestLighthouseId = feature.id;
-						}
-					} else if (distanceToFeature <= 0.00025 && feature.symbol.equals("danger")
-							&& (feature.coins < 0 || feature.power < 0)) {
-						danger = true;
-						if (distanceToFeature <= closestDanger) {
-							closestDanger = distanceToFeature;
+					double closestLighthouse = nextDistToTarget;
+					int closestLighthouseIndex = target;
+					double closestDanger = Integer.MAX_VALUE;
+
+					nearby.clear();
+					world.index.inRadius(nextLatitude, nextLongitude, 0.00025, nearby);
+					for (int k = 0; k < nearby.size(); k++) {
+						int feature = nearby.get(k);
+						double distanceToFeature = euclideanDist(features.latitude(feature),
+								features.longitude(feature), nextLatitude, nextLongitude);
+						if (distanceToFeature <= 0.00025 && features.isChargedLighthouse(feature)) {
+							lighthouse = true;
+							if (distanceToFeature <= closestLighthouse) {
+								closestLighthouse = distanceToFeature;
+								closestLighthouseIndex = feature;
+							}
+						} else if (distanceToFeature <= 0.00025 && features.isChargedDanger(feature)) {
+							danger = true;
+							if (distanceToFeature <= closestDanger) {
+								closestDanger = distanceToFeature;
+							}
 						}
 					}
+					safe = !danger || (danger && lighthouse && (closestLighthouse < closestDanger));
+					onTarget = !(nextDistToTarget <= 0.00025) || closestLighthouseIndex == target;
 				}
-				if ((!danger || (danger && lighthouse && (closestLighthouse < closestDanger)))
-						&& (!(nextDistToTarget <= 0.00025) || closestLighthouseId.equals(target.id)) && (hasJustCharged
-								|| !(nextPos.latitude == prevPos.latitude && nextPos.longitude == prevPos.longitude))) {
-					logger.finest(String.format("Detected 'safe' direction %s during move %d", d, move));
-					safeMoves.add(d);
+				if (safe && onTarget && (hasJustCharged
+						|| !(nextLatitude == prevPos.latitude && nextLongitude == prevPos.longitude))) {
+					if (App.TRACE && logger.isLoggable(Level.FINEST))
+						logger.finest(String.format("Detected 'safe' direction %s during move %d", d, move));
+					safeMoves |= d.bit;
 					if (nextDistToTarget < minSafeDistToTarget) {
 						minSafeDistToTarget = nextDistToTarget;
-						movesToTarget.clear();
-						movesToTarget.add(d);
+						movesToTarget = d.bit;
 					} else if (nextDistToTarget == minSafeDistToTarget) {
-						movesToTarget.add(d);
+						movesToTarget |= d.bit;
 					}
-				} else if ((!danger || (danger && lighthouse && (closestLighthouse < closestDanger)))) {
-					safeMoves.add(d);
+				} else if (safe) {
+					safeMoves |= d.bit;
 				}
-				randomValidMoves.add(d);
+				randomValidMoves |= d.bit;
 			}
 		}
-		if (!movesToTarget.isEmpty()) {
+		if (movesToTarget != 0) {
 			return updateState(movesToTarget);
-		} else if (movesToTarget.isEmpty() && !safeMoves.isEmpty()) {
-			logger.finer(
-					String.format("No safe directions minimizing distance to target were found during move %d", move));
+		} else if (movesToTarget == 0 && safeMoves != 0) {
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format(
+						"No safe directions minimizing distance to target were found during move %d", move));
 			return updateState(safeMoves);
 		} else {
-			logger.finer(String.format("No safe directions detected during move %d", move));
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("No safe directions detected during move %d", move));
 			return updateState(randomValidMoves);
 		}
 	}
+
+	/**
+	 * This private method returns the next move of the route to the target in
+	 * planning mode, or null if there is none. The route is searched for by the
+	 * LatticeSearch once per target and followed move by move, and only searched
+	 * for again once it is exhausted or its next move would make the drone charge
+	 * from a danger, e.g. after a snapshot was restored. A target no route leads to
+	 * isn't searched for again until it changes, so the drone falls back to aiming
+	 * for it directly without repeating the search on every move.
+	 * 
+	 * @return The next move of the route, or null if there is none.
+	 */
+	private Direction nextRouteMove() {
+		boolean replan = routeTarget != target || (route != null && routeNext == route.length);
+		if (!replan && route != null) {
+			Direction d = route[routeNext];
+			replan = search.inDanger(currentPosition.latitude + d.latOffset, currentPosition.longitude + d.longOffset);
+		}
+		if (replan) {
+			route = search.path(currentPosition.latitude, currentPosition.longitude, target);
+			routeNext = 0;
+			routeTarget = target;
+		}
+		if (route == null || routeNext == route.length)
+			return null;
+		return route[routeNext++];
+	}
 }
@@ -1,62 +1,107 @@
 package uk.ac.ed.inf.powergrab;
 
-import java.util.ArrayList;
 import java.util.Random;
+import java.util.logging.Level;
 
 /**
  * This class extends the abstract Drone class. It represents the stateless
  * drone and consists of non-static methods that implement its behaviour. It
- * also defines the abstract method makeMove() in the superclass.
+ * also defines the abstract method nextMove() in the superclass.
  * 
  * @author David Jorge (s1712653)
  *
  */
 public class Stateless extends Drone {
 	/**
-	 * This class has one private attribute ArrayList, inMoveRange, of type POI
-	 * representing all features that could be in charging range after a single
-	 * move.
+	 * This class has 2 private IntList attributes: inMoveRange, holding the indices
+	 * of all features that could be in charging range after a single move, and
+	 * nearby, a scratch list reused by every spatial index query.
 	 */
-	private ArrayList<POI> inMoveRange = new ArrayList<>();
+	private IntList inMoveRange = new IntList();
+	private IntList nearby = new IntList();
 
 	/**
 	 * Constructor of the Stateless drone class. It is executed when a new instance
 	 * of the Stateless class is initialised, calling the superclass constructor and
-	 * the overridden getInRange method. Its inputs are a Position object,
-	 * representing the initial latitude and longitude of the drone, and a
+	 * the overridden getInRange method. Its inputs are a World object, a Position
+	 * object, representing the initial latitude and longitude of the drone, and a
 	 * pseudo-random number generator object.
 	 * 
+	 * @param world           This is the World object the drone flies in.
 	 * @param initialPosition This is the Position object representing the initial
 	 *                        latitude and longitude of the drone.
 	 * @param randNumGen      This is the pseudo-random number generator object.
 	 */
-	public Stateless(Position initialPosition, Random randNumGen) {
-		super(initialPosition, randNumGen);
+	public Stateless(World world, Position initialPosition, Random randNumGen) {
+		super(world, initialPosition, randNumGen);
 		getInRange();
 	}
 
+	/**
+	 * This class extends the snapshot of the superclass with the features that
+	 * could be in charging range after a single move.
+	 */
+	private static final class StatelessSnapshot extends Snapshot {
+		final int[] inMoveRange;
+
+		StatelessSnapshot(Stateless drone) {
+			super(drone);
+			this.inMoveRange = drone.inMoveRange.toArray();
+		}
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also saving the
+	 * features that could be in charging range after a single move.
+	 */
+	@Override
+	public Snapshot snapshot() {
+		return new StatelessSnapshot(this);
+	}
+
+	/**
+	 * This method overrides the one defined in the superclass, also restoring the
+	 * features that could be in charging range after a single move.
+	 */
+	@Override
+	public void restore(Snapshot snapshot) {
+		super.restore(snapshot);
+		inMoveRange.clear();
+		inMoveRange.addAll(((StatelessSnapshot) snapshot).inMoveRange);
+		return;
+	}
+
 	/**
 	 * This method overrides the one defined in the superclass. Apart from storing
 	 * all features that are within 0.00025 degrees of the drone’s current position,
 	 * it also stores all features that are further than 0.00025 degrees away but
 	 * less than 0.00055 degrees (move distance plus charging distance) in the
-	 * inMoveRange ArrayList kept as an attribute by this class. This represents the
+	 * inMoveRange IntList kept as an attribute by this class. This represents the
 	 * features that could be in charging range after the drone has made a single
-	 * move.
+	 * move. Both sets are split from a single query on the spatial index of the
+	 * world for the features within 0.00055 degrees of the drone.
 	 */
 	@Override
 	protected void getInRange() {
 		this.inRange.clear();
 		this.inMoveRange.clear();
-		for (POI feature : App.POIs) {
-			double distance = euclideanDist(feature.latitude, feature.longitude, currentPosition.latitude,
-					currentPosition.longitude);
+		this.nearby.clear();
+		FeatureOverlay features = world.features;
+		scanned = world.index.inRadius(currentPosition.latitude, currentPosition.longitude, 0.00055, nearby);
+		metrics.inRangeVisited.record(scanned);
+		for (int k = 0; k < nearby.size(); k++) {
+			int feature = nearby.get(k);
+			double distance = euclideanDist(features.latitude(feature), features.longitude(feature),
+					currentPosition.latitude, currentPosition.longitude);
 			if (distance <= 0.00025) {
 				inRange.add(feature);
-				logger.finest(String.format("Station id %s in range during move %d", feature.id, move));
+				if (App.TRACE && logger.isLoggable(Level.FINEST))
+					logger.finest(String.format("Station id %s in range during move %d", features.id(feature), move));
 			} else if (distance > 0.00025 && distance <= 0.00055) {
 				inMoveRange.add(feature);
-				logger.finest(String.format("Station id %s in move range during move %d", feature.id, move));
+				if (App.TRACE && logger.isLoggable(Level.FINEST))
+					logger.finest(
+							String.format("Station id %s in move range during move %d", features.id(feature), move));
 			}
 		}
 		return;
@@ -65,27 +110,27 @@ public class Stateless extends Drone {
 	/**
 	 * This private method is responsible for updating all necessary attributes of
 	 * the drone after it has computed which direction(s) to go in. It takes an
-	 * ArrayList of type Direction, representing the set of possible directions the
-	 * drone can take, as dictated by the makeMove() method, as an input. It outputs
-	 * a Direction object representing the final direction the drone has chosen to
+	 * bitmask of directions, representing the set of possible directions the drone
+	 * can take, as dictated by the nextMove() method, as an input. It outputs a
+	 * Direction object representing the final direction the drone has chosen to
 	 * take.
 	 * 
-	 * It chooses a Direction at random, if necessary, from the input ArrayList
-	 * using the pseudo-random number generator attribute. The current position of
+	 * It chooses a Direction at random, if necessary, from the input bitmask using
+	 * the pickDirection() method of the superclass. The current position of
 	 * the drone is then updated with the nextPosition() method of the Position
 	 * class, the power attribute is deducted for the move, and the getInRange() and
 	 * updateStatus() methods are called to get the features now visible by the
 	 * drone and to charge from the closest feature in range if applicable.
 	 * 
 	 * 
-	 * @param moveList This is the ArrayList of directions representing the possible
-	 *                 directions the drone can take dictated by the makeMove
-	 *                 method.
+	 * @param moves This is the bitmask of directions representing the possible
+	 *              directions the drone can take dictated by the nextMove method.
 	 * @return The direction the drone has been made to take.
 	 */
-	private Direction updateState(ArrayList<Direction> moveList) {
-		Direction nextDir = moveList.get(randNumGen.nextInt(moveList.size()));
-		logger.finer(String.format("Drone went in direction %s during move %d", nextDir, move));
+	private Direction updateState(int moves) {
+		Direction nextDir = pickDirection(moves);
+		if (App.TRACE && logger.isLoggable(Level.FINER))
+			logger.finer(String.format("Drone went in direction %s during move %d", nextDir, move));
 		currentPosition = currentPosition.nextPosition(nextDir);
 		power -= 1.25;
 		getInRange();
@@ -94,9 +139,49 @@ public class Stateless extends Drone {
 	}
 
 	/**
-	 * This public method implements the abstract method declared in the superclass
-	 * for the stateless drone behaviour. It computes sets of direction(s) that are
-	 * possible for the drone to take at its current position, updates the
+	 * This private method classifies a candidate position by what the drone would
+	 * charge from there, scanning the features in the inMoveRange IntList: a
+	 * lighthouse if there is a lighthouse with positive coins or power in charging
+	 * range closer than any danger with negative coins or power in range, a danger
+	 * if there is such a danger otherwise, or neither.
+	 * 
+	 * @param nextLatitude  This is the latitude of the candidate position.
+	 * @param nextLongitude This is the longitude of the candidate position.
+	 * @return SafetyRaster.LIGHTHOUSE, SafetyRaster.DANGER or SafetyRaster.CLEAR.
+	 */
+	private byte classify(double nextLatitude, double nextLongitude) {
+		FeatureOverlay features = world.features;
+		boolean danger = false;
+		boolean lighthouse = false;
+
+		double closestLighthouse = Integer.MAX_VALUE;
+		double closestDanger = Integer.MAX_VALUE;
+
+		for (int k = 0; k < inMoveRange.size(); k++) {
+			int feature = inMoveRange.get(k);
+			double distance = euclideanDist(features.latitude(feature), features.longitude(feature), nextLatitude,
+					nextLongitude);
+			if (distance <= 0.00025 && features.isChargedLighthouse(feature)) {
+				lighthouse = true;
+				if (distance <= closestLighthouse) {
+					closestLighthouse = distance;
+				}
+			} else if (distance <= 0.00025 && features.isChargedDanger(feature)) {
+				danger = true;
+				if (distance <= closestDanger) {
+					closestDanger = distance;
+				}
+			}
+		}
+		if ((lighthouse && danger && closestLighthouse < closestDanger) || (lighthouse && !danger))
+			return SafetyRaster.LIGHTHOUSE;
+		return danger ? SafetyRaster.DANGER : SafetyRaster.CLEAR;
+	}
+
+	/**
+	 * This protected method implements the abstract method declared in the
+	 * superclass for the stateless drone behaviour. It computes sets of direction(s)
+	 * that are possible for the drone to take at its current position, updates the
 	 * attributes describing its state at the end of the move and returns a
 	 * Direction object representing the direction the drone took.
 	 * 
@@ -112,60 +197,50 @@ public class Stateless extends Drone {
 	 * The method then calls the updateState() method to update the attributes
 	 * describing its current state with the most favourable non-empty set of
 	 * direction(s) it computed, returning the Direction object representing the
-	 * direction the drone takes in this move.
+	 * direction the drone takes in this move. The sets are kept as bitmasks of
+	 * directions and the candidate positions are read from the scratch buffers of
+	 * the superclass, so evaluating a move allocates no objects. While no feature
+	 * is in charging range of the drone, the kind of a candidate position is
+	 * looked up in the SafetyRaster of the world, and only positions in boundary
+	 * cells are classified by the classify() method.
 	 * 
 	 */
 	@Override
-	public Direction makeMove() {
+	protected Direction nextMove() {
 		move++;
 
-		ArrayList<Direction> randomValidMoves = new ArrayList<>();
-		ArrayList<Direction> safeMoves = new ArrayList<>();
-		ArrayList<Direction> lighthousesInMoveRange = new ArrayList<>();
-
-		for (Direction d : Direction.values()) {
-			Position nextPos = currentPosition.nextPosition(d);
-			boolean danger = false;
-			boolean lighthouse = false;
-
-			double closestLighthouse = Integer.MAX_VALUE;
-			double closestDanger = Integer.MAX_VALUE;
-
-			if (nextPos.inPlayArea()) {
-				for (POI feature : inMoveRange) {
-					double distance = euclideanDist(feature.latitude, feature.longitude, nextPos.latitude,
-							nextPos.longitude);
-					if (distance <= 0.00025 && feature.symbol.equals("lighthouse")
-							&& (feature.coins > 0 || feature.power > 0)) {
-						lighthouse = true;
-						if (distance <= closestLighthouse) {
-							closestLighthouse = distance;
-						}
-					} else if (distance <= 0.00025 && feature.symbol.equals("danger")
-							&& (feature.coins < 0 || feature.power < 0)) {
-						danger = true;
-						if (distance <= closestDanger) {
-							closestDanger = distance;
-						}
-					}
-				}
-				if ((lighthouse && danger && closestLighthouse < closestDanger) || (lighthouse && !danger)) {
-					logger.finest(
-							String.format("Detected 'safe' lighthouse(s) in direction %s during move %d", d, move));
-					lighthousesInMoveRange.add(d);
-				} else if (!danger) {
-					safeMoves.add(d);
+		int randomValidMoves = 0;
+		int safeMoves = 0;
+		int lighthousesInMoveRange = 0;
+
+		computeCandidates();
+		for (Direction d : Direction.VALUES) {
+			double nextLatitude = nextLat[d.ordinal()];
+			double nextLongitude = nextLong[d.ordinal()];
+
+			if (Position.inPlayArea(nextLatitude, nextLongitude)) {
+				byte kind = inRange.isEmpty() ? world.raster.kind(nextLatitude, nextLongitude) : SafetyRaster.EXACT;
+				if (kind == SafetyRaster.EXACT)
+					kind = classify(nextLatitude, nextLongitude);
+				if (kind == SafetyRaster.LIGHTHOUSE) {
+					if (App.TRACE && logger.isLoggable(Level.FINEST))
+						logger.finest(
+								String.format("Detected 'safe' lighthouse(s) in direction %s during move %d", d, move));
+					lighthousesInMoveRange |= d.bit;
+				} else if (kind == SafetyRaster.CLEAR) {
+					safeMoves |= d.bit;
 				}
-				randomValidMoves.add(d);
+				randomValidMoves |= d.bit;
 			}
 		}
 
-		if (!lighthousesInMoveRange.isEmpty()) {
+		if (lighthousesInMoveRange != 0) {
 			return updateState(lighthousesInMoveRange);
-		} else if (lighthousesInMoveRange.isEmpty() && !safeMoves.isEmpty()) {
+		} else if (lighthousesInMoveRange == 0 && safeMoves != 0) {
 			return updateState(safeMoves);
 		} else {
-			logger.finer(String.format("No safe directions detected during move %d", move));
+			if (App.TRACE && logger.isLoggable(Level.FINER))
+				logger.finer(String.format("No safe directions detected during move %d", move));
 			return updateState(randomValidMoves);
 		}
 	}
@@ -0,0 +1,152 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+
+/**
+ * This class rasterises the play area into square cells of side CELL_SIZE and
+ * records, for every cell, the station a drone anywhere in the cell is in
+ * charging range of. A cell either has no station in charging range of any of
+ * its points, or a single station in charging range of all of its points, or
+ * is a boundary cell, crossed by the edge of the charging range of a station
+ * or in range of several stations, where which station the drone charges from
+ * depends on where in the cell it is and needs an exact check. Cells are
+ * classified against the bounding circle of the cell, less a small margin, so
+ * the classification holds for every point of the cell however distances are
+ * rounded.
+ *
+ * The raster only depends on where the stations are, so it is built once per
+ * target map, by visiting the cells around every station, and shared by every
+ * simulation on the map without ever being modified. Each simulation only keeps
+ * the kind of every station in its own SafetyRaster, starting from a copy of
+ * the kinds of the stations on the map as parsed, which are also kept by this
+ * class.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class StationRaster {
+	/**
+	 * The side of a cell, in degrees.
+	 */
+	public static final double CELL_SIZE = 0.00002;
+
+	/**
+	 * The station of a cell with no station in charging range.
+	 */
+	public static final int NONE = -1;
+
+	/**
+	 * The station of a boundary cell.
+	 */
+	public static final int BOUNDARY = -2;
+
+	/**
+	 * The charging range of a station, the radius of the bounding circle of a
+	 * cell and the margin kept against rounding, in degrees.
+	 */
+	private static final double RANGE = 0.00025;
+	private static final double HALF_DIAGONAL = CELL_SIZE * Math.sqrt(0.5);
+	private static final double MARGIN = 1e-9;
+
+	/**
+	 * This class has 4 private attributes: the amount of rows and columns of the
+	 * raster, the station of every cell, row by row from the south-west corner of
+	 * the play area, and the kind of every station on the map as parsed.
+	 */
+	private final int rows;
+	private final int cols;
+	private final int[] stations;
+	private final byte[] stationKinds;
+
+	/**
+	 * Constructor for the StationRaster class. Every cell is visited from every
+	 * station whose charging range can reach it, so the raster is built in time
+	 * linear in the amount of stations.
+	 *
+	 * @param features This is the feature store of the target map.
+	 */
+	public StationRaster(FeatureStore features) {
+		this.rows = (int) Math.ceil((Position.MAX_LATITUDE - Position.MIN_LATITUDE) / CELL_SIZE);
+		this.cols = (int) Math.ceil((Position.MAX_LONGITUDE - Position.MIN_LONGITUDE) / CELL_SIZE);
+		this.stations = new int[rows * cols];
+		Arrays.fill(stations, NONE);
+		for (int i = 0; i < features.size(); i++) {
+			double latitude = features.latitude(i);
+			double longitude = features.longitude(i);
+			int rowFrom = Math.max(0, row(latitude - RANGE) - 1);
+			int rowTo = Math.min(rows - 1, row(latitude + RANGE) + 1);
+			int colFrom = Math.max(0, col(longitude - RANGE) - 1);
+			int colTo = Math.min(cols - 1, col(longitude + RANGE) + 1);
+			for (int r = rowFrom; r <= rowTo; r++) {
+				for (int c = colFrom; c <= colTo; c++) {
+					double distance = Math.hypot(latitude - centreLatitude(r), longitude - centreLongitude(c));
+					if (distance - HALF_DIAGONAL > RANGE + MARGIN)
+						continue;
+					int cell = r * cols + c;
+					boolean inRange = distance + HALF_DIAGONAL <= RANGE - MARGIN;
+					stations[cell] = stations[cell] == NONE && inRange ? i : BOUNDARY;
+				}
+			}
+		}
+		this.stationKinds = new byte[features.size()];
+		for (int i = 0; i < features.size(); i++) {
+			if (features.isChargedLighthouse(i))
+				stationKinds[i] = SafetyRaster.LIGHTHOUSE;
+			else if (features.isChargedDanger(i))
+				stationKinds[i] = SafetyRaster.DANGER;
+		}
+	}
+
+	/**
+	 * This method returns the cell holding a position.
+	 *
+	 * @param latitude  This is the latitude of the position.
+	 * @param longitude This is the longitude of the position.
+	 * @return The index of the cell, or -1 if the position is outside the
+	 *         raster.
+	 */
+	public int cell(double latitude, double longitude) {
+		int r = row(latitude);
+		int c = col(longitude);
+		if (r < 0 || r >= rows || c < 0 || c >= cols)
+			return -1;
+		return r * cols + c;
+	}
+
+	/**
+	 * @param cell This is the index of a cell.
+	 * @return The index of the station in charging range of the whole cell, NONE
+	 *         or BOUNDARY.
+	 */
+	public int station(int cell) {
+		return stations[cell];
+	}
+
+	/**
+	 * @return A copy of the kinds of every station on the map as parsed, as
+	 *         SafetyRaster kinds.
+	 */
+	public byte[] stationKinds() {
+		return stationKinds.clone();
+	}
+
+	/**
+	 * These are support methods returning the row or column of a latitude or
+	 * longitude, and the latitude or longitude of the centre of a row or column.
+	 */
+	private static int row(double latitude) {
+		return (int) Math.floor((latitude - Position.MIN_LATITUDE) / CELL_SIZE);
+	}
+
+	private static int col(double longitude) {
+		return (int) Math.floor((longitude - Position.MIN_LONGITUDE) / CELL_SIZE);
+	}
+
+	private static double centreLatitude(int row) {
+		return Position.MIN_LATITUDE + (row + 0.5) * CELL_SIZE;
+	}
+
+	private static double centreLongitude(int col) {
+		return Position.MIN_LONGITUDE + (col + 0.5) * CELL_SIZE;
+	}
+}
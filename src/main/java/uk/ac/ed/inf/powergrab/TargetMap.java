@@ -0,0 +1,73 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * This class represents a parsed target map. It holds the features of the map,
+ * the spatial index built over them and the total amount of coins that can be
+ * collected on the map. A target map is never modified once it has been
+ * parsed, so a single instance can be shared by any amount of simulations,
+ * each of which works on its own World created from it, recording the features
+ * it drains in an overlay over the features of the map.
+ *
+ * The amount of moves between the lighthouses of the map is only built on
+ * first use, as most drones never look it up, and is kept with the map from
+ * then on, so every simulation on the map shares it.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class TargetMap {
+	/**
+	 * This class has 4 public final attributes: the FeatureStore holding the
+	 * features of the map as parsed, the SpatialIndex and the StationRaster built
+	 * over them, and the total amount of coins held by the lighthouses of the
+	 * map.
+	 */
+	public final FeatureStore features;
+	public final SpatialIndex index;
+	public final StationRaster raster;
+	public final double totalCoins;
+
+	/**
+	 * This class has 1 private attribute, the MoveDistances between the
+	 * lighthouses of the map, or null until it is first looked up.
+	 */
+	private volatile MoveDistances moveDistances;
+
+	/**
+	 * Constructor for the TargetMap class. It builds the spatial index and the
+	 * station raster over the input features and sums up the coins held by them.
+	 *
+	 * @param features This is the FeatureStore holding the features of the map.
+	 */
+	public TargetMap(FeatureStore features) {
+		this.features = features;
+		this.index = new SpatialIndex(features);
+		this.raster = new StationRaster(features);
+		double total = 0;
+		for (int i = 0; i < features.size(); i++) {
+			if (features.coins(i) > 0)
+				total += features.coins(i);
+		}
+		this.totalCoins = total;
+	}
+
+	/**
+	 * This method returns the amount of moves between the lighthouses of the map,
+	 * building it on the common fork-join pool the first time it is called.
+	 *
+	 * @return The MoveDistances of the map.
+	 */
+	public MoveDistances moveDistances() {
+		MoveDistances distances = moveDistances;
+		if (distances == null) {
+			synchronized (this) {
+				distances = moveDistances;
+				if (distances == null)
+					moveDistances = distances = new MoveDistances(this, ForkJoinPool.commonPool());
+			}
+		}
+		return distances;
+	}
+}
@@ -0,0 +1,329 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * This class plans the order in which a drone visits a set of lighthouses
+ * before it makes its first move. The order is an open path starting at the
+ * position of the drone, built by the nearest-neighbour heuristic and then
+ * improved by 2-opt moves, reversing a stretch of the path, and Or-opt moves,
+ * moving a stretch of up to 3 lighthouses elsewhere in the path, possibly
+ * reversed, until no move shortens the path or the time budget of the planner
+ * runs out, whichever comes first. On the maps of the powergrab server a local
+ * optimum is reached well within the default budget, so plans don't depend on
+ * the speed of the machine in practice.
+ *
+ * Lengths are measured in drone moves rather than in straight-line distance: a
+ * drone moves 0.0003 degrees in one of 16 directions, so the points it can
+ * reach in n moves fill a regular 16-gon of circumradius 0.0003n, and it only
+ * needs to get within charging range, 0.00025 degrees, of a lighthouse to
+ * charge from it. Lengths are kept fractional, so improvements of less than a
+ * move still count.
+ *
+ * A planner can also be given the MoveDistances of the map, in which case the
+ * length between two lighthouses is the amount of moves found around the
+ * dangers in between, and a lighthouse no sequence of moves reaches from
+ * another is only visited right after it as a last resort. Lengths from the
+ * position of the drone are still estimated. Since the amount of moves from a
+ * lighthouse to another can differ from the amount of moves back, reversing a
+ * stretch of the path then also counts the change in length of the stretch
+ * itself.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class TourPlanner {
+	/**
+	 * The default time budget of the improvement phase, in milliseconds.
+	 */
+	public static final long DEFAULT_BUDGET = 5;
+
+	/**
+	 * The longest stretch of lighthouses moved by an Or-opt move.
+	 */
+	private static final int MAX_SEGMENT = 3;
+
+	/**
+	 * The cosine of half the angle between two adjacent directions, i.e. the
+	 * inradius of the 16-gon reached in one move divided by its circumradius.
+	 */
+	private static final double INRADIUS = Math.cos(Math.PI / 16);
+
+	/**
+	 * The components of the normals of the two edges of the 16-gon between the
+	 * east and north-east directions.
+	 */
+	private static final double COS_LOW = Math.cos(Math.PI / 16);
+	private static final double SIN_LOW = Math.sin(Math.PI / 16);
+	private static final double COS_HIGH = Math.cos(3 * Math.PI / 16);
+	private static final double SIN_HIGH = Math.sin(3 * Math.PI / 16);
+
+	/**
+	 * The length added to the estimated amount of moves between two lighthouses
+	 * when no sequence of moves reaches the second one from the first.
+	 */
+	private static final double UNREACHABLE = 1000;
+
+	/**
+	 * This class has 2 private attributes, the time budget of the improvement
+	 * phase in nanoseconds, and the MoveDistances between lighthouses, or null if
+	 * they are estimated.
+	 */
+	private final long budgetNanos;
+	private final MoveDistances distances;
+
+	/**
+	 * Constructor for the TourPlanner class. It throws an IllegalArgumentException
+	 * if the budget is negative.
+	 *
+	 * @param budget This is the time budget of the improvement phase of every
+	 *               plan in milliseconds, where 0 only builds the
+	 *               nearest-neighbour path.
+	 */
+	public TourPlanner(long budget) {
+		this(budget, null);
+	}
+
+	/**
+	 * Constructor for the TourPlanner class measuring lengths between lighthouses
+	 * with the input MoveDistances. It throws an IllegalArgumentException if the
+	 * budget is negative.
+	 *
+	 * @param budget    This is the time budget of the improvement phase of every
+	 *                  plan in milliseconds, where 0 only builds the
+	 *                  nearest-neighbour path.
+	 * @param distances This is the MoveDistances of the map the plans are made
+	 *                  on, or null to estimate every length.
+	 */
+	public TourPlanner(long budget, MoveDistances distances) {
+		if (budget < 0)
+			throw new IllegalArgumentException("Invalid planning budget " + budget);
+		this.budgetNanos = budget * 1000000;
+		this.distances = distances;
+	}
+
+	/**
+	 * This method returns the amount of moves a drone needs to get from a point
+	 * within charging range of another, or from a point in the first place, which
+	 * is the length of the vector between them in the norm of the 16-gon reached
+	 * in one move, less the charging range.
+	 *
+	 * @param fromLatitude  This is the latitude of the starting point.
+	 * @param fromLongitude This is the longitude of the starting point.
+	 * @param toLatitude    This is the latitude of the point to charge from.
+	 * @param toLongitude   This is the longitude of the point to charge from.
+	 * @return The fractional amount of moves.
+	 */
+	public static double moves(double fromLatitude, double fromLongitude, double toLatitude, double toLongitude) {
+		double x = Math.abs(toLongitude - fromLongitude);
+		double y = Math.abs(toLatitude - fromLatitude);
+		if (y > x) {
+			double swap = x;
+			x = y;
+			y = swap;
+		}
+		double norm = Math.max(x * COS_LOW + y * SIN_LOW, x * COS_HIGH + y * SIN_HIGH) / INRADIUS;
+		return Math.max(0, norm - 0.00025) / Position.MOVE_LENGTH;
+	}
+
+	/**
+	 * This method plans the order in which a drone starting at the input position
+	 * visits the input lighthouses.
+	 *
+	 * @param store     This is the feature store holding the lighthouses.
+	 * @param latitude  This is the starting latitude of the drone.
+	 * @param longitude This is the starting longitude of the drone.
+	 * @param targets   This is the list of indices of the lighthouses to visit.
+	 * @return The indices of the lighthouses in the order they are visited.
+	 */
+	public int[] plan(FeatureStore store, double latitude, double longitude, IntList targets) {
+		long deadline = System.nanoTime() + budgetNanos;
+		int n = targets.size();
+		double[] lat = new double[n];
+		double[] lon = new double[n];
+		int[] tour = nearestNeighbour(store, latitude, longitude, targets);
+		for (int k = 0; k < n; k++) {
+			lat[k] = store.latitude(tour[k]);
+			lon[k] = store.longitude(tour[k]);
+		}
+		Path path = new Path(latitude, longitude, tour, lat, lon, distances);
+		boolean improved = budgetNanos > 0;
+		while (improved && System.nanoTime() < deadline)
+			improved = path.twoOpt() | path.orOpt();
+		return tour;
+	}
+
+	/**
+	 * This is a support method for the plan method building the
+	 * nearest-neighbour path, which repeatedly visits the closest lighthouse not
+	 * visited yet, looked up in a KdTree.
+	 *
+	 * @param store     This is the feature store holding the lighthouses.
+	 * @param latitude  This is the starting latitude of the drone.
+	 * @param longitude This is the starting longitude of the drone.
+	 * @param targets   This is the list of indices of the lighthouses to visit.
+	 * @return The indices of the lighthouses in nearest-neighbour order.
+	 */
+	private static int[] nearestNeighbour(FeatureStore store, double latitude, double longitude, IntList targets) {
+		KdTree unvisited = new KdTree(store, targets);
+		int[] tour = new int[targets.size()];
+		for (int k = 0; k < tour.length; k++) {
+			tour[k] = unvisited.nearest(latitude, longitude);
+			unvisited.remove(tour[k]);
+			latitude = store.latitude(tour[k]);
+			longitude = store.longitude(tour[k]);
+		}
+		return tour;
+	}
+
+	/**
+	 * This class holds an open path being improved: its starting point, the
+	 * indices and coordinates of the lighthouses in the order they are visited,
+	 * which are rearranged in place, and the MoveDistances between them, or null.
+	 */
+	private static final class Path {
+		final double startLat;
+		final double startLon;
+		final int[] tour;
+		final double[] lat;
+		final double[] lon;
+		final int n;
+		final MoveDistances distances;
+
+		Path(double startLat, double startLon, int[] tour, double[] lat, double[] lon, MoveDistances distances) {
+			this.startLat = startLat;
+			this.startLon = startLon;
+			this.tour = tour;
+			this.lat = lat;
+			this.lon = lon;
+			this.n = tour.length;
+			this.distances = distances;
+		}
+
+		/**
+		 * This method returns the length of the step from a position of the path
+		 * to another, where position -1 is the start of the path and position n
+		 * is past its end, which costs nothing to reach.
+		 */
+		double cost(int from, int to) {
+			if (to == n || from == n)
+				return 0;
+			if (from == -1)
+				return moves(startLat, startLon, lat[to], lon[to]);
+			double estimate = moves(lat[from], lon[from], lat[to], lon[to]);
+			if (distances == null)
+				return estimate;
+			int moves = distances.moves(tour[from], tour[to]);
+			return moves == -1 ? estimate + UNREACHABLE : moves;
+		}
+
+		/**
+		 * This method returns the change in length of the step from position k to
+		 * position k + 1 once it is taken the other way round, which is 0 unless
+		 * the lengths come from the MoveDistances of the map.
+		 */
+		double reversed(int k) {
+			return distances == null ? 0 : cost(k + 1, k) - cost(k, k + 1);
+		}
+
+		/**
+		 * This method makes every 2-opt move shortening the path, reversing the
+		 * lighthouses from position i to position j. The change in length of the
+		 * stretch itself is added up as j grows, and negated once it is reversed.
+		 *
+		 * @return true if the path was shortened otherwise false.
+		 */
+		boolean twoOpt() {
+			boolean improved = false;
+			for (int i = 0; i < n - 1; i++) {
+				double stretch = 0;
+				for (int j = i + 1; j < n; j++) {
+					stretch += reversed(j - 1);
+					double delta = cost(i - 1, j) + cost(i, j + 1) - cost(i - 1, i) - cost(j, j + 1) + stretch;
+					if (delta < -1e-9) {
+						reverse(i, j);
+						stretch = -stretch;
+						improved = true;
+					}
+				}
+			}
+			return improved;
+		}
+
+		/**
+		 * This method makes every Or-opt move shortening the path, moving the
+		 * lighthouses from position i to position i + length - 1 between the
+		 * lighthouses at positions p and p + 1, in the same or reversed order.
+		 *
+		 * @return true if the path was shortened otherwise false.
+		 */
+		boolean orOpt() {
+			boolean improved = false;
+			for (int length = 1; length <= MAX_SEGMENT; length++) {
+				for (int i = 0; i + length <= n; i++) {
+					int j = i + length - 1;
+					double removed = cost(i - 1, i) + cost(j, j + 1) - cost(i - 1, j + 1);
+					double stretch = 0;
+					for (int k = i; k < j; k++)
+						stretch += reversed(k);
+					for (int p = -1; p < n; p++) {
+						if (p >= i - 1 && p <= j)
+							continue;
+						double kept = cost(p, p + 1);
+						double forward = cost(p, i) + cost(j, p + 1) - kept;
+						double backward = cost(p, j) + cost(i, p + 1) - kept + stretch;
+						if (Math.min(forward, backward) - removed < -1e-9) {
+							if (backward < forward)
+								reverse(i, j);
+							move(i, j, p);
+							improved = true;
+							break;
+						}
+					}
+				}
+			}
+			return improved;
+		}
+
+		/**
+		 * This method reverses the lighthouses from position i to position j.
+		 */
+		void reverse(int i, int j) {
+			for (; i < j; i++, j--)
+				swap(i, j);
+			return;
+		}
+
+		/**
+		 * This method moves the lighthouses from position i to position j between
+		 * the lighthouses at positions p and p + 1, as a rotation of the stretch of
+		 * the path between them made of three reversals.
+		 */
+		void move(int i, int j, int p) {
+			if (p < i) {
+				reverse(p + 1, i - 1);
+				reverse(i, j);
+				reverse(p + 1, j);
+			} else {
+				reverse(i, j);
+				reverse(j + 1, p);
+				reverse(i, p);
+			}
+			return;
+		}
+
+		/**
+		 * This method swaps the lighthouses at positions i and j.
+		 */
+		void swap(int i, int j) {
+			int feature = tour[i];
+			tour[i] = tour[j];
+			tour[j] = feature;
+			double latitude = lat[i];
+			lat[i] = lat[j];
+			lat[j] = latitude;
+			double longitude = lon[i];
+			lon[i] = lon[j];
+			lon[j] = longitude;
+			return;
+		}
+	}
+}
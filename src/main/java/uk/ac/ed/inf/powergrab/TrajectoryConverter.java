@@ -0,0 +1,98 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Logger;
+
+/**
+ * This class regenerates the text and geojson output files of a run from its
+ * trajectory file, so runs archived in the binary format can be inspected with
+ * the same tools as the files written during a simulation. It consists
+ * exclusively of static methods. The regenerated files are identical to the
+ * ones the run would have written, as the trajectory file holds the exact
+ * values of the positions, coins and power of the drone. The class is made
+ * final to prevent it from being extended.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public final class TrajectoryConverter {
+	/**
+	 * A private attribute, logger, of type Logger is kept by this class in order to
+	 * make logging statements throughout its methods where applicable.
+	 */
+	private static final Logger logger = Logger.getLogger("App.TrajectoryConverter");
+
+	/**
+	 * Make Constructor private to prevent the creation of any instances of this
+	 * class.
+	 */
+	private TrajectoryConverter() {
+	};
+
+	/**
+	 * This method writes the move sequence of a trajectory to a MoveLogWriter, one
+	 * line per move.
+	 *
+	 * @param trajectory This is the TrajectoryReader of the trajectory file.
+	 * @param log        This is the MoveLogWriter the moves are written to.
+	 * @throws IOException If a move can't be written.
+	 */
+	public static void writeText(TrajectoryReader trajectory, MoveLogWriter log) throws IOException {
+		Position from = trajectory.position(-1);
+		for (int move = 0; move < trajectory.moves(); move++) {
+			Position to = trajectory.position(move);
+			log.write(from, to, trajectory.direction(move), trajectory.coins(move), trajectory.power(move));
+			from = to;
+		}
+		return;
+	}
+
+	/**
+	 * This method writes the features of the target map of a trajectory and the
+	 * path of the drone to a GeoJsonWriter.
+	 *
+	 * @param trajectory This is the TrajectoryReader of the trajectory file.
+	 * @param map        This is the target map of the run.
+	 * @param json       This is the GeoJsonWriter the document is written to.
+	 * @throws IOException If the document can't be written.
+	 */
+	public static void writeGeoJson(TrajectoryReader trajectory, TargetMap map, GeoJsonWriter json)
+			throws IOException {
+		json.writeMap(map.features);
+		json.writePoint(trajectory.spec.longitude, trajectory.spec.latitude);
+		for (int move = 0; move < trajectory.moves(); move++)
+			json.writePoint(trajectory.longitude(move), trajectory.latitude(move));
+		return;
+	}
+
+	/**
+	 * This method regenerates the text and geojson files of a trajectory file
+	 * next to it, with the same name and the .txt and .geojson extensions. The
+	 * target map is loaded from a map cache using the date in the header of the
+	 * file.
+	 *
+	 * @param file    This is the trajectory file.
+	 * @param maps    This is the map cache the target map is loaded from.
+	 * @param compact This is whether the geojson file is written without
+	 *                whitespace instead of pretty-printed.
+	 * @throws IOException If a file can't be read or written.
+	 */
+	public static void convert(File file, MapCache maps, boolean compact) throws IOException {
+		String name = file.getName();
+		if (name.endsWith(TrajectoryWriter.EXTENSION))
+			name = name.substring(0, name.length() - TrajectoryWriter.EXTENSION.length());
+		File base = new File(file.getAbsoluteFile().getParentFile(), name);
+		try (TrajectoryReader trajectory = TrajectoryReader.open(file)) {
+			TargetMap map = maps.load(trajectory.spec.mapDate());
+			try (MoveLogWriter log = MoveLogWriter.open(new File(base.getPath() + ".txt"))) {
+				writeText(trajectory, log);
+			}
+			try (GeoJsonWriter json = GeoJsonWriter.open(new File(base.getPath() + ".geojson"), compact)) {
+				writeGeoJson(trajectory, map, json);
+			}
+			logger.fine(String.format("Converted trajectory of %d moves in %s", trajectory.moves(), file));
+		}
+		return;
+	}
+}
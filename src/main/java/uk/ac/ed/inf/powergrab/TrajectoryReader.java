@@ -0,0 +1,217 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * This class reads a trajectory file written by the TrajectoryWriter class. The
+ * file is memory-mapped and its records are read in place, by position, so
+ * opening a file only reads its header and scanning the moves of many files
+ * doesn't copy them onto the heap. The header is exposed as the RunSpec of the
+ * run, and the records through methods taking the number of a move, starting
+ * from 0. Reading is stateless, so a TrajectoryReader can be shared between
+ * threads.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class TrajectoryReader implements Closeable {
+	/**
+	 * This class has 5 attributes: a public final RunSpec object, spec, for the
+	 * run described by the header, a private final FileChannel, channel, of the
+	 * file, a private final ByteBuffer, buffer, mapping the records of the file, a
+	 * private final int, moves, for the amount of complete records in the file,
+	 * and a Logger object, logger, to log statements in this class.
+	 */
+	public final RunSpec spec;
+	private final FileChannel channel;
+	private final ByteBuffer buffer;
+	private final int moves;
+	private static final Logger logger = Logger.getLogger("App.TrajectoryReader");
+
+	/**
+	 * Constructor for the TrajectoryReader class. It maps the file and reads its
+	 * header, throwing an IllegalArgumentException if the file isn't a trajectory
+	 * file of a supported version.
+	 *
+	 * @param channel This is the FileChannel of the file to read.
+	 * @throws IOException If the file can't be mapped.
+	 */
+	public TrajectoryReader(FileChannel channel) throws IOException {
+		this.channel = channel;
+		ByteBuffer file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		if (file.remaining() < 28 || file.getInt() != TrajectoryWriter.MAGIC) {
+			logger.severe("Not a trajectory file!");
+			throw new IllegalArgumentException("Not a trajectory file!");
+		}
+		short version = file.getShort();
+		if (version != TrajectoryWriter.VERSION) {
+			logger.severe("Unsupported trajectory file version " + version);
+			throw new IllegalArgumentException("Unsupported trajectory file version!");
+		}
+		int headerLength = file.getShort() & 0xffff;
+		if (headerLength > file.limit()) {
+			logger.severe("Truncated trajectory file header!");
+			throw new IllegalArgumentException("Truncated trajectory file!");
+		}
+		int seed = file.getInt();
+		double latitude = file.getDouble();
+		double longitude = file.getDouble();
+		String day = string(file, headerLength);
+		String month = string(file, headerLength);
+		String year = string(file, headerLength);
+		String droneType = string(file, headerLength);
+		this.spec = new RunSpec(day, month, year, latitude, longitude, seed, droneType);
+
+		file.position(headerLength);
+		this.buffer = file.slice();
+		this.moves = buffer.remaining() / TrajectoryWriter.RECORD_SIZE;
+		if (buffer.remaining() % TrajectoryWriter.RECORD_SIZE != 0)
+			logger.warning(String.format("Trajectory file ends with an incomplete record, reading its first %d moves",
+					moves));
+	}
+
+	/**
+	 * This method opens a TrajectoryReader reading a file.
+	 *
+	 * @param file This is the trajectory file.
+	 * @return The TrajectoryReader reading the file.
+	 * @throws IOException If the file can't be opened or mapped.
+	 */
+	public static TrajectoryReader open(File file) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			return new TrajectoryReader(channel);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * This is a support method for the constructor. It reads a String of the
+	 * header, throwing an IllegalArgumentException if it runs past the end of the
+	 * header.
+	 *
+	 * @param file         This is the ByteBuffer positioned at the String.
+	 * @param headerLength This is the length of the header.
+	 * @return The String.
+	 */
+	private static String string(ByteBuffer file, int headerLength) {
+		if (file.position() + 2 > headerLength)
+			throw new IllegalArgumentException("Truncated trajectory file!");
+		int length = file.getShort() & 0xffff;
+		if (file.position() + length > headerLength)
+			throw new IllegalArgumentException("Truncated trajectory file!");
+		byte[] bytes = new byte[length];
+		file.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This method returns the amount of moves recorded in the file.
+	 *
+	 * @return The amount of moves.
+	 */
+	public int moves() {
+		return moves;
+	}
+
+	/**
+	 * This method returns the latitude of the drone after a move.
+	 *
+	 * @param move This is the number of the move.
+	 * @return The latitude after the move.
+	 */
+	public double latitude(int move) {
+		return buffer.getDouble(offset(move));
+	}
+
+	/**
+	 * This method returns the longitude of the drone after a move.
+	 *
+	 * @param move This is the number of the move.
+	 * @return The longitude after the move.
+	 */
+	public double longitude(int move) {
+		return buffer.getDouble(offset(move) + 8);
+	}
+
+	/**
+	 * This method returns the direction the drone took during a move.
+	 *
+	 * @param move This is the number of the move.
+	 * @return The direction of the move.
+	 */
+	public Direction direction(int move) {
+		int ordinal = buffer.get(offset(move) + 16);
+		if (ordinal < 0 || ordinal >= Direction.VALUES.length)
+			throw new IllegalArgumentException("Invalid direction in trajectory file!");
+		return Direction.VALUES[ordinal];
+	}
+
+	/**
+	 * This method returns the coins held by the drone after a move.
+	 *
+	 * @param move This is the number of the move.
+	 * @return The coins after the move.
+	 */
+	public double coins(int move) {
+		return buffer.getDouble(offset(move) + 17);
+	}
+
+	/**
+	 * This method returns the power held by the drone after a move.
+	 *
+	 * @param move This is the number of the move.
+	 * @return The power after the move.
+	 */
+	public double power(int move) {
+		return buffer.getDouble(offset(move) + 25);
+	}
+
+	/**
+	 * This method returns the position of the drone after a move, or its starting
+	 * position for move -1.
+	 *
+	 * @param move This is the number of the move, or -1.
+	 * @return A new Position object holding the position after the move.
+	 */
+	public Position position(int move) {
+		if (move == -1)
+			return spec.initialPosition();
+		return new Position(latitude(move), longitude(move));
+	}
+
+	/**
+	 * This is a support method returning the offset of the record of a move
+	 * within the mapped records, throwing an IndexOutOfBoundsException if the
+	 * file has no such move.
+	 *
+	 * @param move This is the number of the move.
+	 * @return The offset of the record.
+	 */
+	private int offset(int move) {
+		if (move < 0 || move >= moves)
+			throw new IndexOutOfBoundsException("Move " + move + " of " + moves);
+		return move * TrajectoryWriter.RECORD_SIZE;
+	}
+
+	/**
+	 * This method closes the file. The mapping itself is released once the reader
+	 * is no longer referenced.
+	 *
+	 * @throws IOException If the file can't be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		channel.close();
+		return;
+	}
+}
@@ -0,0 +1,186 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class streams the trajectory of a drone to a compact binary file while
+ * the drone flies. It is registered on the drone as a MoveListener, like the
+ * writers of the text and geojson files, and stores the same information in a
+ * fraction of the space, so it is meant for archiving large amounts of runs.
+ *
+ * A trajectory file starts with a header holding the magic number, the format
+ * version, the length of the header, the random seed, the starting position of
+ * the drone, the day, month and year of the target map and the drone type. The
+ * header is followed by one fixed-width record per move holding the position of
+ * the drone after the move, the ordinal of the direction it took and the coins
+ * and power it holds after the move. The position before a move is the one
+ * after the previous move, or the starting position for the first move, so it
+ * isn't stored. All values are big-endian and the Strings are encoded as
+ * UTF-8 preceded by their length. The amount of moves is given by the size of
+ * the file, so an unfinished file is still readable up to its last complete
+ * record. Files are read by the TrajectoryReader class.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class TrajectoryWriter implements MoveListener, Closeable {
+	/**
+	 * The magic number at the start of every trajectory file, "PGTR" in ASCII.
+	 */
+	public static final int MAGIC = 0x50475452;
+
+	/**
+	 * The version of the format written by this class.
+	 */
+	public static final short VERSION = 1;
+
+	/**
+	 * The size in bytes of a move record: 2 doubles for the position, a byte for
+	 * the direction and 2 doubles for the coins and power.
+	 */
+	public static final int RECORD_SIZE = 33;
+
+	/**
+	 * The usual file extension of trajectory files.
+	 */
+	public static final String EXTENSION = ".trj";
+
+	/**
+	 * The size in bytes of the buffer the records are collected in before being
+	 * written to the channel.
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * This class has 2 private attributes: the channel the file is written to,
+	 * and the ByteBuffer the header and records are collected in.
+	 */
+	private final WritableByteChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	/**
+	 * Constructor for the TrajectoryWriter class. It writes the header of the file
+	 * describing the run straight away.
+	 *
+	 * @param channel This is the channel the file is written to, such as a
+	 *                FileChannel, or a channel over an in-memory stream.
+	 * @param spec    This is the specification of the run whose trajectory is
+	 *                written.
+	 * @throws IOException If the header can't be written.
+	 */
+	public TrajectoryWriter(WritableByteChannel channel, RunSpec spec) throws IOException {
+		this.channel = channel;
+		byte[][] strings = { bytes(spec.day), bytes(spec.month), bytes(spec.year), bytes(spec.droneType) };
+		int headerLength = 28;
+		for (byte[] string : strings)
+			headerLength += 2 + string.length;
+		buffer.putInt(MAGIC).putShort(VERSION).putShort((short) headerLength).putInt(spec.seed);
+		buffer.putDouble(spec.latitude).putDouble(spec.longitude);
+		for (byte[] string : strings)
+			buffer.putShort((short) string.length).put(string);
+		flush();
+	}
+
+	/**
+	 * This method opens a TrajectoryWriter writing to a file, replacing the file
+	 * if it exists.
+	 *
+	 * @param file This is the output file.
+	 * @param spec This is the specification of the run whose trajectory is
+	 *             written.
+	 * @return The TrajectoryWriter writing to the file.
+	 * @throws IOException If the file can't be opened.
+	 */
+	public static TrajectoryWriter open(File file, RunSpec spec) throws IOException {
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+		try {
+			return new TrajectoryWriter(channel, spec);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * This is a support method for the constructor. It encodes a String of the
+	 * header, throwing an IllegalArgumentException if it is too long to be stored.
+	 *
+	 * @param string This is the String to encode.
+	 * @return The UTF-8 encoding of the String.
+	 */
+	private static byte[] bytes(String string) {
+		byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > 255)
+			throw new IllegalArgumentException("Run argument too long: " + string);
+		return bytes;
+	}
+
+	/**
+	 * This method writes the record of a move.
+	 *
+	 * @param position  This is the position of the drone after the move.
+	 * @param direction This is the direction the drone took.
+	 * @param coins     This is the coins held by the drone after the move.
+	 * @param power     This is the power held by the drone after the move.
+	 * @throws IOException If the record can't be written.
+	 */
+	public void write(Position position, Direction direction, double coins, double power) throws IOException {
+		if (buffer.remaining() < RECORD_SIZE)
+			flush();
+		buffer.putDouble(position.latitude).putDouble(position.longitude).put((byte) direction.ordinal())
+				.putDouble(coins).putDouble(power);
+		return;
+	}
+
+	/**
+	 * This method writes the record of a move made by the drone, throwing an
+	 * UncheckedIOException if it can't be written.
+	 */
+	@Override
+	public void moveMade(int move, Position from, Direction direction, Position to, double coins, double power,
+			int charged) {
+		try {
+			write(to, direction, coins, power);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return;
+	}
+
+	/**
+	 * This is a support method writing the contents of the buffer to the channel.
+	 *
+	 * @throws IOException If the buffer can't be written.
+	 */
+	private void flush() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining())
+			channel.write(buffer);
+		buffer.clear();
+		return;
+	}
+
+	/**
+	 * This method writes the records still in the buffer and closes the file.
+	 *
+	 * @throws IOException If the file can't be written or closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			channel.close();
+		}
+		return;
+	}
+}
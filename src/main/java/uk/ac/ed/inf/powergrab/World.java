@@ -0,0 +1,44 @@
+package uk.ac.ed.inf.powergrab;
+
+/**
+ * This class represents the state of the world seen by the drone during a
+ * single simulation. It shares the features and the spatial index of the
+ * target map, which are never modified, and records the features the drone
+ * drains as it charges from them in its own FeatureOverlay, which only holds
+ * the features charged from, along with the SafetyRaster telling what a drone
+ * would charge from anywhere in the play area. Every simulation works on its
+ * own World, so any amount of simulations can run on a single copy of the
+ * target map in the same JVM without interfering with each other.
+ *
+ * @author David Jorge (s1712653)
+ *
+ */
+public class World {
+	/**
+	 * This class has 5 public final attributes: the TargetMap the simulation runs
+	 * on, the FeatureOverlay holding this run's view of its features, the
+	 * SpatialIndex shared with the target map, the SafetyRaster following the
+	 * features of the overlay, and the total amount of coins that can be
+	 * collected on the target map.
+	 */
+	public final TargetMap map;
+	public final FeatureOverlay features;
+	public final SpatialIndex index;
+	public final SafetyRaster raster;
+	public final double totalCoins;
+
+	/**
+	 * Constructor for the World class. It creates an empty overlay over the
+	 * features of the input target map, so the target map itself is left
+	 * untouched by the simulation.
+	 *
+	 * @param map This is the target map the simulation runs on.
+	 */
+	public World(TargetMap map) {
+		this.map = map;
+		this.features = new FeatureOverlay(map.features);
+		this.index = map.index;
+		this.raster = new SafetyRaster(map.raster, features);
+		this.totalCoins = map.totalCoins;
+	}
+}
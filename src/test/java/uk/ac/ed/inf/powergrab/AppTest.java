@@ -203,6 +203,50 @@ public class AppTest extends TestCase {
 		assertTrue(approxEq(p4, stop));
 	}
 	
+	public void testNextPositionMatchesTrigonometry() {
+		for (Direction d : Direction.values()) {
+			Position p1 = p0.nextPosition(d);
+			assertTrue(p1.latitude == p0.latitude + 0.0003 * Math.sin(Math.toRadians(d.angle)));
+			assertTrue(p1.longitude == p0.longitude + 0.0003 * Math.cos(Math.toRadians(d.angle)));
+		}
+	}
+	
+	public void testFromMaskFollowsDeclarationOrder() {
+		int mask = Direction.NNE.bit | Direction.SE.bit | Direction.NNW.bit;
+		assertEquals(Direction.NNE, Direction.fromMask(mask, 0));
+		assertEquals(Direction.SE, Direction.fromMask(mask, 1));
+		assertEquals(Direction.NNW, Direction.fromMask(mask, 2));
+	}
+	
+	public void testAppendFixedMatchesFormat() {
+		double[] values = { 0, -0.0, 0.5, 1, -1, 0.0000005, 0.00000049, 1.0000005, 9.9999995, 999999.9999996,
+				-0.0000001, 1e-5, 1.5e-7, 123456789.125, 1e7, 1e20, 1.7976931348623157E308, Double.MIN_VALUE,
+				Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 104.25, 187.5 };
+		java.util.Random random = new java.util.Random(11);
+		for (int i = 0; i < values.length + 100000; i++) {
+			double value;
+			if (i < values.length)
+				value = values[i];
+			else if (i % 3 == 0)
+				value = (random.nextDouble() - 0.5) * 500;
+			else if (i % 3 == 1)
+				value = Math.round(random.nextDouble() * 1e9) / 1e7;
+			else
+				value = Double.longBitsToDouble(random.nextLong());
+			StringBuilder text = new StringBuilder("x");
+			AppUtil.appendFixed(text, value);
+			assertEquals(String.valueOf(value), "x" + String.format(java.util.Locale.ENGLISH, "%f", value),
+					text.toString());
+		}
+	}
+	
+	public void testTextOutputMatchesFormat() {
+		Position p1 = p0.nextPosition(Direction.WSW);
+		String expected = String.format(java.util.Locale.ENGLISH, "%s,%s,%s,%s,%s,%f,%f", p0.latitude, p0.longitude,
+				Direction.WSW, p1.latitude, p1.longitude, 104.2500004, 0.0);
+		assertEquals(expected, AppUtil.formatTextOutput(p0, p1, Direction.WSW, 104.2500004, 0.0));
+	}
+	
 	public void testSSEthenSthenSEthenNEthenWNW() {
 		Position p1 = p0.nextPosition(Direction.SSE);
 		Position p2 = p1.nextPosition(Direction.S);
@@ -213,4 +257,4 @@ public class AppTest extends TestCase {
 		assertTrue(approxEq(p5, stop));
 	}
 	
-}
\ No newline at end of file
+}
\ No newline at end of file
@@ -0,0 +1,170 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the BatchRunner class and the stages of its pipeline.
+ */
+public class BatchRunnerTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public BatchRunnerTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(BatchRunnerTest.class);
+	}
+
+	public void testStageQueuesBoundItemsInFlight() throws InterruptedException {
+		final AtomicInteger inFlight = new AtomicInteger();
+		final AtomicInteger maxInFlight = new AtomicInteger();
+		final AtomicInteger sum = new AtomicInteger();
+		Stage<Integer> last = new Stage<>("last", 2, 3, item -> {
+			sum.addAndGet(item);
+			inFlight.decrementAndGet();
+			try {
+				Thread.sleep(1);
+			} catch (InterruptedException e) {
+			}
+		}, null);
+		Stage<Integer> first = new Stage<>("first", 3, 3, item -> last.put(item), last);
+		first.start();
+		last.start();
+		for (int i = 1; i <= 200; i++) {
+			maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+			first.put(i);
+		}
+		first.close();
+		first.await();
+		last.await();
+		assertEquals(200 * 201 / 2, sum.get());
+		assertEquals(200, first.items());
+		assertEquals(200, last.items());
+		assertTrue(maxInFlight.get() <= 3 + 3 + 3 + 2 + 1);
+		assertTrue(last.report().startsWith("Stage last: 200 items"));
+	}
+
+	public void testStageEndsAfterAnError() throws InterruptedException {
+		final AtomicInteger sum = new AtomicInteger();
+		Stage<Integer> last = new Stage<>("last", 1, 3, item -> sum.addAndGet(item), null);
+		Stage<Integer> first = new Stage<>("first", 2, 3, item -> {
+			if (item == 5)
+				throw new Error("Failed on item 5");
+			last.put(item);
+		}, last);
+		first.start();
+		last.start();
+		for (int i = 1; i <= 10; i++)
+			first.put(i);
+		first.close();
+		first.await();
+		last.await();
+		assertEquals(10 * 11 / 2 - 5, sum.get());
+		assertEquals(9, last.items());
+	}
+
+	public void testStagesFeedingAnEndedStageEnd() throws InterruptedException {
+		final AtomicInteger handled = new AtomicInteger();
+		Stage<Integer> last = new Stage<>("last", 1, 2, item -> {
+		}, null);
+		Stage<Integer> middle = new Stage<>("middle", 1, 2, item -> {
+			if (handled.incrementAndGet() == 3)
+				throw new Error("Failed on the third item");
+			last.put(item);
+		}, last);
+		Stage<Integer> first = new Stage<>("first", 2, 2, middle::put, middle);
+		first.start();
+		middle.start();
+		last.start();
+		for (int i = 1; i <= 20; i++)
+			first.put(i);
+		first.close();
+		first.await();
+		middle.await();
+		last.await();
+		assertEquals(20, first.items());
+		assertEquals(2, middle.items());
+		assertEquals(2, last.items());
+		try {
+			middle.put(0);
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+
+	public void testBatchMatchesSingleRuns() throws IOException {
+		File maps = Files.createTempDirectory("maps").toFile();
+		for (String date : new String[] { "2019/09/15", "2019/09/16" }) {
+			File file = new File(maps, date + "/powergrabmap.geojson");
+			file.getParentFile().mkdirs();
+			Files.write(file.toPath(), GeoJsonWriterTest.MAP.getBytes(StandardCharsets.UTF_8));
+		}
+		File cacheDir = Files.createTempDirectory("mapcache").toFile();
+		MapCache cache = new MapCache(cacheDir, new DirectoryMapSource(maps), false, MapCache.DEFAULT_MAX_AGE);
+		List<RunSpec> specs = new ArrayList<>();
+		for (String line : Arrays.asList("15 09 2019 55.944425 -3.188396 5678 stateful",
+				"16 09 2019 55.944425 -3.188396 42 stateless", "17 09 2019 55.944425 -3.188396 1 stateless",
+				"15 09 2019 55.944 -3.19 7 stateless"))
+			specs.add(RunSpec.parse(line));
+
+		for (boolean binary : new boolean[] { false, true }) {
+			File outputDir = Files.createTempDirectory("batch").toFile();
+			Locale locale = Locale.getDefault();
+			Locale.setDefault(Locale.GERMANY);
+			try {
+				assertEquals(1, new BatchRunner(outputDir, 2, cache, true, binary).run(specs));
+			} finally {
+				Locale.setDefault(locale);
+			}
+			File expectedDir = Files.createTempDirectory("single").toFile();
+			for (int i = 0; i < specs.size(); i++) {
+				if (i == 2)
+					continue;
+				String name = String.format("%s-%d", specs.get(i).outputName(), i);
+				App.simulate(cache.load(specs.get(i).mapDate()), specs.get(i), new File(expectedDir, name), true,
+						binary);
+			}
+			String[] expected = expectedDir.list();
+			Arrays.sort(expected);
+			assertEquals(binary ? 3 : 6, expected.length);
+			for (String name : expected) {
+				assertTrue(Arrays.equals(Files.readAllBytes(new File(expectedDir, name).toPath()),
+						Files.readAllBytes(new File(outputDir, name).toPath())));
+			}
+			List<String> summary = Files.readAllLines(new File(outputDir, BatchRunner.SUMMARY_FILE).toPath());
+			assertEquals(5, summary.size());
+			assertTrue(summary.get(3).contains("map unavailable"));
+			for (String line : summary)
+				assertEquals(13, line.split(",", -1).length);
+			JsonObject metrics = new JsonParser()
+					.parse(new String(Files.readAllBytes(new File(outputDir, BatchRunner.METRICS_FILE).toPath()),
+							StandardCharsets.UTF_8))
+					.getAsJsonObject();
+			assertEquals(3, metrics.get("runs").getAsLong());
+			assertEquals(2, metrics.getAsJsonObject("mapFetchNanos").get("count").getAsLong());
+			assertEquals(2, metrics.getAsJsonObject("mapParseNanos").get("count").getAsLong());
+		}
+	}
+}
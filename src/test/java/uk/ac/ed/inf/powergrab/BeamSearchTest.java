@@ -0,0 +1,73 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the BeamSearch drone.
+ */
+public class BeamSearchTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public BeamSearchTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(BeamSearchTest.class);
+	}
+
+	final TargetMap map = SimulationTest.randomMap(new Random(41), 200);
+	final Position start = new Position(55.944425, -3.188396);
+
+	List<String> fly(ForkJoinPool pool) {
+		BeamSearch drone = new BeamSearch(new World(map), start, new Random(7), 12, 5, pool);
+		final List<String> lines = new ArrayList<>();
+		drone.addListener((move, from, direction, to, coins, power, charged) -> lines
+				.add(AppUtil.formatTextOutput(from, to, direction, coins, power)));
+		drone.fly(250);
+		return lines;
+	}
+
+	public void testMovesDontDependOnThreads() {
+		ForkJoinPool single = new ForkJoinPool(1);
+		ForkJoinPool several = new ForkJoinPool(4);
+		try {
+			List<String> expected = fly(single);
+			assertEquals(250, expected.size());
+			assertEquals(expected, fly(several));
+		} finally {
+			single.shutdown();
+			several.shutdown();
+		}
+	}
+
+	public void testBeamCollectsMoreThanOneStepAhead() {
+		double beam = 0;
+		double stateless = 0;
+		for (int seed = 0; seed < 4; seed++) {
+			beam += App.simulate(map, start, seed, "beam").coinsCollected;
+			stateless += App.simulate(map, start, seed, "stateless").coinsCollected;
+		}
+		assertTrue(beam > stateless);
+		assertEquals(SnapshotTest.flyWithDetour(map, start, "beam", 40, 0),
+				SnapshotTest.flyWithDetour(map, start, "beam", 40, 60));
+		try {
+			new BeamSearch(new World(map), start, new Random(7), 0, 5, ForkJoinPool.commonPool());
+			fail("Empty beam accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
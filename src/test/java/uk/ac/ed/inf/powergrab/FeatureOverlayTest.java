@@ -0,0 +1,76 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the FeatureOverlay class.
+ */
+public class FeatureOverlayTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public FeatureOverlayTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(FeatureOverlayTest.class);
+	}
+
+	final TargetMap map = SimulationTest.randomMap(new Random(11), 300);
+
+	public void testOverlayMatchesCopyUnderRandomWrites() {
+		Random random = new Random(12);
+		FeatureStore snapshot = map.features;
+		FeatureOverlay overlay = new FeatureOverlay(snapshot);
+		double[] coins = new double[snapshot.size()];
+		double[] power = new double[snapshot.size()];
+		for (int i = 0; i < coins.length; i++) {
+			coins[i] = snapshot.coins(i);
+			power[i] = snapshot.power(i);
+		}
+		for (int write = 0; write < 400; write++) {
+			int feature = random.nextInt(coins.length);
+			double value = random.nextDouble() * 100 - 50;
+			if (random.nextBoolean()) {
+				overlay.setCoins(feature, value);
+				coins[feature] = value;
+			} else {
+				overlay.setPower(feature, value);
+				power[feature] = value;
+			}
+			for (int i = 0; i < coins.length; i++) {
+				assertTrue(overlay.coins(i) == coins[i]);
+				assertTrue(overlay.power(i) == power[i]);
+				boolean lighthouse = snapshot.kind(i) == FeatureStore.LIGHTHOUSE;
+				boolean danger = snapshot.kind(i) == FeatureStore.DANGER;
+				assertEquals(lighthouse && (coins[i] > 0 || power[i] > 0), overlay.isChargedLighthouse(i));
+				assertEquals(danger && (coins[i] < 0 || power[i] < 0), overlay.isChargedDanger(i));
+			}
+		}
+	}
+
+	public void testOverlaysShareAnUntouchedSnapshot() {
+		FeatureStore snapshot = map.features;
+		double coins = snapshot.coins(7);
+		FeatureOverlay first = new FeatureOverlay(snapshot);
+		FeatureOverlay second = new FeatureOverlay(snapshot);
+		first.setCoins(7, 0);
+		first.setPower(7, 0);
+		assertEquals(1, first.changed());
+		assertEquals(0, second.changed());
+		assertTrue(first.coins(7) == 0);
+		assertTrue(second.coins(7) == coins);
+		assertTrue(snapshot.coins(7) == coins);
+		assertFalse(first.isChargedLighthouse(7) || first.isChargedDanger(7));
+	}
+}
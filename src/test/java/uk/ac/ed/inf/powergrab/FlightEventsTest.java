@@ -0,0 +1,64 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.util.Random;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the flight events of the FlightEvents class.
+ */
+public class FlightEventsTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public FlightEventsTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(FlightEventsTest.class);
+	}
+
+	public void testSimulationEventsAreRecorded() throws Exception {
+		File file = File.createTempFile("flight", ".jfr");
+		TargetMap map = SimulationTest.randomMap(new Random(9), 50);
+		SimulationResult result;
+		FlightEvents.start(file);
+		try {
+			result = App.simulate(map, new Position(55.944425, -3.188396), 42, "stateful");
+		} finally {
+			FlightEvents.stop();
+		}
+		assertFalse(FlightEvents.enabled);
+
+		int moves = 0;
+		int lastMove = 0;
+		int charges = 0;
+		for (RecordedEvent event : RecordingFile.readAllEvents(file.toPath())) {
+			String name = event.getEventType().getName();
+			if (name.equals("uk.ac.ed.inf.powergrab.Move")) {
+				moves++;
+				lastMove = Math.max(lastMove, event.getInt("move"));
+				assertNotNull(Direction.valueOf(event.getString("direction")));
+			} else if (name.equals("uk.ac.ed.inf.powergrab.Charge")) {
+				charges++;
+			}
+		}
+		file.delete();
+		int lines = result.moves.split("\n").length;
+		assertEquals(lines, moves);
+		assertEquals(lines, lastMove);
+		assertTrue(charges > 0);
+	}
+}
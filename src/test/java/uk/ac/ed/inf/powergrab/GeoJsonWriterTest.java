@@ -0,0 +1,107 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.mapbox.geojson.LineString;
+import com.mapbox.geojson.Point;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the streaming GeoJsonWriter class.
+ */
+public class GeoJsonWriterTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public GeoJsonWriterTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(GeoJsonWriterTest.class);
+	}
+
+	static final String MAP = "{\"type\":\"FeatureCollection\",\"date-generated\":\"Mon Sep 15 2019\","
+			+ "\"features\":[{\"type\":\"Feature\",\"properties\":{\"id\":\"<a&b='c'>\",\"coins\":\"20.5\","
+			+ "\"power\":\"49.25\",\"marker-symbol\":\"lighthouse\",\"marker-color\":\"#00ff00\"},"
+			+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-3.1853260870616587,55.94320590287391]}},"
+			+ "{\"type\":\"Feature\",\"properties\":{\"id\":\"b2\",\"coins\":-12.0,\"power\":-3.50,"
+			+ "\"marker-symbol\":\"danger\",\"marker-color\":\"#ff0000\",\"extra\":[1,{}]},"
+			+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-3.19,55.9450]}}]}";
+
+	final TargetMap map = App.parseFeatures(MAP);
+	final List<Point> points = new ArrayList<>();
+
+	@Override
+	protected void setUp() {
+		Random random = new Random(7);
+		Position position = new Position(55.944425, -3.188396);
+		points.add(Point.fromLngLat(position.longitude, position.latitude));
+		for (int i = 0; i < 250; i++) {
+			position = position.nextPosition(Direction.VALUES[random.nextInt(16)]);
+			points.add(Point.fromLngLat(position.longitude, position.latitude));
+		}
+	}
+
+	/**
+	 * Builds the geojson file from the map source with a tree of JsonElements.
+	 */
+	static JsonObject expectedTree(String mapSource, List<Point> points) {
+		JsonParser parser = new JsonParser();
+		JsonArray features = parser.parse(mapSource).getAsJsonObject().get("features").getAsJsonArray();
+		JsonObject path = new JsonObject();
+		path.addProperty("type", "Feature");
+		path.add("properties", new JsonObject());
+		path.add("geometry", parser.parse(LineString.fromLngLats(points).toJson()));
+		features.add(path);
+		JsonObject main = new JsonObject();
+		main.addProperty("type", "FeatureCollection");
+		main.add("features", features);
+		return main;
+	}
+
+	public void testPrettyOutputMatchesGson() {
+		String expected = new GsonBuilder().setPrettyPrinting().create().toJson(expectedTree(MAP, points));
+		assertEquals(expected, App.buildJsonFile(map, points));
+	}
+
+	public void testCompactOutputMatchesGson() throws IOException {
+		StringWriter out = new StringWriter();
+		try (GeoJsonWriter writer = new GeoJsonWriter(out, true)) {
+			writer.writeMap(map.features);
+			for (Point point : points)
+				writer.writePoint(point.longitude(), point.latitude());
+		}
+		assertEquals(new GsonBuilder().create().toJson(expectedTree(MAP, points)), out.toString());
+	}
+
+	public void testFeaturesWithoutSource() {
+		TargetMap random = SimulationTest.randomMap(new Random(1), 10);
+		JsonObject tree = new JsonParser().parse(App.buildJsonFile(random, points)).getAsJsonObject();
+		JsonArray features = tree.get("features").getAsJsonArray();
+		assertEquals(11, features.size());
+		for (int i = 0; i < 10; i++) {
+			JsonObject feature = features.get(i).getAsJsonObject();
+			assertEquals(random.features.id(i), feature.get("properties").getAsJsonObject().get("id").getAsString());
+			JsonArray coordinates = feature.get("geometry").getAsJsonObject().get("coordinates").getAsJsonArray();
+			assertEquals(random.features.longitude(i), coordinates.get(0).getAsDouble(), 0);
+			assertEquals(random.features.latitude(i), coordinates.get(1).getAsDouble(), 0);
+		}
+	}
+}
@@ -0,0 +1,145 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the KdTree class, checking it against the ordered list of
+ * features it replaces across random sequences of insertions and removals.
+ */
+public class KdTreeTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public KdTreeTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(KdTreeTest.class);
+	}
+
+	final Random random = new Random(3);
+	final FeatureStore features = SimulationTest.randomMap(random, 200).features;
+
+	/**
+	 * Returns the feature of the model closest to a point, skipping odd features
+	 * if asked to, with ties resolved in favour of the latest one in the list.
+	 */
+	int nearest(List<Integer> model, double latitude, double longitude, boolean skipOdd) {
+		int nearest = -1;
+		double minDist = Double.MAX_VALUE;
+		for (int feature : model) {
+			if (skipOdd && feature % 2 == 1)
+				continue;
+			double dLat = features.latitude(feature) - latitude;
+			double dLong = features.longitude(feature) - longitude;
+			double dist = Math.sqrt(dLat * dLat + dLong * dLong);
+			if (dist <= minDist) {
+				minDist = dist;
+				nearest = feature;
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Applies a random insertion or removal to both the tree and the model.
+	 */
+	void step(KdTree tree, List<Integer> model) {
+		int feature = random.nextInt(features.size());
+		if (random.nextInt(5) < 2) {
+			tree.add(feature);
+			model.add(feature);
+		} else {
+			assertEquals(model.remove(Integer.valueOf(feature)), tree.remove(feature));
+		}
+		return;
+	}
+
+	/**
+	 * Checks the size, ranks and nearest-neighbour queries of the tree against
+	 * the model.
+	 */
+	void check(KdTree tree, List<Integer> model) {
+		assertEquals(model.size(), tree.size());
+		assertEquals(model.isEmpty(), tree.isEmpty());
+		for (int k = 0; k < 5 && !model.isEmpty(); k++) {
+			int rank = random.nextInt(model.size());
+			assertEquals((int) model.get(rank), tree.get(rank));
+		}
+		double latitude = Position.MIN_LATITUDE + random.nextDouble() * (Position.MAX_LATITUDE - Position.MIN_LATITUDE);
+		double longitude = Position.MIN_LONGITUDE
+				+ random.nextDouble() * (Position.MAX_LONGITUDE - Position.MIN_LONGITUDE);
+		assertEquals(nearest(model, latitude, longitude, false), tree.nearest(latitude, longitude));
+		assertEquals(nearest(model, latitude, longitude, true),
+				tree.nearest(latitude, longitude, feature -> feature % 2 == 1));
+		return;
+	}
+
+	public void testMatchesListModel() {
+		IntList initial = new IntList();
+		List<Integer> model = new ArrayList<>();
+		for (int i = 0; i < features.size(); i += 2) {
+			initial.add(i);
+			model.add(i);
+		}
+		KdTree tree = new KdTree(features, initial);
+		check(tree, model);
+		for (int op = 0; op < 5000; op++) {
+			step(tree, model);
+			check(tree, model);
+		}
+		try {
+			tree.get(model.size());
+			fail();
+		} catch (IndexOutOfBoundsException e) {
+		}
+	}
+
+	public void testRollbackRestoresListModel() {
+		IntList initial = new IntList();
+		List<Integer> model = new ArrayList<>();
+		for (int i = 0; i < features.size(); i++) {
+			initial.add(i);
+			model.add(i);
+		}
+		KdTree tree = new KdTree(features, initial);
+		for (int round = 0; round < 50; round++) {
+			List<Integer> saved = new ArrayList<>(model);
+			int mark = tree.mark();
+			for (int op = 0; op < 40; op++)
+				step(tree, model);
+			List<Integer> inner = new ArrayList<>(model);
+			int innerMark = tree.mark();
+			for (int op = 0; op < 40; op++)
+				step(tree, model);
+			check(tree, model);
+			tree.rollback(innerMark);
+			tree.release();
+			check(tree, inner);
+			tree.rollback(mark);
+			check(tree, saved);
+			tree.release();
+			model = saved;
+			for (int op = 0; op < 20; op++)
+				step(tree, model);
+			check(tree, model);
+		}
+		try {
+			tree.release();
+			fail();
+		} catch (IllegalStateException e) {
+		}
+	}
+}
@@ -0,0 +1,119 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the LatticeSearch and MoveDistances classes.
+ */
+public class LatticeSearchTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public LatticeSearchTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(LatticeSearchTest.class);
+	}
+
+	final double lat = 55.944425;
+	final double lon = -3.188396;
+
+	/**
+	 * A map with a lighthouse east of the start behind a wall of dangers, and a
+	 * lighthouse north of the start inside a ring of dangers.
+	 */
+	TargetMap walledMap() {
+		FeatureStore store = new FeatureStore(32);
+		store.add("behind", lat, lon + 0.0024, 50, 50, "lighthouse", "#00ff00");
+		store.add("ringed", lat + 0.0012, lon, 50, 50, "lighthouse", "#00ff00");
+		for (int k = -3; k <= 3; k++)
+			store.add("wall" + k, lat + k * 0.0004, lon + 0.0012, -50, -50, "danger", "#ff0000");
+		for (int k = 0; k < 12; k++) {
+			double angle = k * Math.PI / 6;
+			store.add("ring" + k, lat + 0.0012 + 0.0005 * Math.sin(angle), lon + 0.0005 * Math.cos(angle), -50, -50,
+					"danger", "#ff0000");
+		}
+		return new TargetMap(store);
+	}
+
+	public void testPathGoesAroundDangers() {
+		TargetMap map = walledMap();
+		FeatureOverlay features = new FeatureOverlay(map.features);
+		LatticeSearch search = new LatticeSearch(features, map.index);
+		Direction[] path = search.path(lat, lon, 0);
+		assertNotNull(path);
+		double latitude = lat;
+		double longitude = lon;
+		for (Direction d : path) {
+			latitude += d.latOffset;
+			longitude += d.longOffset;
+			assertTrue(Position.inPlayArea(latitude, longitude));
+			assertFalse(search.inDanger(latitude, longitude));
+		}
+		assertEquals(0, map.index.nearest(latitude, longitude, 0.00025));
+		assertTrue(path.length > Math.ceil(TourPlanner.moves(lat, lon, lat, lon + 0.0024)));
+		int[] moves = new int[2];
+		search.moves(lat, lon, new int[] { 0, 1 }, moves);
+		assertTrue(Math.abs(path.length - moves[0]) <= 1);
+		assertEquals(-1, moves[1]);
+		assertNull(search.path(lat, lon, 1));
+		features.setCoins(5, 0);
+		features.setPower(5, 0);
+		assertEquals(8, search.path(lat, lon, 0).length);
+	}
+
+	public void testPlannedDroneFollowsRouteAroundWall() {
+		TargetMap map = walledMap();
+		World world = new World(map);
+		world.features.setCoins(1, 0);
+		world.features.setPower(1, 0);
+		world.raster.refresh(1);
+		Direction[] path = new LatticeSearch(new FeatureOverlay(map.features), map.index).path(lat, lon, 0);
+		Drone drone = new Stateful(world, new Position(lat, lon), new Random(1),
+				new TourPlanner(0, map.moveDistances()));
+		final int[] chargedAt = { -1 };
+		drone.addListener((move, from, direction, to, coins, power, charged) -> {
+			if (charged == 0)
+				chargedAt[0] = move;
+			assertTrue(charged == -1 || map.features.kind(charged) == FeatureStore.LIGHTHOUSE);
+		});
+		drone.fly(path.length);
+		assertEquals(path.length, chargedAt[0]);
+	}
+
+	public void testMoveDistancesAreCachedPerMap() {
+		TargetMap map = SimulationTest.randomMap(new Random(7), 40);
+		MoveDistances distances = map.moveDistances();
+		assertSame(distances, map.moveDistances());
+		LatticeSearch search = new LatticeSearch(new FeatureOverlay(map.features), map.index);
+		for (int i = 0; i < map.features.size(); i++) {
+			for (int j = 0; j < map.features.size(); j++) {
+				boolean lighthouses = map.features.kind(i) == FeatureStore.LIGHTHOUSE
+						&& map.features.kind(j) == FeatureStore.LIGHTHOUSE;
+				if (!lighthouses || i == j) {
+					assertEquals(lighthouses ? 0 : -1, distances.moves(i, j));
+					continue;
+				}
+				Direction[] path = search.path(map.features.latitude(i), map.features.longitude(i), j);
+				int moves = distances.moves(i, j);
+				assertEquals(path == null, moves == -1);
+				if (path != null) {
+					assertTrue(Math.abs(path.length - moves) <= 1);
+					assertTrue(moves >= TourPlanner.moves(map.features.latitude(i), map.features.longitude(i),
+							map.features.latitude(j), map.features.longitude(j)) - 0.02);
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,135 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the MapCache class, using a local stand-in for the map server.
+ */
+public class MapCacheTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public MapCacheTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(MapCacheTest.class);
+	}
+
+	static final String MAP = "{\"type\":\"FeatureCollection\",\"features\":[]}";
+	static final String DATE = "2019/09/15";
+
+	HttpServer server;
+	String baseUrl;
+	File cacheDir;
+	final AtomicInteger fetches = new AtomicInteger();
+	final AtomicInteger notModified = new AtomicInteger();
+
+	@Override
+	protected void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			byte[] body = MAP.getBytes(StandardCharsets.UTF_8);
+			if (!exchange.getRequestURI().getPath().equals("/" + DATE + "/powergrabmap.geojson")) {
+				exchange.sendResponseHeaders(404, -1);
+			} else if ("\"v1\"".equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+				notModified.incrementAndGet();
+				exchange.sendResponseHeaders(304, -1);
+			} else {
+				fetches.incrementAndGet();
+				exchange.getResponseHeaders().add("ETag", "\"v1\"");
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+			exchange.close();
+		});
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		cacheDir = Files.createTempDirectory("mapcache").toFile();
+	}
+
+	@Override
+	protected void tearDown() {
+		server.stop(0);
+	}
+
+	static void assertMap(byte[] source) {
+		assertEquals(MAP, new String(source, StandardCharsets.UTF_8));
+	}
+
+	public void testFreshEntryIsReadFromDisk() {
+		MapCache cache = new MapCache(cacheDir, new HttpMapSource(baseUrl), false, MapCache.DEFAULT_MAX_AGE);
+		assertMap(cache.get(DATE));
+		assertMap(cache.get(DATE));
+		assertMap(new MapCache(cacheDir, new HttpMapSource(baseUrl), false, MapCache.DEFAULT_MAX_AGE).get(DATE));
+		assertEquals(1, fetches.get());
+		assertEquals(0, notModified.get());
+	}
+
+	public void testStaleEntryIsRevalidated() {
+		MapCache cache = new MapCache(cacheDir, new HttpMapSource(baseUrl), false, 0);
+		assertMap(cache.get(DATE));
+		assertMap(cache.get(DATE));
+		assertEquals(1, fetches.get());
+		assertEquals(1, notModified.get());
+	}
+
+	public void testOfflineNeverContactsSource() {
+		MapCache offline = new MapCache(cacheDir, new HttpMapSource(baseUrl), true, 0);
+		try {
+			offline.get(DATE);
+			fail("Uncached map served offline");
+		} catch (IllegalArgumentException e) {
+		}
+		new MapCache(cacheDir, new HttpMapSource(baseUrl), false, 0).get(DATE);
+		assertMap(offline.get(DATE));
+		assertEquals(1, fetches.get());
+		assertEquals(0, notModified.get());
+	}
+
+	public void testCachedCopyServedWhenSourceFails() {
+		new MapCache(cacheDir, new HttpMapSource(baseUrl), false, 0).get(DATE);
+		server.stop(0);
+		assertMap(new MapCache(cacheDir, new HttpMapSource(baseUrl), false, 0).get(DATE));
+	}
+
+	public void testDirectorySourceSharesContent() throws IOException {
+		File maps = Files.createTempDirectory("maps").toFile();
+		for (String date : new String[] { "2019/09/15", "2019/09/16" }) {
+			File file = new File(maps, date + "/powergrabmap.geojson");
+			file.getParentFile().mkdirs();
+			Files.write(file.toPath(), MAP.getBytes(StandardCharsets.UTF_8));
+		}
+		MapCache cache = new MapCache(cacheDir, new DirectoryMapSource(maps), false, 0);
+		assertMap(cache.get("2019/09/15"));
+		assertMap(cache.get("2019/09/16"));
+		assertMap(cache.get("2019/09/16"));
+		assertEquals(1, new File(cacheDir, "objects").list().length);
+		assertEquals(2, new File(cacheDir, "index").list().length);
+		try {
+			cache.get("2019/09/17");
+			fail("Missing map served");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
@@ -0,0 +1,80 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import com.google.gson.JsonParser;
+import com.mapbox.geojson.Feature;
+import com.mapbox.geojson.FeatureCollection;
+import com.mapbox.geojson.Point;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the streaming MapParser class.
+ */
+public class MapParserTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public MapParserTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(MapParserTest.class);
+	}
+
+	static final String MAP = "{\"type\":\"FeatureCollection\",\"date-generated\":\"Mon Sep 15 2019\","
+			+ "\"features\":[{\"type\":\"Feature\",\"properties\":{\"id\":\"a1\",\"coins\":\"20.5\","
+			+ "\"power\":\"49.25\",\"marker-symbol\":\"lighthouse\",\"marker-color\":\"#00ff00\"},"
+			+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[-3.1853260870616587,55.94320590287391]}},"
+			+ "{\"type\":\"Feature\",\"geometry\":{\"coordinates\":[-3.19,55.9450],\"type\":\"Point\"},"
+			+ "\"properties\":{\"marker-color\":\"#ff0000\",\"id\":\"b2\",\"coins\":-12.0,\"power\":-3.5,"
+			+ "\"marker-symbol\":\"danger\",\"extra\":[1,{\"x\":2}]}}]}";
+
+	public void testMatchesFeatureCollection() {
+		FeatureStore store = MapParser.parse(new ByteArrayInputStream(MAP.getBytes(StandardCharsets.UTF_8))).features;
+		List<Feature> expected = FeatureCollection.fromJson(MAP).features();
+		assertEquals(expected.size(), store.size());
+		for (int i = 0; i < store.size(); i++) {
+			Feature feature = expected.get(i);
+			Point point = (Point) feature.geometry();
+			assertEquals(feature.getProperty("id").getAsString(), store.id(i));
+			assertEquals(point.latitude(), store.latitude(i), 0);
+			assertEquals(point.longitude(), store.longitude(i), 0);
+			assertEquals(feature.getProperty("coins").getAsDouble(), store.coins(i), 0);
+			assertEquals(feature.getProperty("power").getAsDouble(), store.power(i), 0);
+			assertEquals(feature.getProperty("marker-symbol").getAsString(), store.symbol(i));
+			assertEquals(feature.getProperty("marker-color").getAsString(), store.color(i));
+			assertEquals(feature.properties(), new JsonParser().parse(store.sourceProperties(i)));
+		}
+		assertEquals(FeatureStore.LIGHTHOUSE, store.kind(0));
+		assertEquals(FeatureStore.DANGER, store.kind(1));
+		assertEquals("[-3.19,55.9450]", store.sourceCoordinates(1));
+		assertEquals("{\"marker-color\":\"#ff0000\",\"id\":\"b2\",\"coins\":-12.0,\"power\":-3.5,"
+				+ "\"marker-symbol\":\"danger\",\"extra\":[1,{\"x\":2}]}", store.sourceProperties(1));
+	}
+
+	public void testInvalidMapsAreRejected() {
+		String[] invalid = { "", "[]", "{\"features\":[{\"properties\":{\"id\":\"a\"}}]}",
+				"{\"features\":[{\"properties\":{\"id\":\"a\",\"coins\":1,\"power\":1,\"marker-symbol\":\"danger\"},"
+						+ "\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,2]}}]}",
+				"{\"features\":[{\"properties\":{},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[]}}]}" };
+		for (String source : invalid) {
+			try {
+				App.parseFeatures(source);
+				fail("Parsed invalid map " + source);
+			} catch (IllegalArgumentException e) {
+			}
+		}
+	}
+}
@@ -0,0 +1,152 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpServer;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the MapPrefetcher class, using a local stand-in for the map
+ * server.
+ */
+public class MapPrefetcherTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public MapPrefetcherTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(MapPrefetcherTest.class);
+	}
+
+	static final String FLAKY = "2019/09/03";
+	static final String MISSING = "2019/09/05";
+	static final String INVALID = "2019/09/06";
+	static final String DOWN = "2019/08/31";
+
+	HttpServer server;
+	String baseUrl;
+	File cacheDir;
+	final AtomicInteger fetches = new AtomicInteger();
+	final AtomicInteger active = new AtomicInteger();
+	final AtomicInteger maxActive = new AtomicInteger();
+	final AtomicInteger flakyAttempts = new AtomicInteger();
+
+	@Override
+	protected void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/", exchange -> {
+			int now = active.incrementAndGet();
+			maxActive.accumulateAndGet(now, Math::max);
+			try {
+				Thread.sleep(20);
+			} catch (InterruptedException e) {
+			}
+			String path = exchange.getRequestURI().getPath();
+			byte[] body = (path.startsWith("/" + INVALID) ? "not a map" : MapCacheTest.MAP)
+					.getBytes(StandardCharsets.UTF_8);
+			fetches.incrementAndGet();
+			if (path.startsWith("/" + MISSING)) {
+				exchange.sendResponseHeaders(404, -1);
+			} else if (path.startsWith("/" + DOWN)
+					|| path.startsWith("/" + FLAKY) && flakyAttempts.incrementAndGet() == 1) {
+				exchange.sendResponseHeaders(503, -1);
+			} else {
+				exchange.sendResponseHeaders(200, body.length);
+				try (OutputStream out = exchange.getResponseBody()) {
+					out.write(body);
+				}
+			}
+			active.decrementAndGet();
+			exchange.close();
+		});
+		server.setExecutor(Executors.newCachedThreadPool());
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/";
+		cacheDir = Files.createTempDirectory("mapcache").toFile();
+	}
+
+	@Override
+	protected void tearDown() {
+		server.stop(0);
+	}
+
+	MapCache cache(boolean offline) {
+		return new MapCache(cacheDir, new HttpMapSource(baseUrl, 2000, 2000), offline, MapCache.DEFAULT_MAX_AGE);
+	}
+
+	public void testDateRange() {
+		List<String> dates = MapPrefetcher.dateRange(LocalDate.of(2019, 12, 30), LocalDate.of(2020, 1, 2));
+		assertEquals(Arrays.asList("2019/12/30", "2019/12/31", "2020/01/01", "2020/01/02"), dates);
+		assertTrue(MapPrefetcher.dateRange(LocalDate.of(2019, 1, 2), LocalDate.of(2019, 1, 1)).isEmpty());
+		assertEquals(366, MapPrefetcher.dateRange(LocalDate.of(2020, 1, 1), LocalDate.of(2020, 12, 31)).size());
+	}
+
+	public void testRangeIsPrefetchedWithBoundedParallelism() {
+		List<String> dates = MapPrefetcher.dateRange(LocalDate.of(2019, 9, 1), LocalDate.of(2019, 9, 12));
+		List<String> failed = new MapPrefetcher(cache(false), 3, 3, 10).prefetch(dates);
+		assertEquals(Arrays.asList(MISSING, INVALID), failed);
+		assertTrue(maxActive.get() <= 3);
+		assertEquals(2, flakyAttempts.get());
+
+		MapCache offline = cache(true);
+		for (String date : dates)
+			if (!failed.contains(date))
+				MapCacheTest.assertMap(offline.get(date));
+		try {
+			offline.get(INVALID);
+			fail("Invalid map was cached");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testFreshMapsAreNotFetchedAgain() {
+		List<String> dates = MapPrefetcher.dateRange(LocalDate.of(2019, 10, 1), LocalDate.of(2019, 10, 4));
+		MapPrefetcher prefetcher = new MapPrefetcher(cache(false), 2, 1, 0);
+		assertTrue(prefetcher.prefetch(dates).isEmpty());
+		assertEquals(4, fetches.get());
+		assertTrue(prefetcher.prefetch(dates).isEmpty());
+		assertEquals(4, fetches.get());
+	}
+
+	public void testOfflineCacheIsRejected() {
+		try {
+			new MapPrefetcher(cache(true), 1, 1, 0);
+			fail("Prefetcher created for an offline cache");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	public void testFailedMapIsReportedAfterEveryAttempt() {
+		List<String> failed = new MapPrefetcher(cache(false), 4, 3, 10).prefetch(Collections.singletonList(DOWN));
+		assertEquals(Collections.singletonList(DOWN), failed);
+		assertEquals(3, fetches.get());
+	}
+
+	public void testMissingMapIsNotRetried() {
+		List<String> failed = new MapPrefetcher(cache(false), 4, 3, 10).prefetch(Collections.singletonList(MISSING));
+		assertEquals(Collections.singletonList(MISSING), failed);
+		assertEquals(1, fetches.get());
+	}
+}
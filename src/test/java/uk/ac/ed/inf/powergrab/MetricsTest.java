@@ -0,0 +1,85 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.lang.management.ManagementFactory;
+import java.util.Random;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the Histogram and Metrics classes.
+ */
+public class MetricsTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public MetricsTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(MetricsTest.class);
+	}
+
+	public void testHistogramStatistics() {
+		Histogram histogram = new Histogram();
+		assertEquals(0, histogram.percentile(50));
+		for (int value = 1; value <= 1000; value++)
+			histogram.record(value);
+		assertEquals(1000, histogram.count());
+		assertEquals(500500, histogram.sum());
+		assertEquals(1, histogram.min());
+		assertEquals(1000, histogram.max());
+		assertEquals(500.5, histogram.mean(), 1e-9);
+		long p50 = histogram.percentile(50);
+		assertTrue(p50 >= 500 && p50 < 1000);
+		assertEquals(1000, histogram.percentile(100));
+
+		Histogram other = new Histogram();
+		other.record(-5);
+		histogram.merge(other);
+		assertEquals(1001, histogram.count());
+		assertEquals(0, histogram.min());
+		assertEquals(0, histogram.percentile(0));
+	}
+
+	public void testSimulationRecordsEveryMove() {
+		TargetMap map = SimulationTest.randomMap(new Random(5), 50);
+		Position start = new Position(55.944425, -3.188396);
+		SimulationResult result = App.simulate(map, start, 42, "stateful");
+		Metrics metrics = result.metrics;
+		assertEquals(result.moves.split("\n").length, metrics.moves());
+		assertEquals(metrics.moves(), metrics.inRangeVisited.count());
+		assertEquals(metrics.moves(), metrics.outputNanos.count());
+		assertEquals(1, metrics.runs);
+		assertTrue(metrics.distanceCalls > 0);
+
+		JsonObject json = new JsonParser().parse(metrics.getSummary()).getAsJsonObject();
+		assertEquals(metrics.moves(), json.getAsJsonObject("moveNanos").get("count").getAsLong());
+		assertEquals(metrics.retargets, json.get("retargets").getAsLong());
+	}
+
+	public void testGlobalMetricsAreExposedThroughJmx() throws Exception {
+		Metrics.registerMBean();
+		Metrics.registerMBean();
+		App.simulate(SimulationTest.randomMap(new Random(6), 20), new Position(55.944425, -3.188396), 1,
+				"stateless");
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		String summary = (String) server.getAttribute(new ObjectName(Metrics.OBJECT_NAME), "Summary");
+		JsonObject json = new JsonParser().parse(summary).getAsJsonObject();
+		assertTrue(json.get("runs").getAsLong() >= 1);
+		assertTrue(json.getAsJsonObject("moveNanos").get("count").getAsLong() >= 1);
+	}
+}
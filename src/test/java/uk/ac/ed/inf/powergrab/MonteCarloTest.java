@@ -0,0 +1,94 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the MonteCarlo drone.
+ */
+public class MonteCarloTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public MonteCarloTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(MonteCarloTest.class);
+	}
+
+	final TargetMap map = SimulationTest.randomMap(new Random(51), 120);
+	final Position start = new Position(55.944425, -3.188396);
+
+	static MonteCarlo drone(World world, Position start, int seed, ForkJoinPool pool) {
+		return new MonteCarlo(world, start, new Random(seed), 3, 48, 0, 20, pool);
+	}
+
+	List<String> fly(int seed, ForkJoinPool pool) {
+		MonteCarlo drone = drone(new World(map), start, seed, pool);
+		final List<String> lines = new ArrayList<>();
+		drone.addListener((move, from, direction, to, coins, power, charged) -> lines
+				.add(AppUtil.formatTextOutput(from, to, direction, coins, power)));
+		drone.fly(250);
+		return lines;
+	}
+
+	public void testMovesDontDependOnThreads() {
+		ForkJoinPool single = new ForkJoinPool(1);
+		ForkJoinPool several = new ForkJoinPool(4);
+		try {
+			List<String> expected = fly(3, single);
+			assertEquals(expected, fly(3, several));
+		} finally {
+			single.shutdown();
+			several.shutdown();
+		}
+	}
+
+	public void testSearchBeatsRolloutPolicy() {
+		double searched = 0;
+		double stateless = 0;
+		for (int seed = 0; seed < 3; seed++) {
+			World world = new World(map);
+			Drone drone = drone(world, start, seed, ForkJoinPool.commonPool());
+			drone.fly(250);
+			searched += drone.coins;
+			stateless += App.simulate(map, start, seed, "stateless").coinsCollected;
+		}
+		assertTrue(searched > stateless);
+
+		World world = new World(map);
+		Drone drone = drone(world, start, 9, ForkJoinPool.commonPool());
+		while (drone.move < 30)
+			drone.makeMove();
+		Drone.Snapshot snapshot = drone.snapshot();
+		Position position = drone.currentPosition;
+		double coins = drone.coins;
+		for (int k = 0; k < 20; k++)
+			drone.makeMove();
+		drone.restore(snapshot);
+		drone.release(snapshot);
+		assertSame(position, drone.currentPosition);
+		assertTrue(drone.coins == coins);
+		drone.fly(250);
+		assertEquals(250, drone.move);
+		try {
+			drone(world, start, 0, null);
+			new MonteCarlo(world, start, new Random(0), 0, 16, 0, 20, ForkJoinPool.commonPool());
+			fail("Search without workers accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
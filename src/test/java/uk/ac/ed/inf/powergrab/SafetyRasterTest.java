@@ -0,0 +1,98 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the StationRaster and SafetyRaster classes.
+ */
+public class SafetyRasterTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public SafetyRasterTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(SafetyRasterTest.class);
+	}
+
+	final TargetMap map = SimulationTest.randomMap(new Random(61), 120);
+	final Position start = new Position(55.944425, -3.188396);
+
+	/**
+	 * Classifies a position by scanning every feature of the world.
+	 */
+	static byte classify(World world, double latitude, double longitude) {
+		double closestLighthouse = Double.MAX_VALUE;
+		double closestDanger = Double.MAX_VALUE;
+		for (int i = 0; i < world.features.size(); i++) {
+			double distance = Math.hypot(world.features.latitude(i) - latitude,
+					world.features.longitude(i) - longitude);
+			if (distance > 0.00025)
+				continue;
+			if (world.features.isChargedLighthouse(i))
+				closestLighthouse = Math.min(closestLighthouse, distance);
+			else if (world.features.isChargedDanger(i))
+				closestDanger = Math.min(closestDanger, distance);
+		}
+		if (closestLighthouse < closestDanger)
+			return SafetyRaster.LIGHTHOUSE;
+		return closestDanger == Double.MAX_VALUE ? SafetyRaster.CLEAR : SafetyRaster.DANGER;
+	}
+
+	/**
+	 * Checks the raster of a world against an exact scan at random positions, and
+	 * returns the share of positions in boundary cells.
+	 */
+	static double check(World world, Random random, int samples) {
+		int exact = 0;
+		for (int k = 0; k < samples; k++) {
+			double latitude = Position.MIN_LATITUDE
+					+ random.nextDouble() * (Position.MAX_LATITUDE - Position.MIN_LATITUDE);
+			double longitude = Position.MIN_LONGITUDE
+					+ random.nextDouble() * (Position.MAX_LONGITUDE - Position.MIN_LONGITUDE);
+			byte kind = world.raster.kind(latitude, longitude);
+			if (kind == SafetyRaster.EXACT)
+				exact++;
+			else
+				assertEquals(classify(world, latitude, longitude), kind);
+		}
+		return exact / (double) samples;
+	}
+
+	public void testRasterAgreesWithExactCheck() {
+		World world = new World(map);
+		assertTrue(check(world, new Random(1), 20000) < 0.5);
+		assertEquals(SafetyRaster.EXACT, world.raster.kind(Position.MAX_LATITUDE + 0.001, start.longitude));
+	}
+
+	public void testRasterFollowsDrainsAndRestores() {
+		World world = new World(map);
+		World other = new World(map);
+		Drone drone = new Stateful(world, start, new Random(5678));
+		Drone.Snapshot snapshot = drone.snapshot();
+		drone.fly(150);
+		assertTrue(world.features.changed() > 0);
+		check(world, new Random(2), 5000);
+		check(other, new Random(2), 5000);
+		drone.restore(snapshot);
+		drone.release(snapshot);
+		check(world, new Random(3), 5000);
+		SafetyRaster fresh = new SafetyRaster(map.raster, new FeatureOverlay(map.features));
+		for (int k = 0; k < map.features.size(); k++) {
+			double latitude = map.features.latitude(k);
+			double longitude = map.features.longitude(k);
+			assertEquals(fresh.kind(latitude, longitude), world.raster.kind(latitude, longitude));
+		}
+	}
+}
@@ -0,0 +1,112 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for running simulations through App.simulate().
+ */
+public class SimulationTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public SimulationTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(SimulationTest.class);
+	}
+
+	final Position start = new Position(55.944425, -3.188396);
+	final TargetMap map = randomMap(new Random(3), 50);
+
+	static TargetMap randomMap(Random random, int amount) {
+		FeatureStore store = new FeatureStore(amount);
+		for (int i = 0; i < amount; i++) {
+			boolean lighthouse = i % 2 == 0;
+			double sign = lighthouse ? 1 : -1;
+			store.add("id" + i, 55.942617 + random.nextDouble() * 0.003616, -3.192473 + random.nextDouble() * 0.008154,
+					sign * random.nextDouble() * 125, sign * random.nextDouble() * 125,
+					lighthouse ? "lighthouse" : "danger", lighthouse ? "#00ff00" : "#ff0000");
+		}
+		return new TargetMap(store);
+	}
+
+	public void testSimulationLeavesMapUntouched() {
+		double[] coins = new double[map.features.size()];
+		for (int i = 0; i < coins.length; i++)
+			coins[i] = map.features.coins(i);
+		App.simulate(map, start, 5678, "stateful");
+		for (int i = 0; i < coins.length; i++)
+			assertTrue(coins[i] == map.features.coins(i));
+	}
+
+	public void testRepeatedSimulationsAgree() {
+		for (String droneType : new String[] { "stateless", "stateful" }) {
+			SimulationResult first = App.simulate(map, start, 42, droneType);
+			SimulationResult second = App.simulate(map, start, 42, droneType);
+			assertEquals(first.moves, second.moves);
+			assertTrue(first.coinsCollected == second.coinsCollected);
+			assertTrue(first.coinsCollected <= first.totalCoins);
+		}
+	}
+
+	public void testListenerSeesEveryMove() {
+		final List<String> lines = new ArrayList<>();
+		final int[] finished = { -1 };
+		SimulationResult result = App.simulate(map, start, 42, "stateful", new MoveListener() {
+			public void moveMade(int move, Position from, Direction direction, Position to, double coins,
+					double power, int charged) {
+				assertEquals(lines.size() + 1, move);
+				assertTrue(charged >= -1 && charged < map.features.size());
+				lines.add(AppUtil.formatTextOutput(from, to, direction, coins, power));
+			}
+
+			public void flightFinished(int moves, double coins, double power) {
+				finished[0] = moves;
+			}
+		});
+		assertEquals(lines.size(), finished[0]);
+		assertEquals(App.simulate(map, start, 42, "stateful").moves, String.join("\n", lines));
+		assertNull(result.moves);
+	}
+
+	public void testConcurrentSimulationsMatchSequential() throws Exception {
+		final String[] droneTypes = { "stateless", "stateful" };
+		List<String> expected = new ArrayList<>();
+		for (int seed = 0; seed < 16; seed++)
+			expected.add(App.simulate(map, start, seed, droneTypes[seed % 2]).moves);
+
+		ExecutorService pool = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<String>> futures = new ArrayList<>();
+			for (int seed = 0; seed < 16; seed++) {
+				final int s = seed;
+				futures.add(pool.submit(new Callable<String>() {
+					public String call() {
+						return App.simulate(map, start, s, droneTypes[s % 2]).moves;
+					}
+				}));
+			}
+			for (int seed = 0; seed < 16; seed++)
+				assertEquals(expected.get(seed), futures.get(seed).get());
+		} finally {
+			pool.shutdown();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for saving and restoring the state of drones.
+ */
+public class SnapshotTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public SnapshotTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(SnapshotTest.class);
+	}
+
+	final TargetMap map = SimulationTest.randomMap(new Random(21), 80);
+	final Position start = new Position(55.944425, -3.188396);
+
+	static Drone drone(World world, Position start, Random random, String droneType) {
+		if (droneType.equals("beam"))
+			return new BeamSearch(world, start, random);
+		if (droneType.equals("planned"))
+			return new Stateful(world, start, random, new TourPlanner(1000));
+		return droneType.equals("stateful") ? new Stateful(world, start, random) : new Stateless(world, start, random);
+	}
+
+	/**
+	 * Flies a drone for 250 moves, with a detour of hypothetical moves after the
+	 * input amount of moves, and returns the text of its real moves.
+	 */
+	static List<String> flyWithDetour(TargetMap map, Position start, String droneType, int before, int detour) {
+		Random random = new Random(5678);
+		Drone drone = drone(new World(map), start, random, droneType);
+		final List<String> lines = new ArrayList<>();
+		drone.addListener((move, from, direction, to, coins, power, charged) -> lines
+				.add(AppUtil.formatTextOutput(from, to, direction, coins, power)));
+		while (drone.move < before)
+			drone.makeMove();
+		if (detour > 0) {
+			Drone.Snapshot outer = drone.snapshot();
+			for (int attempt = 0; attempt < 3; attempt++) {
+				for (int k = 0; k < detour / 2; k++)
+					drone.nextMove();
+				Drone.Snapshot inner = drone.snapshot();
+				for (int k = 0; k < detour / 2; k++)
+					drone.nextMove();
+				drone.restore(inner);
+				drone.release(inner);
+				drone.restore(outer);
+			}
+			drone.release(outer);
+		}
+		random.setSeed(42);
+		while (drone.hasPower() && drone.move < 250)
+			drone.makeMove();
+		return lines;
+	}
+
+	public void testRestoredDroneFliesAsIfNoDetour() {
+		for (String droneType : new String[] { "stateless", "stateful" }) {
+			for (int before : new int[] { 0, 30, 120 }) {
+				List<String> expected = flyWithDetour(map, start, droneType, before, 0);
+				assertEquals(expected, flyWithDetour(map, start, droneType, before, 60));
+			}
+		}
+	}
+
+	public void testRestoreBringsBackDrainedFeatures() {
+		World world = new World(map);
+		Drone drone = drone(world, start, new Random(1), "stateful");
+		Drone.Snapshot snapshot = drone.snapshot();
+		while (drone.hasPower() && drone.move < 250)
+			drone.nextMove();
+		assertTrue(drone.coins > 0);
+		drone.restore(snapshot);
+		assertTrue(drone.coins == 0);
+		assertTrue(drone.power == 250);
+		assertEquals(0, drone.move);
+		assertSame(start, drone.currentPosition);
+		for (int i = 0; i < map.features.size(); i++) {
+			assertTrue(world.features.coins(i) == map.features.coins(i));
+			assertTrue(world.features.power(i) == map.features.power(i));
+		}
+		drone.release(snapshot);
+		try {
+			drone(world, start, new Random(1), "stateless").restore(snapshot);
+			fail("Snapshot restored on another drone");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}
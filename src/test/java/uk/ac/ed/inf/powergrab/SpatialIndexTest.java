@@ -0,0 +1,102 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the SpatialIndex class, checking its queries against a linear
+ * scan of the features.
+ */
+public class SpatialIndexTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public SpatialIndexTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(SpatialIndexTest.class);
+	}
+
+	final Random random = new Random(1);
+	final FeatureStore features = randomFeatures(500);
+	final SpatialIndex index = new SpatialIndex(features);
+
+	FeatureStore randomFeatures(int amount) {
+		FeatureStore store = new FeatureStore(amount);
+		for (int i = 0; i < amount; i++)
+			store.add("id" + i, 55.942617 + random.nextDouble() * 0.003616, -3.192473 + random.nextDouble() * 0.008154,
+					1, 1, "lighthouse", "#00ff00");
+		return store;
+	}
+
+	double dist(int feature, double latitude, double longitude) {
+		double dLat = features.latitude(feature) - latitude;
+		double dLong = features.longitude(feature) - longitude;
+		return Math.sqrt(dLat * dLat + dLong * dLong);
+	}
+
+	boolean contains(IntList list, int value) {
+		for (int k = 0; k < list.size(); k++) {
+			if (list.get(k) == value)
+				return true;
+		}
+		return false;
+	}
+
+	public void testInRadiusMatchesLinearScan() {
+		for (int q = 0; q < 1000; q++) {
+			double latitude = 55.9425 + random.nextDouble() * 0.004;
+			double longitude = -3.1926 + random.nextDouble() * 0.0084;
+			double radius = q % 2 == 0 ? 0.00025 : 0.00055;
+			IntList found = new IntList();
+			index.inRadius(latitude, longitude, radius, found);
+			int expected = 0;
+			for (int feature = 0; feature < features.size(); feature++) {
+				if (dist(feature, latitude, longitude) <= radius) {
+					expected++;
+					assertTrue(contains(found, feature));
+				}
+			}
+			assertEquals(expected, found.size());
+		}
+	}
+
+	public void testNearestMatchesLinearScan() {
+		for (int q = 0; q < 1000; q++) {
+			double latitude = 55.9425 + random.nextDouble() * 0.004;
+			double longitude = -3.1926 + random.nextDouble() * 0.0084;
+			int expected = -1;
+			double minDist = 0.00025;
+			for (int feature = 0; feature < features.size(); feature++) {
+				double dist = dist(feature, latitude, longitude);
+				if (dist <= minDist) {
+					minDist = dist;
+					expected = feature;
+				}
+			}
+			assertEquals(expected, index.nearest(latitude, longitude, 0.00025));
+		}
+	}
+
+	public void testQueryOutsideGrid() {
+		assertEquals(-1, index.nearest(0, 0, 0.00025));
+		IntList found = new IntList();
+		index.inRadius(0, 0, 0.00055, found);
+		assertTrue(found.isEmpty());
+	}
+
+	public void testEmptyIndex() {
+		SpatialIndex empty = new SpatialIndex(new FeatureStore(0));
+		assertEquals(-1, empty.nearest(55.944425, -3.188396, 0.00025));
+	}
+}
@@ -0,0 +1,136 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the TourPlanner class and the planning mode of the Stateful
+ * drone.
+ */
+public class TourPlannerTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public TourPlannerTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(TourPlannerTest.class);
+	}
+
+	final TargetMap map = SimulationTest.randomMap(new Random(31), 300);
+	final Position start = new Position(55.944425, -3.188396);
+
+	static double length(FeatureStore store, Position start, int[] tour) {
+		double length = 0;
+		double latitude = start.latitude;
+		double longitude = start.longitude;
+		for (int feature : tour) {
+			length += TourPlanner.moves(latitude, longitude, store.latitude(feature), store.longitude(feature));
+			latitude = store.latitude(feature);
+			longitude = store.longitude(feature);
+		}
+		return length;
+	}
+
+	public void testMovesFollowTheLattice() {
+		double lat = 55.944425;
+		double lon = -3.188396;
+		assertEquals(0, TourPlanner.moves(lat, lon, lat + 0.0002, lon), 1e-9);
+		assertEquals(4, TourPlanner.moves(lat, lon, lat, lon + 4 * 0.0003 + 0.00025), 1e-9);
+		assertEquals(4, TourPlanner.moves(lat, lon, lat - 4 * 0.0003 - 0.00025, lon), 1e-9);
+		Direction d = Direction.NNE;
+		assertEquals(3, TourPlanner.moves(lat, lon, lat + 3 * d.latOffset, lon + 3 * d.longOffset) + 0.00025 / 0.0003,
+				1e-9);
+		double between = Math.toRadians(11.25);
+		double far = 10 * 0.0003;
+		double bisector = TourPlanner.moves(lat, lon, lat + far * Math.sin(between), lon + far * Math.cos(between));
+		assertTrue(bisector > TourPlanner.moves(lat, lon, lat, lon + far));
+	}
+
+	public void testPlanImprovesOnNearestNeighbour() {
+		IntList targets = new IntList();
+		for (int i = 0; i < map.features.size(); i++) {
+			if (map.features.isChargedLighthouse(i))
+				targets.add(i);
+		}
+		int[] greedy = new TourPlanner(0).plan(map.features, start.latitude, start.longitude, targets);
+		int[] planned = new TourPlanner(1000).plan(map.features, start.latitude, start.longitude, targets);
+		int[] sorted = planned.clone();
+		Arrays.sort(sorted);
+		int[] expected = targets.toArray();
+		Arrays.sort(expected);
+		assertTrue(Arrays.equals(expected, sorted));
+		assertTrue(length(map.features, start, planned) < length(map.features, start, greedy));
+		try {
+			new TourPlanner(-1);
+			fail("Negative budget accepted");
+		} catch (IllegalArgumentException e) {
+		}
+	}
+
+	static double length(MoveDistances distances, FeatureStore store, Position start, int[] tour) {
+		double length = TourPlanner.moves(start.latitude, start.longitude, store.latitude(tour[0]),
+				store.longitude(tour[0]));
+		for (int k = 1; k < tour.length; k++) {
+			int moves = distances.moves(tour[k - 1], tour[k]);
+			length += moves != -1 ? moves
+					: 1000 + TourPlanner.moves(store.latitude(tour[k - 1]), store.longitude(tour[k - 1]),
+							store.latitude(tour[k]), store.longitude(tour[k]));
+		}
+		return length;
+	}
+
+	public void testPlanWithMoveDistancesHasNoShorterReversal() {
+		int asymmetric = 0;
+		for (int seed = 0; seed < 10; seed++) {
+			TargetMap map = SimulationTest.randomMap(new Random(seed), 50);
+			IntList targets = new IntList();
+			for (int i = 0; i < map.features.size(); i++) {
+				if (map.features.isChargedLighthouse(i))
+					targets.add(i);
+			}
+			MoveDistances distances = map.moveDistances();
+			for (int a : targets.toArray()) {
+				for (int b : targets.toArray())
+					if (distances.moves(a, b) != distances.moves(b, a))
+						asymmetric++;
+			}
+			int[] planned = new TourPlanner(1000, distances).plan(map.features, start.latitude, start.longitude,
+					targets);
+			double length = length(distances, map.features, start, planned);
+			for (int i = 0; i < planned.length; i++) {
+				for (int j = i + 1; j < planned.length; j++) {
+					int[] reversed = planned.clone();
+					for (int a = i, b = j; a < b; a++, b--) {
+						int feature = reversed[a];
+						reversed[a] = reversed[b];
+						reversed[b] = feature;
+					}
+					assertTrue(length(distances, map.features, start, reversed) > length - 1e-9);
+				}
+			}
+		}
+		assertTrue(asymmetric > 0);
+	}
+
+	public void testPlannedDroneFliesDeterministically() {
+		SimulationResult result = App.simulate(map, start, 42, "planned");
+		assertTrue(result.coinsCollected > 0);
+		assertEquals(250, result.moves.split("\n").length);
+		List<String> expected = SnapshotTest.flyWithDetour(map, start, "planned", 40, 0);
+		assertEquals(expected, SnapshotTest.flyWithDetour(map, start, "planned", 40, 0));
+		assertEquals(expected, SnapshotTest.flyWithDetour(map, start, "planned", 40, 60));
+	}
+}
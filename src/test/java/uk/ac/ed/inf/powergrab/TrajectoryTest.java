@@ -0,0 +1,112 @@
+package uk.ac.ed.inf.powergrab;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.util.Random;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit test for the binary trajectory format of the TrajectoryWriter,
+ * TrajectoryReader and TrajectoryConverter classes.
+ */
+public class TrajectoryTest extends TestCase {
+	/**
+	 * Create the test case
+	 *
+	 * @param testName name of the test case
+	 */
+	public TrajectoryTest(String testName) {
+		super(testName);
+	}
+
+	/**
+	 * @return the suite of tests being tested
+	 */
+	public static Test suite() {
+		return new TestSuite(TrajectoryTest.class);
+	}
+
+	final RunSpec spec = new RunSpec("15", "09", "2019", 55.944425, -3.188396, 5678, "stateful");
+	final TargetMap map = SimulationTest.randomMap(new Random(11), 50);
+	File file;
+
+	@Override
+	protected void setUp() throws IOException {
+		file = File.createTempFile("trajectory", TrajectoryWriter.EXTENSION);
+		try (TrajectoryWriter writer = TrajectoryWriter.open(file, spec)) {
+			App.simulate(map, spec.initialPosition(), spec.seed, spec.droneType, writer);
+		}
+	}
+
+	@Override
+	protected void tearDown() {
+		file.delete();
+	}
+
+	public void testHeaderRoundTrips() throws IOException {
+		try (TrajectoryReader reader = TrajectoryReader.open(file)) {
+			assertEquals(spec.mapDate(), reader.spec.mapDate());
+			assertEquals(spec.droneType, reader.spec.droneType);
+			assertEquals(spec.seed, reader.spec.seed);
+			assertTrue(spec.latitude == reader.spec.latitude);
+			assertTrue(spec.longitude == reader.spec.longitude);
+			assertTrue(reader.moves() > 0 && reader.moves() <= 250);
+			assertEquals(52 + reader.moves() * TrajectoryWriter.RECORD_SIZE, file.length());
+		}
+	}
+
+	public void testRegeneratedTextMatchesSimulation() throws IOException {
+		StringWriter text = new StringWriter();
+		try (TrajectoryReader reader = TrajectoryReader.open(file); MoveLogWriter log = new MoveLogWriter(text)) {
+			TrajectoryConverter.writeText(reader, log);
+		}
+		assertEquals(App.simulate(map, spec.initialPosition(), spec.seed, spec.droneType).moves, text.toString());
+	}
+
+	public void testRegeneratedGeoJsonMatchesSimulation() throws IOException {
+		StringWriter expected = new StringWriter();
+		try (GeoJsonWriter json = new GeoJsonWriter(expected, false)) {
+			App.simulate(map, spec.initialPosition(), spec.seed, spec.droneType, json);
+		}
+		StringWriter actual = new StringWriter();
+		try (TrajectoryReader reader = TrajectoryReader.open(file);
+				GeoJsonWriter json = new GeoJsonWriter(actual, false)) {
+			TrajectoryConverter.writeGeoJson(reader, map, json);
+		}
+		assertEquals(expected.toString(), actual.toString());
+	}
+
+	public void testIncompleteRecordIsIgnored() throws IOException {
+		int moves;
+		try (TrajectoryReader reader = TrajectoryReader.open(file)) {
+			moves = reader.moves();
+		}
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.setLength(raf.length() - 5);
+		}
+		try (TrajectoryReader reader = TrajectoryReader.open(file)) {
+			assertEquals(moves - 1, reader.moves());
+			try {
+				reader.coins(moves - 1);
+				fail();
+			} catch (IndexOutOfBoundsException e) {
+			}
+		}
+	}
+
+	public void testRejectsOtherFiles() throws IOException {
+		try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			raf.writeInt(0);
+		}
+		try {
+			TrajectoryReader.open(file).close();
+			fail();
+		} catch (IllegalArgumentException e) {
+		}
+	}
+}